@@ -0,0 +1,19 @@
+package atom;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Interface to be implemented by the components that initialize themselves in the background, i.e. warming a cache
+ * or opening a pool. Atom calls startAsync() once, after the component instance has been created and registered into
+ * its scope and the components it references have started, and doesn't wait for the returned stage: only the
+ * components depending on this one do
+ */
+public interface AsyncStartable {
+
+  /**
+   * Called after component initialization and registration to start initializing the component
+   * @return stage completed when the component is ready, or completed exceptionally if it cannot start
+   */
+  CompletionStage<?> startAsync ();
+
+}
@@ -4,16 +4,94 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import atom.exception.ConfigurationException;
 import atom.exception.AtomException;
 
 /**
- * Main class for IOC implementation
+ * Main class for IOC implementation.
+ * Each container has its own config path and scopes; getAtom() returns the default container of the class loader,
+ * and more isolated containers can be created with the public constructor. The parsed configuration files and the
+ * bean models are cached process-wide and shared by all the containers
  */
 public class Atom {
 
   // keys for mandatory properties
-  private static final String CLASS_PROPERTY = "$class";
-  private static final String SCOPE_PROPERTY = "$scope";
+  static final String CLASS_PROPERTY = "$class";
+  static final String SCOPE_PROPERTY = "$scope";
+
+  // key for the optional template the configuration is based on
+  static final String BASED_ON_PROPERTY = "$basedOn";
+
+  // key for enabling the propagation of changes to the linked properties of the component
+  static final String LIVE_LINKS_PROPERTY = "$liveLinks";
+
+  // key for the maximum time a component waits for its dependencies and for its asynchronous start. i.e. $startTimeout=30s
+  static final String START_TIMEOUT_PROPERTY = "$startTimeout";
+
+  // key for creating a global component in the background once the container is ready. i.e. $startup=background
+  static final String STARTUP_PROPERTY = "$startup";
+  static final String BACKGROUND_STARTUP = "background";
+
+  // key for leaving a session or request component with side effects out of the warm-up. i.e. $warmup=false
+  static final String WARMUP_PROPERTY = "$warmup";
+
+  // keys for timing the calls to the interfaces of a component, and for timing only one call out of n. i.e. $monitor=true
+  static final String MONITOR_PROPERTY = "$monitor";
+  static final String MONITOR_SAMPLING_PROPERTY = "$monitorSampling";
+
+  // key for evicting a global component when the memory runs short or when it is idle. i.e. $retention=idle(10m)
+  static final String RETENTION_PROPERTY = "$retention";
+
+  // counters of the retained components evicted, and created again afterwards
+  public static final String EVICTIONS_COUNTER = "retention.evictions";
+  public static final String RECREATIONS_COUNTER = "retention.recreations";
+
+  // counter of the evicted components whose stop() failed
+  public static final String EVICTION_FAILURES_COUNTER = "retention.stopFailures";
+
+  // counters of the components created in the background, of the creations joined, and of the failed creations
+  public static final String BACKGROUND_CREATIONS_COUNTER = "background.creations";
+  public static final String BACKGROUND_JOINS_COUNTER = "background.joins";
+  public static final String BACKGROUND_FAILURES_COUNTER = "background.failures";
+
+  // counters of the components created during the warm-up, and of those that failed to be
+  public static final String WARMUP_CREATIONS_COUNTER = "warmup.creations";
+  public static final String WARMUP_FAILURES_COUNTER = "warmup.failures";
+
+  // prefix of the counters and histograms of the monitored components, i.e. monitor./app/Service.find.calls
+  public static final String MONITOR_PREFIX = "monitor.";
+
+  // counter of the components that failed to start asynchronously or timed out
+  public static final String START_FAILURES_COUNTER = "start.failures";
+
+  // policies of the session quota: reject the creation of a component over the quota, or passivate the oldest ones
+  public static final String QUOTA_REJECT = "reject";
+  public static final String QUOTA_PASSIVATE = "passivate";
+
+  // counters of the creations rejected by the session quota, and of the components passivated by it
+  public static final String MEMORY_REJECTIONS_COUNTER = "memory.rejections";
+  public static final String MEMORY_PASSIVATIONS_COUNTER = "memory.passivations";
+
+  // histograms of the cost of creating the request components, i.e. request./app/Form.cpu and .allocated
+  public static final String REQUEST_COST_PREFIX = "request.";
+  public static final String CPU_SUFFIX = ".cpu";
+  public static final String ALLOCATED_SUFFIX = ".allocated";
+
+  // interval between two checks of the retained components, in milliseconds
+  private static final long RETENTION_CHECK_MILLIS = 1000;
+
+  // system property that makes the java.beans property editors available for the types without a converter
+  public static final String PROPERTY_EDITORS_SYSTEM_PROPERTY = "atom.propertyEditors";
 
   // possible scopes
   public static final String GLOBAL_SCOPE = "global";
@@ -23,32 +101,88 @@ public class Atom {
   public static final String ATOM_SESSION_SCOPE = "atom.session";
   public static final String ATOM_REQUEST_SCOPE = "atom.request";
 
-  // singleton (one Atom per classloader)
+  // default container (one per classloader)
   private static Atom mInstance = new Atom();
 
   // list of configuration directories
   private List<File> mConfigPath;
 
+  // finds and parses the configuration files in the layers
+  private PropertiesFileFinder mFinder;
+
   // applies properties to objects
   private BeanConfigurator mConfigurator;
 
+  // linked properties
+  private PropertyLinks mLinks;
+
+  // merged template configurations, shared by all the configurations based on them
+  private final Map<String,Configuration> mTemplates = new ConcurrentHashMap<String,Configuration>();
+
+  // prototypes of the session and request components
+  private final ConcurrentHashMap<String,ComponentPrototype> mPrototypes = new ConcurrentHashMap<String,ComponentPrototype>();
+
+  // merges configurations ahead of the components creation, null until prefetching is enabled
+  private volatile ConfigPrefetcher mPrefetcher;
+
+  // true to prefetch the components referenced by each merged configuration
+  private volatile boolean mPrefetchReferences;
+
+  // startup profile being recorded and the file it is saved to, null if none
+  private volatile StartupProfile mRecordedProfile;
+  private File mProfileFile;
+
+  // counters of this container
+  private final Metrics mMetrics = new Metrics();
+
+  // creation and start times of the components, by component name
+  private final ConcurrentHashMap<String,ComponentTiming> mTimings = new ConcurrentHashMap<String,ComponentTiming>();
+
+  // estimates the memory retained by the components, null while memory accounting is off
+  private volatile MemoryAccounting mMemory;
+
+  // measures the cost of creating the request components, null while request accounting is off
+  private volatile RequestAccounting mRequestAccounting;
+
+  // names of the retained components evicted and not created again yet
+  private final Set<String> mEvicted = Collections.newSetFromMap(new ConcurrentHashMap<String,Boolean>());
+
+  // runs the checks of the retained components and the start timeouts, null until needed
+  private ScheduledExecutorService mScheduler;
+  private boolean mReaperStarted;
+
+  // creates the components configured with $startup=background, null until started
+  private volatile BackgroundStarter mBackground;
+
+  // starts the components after their dependencies
+  private final StartCoordinator mStarts = new StartCoordinator(this);
+
+  // configured components by type, null until a lookup by type or after the configurations change
+  private volatile TypeIndex mTypeIndex;
+
   // scopes
   private Scope mGlobalScope;
 
 
   /**
-   * Private constructor
+   * Creates a container with an empty config path and its own scopes
    */
-  private Atom () {
+  public Atom () {
     mConfigPath = new ArrayList<File>();
+    mFinder = new PropertiesFileFinder();
     mGlobalScope = new Scope(GLOBAL_SCOPE);
-    PropertyEditors.registerEditors();
-    mConfigurator = new BeanConfigurator();
+    mGlobalScope.setAtom(this);
+    if (Boolean.getBoolean(PROPERTY_EDITORS_SYSTEM_PROPERTY)) {
+      // only then is java.beans loaded
+      PropertyEditors.install();
+    }
+    mLinks = new PropertyLinks();
+    mConfigurator = new BeanConfigurator(mLinks);
   }
 
 
   /**
-   * Returns a reference to the Atom
+   * Returns the default container
    * @return Atom
    */
   public static Atom getAtom () {
@@ -87,68 +221,971 @@ public class Atom {
    * @return component instance, or null if it could not be created
    */
   public Object createComponent (String pName, Scope pScope) {
+    MemoryAccounting memory = mMemory;
+    if (memory == null) {
+      return createAccountedComponent(pName, pScope);
+    }
+    // the components being created hold on to those they reference, which the session quota must not passivate
+    memory.beginCreation(pName);
+    try {
+      return createAccountedComponent(pName, pScope);
+    } finally {
+      memory.endCreation();
+    }
+  }
+
+
+  /**
+   * Creates a configured instance of the given component, measuring its cost if request accounting is on
+   * @param pName full component name
+   * @param pScope the scope the desired component will belong to
+   * @return component instance
+   */
+  private Object createAccountedComponent (String pName, Scope pScope) {
+    RequestAccounting accounting = mRequestAccounting;
+    if (accounting == null) {
+      return createComponent(pName, pScope, null);
+    }
+    RequestAccounting.Frame frame = accounting.begin();
+    try {
+      return createComponent(pName, pScope, frame);
+    } finally {
+      accounting.finish(frame, pName);
+    }
+  }
+
+
+  /**
+   * Creates a configured instance of the given component
+   * @param pName full component name
+   * @param pScope the scope the desired component will belong to
+   * @param pFrame measurement of the creation by the request accounting, null if it is off
+   * @return component instance
+   */
+  private Object createComponent (String pName, Scope pScope, RequestAccounting.Frame pFrame) {
+    long start = System.nanoTime();
+    StartupProfile profile = mRecordedProfile;
+    if (profile != null) {
+      profile.recordStart(pName);
+    }
+    Object component;
+    Configuration config;
+    Retention retention = null;
+    ComponentPrototype prototype = mPrototypes.get(pName);
+    if (prototype != null) {
+      // session and request components are stamped out of their prototype
+      config = prototype.getConfiguration();
+      component = prototype.newInstance();
+      setAtom(component);
+      prototype.apply(component, pScope, mConfigurator);
+    } else {
+      // find and merge all its .properties files in the configpath
+      config = getConfiguration(pName);
+
+      // validate the (merged) configuration
+      if (!isConfigurationValid(config)) {
+        throw new AtomException("Could not validate merged configuration for component " + pName);
+      }
+
+      if (GLOBAL_SCOPE.equals(getScopeNameFromConfiguration(config))) {
+        retention = getRetention(pName, config);
+
+        // load the class
+        component = createComponentInstance(config);
+        setAtom(component);
+
+        // apply the configuration
+        mConfigurator.configure(pName, component, config, pScope);
+      } else {
+        // build the prototype once, every instance after this one will reuse it
+        prototype = mConfigurator.createPrototype(pName, loadComponentClass(config), config, pScope, this);
+        ComponentPrototype previous = mPrototypes.putIfAbsent(pName, prototype);
+        if (previous != null) {
+          prototype = previous;
+        }
+        component = prototype.newInstance();
+        setAtom(component);
+        prototype.apply(component, pScope, mConfigurator);
+      }
+    }
+
+    // register the component in this scope or in its own scope
+    Scope sc = pScope;
+    while (!sc.getName().equals(getScopeNameFromConfiguration(config))) {
+      sc = sc.getParentScope();
+    }
+    Object registered = ("true".equals(config.getProperty(MONITOR_PROPERTY)) ? monitor(pName, component, config) : component);
+    MemoryAccounting memory = mMemory;
+    long size = 0;
+    if (memory != null) {
+      size = memory.estimate(component, sc);
+      memory.checkQuota(pName, size, sc);
+    }
+    Object existing = sc.registerIfAbsent(pName, registered, retention);
+    if (existing != null) {
+      // another thread created it first: keep its instance, this one was never started
+      if (pFrame != null) {
+        pFrame.mScope = sc;
+      }
+      return existing;
+    }
+    if (memory != null) {
+      sc.recordSize(pName, size);
+      memory.enforceQuota(pName, sc, this);
+    }
+    if (pFrame != null) {
+      pFrame.mScope = sc;
+    }
+    if (retention != null) {
+      startReaper();
+    }
+    if (mEvicted.remove(pName)) {
+      mMetrics.increment(RECREATIONS_COUNTER);
+    }
+    final ComponentTiming timing = getTiming(pName);
+    timing.recordCreation(System.nanoTime() - start);
+
+    // initialize the component if it wants to, once the components it references have started
+    if (component instanceof Startable || component instanceof AsyncStartable) {
+      final long startStart = System.nanoTime();
+      mStarts.start(pName, component, (mStarts.hasPendingStarts() ? getDependencies(config) : null),
+          getStartTimeout(pName, config), GLOBAL_SCOPE.equals(sc.getName()));
+      CompletableFuture<Void> started = (component instanceof AsyncStartable ? mStarts.getStart(pName) : null);
+      if (started == null) {
+        timing.recordStart(System.nanoTime() - startStart);
+      } else {
+        started.whenComplete(new BiConsumer<Void,Throwable>() {
+          public void accept (Void pResult, Throwable pFailure) {
+            timing.recordStart(System.nanoTime() - startStart);
+          }
+        });
+      }
+    }
+
+    if (profile != null) {
+      profile.recordTime(pName, System.nanoTime() - start);
+    }
+    return registered;
+  } // end createComponent
+
+
+  /**
+   * Returns the timing of a component, creating it on its first creation
+   * @param pName full component name
+   * @return timing
+   */
+  private ComponentTiming getTiming (String pName) {
+    ComponentTiming timing = mTimings.get(pName);
+    if (timing == null) {
+      ComponentTiming created = new ComponentTiming(pName);
+      timing = mTimings.putIfAbsent(pName, created);
+      if (timing == null) {
+        timing = created;
+      }
+    }
+    return timing;
+  }
+
+
+  /**
+   * Returns the creation and start times of the components created so far
+   * @return sorted map of full component names to timings
+   */
+  public Map<String,ComponentTiming> getComponentTimings () {
+    return new TreeMap<String,ComponentTiming>(mTimings);
+  }
+
+
+  /**
+   * Returns the properties set for a component by each layer of the config path, as written in its files:
+   * the provenance of its merged configuration. Layers that don't configure the component are left out
+   * @param pName full component name
+   * @return map of layer directories to sorted properties, in layer order
+   */
+  public Map<File,Map<String,String>> getConfigurationLayers (String pName) {
+    if (null == pName || "".equals(pName)) {
+      throw new AtomException("Parameter pName is null or empty");
+    }
+    Map<File,Map<String,String>> result = new LinkedHashMap<File,Map<String,String>>();
+    for (File layer : mConfigPath) {
+      CompactMap<String> props = mFinder.findConfigMap(layer, pName);
+      if (props != null) {
+        Map<String,String> properties = new TreeMap<String,String>();
+        for (int i = 0; i < props.size(); i++) {
+          properties.put(props.keyAt(i), props.valueAt(i));
+        }
+        result.put(layer, properties);
+      }
+    }
+    return result;
+  } // end getConfigurationLayers
+
+
+  /**
+   * Wraps a component configured with $monitor=true in a proxy timing the calls to its interfaces
+   * @param pName full component name
+   * @param pComponent component
+   * @param pConfig merged configuration
+   * @return proxy
+   */
+  private Object monitor (String pName, Object pComponent, Configuration pConfig) {
+    int sampling = 1;
+    String value = pConfig.getProperty(MONITOR_SAMPLING_PROPERTY);
+    if (value != null && !"".equals(value.trim())) {
+      try {
+        sampling = Integer.parseInt(value.trim());
+      } catch (NumberFormatException nfe) {
+        throw new AtomException("Invalid $monitorSampling for component " + pName, nfe);
+      }
+      if (sampling < 1) {
+        throw new AtomException("Invalid $monitorSampling for component " + pName + ", expected at least 1");
+      }
+    }
+    Object proxy = MonitoringHandler.wrap(pName, pComponent, mMetrics, sampling);
+    if (proxy == null) {
+      throw new AtomException("Component " + pName + " cannot be monitored, class "
+          + pComponent.getClass().getName() + " implements no interface");
+    }
+    return proxy;
+  } // end monitor
+
+
+  /**
+   * Returns the merged configuration of the given component, without validating it.
+   * If the configuration has been prefetched, it is handed over instead of being merged again
+   * @param pName full component name
+   * @return merged configuration
+   */
+  public Configuration getConfiguration (String pName) {
+    ConfigPrefetcher prefetcher = mPrefetcher;
+    Configuration config = (prefetcher == null ? null : prefetcher.get(pName, true));
+    if (config == null) {
+      config = getConfiguration(pName, null);
+      if (mPrefetchReferences) {
+        // prefetched configurations had their references scanned by the prefetching thread
+        prefetchReferences(config);
+      }
+    }
+    return config;
+  }
+
+
+  /**
+   * Merges the configuration of the given component from its files, leaving any prefetched configuration alone.
+   * Used by the prefetching threads and by the tools walking the whole config path
+   * @param pName full component name
+   * @return merged configuration
+   */
+  Configuration mergeConfiguration (String pName) {
+    return getConfiguration(pName, null);
+  }
+
+
+  /**
+   * Returns the merged configuration of the given component or template.
+   * If the layers name a template with "$basedOn", the configuration of the template is merged once, cached,
+   * and shared as the parent of every configuration based on it: the layers of the component are then applied
+   * on top of the template, so that only the differences are stored
+   * @param pName full component name
+   * @param pBasedOnChain names of the configurations being merged that are based on this one, used to detect cycles
+   * @return merged configuration
+   */
+  private Configuration getConfiguration (String pName, Set<String> pBasedOnChain) {
     // find all its .properties files in the configpath
-    List<Properties> props = findConfiguration(pName);
+    List<CompactMap<String>> props = findConfiguration(pName);
     if (props == null || props.size() == 0) {
       throw new AtomException("There are no configuration files for component " + pName);
     }
 
+    // the last layer naming a template wins, like for any other property
+    String basedOn = null;
+    for (CompactMap<String> p : props) {
+      String value = p.get(BASED_ON_PROPERTY);
+      if (value != null) {
+        basedOn = value.trim();
+      }
+    }
+    Configuration template = null;
+    if (basedOn != null && !"".equals(basedOn)) {
+      Set<String> chain = (pBasedOnChain == null ? new LinkedHashSet<String>() : pBasedOnChain);
+      chain.add(pName);
+      template = getTemplateConfiguration(basedOn, chain);
+    }
+
     // merge the properties according to the layer ordering
-    Properties config = mergeConfigurationLayers(props);
+    Configuration config = mergeConfigurationLayers(template, props);
     if (config == null) {
       throw new AtomException("Could not merge configurations for component " + pName);
     }
+    return config;
+  } // end getConfiguration
 
-    // validate the (merged) configuration
-    if (!isConfigurationValid(config)) {
-      throw new AtomException("Could not validate merged configuration for component " + pName);
-    } else {
-      // load the class
-      Object component = createComponentInstance(config);
 
-      // apply the configuration
-      mConfigurator.configure(component, config, pScope);
+  /**
+   * Returns the shared merged configuration of a template, merging and caching it the first time
+   * @param pName full template name
+   * @param pBasedOnChain names of the configurations being merged that are based on this template
+   * @return merged template configuration, never modified after publication
+   */
+  private Configuration getTemplateConfiguration (String pName, Set<String> pBasedOnChain) {
+    Configuration template = mTemplates.get(pName);
+    if (template == null) {
+      if (pBasedOnChain.contains(pName)) {
+        throw new AtomException("Circular $basedOn chain " + pBasedOnChain + " back to " + pName);
+      }
+      template = getConfiguration(pName, pBasedOnChain);
+      Configuration previous = mTemplates.putIfAbsent(pName, template);
+      if (previous != null) {
+        template = previous;
+      }
+    }
+    return template;
+  } // end getTemplateConfiguration
+
 
-      // register the component in this scope or in its own scope
-      Scope sc = pScope;
-      while (!sc.getName().equals(getScopeNameFromConfiguration(config))) {
-        sc = sc.getParentScope();
+  /**
+   * Forgets the cached template configurations and component prototypes, so that they are merged again from their
+   * files when next needed. Prototypes also hold the global components their instances reference,
+   * so the cache must be cleared after replacing one of those
+   */
+  public void clearConfigurationCache () {
+    mTemplates.clear();
+    mPrototypes.clear();
+    mTypeIndex = null;
+    ConfigPrefetcher prefetcher = mPrefetcher;
+    if (prefetcher != null) {
+      prefetcher.clear();
+    }
+  }
+
+
+  /**
+   * Returns the prefetcher, creating it the first time
+   * @param pThreads number of prefetching threads, if the prefetcher is created
+   * @return prefetcher
+   */
+  private synchronized ConfigPrefetcher getPrefetcher (int pThreads) {
+    if (mPrefetcher == null) {
+      mPrefetcher = new ConfigPrefetcher(this, pThreads, "atom-prefetcher");
+    }
+    return mPrefetcher;
+  }
+
+
+  /**
+   * Makes every merged configuration prefetch the components it references: the component names among its values
+   * and the components its properties are linked to are merged, and their classes loaded, by background threads
+   * before the configuration is applied. The prefetched configurations are merged the same way, so a whole
+   * dependency tree is read ahead of the thread creating the components
+   * @param pThreads number of prefetching threads, if the prefetcher is not running yet
+   */
+  public void enableReferencePrefetch (int pThreads) {
+    getPrefetcher(pThreads);
+    mPrefetchReferences = true;
+  }
+
+
+  /**
+   * Starts prefetching the components referenced by a configuration, if reference prefetching is enabled.
+   * Values that merely look like component names, such as absolute file names, cost a failed lookup
+   * @param pConfig merged configuration
+   */
+  void prefetchReferences (Configuration pConfig) {
+    ConfigPrefetcher prefetcher = mPrefetcher;
+    if (!mPrefetchReferences || prefetcher == null) {
+      return;
+    }
+    for (String name : getReferences(pConfig)) {
+      prefetchReference(prefetcher, name);
+    }
+  }
+
+
+  /**
+   * Returns the values of a configuration that look like component names, in property values and in links
+   * @param pConfig merged configuration
+   * @return full component names
+   */
+  private Set<String> getReferences (Configuration pConfig) {
+    Set<String> references = new LinkedHashSet<String>();
+    for (String name : pConfig.getPropertyNames()) {
+      if (name.startsWith("$")) {
+        continue;
+      }
+      String text = pConfig.getProperty(name);
+      if (text == null || text.indexOf('/') < 0) {
+        continue;
+      }
+      if (name.endsWith("^")) {
+        // propName^=/other/Component.propName
+        int idx = text.lastIndexOf('.');
+        if (idx > 0) {
+          addReference(references, text.substring(0, idx).trim());
+        }
+      } else {
+        for (String token : pConfig.getValue(name).getTokens()) {
+          addReference(references, token.trim());
+        }
       }
-      sc.register(pName, component);
+    }
+    return references;
+  } // end getReferences
+
+
+  /**
+   * Adds a value to the references of a configuration if it has the form of a component name
+   * @param pReferences set receiving the names
+   * @param pValue configured value
+   */
+  private static void addReference (Set<String> pReferences, String pValue) {
+    if (BeanConfigurator.isComponentName(pValue)) {
+      pReferences.add(pValue);
+    }
+  }
 
-      // initialize the component if it wants to
-      if (component instanceof Startable) {
-        ((Startable)component).start();
+
+  /**
+   * Returns the names of the components a component depends on: the ones it references, and the ones injected by type
+   * @param pConfig merged configuration
+   * @return full component names
+   */
+  Set<String> getDependencies (Configuration pConfig) {
+    Set<String> dependencies = getReferences(pConfig);
+    for (String name : pConfig.getPropertyNames()) {
+      if (name.endsWith(BeanConfigurator.TYPED_SUFFIX)) {
+        Class type = ConfigTree.loadClass(pConfig.getProperty(name).trim(), false);
+        if (type != null) {
+          dependencies.addAll(findComponentNamesByType(type));
+        }
       }
+    }
+    return dependencies;
+  } // end getDependencies
+
+
+  /**
+   * Returns the names of the components a session or request component depends on, from its prototype
+   * @param pName full component name
+   * @return full component names, empty if the component has no prototype
+   */
+  Set<String> getComponentDependencies (String pName) {
+    ComponentPrototype prototype = mPrototypes.get(pName);
+    return (prototype == null ? Collections.<String>emptySet() : prototype.getDependencies(this));
+  }
 
-      return component;
+
+  /**
+   * Prefetches a referenced component, unless it already exists or has a prototype
+   * @param pPrefetcher prefetcher
+   * @param pName value that may be a full component name
+   */
+  private void prefetchReference (ConfigPrefetcher pPrefetcher, String pName) {
+    if (!mPrototypes.containsKey(pName) && !isGlobalComponent(pName)) {
+      pPrefetcher.prefetch(pName, true);
     }
-  } // end createComponent
+  }
 
 
   /**
-   * Creates an instance of the given component
-   * @param pConfig component configuration
-   * @return component instance, or null if errors
+   * Returns the retention of a global component
+   * @param pName full component name
+   * @param pConfig merged configuration
+   * @return retention, or null if the component is kept as long as the container
    */
-  private Object createComponentInstance (Properties pConfig) {
-    if (pConfig == null || pConfig.isEmpty()) {
-      throw new AtomException("Configuration is invalid (null or empty)");
+  private Retention getRetention (String pName, Configuration pConfig) {
+    String value = pConfig.getProperty(RETENTION_PROPERTY);
+    if (value == null || "".equals(value.trim())) {
+      return null;
+    }
+    try {
+      return Retention.parse(value);
+    } catch (ConfigurationException ce) {
+      throw new AtomException("Invalid $retention for component " + pName, ce);
     }
+  }
 
-    // assumes that the configuration has been validated already
-    String className = pConfig.getProperty(CLASS_PROPERTY);
 
-    Class clazz = null;
+  /**
+   * Starts checking the retained components in the background, unless already started
+   */
+  private synchronized void startReaper () {
+    if (mReaperStarted) {
+      return;
+    }
+    mReaperStarted = true;
+    getScheduler().scheduleWithFixedDelay(new Runnable() {
+      public void run () {
+        try {
+          evictRetainedComponents();
+        } catch (RuntimeException re) {
+          // an exception must not cancel the next checks
+          Logger.getLogger(Atom.class.getName()).log(Level.WARNING, "Could not evict the retained components", re);
+        }
+      }
+    }, RETENTION_CHECK_MILLIS, RETENTION_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+  } // end startReaper
+
+
+  /**
+   * Returns the scheduler of the background checks and timeouts of this container, creating it on first use
+   * @return scheduler
+   */
+  synchronized ScheduledExecutorService getScheduler () {
+    if (mScheduler == null) {
+      mScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        public Thread newThread (Runnable pRunnable) {
+          Thread thread = new Thread(pRunnable, "atom-scheduler");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return mScheduler;
+  }
+
+
+  /**
+   * Returns the maximum time a component waits for its dependencies and for its asynchronous start
+   * @param pName full component name
+   * @param pConfig merged configuration
+   * @return time in nanoseconds, 0 for no limit
+   */
+  private long getStartTimeout (String pName, Configuration pConfig) {
+    String value = pConfig.getProperty(START_TIMEOUT_PROPERTY);
+    if (value == null || "".equals(value.trim())) {
+      return 0;
+    }
     try {
-      clazz = Class.forName(className);
-    } catch (ClassNotFoundException cnfe) {
-      throw new AtomException("Could not load class " + className, cnfe);
+      return Durations.toNanos(value);
+    } catch (ConfigurationException ce) {
+      throw new AtomException("Invalid $startTimeout for component " + pName, ce);
     }
+  }
 
-    if (clazz == null) {
-      return null;
+
+  /**
+   * Returns a future completed when the asynchronous starts of the global components pending now have completed.
+   * Components created later are not waited for: poll isReady() or ask again for an up to date readiness
+   * @return readiness, completed exceptionally if a start failed or timed out
+   */
+  public CompletableFuture<Void> getReadiness () {
+    return mStarts.getReadiness();
+  }
+
+
+  /**
+   * Returns true if no asynchronous start of a global component is pending or has failed, i.e. for a health check
+   * @return true or false
+   */
+  public boolean isReady () {
+    return mStarts.isReady();
+  }
+
+
+  /**
+   * Starts creating the global components configured with $startup=background on low-priority threads, once the
+   * asynchronous starts pending now have completed. A component resolved before its turn is created by the resolving
+   * thread, and a component being created is waited for instead of being created twice. Only the first call has an
+   * effect
+   * @param pThreads number of threads creating the components
+   * @return future completed with the number of components created in the background
+   */
+  public synchronized Future<Integer> startBackgroundComponents (int pThreads) {
+    if (mBackground == null) {
+      BackgroundStarter background = new BackgroundStarter(this, pThreads);
+      mBackground = background;
+      background.start();
+    }
+    return mBackground.getDone();
+  }
+
+
+  /**
+   * Stops the threads of this container: the prefetching threads, the scheduler of the retention checks and start
+   * timeouts, and the threads creating the background components, whose queued creations are cancelled. The
+   * components are not stopped, getGlobalScope().stopSubtree("/") does that. A container created with the public
+   * constructor should be shut down when it is no longer used: its scheduled checks keep it reachable. It can still
+   * create components afterwards, without prefetching them, and restarts the scheduler if needed
+   */
+  public void shutdown () {
+    ConfigPrefetcher prefetcher;
+    BackgroundStarter background;
+    ScheduledExecutorService scheduler;
+    synchronized (this) {
+      prefetcher = mPrefetcher;
+      mPrefetcher = null;
+      mPrefetchReferences = false;
+      background = mBackground;
+      mBackground = null;
+      scheduler = mScheduler;
+      mScheduler = null;
+      mReaperStarted = false;
+    }
+    if (prefetcher != null) {
+      prefetcher.shutdown();
+    }
+    if (background != null) {
+      background.shutdown();
+    }
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+    }
+  } // end shutdown
+
+
+  /**
+   * Waits for a component being created in the background
+   * @param pName full component name
+   * @return component, or null if it is not being created in the background
+   */
+  Object joinCreation (String pName) {
+    BackgroundStarter background = mBackground;
+    return (background == null ? null : background.join(pName));
+  }
+
+
+  /**
+   * Warms up the creation of the session and request components, so that the first requests don't run it
+   * interpreted: creates them over and over in throwaway scopes, then stops and discards them. Each one is created
+   * at least 10000 times, then until the JIT compilation time hasn't grown for 200 ms, or until the time budget is
+   * spent. The global components they reference are created for good. Components configured with $warmup=false are
+   * left out, and so are the session and request components referencing them
+   * @param pPrefix name prefix of the components to warm up, "/" for all
+   * @param pBudgetMillis time budget in milliseconds
+   * @return number of components created and discarded
+   */
+  public int warmUp (String pPrefix, long pBudgetMillis) {
+    if (pPrefix == null || "".equals(pPrefix)) {
+      throw new AtomException("Parameter pPrefix is null or empty");
+    }
+    Warmup warmup = new Warmup(this);
+    if (warmup.collect(pPrefix) == 0) {
+      return 0;
+    }
+    return warmup.run(TimeUnit.MILLISECONDS.toNanos(pBudgetMillis));
+  }
+
+
+  /**
+   * Evicts now the global components configured with $retention whose memory is needed or which have been idle
+   * long enough: they are unregistered, then stopped if they implement Stoppable. A stop() that throws is logged and
+   * counted by the retention.stopFailures counter. This is done in the background every second once such a
+   * component exists
+   * @return names of the evicted components, sorted
+   */
+  public List<String> evictRetainedComponents () {
+    Map<String,Object> evicted = mGlobalScope.evictRetained();
+    if (!evicted.isEmpty()) {
+      mEvicted.addAll(evicted.keySet());
+      mMetrics.add(EVICTIONS_COUNTER, evicted.size());
+
+      // unregistered first, so that the next resolution creates a new instance instead of getting a stopped one
+      int failures = Scope.stopAll(evicted);
+      if (failures > 0) {
+        mMetrics.add(EVICTION_FAILURES_COUNTER, failures);
+      }
+    }
+    return new ArrayList<String>(evicted.keySet());
+  }
+
+
+  /**
+   * Turns memory accounting on: the memory retained by each component created from now on is estimated, and added
+   * up by its scope. The first instances of each class are measured by walking the objects they reference up to the
+   * other components, then one instance out of pSampling on average, the others being charged the mean size of
+   * their class
+   * @param pSampling one creation out of pSampling is measured, 1 to measure them all
+   */
+  public synchronized void enableMemoryAccounting (int pSampling) {
+    if (mMemory == null) {
+      mMemory = new MemoryAccounting(mMetrics);
+    }
+    mMemory.setSampling(pSampling);
+  }
+
+
+  /**
+   * Sets the quota of each session scope, turning memory accounting on if it is off. With QUOTA_REJECT, creating a
+   * component that would bring its session scope over the quota throws an AtomException. With QUOTA_PASSIVATE, the
+   * oldest components of the session scope that no other component of the scope references, and that are not being
+   * created, are unregistered and stopped until it is within its quota again, to be created again when next resolved
+   * @param pBytes quota of each session scope in bytes, 0 for none
+   * @param pPolicy QUOTA_REJECT or QUOTA_PASSIVATE
+   */
+  public synchronized void setSessionQuota (long pBytes, String pPolicy) {
+    if (mMemory == null) {
+      mMemory = new MemoryAccounting(mMetrics);
+    }
+    mMemory.setSessionQuota(pBytes, pPolicy);
+  }
+
+
+  /**
+   * Measures again all the components of a scope, whose state may have grown since they were created, then
+   * enforces the session quota if the scope is a session scope and the policy is QUOTA_PASSIVATE.
+   * Requires memory accounting
+   * @param pScope scope, i.e. a session scope at the end of a request
+   * @return estimated size of the scope in bytes
+   */
+  public long measureScope (Scope pScope) {
+    MemoryAccounting memory = mMemory;
+    if (memory == null) {
+      throw new AtomException("Memory accounting is off");
+    }
+    for (Map.Entry<String,Object> entry : pScope.getComponents("/").entrySet()) {
+      pScope.recordSize(entry.getKey(), memory.measure(MonitoringHandler.unwrap(entry.getValue()), pScope));
+    }
+    memory.enforceQuota(null, pScope, this);
+    return pScope.getEstimatedSize();
+  }
+
+
+  /**
+   * Returns the estimated memory retained by the components of each class, from the instances measured so far
+   * @return sorted map of component class names to estimates, empty if memory accounting is off
+   */
+  public Map<String,SizeEstimate> getSizeEstimates () {
+    MemoryAccounting memory = mMemory;
+    return (memory == null ? new TreeMap<String,SizeEstimate>() : new TreeMap<String,SizeEstimate>(memory.getEstimates()));
+  }
+
+
+  /**
+   * Turns request accounting on: the CPU time and the memory allocated by the creation of each request component,
+   * its configuration and its start included, are added up by its request scope and recorded in the histograms
+   * request./app/Name.cpu, in nanoseconds, and request./app/Name.allocated, in bytes. A creation is charged its own
+   * cost only, not the one of the components created because of it. Each measure is left out where the JVM doesn't
+   * report it through its ThreadMXBean
+   * @return true if the JVM reports the CPU time or the allocations of the threads
+   */
+  public synchronized boolean enableRequestAccounting () {
+    if (mRequestAccounting == null) {
+      mRequestAccounting = new RequestAccounting(mMetrics);
+    }
+    return mRequestAccounting.isCpuMeasured() || mRequestAccounting.isAllocationMeasured();
+  }
+
+
+  /**
+   * Returns the counters of this container
+   * @return metrics
+   */
+  public Metrics getMetrics () {
+    return mMetrics;
+  }
+
+
+  /**
+   * Returns the index of the configured components by type, building it on first use
+   * @return index
+   */
+  private synchronized TypeIndex getTypeIndex () {
+    TypeIndex index = mTypeIndex;
+    if (index == null) {
+      index = new TypeIndex(this);
+      mTypeIndex = index;
+    }
+    return index;
+  }
+
+
+  /**
+   * Returns the names of the configured components whose class is, extends or implements the given type.
+   * The config tree is walked once, the first time components are looked up by type
+   * @param pType class or interface
+   * @return sorted set of full component names
+   */
+  public Set<String> findComponentNamesByType (Class pType) {
+    if (pType == null) {
+      throw new AtomException("Parameter pType is null");
+    }
+    return getTypeIndex().getNames(pType);
+  }
+
+
+  /**
+   * Resolves all the global components of the given type, creating them if necessary
+   * @param pType class or interface
+   * @param <T> type of the components
+   * @return components, in name order
+   */
+  public <T> List<T> resolveAllByType (Class<T> pType) {
+    return resolveAllByType(pType, mGlobalScope);
+  }
+
+
+  /**
+   * Resolves in a scope all the components of the given type, creating them if necessary: the configured components
+   * of the scope and of its parent scopes, components of narrower scopes being left out. Monitored components are
+   * only resolved by one of their interfaces: they are left out when the type is a class, their proxy not being an
+   * instance of it
+   * @param pType class or interface
+   * @param pScope scope for naming resolution
+   * @param <T> type of the components
+   * @return components, in name order
+   */
+  @SuppressWarnings("unchecked")
+  public <T> List<T> resolveAllByType (Class<T> pType, Scope pScope) {
+    return (List<T>) resolveAllByType(pType, pScope, null);
+  }
+
+
+  /**
+   * Resolves in a scope all the components of the given type but one
+   * @param pType class or interface
+   * @param pScope scope for naming resolution
+   * @param pExcludedName full name of the component to leave out, usually the one being configured, or null
+   * @return components, in name order
+   */
+  List<Object> resolveAllByType (Class pType, Scope pScope, String pExcludedName) {
+    if (pType == null) {
+      throw new AtomException("Parameter pType is null");
+    }
+    if (pScope == null) {
+      throw new AtomException("Parameter pScope is null");
+    }
+    TypeIndex index = getTypeIndex();
+    List<Object> result = new ArrayList<Object>();
+    for (String name : index.getNames(pType)) {
+      if (name.equals(pExcludedName) || !isVisibleScope(index.getScopeName(name), pScope)) {
+        continue;
+      }
+      Object component = pScope.resolveName(name, true);
+      if (component != null && pType.isInstance(component)) {
+        result.add(component);
+      }
+    }
+    return result;
+  } // end resolveAllByType
+
+
+  /**
+   * Returns true if components of the given scope can be resolved from a scope, i.e. it is the scope itself or
+   * one of its parents
+   * @param pScopeName configured scope name
+   * @param pScope scope for naming resolution
+   * @return true or false
+   */
+  private static boolean isVisibleScope (String pScopeName, Scope pScope) {
+    for (Scope scope = pScope; scope != null; scope = scope.getParentScope()) {
+      if (pScopeName.equals(scope.getName())) {
+        return true;
+      }
     }
+    return false;
+  }
+
+
+  /**
+   * Returns the prefetcher
+   * @return prefetcher, or null if prefetching was never enabled
+   */
+  ConfigPrefetcher getPrefetcher () {
+    return mPrefetcher;
+  }
+
+
+  /**
+   * Starts recording the order in which components are resolved and the time their creation takes.
+   * If the file holds the profile of a previous startup recorded with the same config path, its components are
+   * prefetched in that order first: their configurations are merged and their classes loaded by background threads,
+   * ahead of the thread creating the components
+   * @param pFile file of the profile, read now and written by finishStartupProfile()
+   * @param pThreads number of prefetching threads
+   * @return true if a previous profile is replayed, false if it is missing or stale
+   */
+  public boolean startStartupProfile (File pFile, int pThreads) {
+    if (pFile == null) {
+      throw new AtomException("Parameter pFile is null");
+    }
+    String fingerprint = new ConfigTree(mConfigPath).getFingerprint();
+    StartupProfile previous = StartupProfile.load(pFile);
+    boolean replay = (previous != null && fingerprint.equals(previous.getFingerprint()));
+    if (replay) {
+      ConfigPrefetcher prefetcher = getPrefetcher(pThreads);
+      for (String name : previous.getComponentNames()) {
+        prefetcher.prefetch(name, true);
+      }
+    }
+    mProfileFile = pFile;
+    mRecordedProfile = new StartupProfile(fingerprint);
+    return replay;
+  } // end startStartupProfile
+
+
+  /**
+   * Stops recording the startup profile and saves it for the next startup
+   * @return the recorded profile, or null if none was being recorded
+   */
+  public StartupProfile finishStartupProfile () {
+    StartupProfile profile = mRecordedProfile;
+    mRecordedProfile = null;
+    if (profile != null) {
+      profile.save(mProfileFile);
+    }
+    return profile;
+  }
+
+
+  /**
+   * Returns true if the given component is, or would be created, in the global scope
+   * @param pName full component name
+   * @return true or false
+   */
+  boolean isGlobalConfiguration (String pName) {
+    if (isGlobalComponent(pName)) {
+      return true;
+    }
+    return GLOBAL_SCOPE.equals(getScopeNameFromConfiguration(peekConfiguration(pName)));
+  }
+
+
+  /**
+   * Returns true if the given global component is, or would be, evicted according to a retention
+   * @param pName full component name
+   * @return true or false
+   */
+  boolean isRetainedConfiguration (String pName) {
+    if (mGlobalScope.getRetained(pName) != null) {
+      return true;
+    }
+    return peekConfiguration(pName).getProperty(RETENTION_PROPERTY) != null;
+  }
+
+
+  /**
+   * Returns the merged configuration of a component without taking it from the prefetcher, i.e. to display it:
+   * a prefetched configuration is left for the creation of the component
+   * @param pName full component name
+   * @return merged configuration
+   */
+  public Configuration peekConfiguration (String pName) {
+    // leave a prefetched configuration for the creation of the component
+    ConfigPrefetcher prefetcher = mPrefetcher;
+    Configuration config = (prefetcher == null ? null : prefetcher.get(pName, false));
+    return (config != null ? config : getConfiguration(pName, null));
+  }
+
+
+  /**
+   * Gives this container to a component which wants it
+   * @param pComponent new component instance
+   */
+  private void setAtom (Object pComponent) {
+    if (pComponent instanceof AtomAware) {
+      ((AtomAware) pComponent).setAtom(this);
+    }
+  }
+
+
+  /**
+   * Creates an instance of the given component
+   * @param pConfig component configuration
+   * @return component instance, or null if errors
+   */
+  private Object createComponentInstance (Configuration pConfig) {
+    Class clazz = loadComponentClass(pConfig);
+    String className = clazz.getName();
 
     Object obj = null;
     try {
@@ -163,13 +1200,34 @@ public class Atom {
   } // end createComponentInstance
 
 
+  /**
+   * Loads the class of the given component
+   * @param pConfig component configuration
+   * @return component class
+   */
+  private Class loadComponentClass (Configuration pConfig) {
+    if (pConfig == null || pConfig.isEmpty()) {
+      throw new AtomException("Configuration is invalid (null or empty)");
+    }
+
+    // assumes that the configuration has been validated already
+    String className = pConfig.getProperty(CLASS_PROPERTY);
+
+    try {
+      return Class.forName(className);
+    } catch (ClassNotFoundException cnfe) {
+      throw new AtomException("Could not load class " + className, cnfe);
+    }
+  } // end loadComponentClass
+
+
   /**
    * Validates a configuration by looking at the $class and $scope properties.
    * Does not attempt to load the class
    * @param pConfig configuration
    * @return true if the configuration is valid, false otherwise
    */
-  private boolean isConfigurationValid (Properties pConfig) {
+  private boolean isConfigurationValid (Configuration pConfig) {
     if (pConfig == null || pConfig.isEmpty()) {
       throw new AtomException("configuration is invalid (null or empty)");
     }
@@ -184,26 +1242,32 @@ public class Atom {
 
     // do not verify if the class is loadable right now, it will be done later
     // verify however that the scope is something we understand
-    String scope = pConfig.getProperty(SCOPE_PROPERTY);
-    return GLOBAL_SCOPE.equals(scope) || SESSION_SCOPE.equals(scope) || REQUEST_SCOPE.equals(scope);
+    return isValidScope(pConfig.getProperty(SCOPE_PROPERTY));
   } // end isConfigurationValid
 
 
+  /**
+   * Returns true if the given scope name is one of the scopes understood by Atom
+   * @param pScope scope name
+   * @return true or false
+   */
+  static boolean isValidScope (String pScope) {
+    return GLOBAL_SCOPE.equals(pScope) || SESSION_SCOPE.equals(pScope) || REQUEST_SCOPE.equals(pScope);
+  }
+
+
   /**
    * Scans the config path (all layers) and finds all the properties files that configure the given component 
    * @param pComponentName full component name
-   * @return list of properties, null or empty if no files found
+   * @return list of parsed layers, null or empty if no files found
    */
-  @SuppressWarnings("unchecked")
-  private List<Properties> findConfiguration (String pComponentName) {
+  private List<CompactMap<String>> findConfiguration (String pComponentName) {
     if (null == pComponentName || "".equals(pComponentName)) {
       throw new AtomException("Parameter pComponentName is null or empty");
     }
-    Iterator it = mConfigPath.iterator();
-    ArrayList propFiles = new ArrayList();
-    PropertiesFileFinder finder = new PropertiesFileFinder();
-    while (it.hasNext()) {
-      Properties props = finder.findProperties((File)it.next(), pComponentName);
+    List<CompactMap<String>> propFiles = new ArrayList<CompactMap<String>>(mConfigPath.size());
+    for (File layer : mConfigPath) {
+      CompactMap<String> props = mFinder.findConfigMap(layer, pComponentName);
       if (props != null) {
         propFiles.add(props);
       }
@@ -213,76 +1277,91 @@ public class Atom {
 
 
   /**
-   * Merge a list of configurations into one, the last ones overwrite the previous
-   * @param pList list of properties
-   * @return merged property, or null if errors
+   * Merge a list of configurations into one, the last ones overwrite the previous.
+   * Each layer is applied in turn: plain properties replace the merged value, then "prop+=" appends its tokens
+   * to the merged value and "prop-=" removes its tokens from it, so list operations accumulate across any number of layers
+   * @param pTemplate configuration the layers are applied to, or null
+   * @param pList list of parsed layers
+   * @return merged configuration, or null if errors
    */
-  private Properties mergeConfigurationLayers (List<Properties> pList) {
+  private Configuration mergeConfigurationLayers (Configuration pTemplate, List<CompactMap<String>> pList) {
     if (pList == null || pList.isEmpty()) {
       throw new AtomException("Properties list is null or empty");
     }
 
-    Properties result = new Properties();
-    for (Properties p : pList) {
-      Enumeration names = p.propertyNames();
-      while (names.hasMoreElements()) {
-        String name = (String) names.nextElement();
-        String value = p.getProperty(name);
-
-        // treat null values by removing the key, as later layers may want to erase previously configured values
-        if (value == null) {
-          if (result.containsKey(name)) {
-            result.remove(name);
-          }
-        } else {
-          result.setProperty(name, value);
+    // the template is never written to: the result only stores what the layers override
+    Configuration result = new Configuration(pTemplate);
+    for (CompactMap<String> p : pList) {
+      // plain assignments first, so that a layer can both set and extend a property
+      for (int i = 0; i < p.size(); i++) {
+        String name = p.keyAt(i);
+        if (!isListOperation(name)) {
+          result.put(name, ConfigValue.fromText(p.valueAt(i)));
         }
       }
-    }
 
-    // do a second pass to handle "+=" and "-=" properties
-    Set<String> propNames = result.stringPropertyNames();
-    Set<String> toRemove = new HashSet<String>();
-    for (String propName : propNames) {
-      if (propName.endsWith("+") || propName.endsWith("-")) {
-        String val = result.getProperty(propName);
-        String baseName = propName.substring(0, propName.length() - 1);
-        String baseValue = result.getProperty(baseName);
-        if (baseValue == null || "".equals(baseValue)) {
-          result.setProperty(baseName, val);
-        } else {
-          if (propName.endsWith("+")) {
-            // handle "+=" by simply appending the desired property value, separating with a comma
-            result.setProperty(baseName, baseValue + "," + val);
-          } else if (propName.endsWith("-")) {
-            // handle "-=" by splitting the current value into an array of strings, searching for the value
-            // to remove and adding everything else to a temporary list which is then joined again into a comma-separated string
-            String[] comps = baseValue.split(",");
-            if (comps.length > 0) {
-              StringBuilder baseValueList = new StringBuilder();
-              for (String comp : comps) {
-                if (!val.equals(comp)) {
-                  baseValueList.append(comp).append(",");
-                }
-              }
-              if (baseValueList.charAt(baseValueList.length() - 1) == ',') {
-                baseValueList.deleteCharAt(baseValueList.length() - 1);
-              }
-              result.setProperty(baseName, baseValueList.toString());
-            }
+      // then the "+=" and "-=" operations on the merged value
+      for (int i = 0; i < p.size(); i++) {
+        String name = p.keyAt(i);
+        if (isListOperation(name)) {
+          String baseName = name.substring(0, name.length() - 1).intern();
+          ConfigValue operand = ConfigValue.fromText(p.valueAt(i));
+          ConfigValue baseValue = result.getValue(baseName);
+          if (name.endsWith("+")) {
+            result.put(baseName, (baseValue == null ? operand : baseValue.append(operand)));
+          } else if (baseValue != null) {
+            // removing from a property that isn't configured leaves it unconfigured
+            result.put(baseName, baseValue.remove(operand));
           }
         }
-        toRemove.add(propName);
       }
     }
-    for (String rem : toRemove) {
-      result.remove(rem);
-    }
 
+    // the merged configuration is read-only from now on
+    result.freeze();
     return result;
   } // end mergeConfigurationLayers
 
 
+  /**
+   * Returns true if the property name denotes a "+=" or "-=" operation
+   * @param pName property name as found in the layer
+   * @return true or false
+   */
+  private boolean isListOperation (String pName) {
+    return pName.length() > 1 && (pName.endsWith("+") || pName.endsWith("-"));
+  }
+
+
+  /**
+   * Sets a property of a component and propagates the new value to the properties live-linked to it
+   * @param pName full component name, resolved in the global scope
+   * @param pPropertyName property name
+   * @param pValue new value
+   */
+  public void setPropertyValue (String pName, String pPropertyName, Object pValue) {
+    Object component = MonitoringHandler.unwrap(resolveName(pName));
+    BeanProperty property = BeanModel.forClass(component.getClass()).getProperty(pPropertyName);
+    if (property == null) {
+      throw new AtomException("Component " + pName + " has no property " + pPropertyName);
+    }
+    property.write(component, pValue);
+    mLinks.propagate(component, pPropertyName);
+  } // end setPropertyValue
+
+
+  /**
+   * Propagates the current value of a property to the properties live-linked to it.
+   * Components whose properties are linked by others can call this from their setters
+   * @param pSource the component whose property changed
+   * @param pPropertyName property name
+   * @return number of linked properties updated
+   */
+  public int firePropertyChanged (Object pSource, String pPropertyName) {
+    return mLinks.propagate(pSource, pPropertyName);
+  }
+
+
   /**
    * Returns true if a component with the given name exists in the global scope
    * @param pName full component name
@@ -305,6 +1384,7 @@ public class Atom {
       if (pDirectory.exists() && pDirectory.isDirectory() && pDirectory.canRead()) {
         if (!mConfigPath.contains(pDirectory)) {
           mConfigPath.add(pDirectory);
+          mTypeIndex = null;
         }
       }
     }
@@ -316,7 +1396,7 @@ public class Atom {
    * @param pConfig configuration
    * @return scope name, or empty if errors
    */
-  private String getScopeNameFromConfiguration (Properties pConfig) {
+  private String getScopeNameFromConfiguration (Configuration pConfig) {
     if (pConfig == null || pConfig.isEmpty()) {
       return "";
     }
@@ -324,15 +1404,83 @@ public class Atom {
   }
 
 
+  /**
+   * Reloads the global components at and below a name prefix, and the global components referencing them, which
+   * would otherwise keep the stopped instances: stops and unregisters them, forgets the cached configurations, then
+   * creates them again from their current files
+   * @param pPrefix name prefix, i.e. /app/cache/
+   * @return names of the reloaded components, sorted
+   */
+  public List<String> reloadSubtree (String pPrefix) {
+    Set<String> reloaded = new TreeSet<String>(mGlobalScope.getComponents(pPrefix).keySet());
+
+    // the dependents of a dependent are reloaded as well
+    Map<String,Set<String>> dependencies = new HashMap<String,Set<String>>();
+    for (String name : mGlobalScope.getComponents("/").keySet()) {
+      if (!reloaded.contains(name)) {
+        try {
+          dependencies.put(name, getDependencies(mergeConfiguration(name)));
+        } catch (AtomException ae) {
+          // registered without a configuration, so it references nothing
+        }
+      }
+    }
+    List<String> dependents = new ArrayList<String>();
+    boolean found = true;
+    while (found) {
+      found = false;
+      for (Iterator<Map.Entry<String,Set<String>>> it = dependencies.entrySet().iterator(); it.hasNext(); ) {
+        Map.Entry<String,Set<String>> entry = it.next();
+        if (!Collections.disjoint(entry.getValue(), reloaded)) {
+          it.remove();
+          reloaded.add(entry.getKey());
+          dependents.add(entry.getKey());
+          found = true;
+        }
+      }
+    }
+
+    // the dependents are stopped before the components they reference, the last found first; a failing stop()
+    // is logged and leaves the reload going on
+    Map<String,Object> stopped = new LinkedHashMap<String,Object>();
+    for (int i = dependents.size() - 1; i >= 0; i--) {
+      Object component = mGlobalScope.resolveName(dependents.get(i), false);
+      if (component != null) {
+        stopped.put(dependents.get(i), component);
+      }
+    }
+    Scope.stopAll(stopped);
+    for (String dependent : dependents) {
+      mGlobalScope.unregister(dependent);
+    }
+    mGlobalScope.stopSubtree(pPrefix);
+    clearConfigurationCache();
+    for (String name : reloaded) {
+      // a component created again as a reference of a previous one is simply found
+      mGlobalScope.resolveName(name);
+    }
+    return new ArrayList<String>(reloaded);
+  } // end reloadSubtree
+
+
   /**
    * Retrieves the current config path
    * @return config path
    */
-  public List getConfigPath () {
+  public List<File> getConfigPath () {
     return mConfigPath;
   }
 
 
+  /**
+   * Marks the global scope as frozen, usually once startup is complete. Lookups read a flat table without locking
+   * whether the scope is frozen or not, and the components created later are registered as before
+   */
+  public void freezeGlobalScope () {
+    mGlobalScope.freeze();
+  }
+
+
   /**
    * Retrieves the global scope so other scopes can reference it as parent
    * @return global scope
@@ -0,0 +1,14 @@
+package atom;
+
+/**
+ * Implemented by components which need the container that created them, set before their configuration is applied
+ */
+public interface AtomAware {
+
+  /**
+   * Sets the container the component belongs to
+   * @param pAtom container
+   */
+  void setAtom (Atom pAtom);
+
+} // end AtomAware
@@ -0,0 +1,252 @@
+package atom;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import atom.exception.AtomException;
+
+/**
+ * Creates the global components configured with $startup=background on low-priority daemon threads, once the
+ * asynchronous starts pending when it is started have completed. A thread resolving one of them while its creation is
+ * queued or running joins that creation instead of creating a duplicate, the background threads included
+ */
+class BackgroundStarter {
+
+  /**
+   * Creation of a component, queued or running
+   */
+  private final class Creation implements Callable<Object> {
+
+    final String mName;
+    final FutureTask<Object> mTask = new FutureTask<Object>(this);
+
+    // thread running the creation, null while it is queued
+    volatile Thread mRunner;
+
+    Creation (String pName) {
+      mName = pName;
+    }
+
+    public Object call () {
+      mRunner = Thread.currentThread();
+      try {
+        Scope global = mAtom.getGlobalScope();
+        Object component = global.resolveName(mName, false);
+        if (component == null) {
+          component = global.resolveName(mName, true);
+          mCreatedCount.incrementAndGet();
+          mAtom.getMetrics().increment(Atom.BACKGROUND_CREATIONS_COUNTER);
+        }
+        return component;
+      } catch (RuntimeException re) {
+        // created again, and reported, on first use
+        mAtom.getMetrics().increment(Atom.BACKGROUND_FAILURES_COUNTER);
+        throw re;
+      } finally {
+        // removed once registered, so that a thread not finding it here finds it in the scope
+        mCreations.remove(mName, this);
+        completed();
+      }
+    } // end call
+  } // end Creation
+
+
+  // container creating the components
+  private final Atom mAtom;
+
+  // runs the walk of the config tree and the creations
+  private final ExecutorService mExecutor;
+
+  // creations queued or running, by component name
+  private final ConcurrentHashMap<String,Creation> mCreations = new ConcurrentHashMap<String,Creation>();
+
+  // creation each thread is waiting for, guarded by itself
+  private final Map<Thread,Creation> mWaits = new HashMap<Thread,Creation>();
+
+  // completed with the number of components created in the background
+  private final CompletableFuture<Integer> mDone = new CompletableFuture<Integer>();
+
+  // components created in the background
+  private final AtomicInteger mCreatedCount = new AtomicInteger();
+
+  // creations not completed yet, plus one while the config tree is walked
+  private final AtomicInteger mRemaining = new AtomicInteger(1);
+
+
+  /**
+   * Constructor
+   * @param pAtom container creating the components
+   * @param pThreads number of threads creating the components
+   */
+  BackgroundStarter (Atom pAtom, int pThreads) {
+    mAtom = pAtom;
+    mExecutor = Executors.newFixedThreadPool(Math.max(1, pThreads), new ThreadFactory() {
+      private final AtomicInteger mCount = new AtomicInteger();
+
+      public Thread newThread (Runnable pRunnable) {
+        Thread thread = new Thread(pRunnable, "atom-background-" + mCount.incrementAndGet());
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+      }
+    });
+  }
+
+
+  /**
+   * Starts creating the components once the pending asynchronous starts have completed, whether they succeeded or not
+   * @return future completed with the number of components created in the background
+   */
+  Future<Integer> start () {
+    mAtom.getReadiness().whenComplete(new BiConsumer<Void,Throwable>() {
+      public void accept (Void pResult, Throwable pFailure) {
+        mExecutor.execute(new Runnable() {
+          public void run () {
+            try {
+              queueAll();
+            } catch (RuntimeException re) {
+              mDone.completeExceptionally(re);
+            } finally {
+              completed();
+            }
+          }
+        });
+      }
+    });
+    return mDone;
+  } // end start
+
+
+  /**
+   * Walks the config tree and queues the creation of the background components, without waiting for them:
+   * the same threads run the creations
+   */
+  private void queueAll () {
+    for (String name : new ConfigTree(mAtom.getConfigPath()).getComponentNames()) {
+      Configuration config;
+      try {
+        config = mAtom.mergeConfiguration(name);
+      } catch (AtomException ae) {
+        // reported by the validator
+        continue;
+      }
+      if (!Atom.BACKGROUND_STARTUP.equals(config.getProperty(Atom.STARTUP_PROPERTY))
+          || !Atom.GLOBAL_SCOPE.equals(config.getProperty(Atom.SCOPE_PROPERTY))) {
+        continue;
+      }
+      Creation creation = new Creation(name);
+      if (mCreations.putIfAbsent(name, creation) == null) {
+        mRemaining.incrementAndGet();
+        mExecutor.execute(creation.mTask);
+      }
+    }
+  } // end queueAll
+
+
+  /**
+   * Records the end of the walk or of a creation, and releases the threads after the last one
+   */
+  private void completed () {
+    if (mRemaining.decrementAndGet() == 0) {
+      mDone.complete(mCreatedCount.get());
+      mExecutor.shutdown();
+    }
+  }
+
+
+  /**
+   * Joins the creation of a component if it is queued or running: a queued creation is run by the calling thread.
+   * The background threads join the creations of each other as well, unless the threads would wait for each other
+   * @param pName full component name
+   * @return component, or null if no creation was in progress or it failed, in which case the caller creates it
+   */
+  Object join (String pName) {
+    Creation creation = mCreations.get(pName);
+    if (creation == null) {
+      // the creation may have completed since the caller looked the component up
+      return mAtom.getGlobalScope().resolveName(pName, false);
+    }
+    // does nothing if the creation is running or done
+    creation.mTask.run();
+    Thread current = Thread.currentThread();
+    if (!creation.mTask.isDone()) {
+      if (!startWaiting(current, creation)) {
+        // a creation waiting for itself would never complete: the caller reports the circular reference
+        return null;
+      }
+    }
+    try {
+      Object component = creation.mTask.get();
+      mAtom.getMetrics().increment(Atom.BACKGROUND_JOINS_COUNTER);
+      return component;
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new AtomException("Interrupted while joining the creation of component " + pName, ie);
+    } catch (ExecutionException ee) {
+      return null;
+    } catch (CancellationException ce) {
+      return null;
+    } finally {
+      synchronized (mWaits) {
+        mWaits.remove(current);
+      }
+    }
+  } // end join
+
+
+  /**
+   * Records that a thread waits for a creation, unless the thread running the creation waits, directly or through
+   * other threads, for the calling one
+   * @param pThread calling thread
+   * @param pCreation running creation
+   * @return true if the thread may wait, false if the wait would never end
+   */
+  private boolean startWaiting (Thread pThread, Creation pCreation) {
+    // the runner is set as soon as the creation starts running
+    while (pCreation.mRunner == null && !pCreation.mTask.isDone()) {
+      Thread.yield();
+    }
+    synchronized (mWaits) {
+      for (Creation creation = pCreation; creation != null; creation = mWaits.get(creation.mRunner)) {
+        if (creation.mRunner == pThread) {
+          return false;
+        }
+      }
+      mWaits.put(pThread, pCreation);
+      return true;
+    }
+  } // end startWaiting
+
+
+  /**
+   * Stops the threads and cancels the creations not started yet, releasing the threads joining them
+   */
+  void shutdown () {
+    mExecutor.shutdownNow();
+    for (Creation creation : mCreations.values()) {
+      creation.mTask.cancel(false);
+    }
+    mDone.cancel(false);
+  }
+
+
+  /**
+   * Returns the future completed with the number of components created in the background
+   * @return future
+   */
+  Future<Integer> getDone () {
+    return mDone;
+  }
+
+} // end BackgroundStarter
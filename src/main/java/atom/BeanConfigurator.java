@@ -1,9 +1,10 @@
 package atom;
 
-import java.beans.*;
 import java.lang.reflect.Array;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 import atom.exception.ConfigurationException;
 import atom.exception.AtomException;
@@ -13,11 +14,27 @@ import atom.exception.AtomException;
  */
 public class BeanConfigurator {
 
+  // suffix of the properties injected with all the components of a type. i.e. propName*=com.acme.Plugin
+  static final String TYPED_SUFFIX = "*";
+
+  // reads linked properties and tracks the live ones
+  private final PropertyLinks mLinks;
+
+
   /**
    * No-args constructor
    */
   public BeanConfigurator () {
-    //
+    this(new PropertyLinks());
+  }
+
+
+  /**
+   * Constructor
+   * @param pLinks the linked properties registry of the container
+   */
+  public BeanConfigurator (PropertyLinks pLinks) {
+    mLinks = pLinks;
   }
 
 
@@ -28,6 +45,32 @@ public class BeanConfigurator {
    * @param pScope scope for naming resolution of dependencies
    */
   public void configure (Object pObject, Properties pConfig, Scope pScope) {
+    if (pConfig == null) {
+      throw new AtomException("Parameter pConfig is null");
+    }
+    configure(pObject, Configuration.fromProperties(pConfig), pScope);
+  }
+
+
+  /**
+   * Configures an object with the given merged configuration
+   * @param pObject object to configure
+   * @param pConfig configuration to apply
+   * @param pScope scope for naming resolution of dependencies
+   */
+  public void configure (Object pObject, Configuration pConfig, Scope pScope) {
+    configure(null, pObject, pConfig, pScope);
+  }
+
+
+  /**
+   * Configures a component with its merged configuration
+   * @param pName full component name, left out of the properties injected by type; null if the object is no component
+   * @param pObject object to configure
+   * @param pConfig configuration to apply
+   * @param pScope scope for naming resolution of dependencies
+   */
+  void configure (String pName, Object pObject, Configuration pConfig, Scope pScope) {
     if (pObject == null) {
       throw new AtomException("Cannot configure a null object");
     }
@@ -42,51 +85,107 @@ public class BeanConfigurator {
       throw new AtomException("Parameter pScope is null");
     }
 
-    try {
-      BeanInfo beanInfo = Introspector.getBeanInfo(pObject.getClass());
-
-      // get all the property descriptors for the bean, iterate over them, and when a match is found
-      // in the properties loaded from the configuration file set the actual value
-      PropertyDescriptor[] beanProps = beanInfo.getPropertyDescriptors();
-      if ((beanProps != null) && (beanProps.length > 0)) {
-        for (PropertyDescriptor beanProp : beanProps) {
-          String propertyName = beanProp.getName();
-          String valueInFile = pConfig.getProperty(propertyName);
-          if (valueInFile != null) {
-            try {
-              setPropertyValue(pObject, beanProp, propertyName, valueInFile, pScope);
-            } catch (ConfigurationException ce) {
-              throw new AtomException("ConfigurationException for property " + propertyName + " and value = " + valueInFile, ce);
-            }
-          } else {
-            // if the property name is not found in the configuration, then
-            // this may be a linked property value. i.e. propName^=/other/Component.propValue
-            if (isLinkedProperty(propertyName, pConfig)) {
-              Object linkedValue = getLinkedPropertyValue(propertyName, pConfig, pScope);
-              try {
-                setPropertyValue(pObject, beanProp, propertyName, linkedValue);
-              } catch (ConfigurationException ce) {
-                throw new AtomException("ConfigurationException for property " + propertyName + " and value = " + linkedValue, ce);
-              }
-            }
+    // iterate over the properties of the bean, and when a match is found in the configuration set the actual value
+    for (BeanProperty beanProp : BeanModel.forClass(pObject.getClass()).getProperties().values()) {
+      String propertyName = beanProp.getName();
+      ConfigValue valueInFile = pConfig.getValue(propertyName);
+      if (valueInFile != null) {
+        try {
+          setPropertyValue(pObject, beanProp, propertyName, valueInFile, pScope);
+        } catch (ConfigurationException ce) {
+          throw new AtomException("ConfigurationException for property " + propertyName + " and value = " + valueInFile, ce);
+        }
+      } else {
+        // if the property name is not found in the configuration, then
+        // this may be a linked property value. i.e. propName^=/other/Component.propValue
+        if (isLinkedProperty(propertyName, pConfig)) {
+          Object linkedValue = getLinkedPropertyValue(propertyName, pConfig, pScope, pObject);
+          try {
+            setPropertyValue(pObject, beanProp, propertyName, linkedValue);
+          } catch (ConfigurationException ce) {
+            throw new AtomException("ConfigurationException for property " + propertyName + " and value = " + linkedValue, ce);
+          }
+        } else if (isInjectedByType(propertyName, pConfig)) {
+          // or a list of all the components of a type. i.e. propName*=com.acme.Plugin
+          try {
+            Class type = getInjectedType(beanProp, pConfig);
+            setPropertyValue(pObject, beanProp, propertyName, resolveAllByType(pName, type, pScope));
+          } catch (ConfigurationException ce) {
+            throw new AtomException("ConfigurationException for property " + propertyName + " injected by type", ce);
           }
         }
       }
-    } catch (IntrospectionException ie) {
-      throw new AtomException("IntrospectionException for class = " + pObject.getClass(), ie);
     }
   } // end configure
 
 
   /**
-   * Gets the value of a linked property
+   * Builds the prototype of a session or request component: converts the configured values and binds the references
+   * to global components once, so that new instances only need the prepared values applied
+   * @param pName full component name
+   * @param pClass component class
+   * @param pConfig merged configuration
+   * @param pScope scope for naming resolution of the global components
+   * @param pAtom container, used to find the scope of referenced components
+   * @return prototype
+   */
+  ComponentPrototype createPrototype (String pName, Class pClass, Configuration pConfig, Scope pScope, Atom pAtom) {
+    List<ComponentPrototype.PreparedProperty> properties = new ArrayList<ComponentPrototype.PreparedProperty>();
+    for (BeanProperty beanProp : BeanModel.forClass(pClass).getProperties().values()) {
+      String propertyName = beanProp.getName();
+      ConfigValue valueInFile = pConfig.getValue(propertyName);
+      boolean linked = (valueInFile == null && isLinkedProperty(propertyName, pConfig));
+      boolean typed = (valueInFile == null && !linked && isInjectedByType(propertyName, pConfig));
+      if (valueInFile == null && !linked && !typed) {
+        continue;
+      }
+      try {
+        Method writeMethod = beanProp.getWriteMethod();
+        if (writeMethod == null) {
+          throw new ConfigurationException("No write method for property " + propertyName);
+        }
+        Class targetType = beanProp.getType();
+        if (linked) {
+          properties.add(new ComponentPrototype.PreparedProperty(propertyName, writeMethod, ComponentPrototype.LINKED, null, null));
+        } else if (typed) {
+          Class type = getInjectedType(beanProp, pConfig);
+          properties.add(new ComponentPrototype.PreparedProperty(propertyName, writeMethod, ComponentPrototype.TYPED, type, null));
+        } else if (isComponentReference(targetType)) {
+          String componentName = valueInFile.getText();
+          if (!isComponentName(componentName)) {
+            properties.add(new ComponentPrototype.PreparedProperty(propertyName, writeMethod, ComponentPrototype.SHARED, null, valueInFile));
+          } else if (pAtom.isGlobalConfiguration(componentName) && !pAtom.isRetainedConfiguration(componentName)) {
+            // global components live as long as the container, bind them once; the retained ones can be evicted
+            Object component = pScope.resolveName(componentName, true);
+            properties.add(new ComponentPrototype.PreparedProperty(propertyName, writeMethod, ComponentPrototype.SHARED, component, valueInFile));
+          } else {
+            properties.add(new ComponentPrototype.PreparedProperty(propertyName, writeMethod, ComponentPrototype.RESOLVED, null, valueInFile));
+          }
+        } else {
+          Object value = convertValue(targetType, valueInFile);
+          int kind = ComponentPrototype.getValueKind(value);
+          properties.add(new ComponentPrototype.PreparedProperty(propertyName, writeMethod, kind,
+              (kind == ComponentPrototype.CONVERTED ? null : value), valueInFile));
+        }
+      } catch (ConfigurationException ce) {
+        throw new AtomException("ConfigurationException for property " + propertyName + " and value = " + valueInFile, ce);
+      }
+    }
+    return new ComponentPrototype(pName, pClass, pConfig, properties);
+  } // end createPrototype
+
+
+  /**
+   * Gets the value of a linked property through the cached accessor of the source property.
+   * If the configuration enables live links, the target is also bound to the source property so that later changes
+   * of the source can be propagated to it
    * @param pPropertyName name of the linked property
    * @param pConfig configuration containing the linked property
    * @param pScope scope to resolve names
+   * @param pTarget the component being configured, or null to only read the value
    * @return value of the linked property, or null if it cannot be obtained
-   * @throws IntrospectionException if errors
    */
-  private Object getLinkedPropertyValue (String pPropertyName, Properties pConfig, Scope pScope) throws IntrospectionException {
+  Object getLinkedPropertyValue (String pPropertyName, Configuration pConfig, Scope pScope, Object pTarget) {
     if (pPropertyName == null || "".equals(pPropertyName)) {
       return null;
     }
@@ -97,33 +196,19 @@ public class BeanConfigurator {
       return null;
     }
 
-    Object propertyValue = null;
-    String linkedPropertyName = pConfig.getProperty(pPropertyName + "^");
-    int idx = linkedPropertyName.lastIndexOf(".");
-    String componentName = linkedPropertyName.substring(0, idx);
-    String propertyName = linkedPropertyName.substring(idx + 1);
-    Object component = pScope.resolveName(componentName, true);
-    if (component != null) {
-      BeanInfo beanInfo = Introspector.getBeanInfo(component.getClass());
-      PropertyDescriptor[] beanProps = beanInfo.getPropertyDescriptors();
-      if ((beanProps != null) && (beanProps.length > 0)) {
-        for (PropertyDescriptor beanProp : beanProps) {
-          if (propertyName.equals(beanProp.getName())) {
-            Method readMethod = beanProp.getReadMethod();
-            if (readMethod != null) {
-              try {
-                propertyValue = readMethod.invoke(component, (Object[]) null);
-              } catch (IllegalAccessException iae) {
-                throw new AtomException("IllegalAccessException for property " + propertyName + "on component " + componentName, iae);
-              } catch (InvocationTargetException ite) {
-                throw new AtomException("InvocationTargetException for property " + propertyName + "on component " + componentName, ite);
-              }
-            }
-          }
-        }
+    PropertyLinks.Link link = mLinks.parse(pConfig.getProperty(pPropertyName + "^"));
+    // the properties of a monitored component are read on the component itself, not on its proxy
+    Object component = MonitoringHandler.unwrap(pScope.resolveName(link.mComponentName, true));
+    if (component == null) {
+      return null;
+    }
+    if (pTarget != null && "true".equals(pConfig.getProperty(Atom.LIVE_LINKS_PROPERTY))) {
+      BeanProperty targetProperty = BeanModel.forClass(pTarget.getClass()).getProperty(pPropertyName);
+      if (targetProperty != null && targetProperty.getWriteMethod() != null) {
+        mLinks.bind(component, link.mPropertyName, pTarget, targetProperty);
       }
     }
-    return propertyValue;
+    return mLinks.read(component, link);
   } // end getLinkedPropertyValue
 
 
@@ -133,7 +218,7 @@ public class BeanConfigurator {
    * @param pConfig configuration
    * @return true if the given name is a linked property, false otherwise
    */
-  private boolean isLinkedProperty (String pPropertyName, Properties pConfig) {
+  private boolean isLinkedProperty (String pPropertyName, Configuration pConfig) {
     if (pPropertyName == null || "".equals(pPropertyName)) {
       return false;
     }
@@ -154,68 +239,91 @@ public class BeanConfigurator {
   } // end isLinkedProperty
 
 
+  /**
+   * Determines if in the given configuration there is a property named as "propertyName*", i.e. a property injected
+   * with all the components of a type
+   * @param pPropertyName base name for the property
+   * @param pConfig configuration
+   * @return true or false
+   */
+  private boolean isInjectedByType (String pPropertyName, Configuration pConfig) {
+    String typeName = pConfig.getProperty(pPropertyName + TYPED_SUFFIX);
+    return typeName != null && !"".equals(typeName.trim());
+  }
+
+
+  /**
+   * Returns the type of the components injected into a property, checking that the property can hold a list
+   * @param pProperty bean property
+   * @param pConfig configuration containing "propertyName*"
+   * @return class or interface
+   * @throws ConfigurationException if the type cannot be loaded or the property does not accept a list
+   */
+  Class getInjectedType (BeanProperty pProperty, Configuration pConfig) throws ConfigurationException {
+    String typeName = pConfig.getProperty(pProperty.getName() + TYPED_SUFFIX).trim();
+    Class<?> propertyType = pProperty.getType();
+    if (!propertyType.isAssignableFrom(ArrayList.class)) {
+      throw new ConfigurationException("Property " + pProperty.getName() + " of type " + propertyType.getName()
+          + " cannot hold a list of components");
+    }
+    Class type = ConfigTree.loadClass(typeName, false);
+    if (type == null) {
+      throw new ConfigurationException("Cannot load type " + typeName);
+    }
+    return type;
+  } // end getInjectedType
+
+
+  /**
+   * Resolves the components of a type injected into a property
+   * @param pName full name of the component being configured, left out of the list; or null
+   * @param pType class or interface
+   * @param pScope scope for naming resolution
+   * @return new list of components, in name order
+   */
+  List<Object> resolveAllByType (String pName, Class pType, Scope pScope) {
+    return pScope.getAtom().resolveAllByType(pType, pScope, pName);
+  }
+
+
   /**
    * Sets the value of a property for the given object
    * @param pTarget object to set the property into
-   * @param pDescriptor property descriptor to get the write method
+   * @param pProperty bean property to get the write method
    * @param pPropertyName name of the property to set
-   * @param pNewValueAsString new value of the property as string
+   * @param pNewValue new value of the property as configured
    * @param pScope scope for naming resolution
    * @throws ConfigurationException if the property cannot be set to the value
    */
-  private void setPropertyValue (Object pTarget, PropertyDescriptor pDescriptor, String pPropertyName, String pNewValueAsString, Scope pScope) throws ConfigurationException {
+  private void setPropertyValue (Object pTarget, BeanProperty pProperty, String pPropertyName, ConfigValue pNewValue, Scope pScope) throws ConfigurationException {
     if (pTarget == null) {
       throw new AtomException("Parameter pTarget is null");
     }
-    if (pDescriptor == null) {
-      throw new AtomException("Parameter pDescriptor is null");
+    if (pProperty == null) {
+      throw new AtomException("Parameter pProperty is null");
     }
     if (pPropertyName == null || "".equals(pPropertyName)) {
       throw new AtomException("Parameter pPropertyName is null or empty");
     }
 
-    // nulls for the new value are permitted, so don't check on pNewValueAsString
-
     // find the methods to and write the property value
-    Method writeMethod = pDescriptor.getWriteMethod();
+    Method writeMethod = pProperty.getWriteMethod();
     if (writeMethod == null) {
       throw new ConfigurationException("No write method for property " + pPropertyName);
     }
 
     // determine the property type and perform conversion if necessary
-    Class targetType = pDescriptor.getPropertyType();
+    Class targetType = pProperty.getType();
     Object value = null;
-    if (targetType.isArray()) {
-      // get the property editor for the array members
-      PropertyEditor editor = PropertyEditors.getPropertyEditor(targetType.getComponentType());
-
-      // split the string value
-      String[] values = pNewValueAsString.split(",");
-
-      // get an array of the appropriate type and length
-      value = Array.newInstance (targetType.getComponentType(), values.length);
-
-      // set all values of the array
-      for (int i = 0; i < values.length; i++) {
-        editor.setAsText(values[i]);
-        Object memberval = editor.getValue();
-        if (memberval != null) {
-          Array.set(value, i, memberval);
-        }
+    if (isComponentReference(targetType)) {
+      // the property type is not registered in the standard editors, so it's probably
+      // another component: try to resolve and maybe instantiate it
+      String componentName = pNewValue.getText();
+      if (isComponentName(componentName)) {
+        value = pScope.resolveName(componentName, true);
       }
     } else {
-      PropertyEditor editor = PropertyEditors.getPropertyEditor(targetType);
-      if (editor != null) {
-        // we end up here if the property type is not an Atom component
-        editor.setAsText(pNewValueAsString);
-        value = editor.getValue();
-      } else {
-        // the property type is not registered in the standard editors, so it's probably
-        // another component: try to resolve and maybe instantiate it
-        if (pNewValueAsString.startsWith("/") && !pNewValueAsString.endsWith("/")) {
-          value = pScope.resolveName(pNewValueAsString, true);
-        }
-      }
+      value = convertValue(targetType, pNewValue);
     }
 
     // actually set the new value by calling the setter
@@ -229,20 +337,85 @@ public class BeanConfigurator {
   } // end setPropertyValue
 
 
+  /**
+   * Returns true if values of the given type are references to other components rather than
+   * values converted by a converter
+   * @param pType property type
+   * @return true or false
+   */
+  static boolean isComponentReference (Class pType) {
+    return !pType.isArray() && Converters.getConverter(pType) == null;
+  }
+
+
+  /**
+   * Returns true if the given value has the form of a full component name
+   * @param pValue configured value
+   * @return true or false
+   */
+  static boolean isComponentName (String pValue) {
+    return pValue != null && pValue.startsWith("/") && !pValue.endsWith("/");
+  }
+
+
+  /**
+   * Converts a configured value to the given type, which must not be a component reference
+   * @param pType property type
+   * @param pValue configured value
+   * @return converted value
+   * @throws ConfigurationException if the value cannot be converted
+   */
+  Object convertValue (Class pType, ConfigValue pValue) throws ConfigurationException {
+    try {
+      if (pType.isArray()) {
+        // get the converter for the array members
+        Converters.Converter converter = Converters.getConverter(pType.getComponentType());
+        if (converter == null) {
+          throw new ConfigurationException("No converter for array members of type " + pType.getComponentType().getName());
+        }
+
+        // the value is already split into tokens
+        List<String> values = pValue.getTokens();
+
+        // get an array of the appropriate type and length
+        Object value = Array.newInstance(pType.getComponentType(), values.size());
+
+        // set all values of the array
+        for (int i = 0; i < values.size(); i++) {
+          Object memberval = converter.fromText(values.get(i));
+          if (memberval != null) {
+            Array.set(value, i, memberval);
+          }
+        }
+        return value;
+      }
+
+      Converters.Converter converter = Converters.getConverter(pType);
+      if (converter == null) {
+        throw new ConfigurationException("No converter for type " + pType.getName());
+      }
+      // collections consume the tokens directly instead of splitting the text again
+      return Converters.convert(converter, pValue);
+    } catch (IllegalArgumentException iae) {
+      throw new ConfigurationException("Cannot convert value " + pValue + " to type " + pType.getName(), iae);
+    }
+  } // end convertValue
+
+
   /**
    * Setter that does not perform any text/object conversion
    * @param pTarget object to set the property into
-   * @param pDescriptor property descriptor to get the write method
+   * @param pProperty bean property to get the write method
    * @param pPropertyName name of the property to set
    * @param pValue new value of the property
    * @throws ConfigurationException if the property cannot be set to the value
    */
-  private void setPropertyValue (Object pTarget, PropertyDescriptor pDescriptor, String pPropertyName, Object pValue) throws ConfigurationException {
+  private void setPropertyValue (Object pTarget, BeanProperty pProperty, String pPropertyName, Object pValue) throws ConfigurationException {
     if (pTarget == null) {
       throw new AtomException("Parameter pTarget is null");
     }
-    if (pDescriptor == null) {
-      throw new AtomException("Parameter pDescriptor is null");
+    if (pProperty == null) {
+      throw new AtomException("Parameter pProperty is null");
     }
     if (pPropertyName == null || "".equals(pPropertyName)) {
       throw new AtomException("Parameter pPropertyName is null or empty");
@@ -251,7 +424,7 @@ public class BeanConfigurator {
     // nulls for the new value are permitted, so don't check on pNewValueAsString
 
     // find the methods to and write the property value
-    Method writeMethod = pDescriptor.getWriteMethod();
+    Method writeMethod = pProperty.getWriteMethod();
     if (writeMethod == null) {
       throw new ConfigurationException("No write method for property " + pPropertyName);
     }
@@ -0,0 +1,176 @@
+package atom;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The bean properties of a class, introspected once and cached for the life of the class loader.
+ * Properties are discovered from the public getX(), isX() and setX() methods of the class, following the naming
+ * rules of the JavaBeans specification, but without java.beans: BeanInfo classes are not consulted
+ */
+public final class BeanModel {
+
+  // models already built
+  private static final ConcurrentHashMap<Class,BeanModel> sModels = new ConcurrentHashMap<Class,BeanModel>();
+
+  // the introspected class
+  private final Class mBeanClass;
+
+  // properties by name, in introspection order
+  private final Map<String,BeanProperty> mProperties;
+
+
+  /**
+   * Private constructor, use forClass()
+   * @param pBeanClass the introspected class
+   * @param pProperties properties by name
+   */
+  private BeanModel (Class pBeanClass, Map<String,BeanProperty> pProperties) {
+    mBeanClass = pBeanClass;
+    mProperties = Collections.unmodifiableMap(pProperties);
+  }
+
+
+  /**
+   * Returns the model of the given class, introspecting it the first time
+   * @param pClass bean class
+   * @return bean model
+   */
+  public static BeanModel forClass (Class pClass) {
+    BeanModel model = sModels.get(pClass);
+    if (model == null) {
+      model = introspect(pClass);
+      BeanModel previous = sModels.putIfAbsent(pClass, model);
+      if (previous != null) {
+        model = previous;
+      }
+    }
+    return model;
+  } // end forClass
+
+
+  /**
+   * Introspects a class
+   * @param pClass bean class
+   * @return bean model
+   */
+  private static BeanModel introspect (Class pClass) {
+    // collect the accessors of each property name, in method order
+    Map<String,Method> getters = new LinkedHashMap<String,Method>();
+    Map<String,List<Method>> setters = new LinkedHashMap<String,List<Method>>();
+    for (Method method : pClass.getMethods()) {
+      if (Modifier.isStatic(method.getModifiers()) || method.isBridge() || method.getDeclaringClass() == Object.class) {
+        continue;
+      }
+      String methodName = method.getName();
+      Class[] params = method.getParameterTypes();
+      if (params.length == 0 && methodName.startsWith("get") && methodName.length() > 3 && method.getReturnType() != Void.TYPE) {
+        String name = decapitalize(methodName.substring(3));
+        // isX() wins over getX() for boolean properties
+        if (!getters.containsKey(name)) {
+          getters.put(name, method);
+        }
+      } else if (params.length == 0 && methodName.startsWith("is") && methodName.length() > 2 && method.getReturnType() == Boolean.TYPE) {
+        getters.put(decapitalize(methodName.substring(2)), method);
+      } else if (params.length == 1 && methodName.startsWith("set") && methodName.length() > 3 && method.getReturnType() == Void.TYPE) {
+        String name = decapitalize(methodName.substring(3));
+        List<Method> candidates = setters.get(name);
+        if (candidates == null) {
+          candidates = new ArrayList<Method>(1);
+          setters.put(name, candidates);
+        }
+        candidates.add(method);
+      }
+    }
+
+    Map<String,BeanProperty> properties = new LinkedHashMap<String,BeanProperty>();
+    for (Map.Entry<String,Method> entry : getters.entrySet()) {
+      Method getter = entry.getValue();
+      Method setter = findSetter(setters.remove(entry.getKey()), getter.getReturnType());
+      properties.put(entry.getKey(), new BeanProperty(entry.getKey(), getter.getReturnType(), getter, setter));
+    }
+    for (Map.Entry<String,List<Method>> entry : setters.entrySet()) {
+      Method setter = findSetter(entry.getValue(), null);
+      properties.put(entry.getKey(), new BeanProperty(entry.getKey(), setter.getParameterTypes()[0], null, setter));
+    }
+    return new BeanModel(pClass, properties);
+  } // end introspect
+
+
+  /**
+   * Chooses the setter of a property among the overloaded candidates
+   * @param pCandidates setters with the name of the property, or null
+   * @param pType type of the getter, or null for write-only properties
+   * @return setter taking the getter type, or for write-only properties the one with the most specific
+   * parameter type; null if there is none
+   */
+  private static Method findSetter (List<Method> pCandidates, Class pType) {
+    if (pCandidates == null) {
+      return null;
+    }
+    Method result = null;
+    for (Method candidate : pCandidates) {
+      Class param = candidate.getParameterTypes()[0];
+      if (pType != null) {
+        if (param == pType) {
+          return candidate;
+        }
+      } else if (result == null || result.getParameterTypes()[0].isAssignableFrom(param)
+          && result.getParameterTypes()[0] != param) {
+        result = candidate;
+      }
+    }
+    return result;
+  } // end findSetter
+
+
+  /**
+   * Turns the capitalized part of an accessor name into a property name, as java.beans.Introspector.decapitalize():
+   * the first letter is lowercased, unless the first two letters are uppercase (getURL() is the URL property)
+   * @param pName part of the accessor name after get, is or set
+   * @return property name
+   */
+  static String decapitalize (String pName) {
+    if (pName.length() > 1 && Character.isUpperCase(pName.charAt(0)) && Character.isUpperCase(pName.charAt(1))) {
+      return pName;
+    }
+    char[] chars = pName.toCharArray();
+    chars[0] = Character.toLowerCase(chars[0]);
+    return new String(chars);
+  }
+
+
+  /**
+   * Returns the introspected class
+   * @return class
+   */
+  public Class getBeanClass () {
+    return mBeanClass;
+  }
+
+
+  /**
+   * Returns a property by name
+   * @param pName property name
+   * @return property, or null if the class has no such property
+   */
+  public BeanProperty getProperty (String pName) {
+    return mProperties.get(pName);
+  }
+
+
+  /**
+   * Returns all the properties, by name
+   * @return unmodifiable map of properties
+   */
+  public Map<String,BeanProperty> getProperties () {
+    return mProperties;
+  }
+
+} // end BeanModel
@@ -0,0 +1,94 @@
+package atom;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import atom.exception.AtomException;
+
+/**
+ * Resolved accessors of a bean property, computed once per class by BeanModel
+ */
+public final class BeanProperty {
+
+  // property name
+  private final String mName;
+
+  // property type
+  private final Class mType;
+
+  // getter, or null if the property is write-only
+  private final Method mReadMethod;
+
+  // setter, or null if the property is read-only
+  private final Method mWriteMethod;
+
+
+  /**
+   * Constructor
+   * @param pName property name
+   * @param pType property type
+   * @param pReadMethod getter, or null
+   * @param pWriteMethod setter, or null
+   */
+  BeanProperty (String pName, Class pType, Method pReadMethod, Method pWriteMethod) {
+    mName = pName;
+    mType = pType;
+    mReadMethod = pReadMethod;
+    mWriteMethod = pWriteMethod;
+  }
+
+
+  public String getName () {
+    return mName;
+  }
+
+  public Class getType () {
+    return mType;
+  }
+
+  public Method getReadMethod () {
+    return mReadMethod;
+  }
+
+  public Method getWriteMethod () {
+    return mWriteMethod;
+  }
+
+
+  /**
+   * Reads the value of this property
+   * @param pTarget object to read the property from
+   * @return property value
+   */
+  public Object read (Object pTarget) {
+    if (mReadMethod == null) {
+      throw new AtomException("No read method for property " + mName + " of " + pTarget.getClass().getName());
+    }
+    try {
+      return mReadMethod.invoke(pTarget);
+    } catch (IllegalAccessException iae) {
+      throw new AtomException("IllegalAccessException reading property " + mName + " of " + pTarget.getClass().getName(), iae);
+    } catch (InvocationTargetException ite) {
+      throw new AtomException("InvocationTargetException reading property " + mName + " of " + pTarget.getClass().getName(), ite);
+    }
+  } // end read
+
+
+  /**
+   * Writes the value of this property
+   * @param pTarget object to write the property into
+   * @param pValue new value
+   */
+  public void write (Object pTarget, Object pValue) {
+    if (mWriteMethod == null) {
+      throw new AtomException("No write method for property " + mName + " of " + pTarget.getClass().getName());
+    }
+    try {
+      mWriteMethod.invoke(pTarget, pValue);
+    } catch (IllegalAccessException iae) {
+      throw new AtomException("IllegalAccessException writing property " + mName + " of " + pTarget.getClass().getName(), iae);
+    } catch (InvocationTargetException ite) {
+      throw new AtomException("InvocationTargetException writing property " + mName + " of " + pTarget.getClass().getName(), ite);
+    }
+  } // end write
+
+} // end BeanProperty
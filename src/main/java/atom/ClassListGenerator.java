@@ -0,0 +1,205 @@
+package atom;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URISyntaxException;
+import java.security.CodeSource;
+import java.util.Enumeration;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import atom.exception.AtomException;
+
+/**
+ * Generates the class list used to dump a CDS archive: the classes named by $class in the config path with their
+ * superclasses and interfaces, plus the classes of Atom itself but PropertyEditors and its nested classes, which
+ * would pull java.desktop into the archive. Nothing is instantiated or initialized.
+ * Meant to be run at build time:
+ * <pre>java -cp atom.jar:app.jar atom.ClassListGenerator atom.classlist config localconfig
+ * java -Xshare:dump -XX:SharedClassListFile=atom.classlist -XX:SharedArchiveFile=app.jsa -cp atom.jar:app.jar</pre>
+ * and the application then started with -XX:SharedArchiveFile=app.jsa
+ */
+public class ClassListGenerator {
+
+  private static final String CLASS_EXTENSION = ".class";
+
+  // Atom classes left out of the list, with their nested classes: they extend java.beans classes
+  private static final String PROPERTY_EDITORS = "atom/PropertyEditors";
+
+  // container whose config path is read
+  private final Atom mAtom;
+
+
+  /**
+   * Constructor
+   * @param pAtom container whose config path is read
+   */
+  public ClassListGenerator (Atom pAtom) {
+    if (pAtom == null) {
+      throw new AtomException("Parameter pAtom is null");
+    }
+    mAtom = pAtom;
+  }
+
+
+  /**
+   * Collects the classes of the list
+   * @return sorted set of class names, in the internal form used by class lists (atom/Atom)
+   */
+  public Set<String> collectClassNames () {
+    Set<String> result = new TreeSet<String>();
+    for (String className : new ConfigTree(mAtom.getConfigPath()).getComponentClassNames(mAtom)) {
+      Class clazz = ConfigTree.loadClass(className, false);
+      if (clazz != null) {
+        addClass(result, clazz);
+      }
+    }
+    addAtomClasses(result);
+    return result;
+  } // end collectClassNames
+
+
+  /**
+   * Adds a class with its superclasses and interfaces, which are loaded with it
+   * @param pClassNames set receiving the class names
+   * @param pClass class
+   */
+  private static void addClass (Set<String> pClassNames, Class pClass) {
+    if (pClass == null || !pClassNames.add(pClass.getName().replace('.', '/'))) {
+      return;
+    }
+    addClass(pClassNames, pClass.getSuperclass());
+    for (Class iface : pClass.getInterfaces()) {
+      addClass(pClassNames, iface);
+    }
+  }
+
+
+  /**
+   * Adds the classes found next to Atom, in its jar or in its classes directory
+   * @param pClassNames set receiving the class names
+   */
+  private static void addAtomClasses (Set<String> pClassNames) {
+    CodeSource source = Atom.class.getProtectionDomain().getCodeSource();
+    if (source == null || source.getLocation() == null) {
+      return;
+    }
+    File location;
+    try {
+      location = new File(source.getLocation().toURI());
+    } catch (URISyntaxException use) {
+      throw new AtomException("Invalid location of the Atom classes " + source.getLocation(), use);
+    }
+    if (location.isDirectory()) {
+      addClassFiles(new File(location, "atom"), "atom/", pClassNames);
+      return;
+    }
+    try {
+      JarFile jar = new JarFile(location);
+      try {
+        Enumeration<JarEntry> entries = jar.entries();
+        while (entries.hasMoreElements()) {
+          String entryName = entries.nextElement().getName();
+          if (entryName.startsWith("atom/") && entryName.endsWith(CLASS_EXTENSION)) {
+            addAtomClass(pClassNames, entryName.substring(0, entryName.length() - CLASS_EXTENSION.length()));
+          }
+        }
+      } finally {
+        jar.close();
+      }
+    } catch (IOException ioe) {
+      throw new AtomException("Got IOException reading " + location, ioe);
+    }
+  } // end addAtomClasses
+
+
+  /**
+   * Recursively adds the class files of a directory
+   * @param pDirectory directory to walk
+   * @param pPrefix internal name prefix corresponding to the directory
+   * @param pClassNames set receiving the class names
+   */
+  private static void addClassFiles (File pDirectory, String pPrefix, Set<String> pClassNames) {
+    File[] files = pDirectory.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      String fileName = file.getName();
+      if (file.isDirectory()) {
+        addClassFiles(file, pPrefix + fileName + "/", pClassNames);
+      } else if (fileName.endsWith(CLASS_EXTENSION)) {
+        addAtomClass(pClassNames, pPrefix + fileName.substring(0, fileName.length() - CLASS_EXTENSION.length()));
+      }
+    }
+  }
+
+
+  /**
+   * Adds a class of Atom, unless it needs java.desktop
+   * @param pClassNames set receiving the class names
+   * @param pClassName internal class name
+   */
+  private static void addAtomClass (Set<String> pClassNames, String pClassName) {
+    if (!pClassName.equals(PROPERTY_EDITORS) && !pClassName.startsWith(PROPERTY_EDITORS + "$")) {
+      pClassNames.add(pClassName);
+    }
+  }
+
+
+  /**
+   * Writes the class list, one class per line
+   * @param pWriter writer receiving the list
+   * @throws IOException if the list cannot be written
+   */
+  public void writeClassList (Writer pWriter) throws IOException {
+    for (String className : collectClassNames()) {
+      pWriter.write(className);
+      pWriter.write("\n");
+    }
+  }
+
+
+  /**
+   * Writes the class list into a file
+   * @param pFile file to write
+   * @throws IOException if the file cannot be written
+   */
+  public void generate (File pFile) throws IOException {
+    Writer writer = new OutputStreamWriter(new FileOutputStream(pFile), "UTF-8");
+    try {
+      writeClassList(writer);
+    } finally {
+      writer.close();
+    }
+  }
+
+
+  /**
+   * Command-line entry point: writes the class list of the config path made of the given layers
+   * @param pArgs output file, then the layers of the config path, in order
+   * @throws IOException if the output cannot be written
+   */
+  public static void main (String[] pArgs) throws IOException {
+    if (pArgs.length < 2) {
+      System.err.println("Usage: java atom.ClassListGenerator atom.classlist layer [layer...]");
+      System.exit(2);
+    }
+    Atom atom = new Atom();
+    for (int i = 1; i < pArgs.length; i++) {
+      File layer = new File(pArgs[i]);
+      if (!layer.isDirectory()) {
+        System.err.println("Not a directory: " + pArgs[i]);
+        System.exit(2);
+      }
+      atom.addToConfigPath(layer);
+    }
+    new ClassListGenerator(atom).generate(new File(pArgs[0]));
+    System.out.println("Wrote " + pArgs[0]);
+  } // end main
+
+} // end ClassListGenerator
@@ -0,0 +1,116 @@
+package atom;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import atom.exception.AtomException;
+
+/**
+ * Loads and initializes the classes of all the configured components on background daemon threads, so that they are
+ * ready by the time the components are created instead of being loaded one at a time by the first requests
+ */
+public class ClassPreloader {
+
+  // container whose config path is read
+  private final Atom mAtom;
+
+  // number of threads loading the classes
+  private final int mThreads;
+
+  // classes loaded so far, and classes that could not be loaded
+  private final AtomicInteger mLoadedCount = new AtomicInteger();
+  private final AtomicInteger mFailedCount = new AtomicInteger();
+
+
+  /**
+   * Constructor
+   * @param pAtom container whose config path is read
+   * @param pThreads number of threads loading the classes
+   */
+  public ClassPreloader (Atom pAtom, int pThreads) {
+    if (pAtom == null) {
+      throw new AtomException("Parameter pAtom is null");
+    }
+    mAtom = pAtom;
+    mThreads = Math.max(1, pThreads);
+  }
+
+
+  /**
+   * Starts preloading in the background
+   * @return the preloading, completed with the number of classes loaded
+   */
+  public Future<Integer> start () {
+    FutureTask<Integer> task = new FutureTask<Integer>(new Callable<Integer>() {
+      public Integer call () {
+        return preload();
+      }
+    });
+    Thread thread = new Thread(task, "atom-preloader");
+    thread.setDaemon(true);
+    thread.start();
+    return task;
+  }
+
+
+  /**
+   * Walks the config tree and loads the configured classes in parallel
+   * @return number of classes loaded
+   */
+  private int preload () {
+    ExecutorService executor = Executors.newFixedThreadPool(mThreads, new ThreadFactory() {
+      private final AtomicInteger mCount = new AtomicInteger();
+
+      public Thread newThread (Runnable pRunnable) {
+        Thread thread = new Thread(pRunnable, "atom-preloader-" + mCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    try {
+      List<Future<Void>> loads = new ArrayList<Future<Void>>();
+      for (final String className : new ConfigTree(mAtom.getConfigPath()).getComponentClassNames(mAtom)) {
+        loads.add(executor.submit(new Callable<Void>() {
+          public Void call () {
+            if (ConfigTree.loadClass(className, true) != null) {
+              mLoadedCount.incrementAndGet();
+            } else {
+              // reported when the component is created
+              mFailedCount.incrementAndGet();
+            }
+            return null;
+          }
+        }));
+      }
+      ConfigTree.getResults(loads);
+      return mLoadedCount.get();
+    } finally {
+      executor.shutdownNow();
+    }
+  } // end preload
+
+
+  /**
+   * Returns the number of classes loaded so far
+   * @return count
+   */
+  public int getLoadedCount () {
+    return mLoadedCount.get();
+  }
+
+
+  /**
+   * Returns the number of configured classes that could not be loaded
+   * @return count
+   */
+  public int getFailedCount () {
+    return mFailedCount.get();
+  }
+
+} // end ClassPreloader
@@ -0,0 +1,216 @@
+package atom;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable map with string keys, stored in two parallel arrays kept in insertion order and indexed by an
+ * open-addressing table of ints. Lookups need no synchronization and the map holds no entry objects.
+ * Keys are interned, since the same property names appear in thousands of configuration files
+ * @param <V> type of the values, which may be null
+ */
+public final class CompactMap<V> {
+
+  // shared empty table for empty maps
+  private static final int[] NO_SLOTS = new int[1];
+
+  // keys and values, in insertion order
+  private final String[] mKeys;
+  private final Object[] mValues;
+
+  // open-addressing table: index + 1 of the key in mKeys, 0 for a free slot; the length is a power of two
+  private final int[] mSlots;
+
+
+  /**
+   * Private constructor, use a Builder
+   * @param pKeys keys, distinct
+   * @param pValues values
+   */
+  private CompactMap (String[] pKeys, Object[] pValues) {
+    mKeys = pKeys;
+    mValues = pValues;
+    if (pKeys.length == 0) {
+      mSlots = NO_SLOTS;
+      return;
+    }
+
+    // keep the load factor at or below one half, so probe sequences stay short
+    int capacity = Integer.highestOneBit(pKeys.length * 2 - 1) << 1;
+    mSlots = new int[capacity];
+    int mask = capacity - 1;
+    for (int i = 0; i < pKeys.length; i++) {
+      int slot = hash(pKeys[i]) & mask;
+      while (mSlots[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      mSlots[slot] = i + 1;
+    }
+  } // end constructor
+
+
+  /**
+   * Creates a map holding the entries of the given map, in its iteration order
+   * @param pMap map
+   * @param <V> type of the values
+   * @return compact map
+   */
+  public static <V> CompactMap<V> copyOf (Map<String,V> pMap) {
+    String[] keys = new String[pMap.size()];
+    Object[] values = new Object[pMap.size()];
+    int i = 0;
+    for (Map.Entry<String,V> entry : pMap.entrySet()) {
+      keys[i] = entry.getKey().intern();
+      values[i] = entry.getValue();
+      i++;
+    }
+    return new CompactMap<V>(keys, values);
+  }
+
+
+  /**
+   * Spreads the hash code of a key
+   * @param pKey key
+   * @return hash
+   */
+  private static int hash (String pKey) {
+    int h = pKey.hashCode();
+    return h ^ (h >>> 16);
+  }
+
+
+  /**
+   * Returns the position of a key in insertion order
+   * @param pKey key
+   * @return index, or -1 if absent
+   */
+  private int indexOf (String pKey) {
+    if (mKeys.length == 0 || pKey == null) {
+      return -1;
+    }
+    int mask = mSlots.length - 1;
+    int slot = hash(pKey) & mask;
+    int entry;
+    while ((entry = mSlots[slot]) != 0) {
+      String key = mKeys[entry - 1];
+      if (key == pKey || key.equals(pKey)) {
+        return entry - 1;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  } // end indexOf
+
+
+  /**
+   * Returns the value of a key
+   * @param pKey key
+   * @return value, or null if the key is absent or its value is null
+   */
+  @SuppressWarnings("unchecked")
+  public V get (String pKey) {
+    int idx = indexOf(pKey);
+    return (idx < 0 ? null : (V) mValues[idx]);
+  }
+
+
+  /**
+   * Returns true if the map contains the key, even with a null value
+   * @param pKey key
+   * @return true or false
+   */
+  public boolean containsKey (String pKey) {
+    return indexOf(pKey) >= 0;
+  }
+
+
+  /**
+   * Returns the number of entries
+   * @return size
+   */
+  public int size () {
+    return mKeys.length;
+  }
+
+
+  /**
+   * Returns true if the map has no entries
+   * @return true or false
+   */
+  public boolean isEmpty () {
+    return mKeys.length == 0;
+  }
+
+
+  /**
+   * Returns the key at the given position in insertion order
+   * @param pIndex position
+   * @return key
+   */
+  public String keyAt (int pIndex) {
+    return mKeys[pIndex];
+  }
+
+
+  /**
+   * Returns the value at the given position in insertion order
+   * @param pIndex position
+   * @return value
+   */
+  @SuppressWarnings("unchecked")
+  public V valueAt (int pIndex) {
+    return (V) mValues[pIndex];
+  }
+
+
+  /**
+   * Returns the keys in insertion order
+   * @return unmodifiable list of keys
+   */
+  public List<String> keys () {
+    return Collections.unmodifiableList(Arrays.asList(mKeys));
+  }
+
+
+  /**
+   * Returns a textual representation of this map
+   * @return text representation
+   */
+  public String toString () {
+    StringBuilder buf = new StringBuilder("{");
+    for (int i = 0; i < mKeys.length; i++) {
+      if (i > 0) {
+        buf.append(", ");
+      }
+      buf.append(mKeys[i]).append("=").append(mValues[i]);
+    }
+    return buf.append("}").toString();
+  }
+
+
+  /**
+   * Collects entries, the last value put for a key wins
+   * @param <V> type of the values
+   */
+  public static final class Builder<V> {
+
+    private final LinkedHashMap<String,V> mEntries = new LinkedHashMap<String,V>();
+
+    public Builder<V> put (String pKey, V pValue) {
+      mEntries.put(pKey, pValue);
+      return this;
+    }
+
+    public int size () {
+      return mEntries.size();
+    }
+
+    public CompactMap<V> build () {
+      return copyOf(mEntries);
+    }
+  } // end Builder
+
+} // end CompactMap
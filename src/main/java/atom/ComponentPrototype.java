@@ -0,0 +1,241 @@
+package atom;
+
+import java.io.File;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Properties;
+import atom.exception.AtomException;
+import atom.exception.ConfigurationException;
+
+/**
+ * Prepared configuration of a session or request component, built once and applied to every new instance.
+ * Values are converted when the prototype is built and references to global components are bound at that time:
+ * only references to session and request components, linked properties, components injected by type, and values of
+ * types that cannot be safely shared between instances are resolved again for each instance
+ */
+class ComponentPrototype {
+
+  // the value is immutable and shared by all the instances
+  static final int SHARED = 0;
+
+  // the value is mutable and each instance gets a copy
+  static final int COPIED = 1;
+
+  // the value is converted again for each instance
+  static final int CONVERTED = 2;
+
+  // the value is a component resolved again for each instance
+  static final int RESOLVED = 3;
+
+  // the value is read from a linked property for each instance
+  static final int LINKED = 4;
+
+  // the value is the list of the components of a type, resolved again for each instance
+  static final int TYPED = 5;
+
+  /**
+   * A property of the prototype, with the way its value is obtained
+   */
+  static class PreparedProperty {
+    final String mName;
+    final Method mWriteMethod;
+    final int mKind;
+    final Object mValue;
+    final ConfigValue mConfigValue;
+
+    PreparedProperty (String pName, Method pWriteMethod, int pKind, Object pValue, ConfigValue pConfigValue) {
+      mName = pName;
+      mWriteMethod = pWriteMethod;
+      mKind = pKind;
+      mValue = pValue;
+      mConfigValue = pConfigValue;
+    }
+  } // end PreparedProperty
+
+
+  // full component name
+  private final String mName;
+
+  // component class
+  private final Class mComponentClass;
+
+  // merged configuration
+  private final Configuration mConfiguration;
+
+  // the properties to apply to each new instance
+  private final PreparedProperty[] mProperties;
+
+  // names of the components the instances depend on, null until asked for
+  private volatile Set<String> mDependencies;
+
+
+  /**
+   * Constructor
+   * @param pName full component name
+   * @param pComponentClass component class
+   * @param pConfiguration merged configuration
+   * @param pProperties prepared properties
+   */
+  ComponentPrototype (String pName, Class pComponentClass, Configuration pConfiguration, List<PreparedProperty> pProperties) {
+    mName = pName;
+    mComponentClass = pComponentClass;
+    mConfiguration = pConfiguration;
+    mProperties = pProperties.toArray(new PreparedProperty[pProperties.size()]);
+  }
+
+
+  /**
+   * Returns the merged configuration the prototype was built from
+   * @return configuration
+   */
+  Configuration getConfiguration () {
+    return mConfiguration;
+  }
+
+
+  /**
+   * Returns the names of the components the instances depend on, computed the first time
+   * @param pAtom container
+   * @return full component names
+   */
+  Set<String> getDependencies (Atom pAtom) {
+    Set<String> dependencies = mDependencies;
+    if (dependencies == null) {
+      dependencies = Collections.unmodifiableSet(pAtom.getDependencies(mConfiguration));
+      mDependencies = dependencies;
+    }
+    return dependencies;
+  }
+
+
+  /**
+   * Returns the component class
+   * @return class
+   */
+  Class getComponentClass () {
+    return mComponentClass;
+  }
+
+
+  /**
+   * Creates a new, unconfigured instance of the component
+   * @return component instance
+   */
+  Object newInstance () {
+    try {
+      return mComponentClass.newInstance();
+    } catch (InstantiationException ie) {
+      throw new AtomException("Error instantiating class " + mComponentClass.getName(), ie);
+    } catch (IllegalAccessException iae) {
+      throw new AtomException("Access denied instantiating class " + mComponentClass.getName(), iae);
+    }
+  }
+
+
+  /**
+   * Applies the prepared properties to a new instance
+   * @param pComponent component instance
+   * @param pScope scope for naming resolution of the per-instance references
+   * @param pConfigurator configurator used for per-instance conversions and links
+   */
+  void apply (Object pComponent, Scope pScope, BeanConfigurator pConfigurator) {
+    for (PreparedProperty property : mProperties) {
+      Object value;
+      try {
+        switch (property.mKind) {
+          case SHARED:
+            value = property.mValue;
+            break;
+          case COPIED:
+            value = copy(property.mValue);
+            break;
+          case CONVERTED:
+            value = pConfigurator.convertValue(property.mWriteMethod.getParameterTypes()[0], property.mConfigValue);
+            break;
+          case RESOLVED:
+            value = pScope.resolveName(property.mConfigValue.getText(), true);
+            break;
+          case TYPED:
+            value = pConfigurator.resolveAllByType(mName, (Class) property.mValue, pScope);
+            break;
+          default:
+            value = pConfigurator.getLinkedPropertyValue(property.mName, mConfiguration, pScope, pComponent);
+            break;
+        }
+      } catch (ConfigurationException ce) {
+        throw new AtomException("ConfigurationException for property " + property.mName + " of component " + mName, ce);
+      }
+
+      try {
+        property.mWriteMethod.invoke(pComponent, value);
+      } catch (IllegalAccessException iae) {
+        throw new AtomException("IllegalAccessException for property " + property.mName + " of component " + mName, iae);
+      } catch (InvocationTargetException ite) {
+        throw new AtomException("InvocationTargetException for property " + property.mName + " of component " + mName, ite);
+      }
+    }
+  } // end apply
+
+
+  /**
+   * Returns how a converted value can be given to each instance
+   * @param pValue converted value
+   * @return SHARED, COPIED, or CONVERTED if the value cannot be copied
+   */
+  static int getValueKind (Object pValue) {
+    if (pValue == null || pValue instanceof String || pValue instanceof Number || pValue instanceof Boolean
+        || pValue instanceof Character || pValue instanceof File || pValue instanceof Enum) {
+      return SHARED;
+    }
+    if (pValue == Collections.EMPTY_LIST || pValue == Collections.EMPTY_SET || pValue == Collections.EMPTY_MAP) {
+      return SHARED;
+    }
+    Class clazz = pValue.getClass();
+    if (clazz.isArray() || clazz == ArrayList.class || clazz == HashSet.class || clazz == HashMap.class
+        || clazz == Properties.class || clazz == Date.class) {
+      return COPIED;
+    }
+    return CONVERTED;
+  } // end getValueKind
+
+
+  /**
+   * Copies a mutable value for a new instance
+   * @param pValue value of one of the types for which getValueKind() returns COPIED
+   * @return copy
+   */
+  @SuppressWarnings("unchecked")
+  private static Object copy (Object pValue) {
+    Class clazz = pValue.getClass();
+    if (clazz.isArray()) {
+      int length = Array.getLength(pValue);
+      Object copy = Array.newInstance(clazz.getComponentType(), length);
+      System.arraycopy(pValue, 0, copy, 0, length);
+      return copy;
+    }
+    if (clazz == ArrayList.class) {
+      return new ArrayList((ArrayList) pValue);
+    }
+    if (clazz == HashSet.class) {
+      return new HashSet((HashSet) pValue);
+    }
+    if (clazz == HashMap.class) {
+      return new HashMap((HashMap) pValue);
+    }
+    if (clazz == Properties.class) {
+      Properties copy = new Properties();
+      copy.putAll((Properties) pValue);
+      return copy;
+    }
+    return ((Date) pValue).clone();
+  } // end copy
+
+} // end ComponentPrototype
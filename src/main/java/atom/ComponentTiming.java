@@ -0,0 +1,74 @@
+package atom;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Creation and start times of a component, as last measured, with the number of instances created.
+ * The start time of a global AsyncStartable runs until its asynchronous start completes
+ */
+public class ComponentTiming {
+
+  // full component name
+  private final String mName;
+
+  // instances created
+  private final LongAdder mCreations = new LongAdder();
+
+  // time of the last creation, in milliseconds since the epoch
+  private volatile long mLastCreated;
+
+  // duration of the last creation and of the last start in nanoseconds, the start being -1 if not measured
+  private volatile long mCreateNanos;
+  private volatile long mStartNanos = -1;
+
+
+  /**
+   * Constructor
+   * @param pName full component name
+   */
+  ComponentTiming (String pName) {
+    mName = pName;
+  }
+
+
+  /**
+   * Records a creation
+   * @param pNanos duration of the creation, from the merge of the configuration to the registration
+   */
+  void recordCreation (long pNanos) {
+    mCreations.increment();
+    mLastCreated = System.currentTimeMillis();
+    mCreateNanos = pNanos;
+  }
+
+
+  /**
+   * Records a start
+   * @param pNanos duration of the start
+   */
+  void recordStart (long pNanos) {
+    mStartNanos = pNanos;
+  }
+
+
+  public String getName () {
+    return mName;
+  }
+
+  public long getCreations () {
+    return mCreations.sum();
+  }
+
+  public long getLastCreated () {
+    return mLastCreated;
+  }
+
+  public long getCreateNanos () {
+    return mCreateNanos;
+  }
+
+  public long getStartNanos () {
+    return mStartNanos;
+  }
+
+} // end ComponentTiming
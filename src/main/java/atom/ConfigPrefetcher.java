@@ -0,0 +1,160 @@
+package atom;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Merges configurations and loads component classes on background daemon threads, ahead of the thread creating
+ * the components: the merged configurations are handed over by Atom.getConfiguration() when it needs them.
+ * Each prefetched configuration can in turn prefetch the components it references
+ */
+class ConfigPrefetcher {
+
+  // container merging the configurations
+  private final Atom mAtom;
+
+  // runs the prefetches
+  private final ExecutorService mExecutor;
+
+  // prefetches not yet handed over, by component name
+  private final ConcurrentHashMap<String,Future<Configuration>> mPending = new ConcurrentHashMap<String,Future<Configuration>>();
+
+  // components already prefetched and handed over, which are not prefetched again
+  private final Set<String> mDone = Collections.newSetFromMap(new ConcurrentHashMap<String,Boolean>());
+
+  // prefetches started, and configurations handed over
+  private final AtomicInteger mStartedCount = new AtomicInteger();
+  private final AtomicInteger mHitCount = new AtomicInteger();
+
+
+  /**
+   * Constructor
+   * @param pAtom container merging the configurations
+   * @param pThreads number of prefetching threads
+   * @param pThreadName prefix of the names of the threads
+   */
+  ConfigPrefetcher (Atom pAtom, int pThreads, final String pThreadName) {
+    mAtom = pAtom;
+    mExecutor = Executors.newFixedThreadPool(Math.max(1, pThreads), new ThreadFactory() {
+      private final AtomicInteger mCount = new AtomicInteger();
+
+      public Thread newThread (Runnable pRunnable) {
+        Thread thread = new Thread(pRunnable, pThreadName + "-" + mCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+
+  /**
+   * Starts merging the configuration of a component in the background, unless it has been prefetched already
+   * @param pName full component name
+   * @param pLoadClass true to also load the class of the component, without initializing it
+   * @return true if a prefetch was started
+   */
+  boolean prefetch (final String pName, final boolean pLoadClass) {
+    if (mDone.contains(pName) || mPending.containsKey(pName)) {
+      return false;
+    }
+    FutureTask<Configuration> task = new FutureTask<Configuration>(new Callable<Configuration>() {
+      public Configuration call () {
+        Configuration config = mAtom.mergeConfiguration(pName);
+        mAtom.prefetchReferences(config);
+        String className = config.getProperty(Atom.CLASS_PROPERTY);
+        if (pLoadClass && className != null) {
+          ConfigTree.loadClass(className.trim(), false);
+        }
+        return config;
+      }
+    });
+    if (mPending.putIfAbsent(pName, task) != null) {
+      return false;
+    }
+    mStartedCount.incrementAndGet();
+    mExecutor.execute(task);
+    return true;
+  } // end prefetch
+
+
+  /**
+   * Returns the prefetched configuration of a component, waiting for it if the prefetch is running
+   * @param pName full component name
+   * @param pRemove true to hand the configuration over, false to leave it for the next call
+   * @return configuration, or null if it was not prefetched or the prefetch failed
+   */
+  Configuration get (String pName, boolean pRemove) {
+    Future<Configuration> future = (pRemove ? mPending.remove(pName) : mPending.get(pName));
+    if (future == null) {
+      return null;
+    }
+    if (pRemove) {
+      mDone.add(pName);
+    }
+    try {
+      Configuration config = future.get();
+      if (pRemove) {
+        mHitCount.incrementAndGet();
+      }
+      return config;
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (ExecutionException ee) {
+      // the caller merges again and gets the error itself
+      return null;
+    } catch (CancellationException ce) {
+      return null;
+    }
+  } // end get
+
+
+  /**
+   * Forgets all the prefetched configurations
+   */
+  void clear () {
+    mPending.clear();
+    mDone.clear();
+  }
+
+
+  /**
+   * Stops the prefetching threads
+   */
+  void shutdown () {
+    for (Runnable task : mExecutor.shutdownNow()) {
+      // release the threads waiting for prefetches that will never run
+      ((Future) task).cancel(false);
+    }
+    clear();
+  }
+
+
+  /**
+   * Returns the number of prefetches started
+   * @return count
+   */
+  int getStartedCount () {
+    return mStartedCount.get();
+  }
+
+
+  /**
+   * Returns the number of prefetched configurations used
+   * @return count
+   */
+  int getHitCount () {
+    return mHitCount.get();
+  }
+
+} // end ConfigPrefetcher
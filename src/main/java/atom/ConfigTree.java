@@ -0,0 +1,225 @@
+package atom;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import atom.exception.AtomException;
+
+/**
+ * Lists the components configured in a config path, by walking every layer
+ */
+public class ConfigTree {
+
+  private static final String EXTENSION = ".properties";
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  // layers of the config path
+  private final List<File> mLayers;
+
+
+  /**
+   * Constructor
+   * @param pLayers layers of the config path
+   */
+  public ConfigTree (List<File> pLayers) {
+    if (pLayers == null) {
+      throw new AtomException("Parameter pLayers is null");
+    }
+    mLayers = new ArrayList<File>(pLayers);
+  }
+
+
+  /**
+   * Returns the names of all the components configured in at least one layer, walking the layers one after the other
+   * @return sorted set of full component names
+   */
+  public Set<String> getComponentNames () {
+    Set<String> names = new TreeSet<String>();
+    for (File layer : mLayers) {
+      collectNames(layer, "", names);
+    }
+    return names;
+  }
+
+
+  /**
+   * Returns the names of all the components configured in at least one layer, walking each layer in its own task
+   * @param pExecutor executor running the walks
+   * @return sorted set of full component names
+   */
+  public Set<String> getComponentNames (ExecutorService pExecutor) {
+    List<Future<Set<String>>> walks = new ArrayList<Future<Set<String>>>();
+    for (final File layer : mLayers) {
+      walks.add(pExecutor.submit(new Callable<Set<String>>() {
+        public Set<String> call () {
+          Set<String> names = new TreeSet<String>();
+          collectNames(layer, "", names);
+          return names;
+        }
+      }));
+    }
+    Set<String> names = new TreeSet<String>();
+    for (Future<Set<String>> walk : walks) {
+      names.addAll(getResult(walk));
+    }
+    return names;
+  } // end getComponentNames
+
+
+  /**
+   * Computes a fingerprint of the configuration files of all the layers, from their names, sizes and modification
+   * times: it changes whenever a file is added, removed or modified
+   * @return hexadecimal fingerprint
+   */
+  public String getFingerprint () {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException nsae) {
+      throw new AtomException("SHA-256 is not available", nsae);
+    }
+    for (File layer : mLayers) {
+      digest.update(layer.getAbsolutePath().getBytes(UTF_8));
+      digestFiles(layer, "", digest);
+    }
+    StringBuilder buf = new StringBuilder();
+    for (byte b : digest.digest()) {
+      buf.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+    return buf.toString();
+  } // end getFingerprint
+
+
+  /**
+   * Recursively adds the configuration files of a directory to a fingerprint, in name order
+   * @param pDirectory directory to walk
+   * @param pPrefix path prefix corresponding to the directory
+   * @param pDigest digest receiving the names, sizes and modification times
+   */
+  private static void digestFiles (File pDirectory, String pPrefix, MessageDigest pDigest) {
+    File[] files = pDirectory.listFiles();
+    if (files == null) {
+      return;
+    }
+    Arrays.sort(files);
+    for (File file : files) {
+      String path = pPrefix + "/" + file.getName();
+      if (file.isDirectory()) {
+        digestFiles(file, path, pDigest);
+      } else if (path.endsWith(EXTENSION)) {
+        pDigest.update((path + "|" + file.length() + "|" + file.lastModified() + "\n").getBytes(UTF_8));
+      }
+    }
+  } // end digestFiles
+
+
+  /**
+   * Merges the configuration of each component and returns the classes they name
+   * @param pAtom container merging the configurations
+   * @return sorted set of the $class values of the components that can be configured
+   */
+  public Set<String> getComponentClassNames (Atom pAtom) {
+    Set<String> classNames = new TreeSet<String>();
+    for (String name : getComponentNames()) {
+      String className;
+      try {
+        className = pAtom.mergeConfiguration(name).getProperty(Atom.CLASS_PROPERTY);
+      } catch (AtomException ae) {
+        // reported by the validator
+        continue;
+      }
+      if (className != null && !"".equals(className.trim())) {
+        classNames.add(className.trim());
+      }
+    }
+    return classNames;
+  } // end getComponentClassNames
+
+
+  /**
+   * Loads a class, without failing if it cannot be loaded
+   * @param pClassName class name
+   * @param pInitialize true to initialize the class
+   * @return class, or null if it cannot be loaded
+   */
+  static Class loadClass (String pClassName, boolean pInitialize) {
+    try {
+      return Class.forName(pClassName, pInitialize, ConfigTree.class.getClassLoader());
+    } catch (ClassNotFoundException cnfe) {
+      return null;
+    } catch (LinkageError le) {
+      return null;
+    }
+  }
+
+
+  /**
+   * Waits for the result of a task, unwrapping its failure
+   * @param pFuture task
+   * @param <T> type of the result
+   * @return result
+   */
+  static <T> T getResult (Future<T> pFuture) {
+    try {
+      return pFuture.get();
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new AtomException("Interrupted while waiting for a task", ie);
+    } catch (ExecutionException ee) {
+      if (ee.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) ee.getCause();
+      }
+      throw new AtomException(ee.getCause());
+    }
+  } // end getResult
+
+
+  /**
+   * Waits for the results of a collection of tasks
+   * @param pFutures tasks
+   * @param <T> type of the results
+   * @return results, in the order of the tasks
+   */
+  static <T> List<T> getResults (Collection<Future<T>> pFutures) {
+    List<T> results = new ArrayList<T>(pFutures.size());
+    for (Future<T> future : pFutures) {
+      results.add(getResult(future));
+    }
+    return results;
+  }
+
+
+  /**
+   * Recursively adds the component names found in a directory
+   * @param pDirectory directory to walk
+   * @param pPrefix component name prefix corresponding to the directory
+   * @param pNames set receiving the names
+   */
+  private static void collectNames (File pDirectory, String pPrefix, Set<String> pNames) {
+    File[] files = pDirectory.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      String fileName = file.getName();
+      if (file.isDirectory()) {
+        collectNames(file, pPrefix + "/" + fileName, pNames);
+      } else if (fileName.endsWith(EXTENSION) && file.canRead()) {
+        pNames.add(pPrefix + "/" + fileName.substring(0, fileName.length() - EXTENSION.length()));
+      }
+    }
+  } // end collectNames
+
+} // end ConfigTree
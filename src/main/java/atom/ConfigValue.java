@@ -0,0 +1,214 @@
+package atom;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Immutable value of a merged configuration property.
+ * A value is kept either as the raw text found in a layer or as a list of tokens built by the "+=" and "-=" operators:
+ * the two forms are converted lazily into each other so that scalar properties never pay for tokenization and list
+ * properties are never joined and split again between layers.
+ * Tokens are separated by commas; a comma preceded by a backslash is part of the token.
+ */
+public final class ConfigValue {
+
+  private static final char SEPARATOR = ',';
+  private static final char ESCAPE = '\\';
+
+  // raw text, null until computed if the value was built from tokens
+  private volatile String mText;
+
+  // tokens, null until computed if the value was built from text
+  private volatile List<String> mTokens;
+
+
+  /**
+   * Private constructor, use the factory methods
+   * @param pText raw text
+   * @param pTokens tokens
+   */
+  private ConfigValue (String pText, List<String> pTokens) {
+    mText = pText;
+    mTokens = pTokens;
+  }
+
+
+  /**
+   * Creates a value from the text found in a configuration layer
+   * @param pText raw text
+   * @return value
+   */
+  public static ConfigValue fromText (String pText) {
+    if (pText == null) {
+      throw new IllegalArgumentException("Parameter pText is null");
+    }
+    return new ConfigValue(pText, null);
+  }
+
+
+  /**
+   * Creates a value from a list of tokens
+   * @param pTokens tokens, copied
+   * @return value
+   */
+  public static ConfigValue fromTokens (List<String> pTokens) {
+    if (pTokens == null) {
+      throw new IllegalArgumentException("Parameter pTokens is null");
+    }
+    return new ConfigValue(null, Collections.unmodifiableList(new ArrayList<String>(pTokens)));
+  }
+
+
+  /**
+   * Returns the value as text: the raw text if the value was never modified by a list operation,
+   * otherwise the tokens joined by commas (commas inside tokens are escaped)
+   * @return text
+   */
+  public String getText () {
+    String text = mText;
+    if (text == null) {
+      text = join(mTokens);
+      mText = text;
+    }
+    return text;
+  }
+
+
+  /**
+   * Returns the value as an unmodifiable list of tokens
+   * @return tokens, empty if the text is empty
+   */
+  public List<String> getTokens () {
+    List<String> tokens = mTokens;
+    if (tokens == null) {
+      tokens = Collections.unmodifiableList(split(mText));
+      mTokens = tokens;
+    }
+    return tokens;
+  }
+
+
+  /**
+   * Returns a new value with the tokens of the given value appended to the tokens of this one
+   * @param pOther value to append
+   * @return new value
+   */
+  public ConfigValue append (ConfigValue pOther) {
+    List<String> mine = getTokens();
+    List<String> others = pOther.getTokens();
+    List<String> result = new ArrayList<String>(mine.size() + others.size());
+    result.addAll(mine);
+    result.addAll(others);
+    return new ConfigValue(null, Collections.unmodifiableList(result));
+  } // end append
+
+
+  /**
+   * Returns a new value with every occurrence of the tokens of the given value removed from the tokens of this one
+   * @param pOther value holding the tokens to remove
+   * @return new value
+   */
+  public ConfigValue remove (ConfigValue pOther) {
+    List<String> others = pOther.getTokens();
+    if (others.isEmpty()) {
+      return this;
+    }
+    // a single token is the common case, avoid building a set for it
+    List<String> result = new ArrayList<String>(getTokens());
+    if (others.size() == 1) {
+      result.removeAll(others);
+    } else {
+      result.removeAll(new HashSet<String>(others));
+    }
+    return new ConfigValue(null, Collections.unmodifiableList(result));
+  } // end remove
+
+
+  /**
+   * Splits a text around unescaped commas, unescaping the commas inside tokens
+   * @param pText text
+   * @return list of tokens, empty if the text is empty or made of separators only
+   */
+  static List<String> split (String pText) {
+    List<String> tokens = new ArrayList<String>();
+    int len = pText.length();
+    if (len == 0) {
+      return tokens;
+    }
+    StringBuilder buf = null;
+    int start = 0;
+    for (int i = 0; i < len; i++) {
+      char c = pText.charAt(i);
+      if (c == ESCAPE && i + 1 < len && pText.charAt(i + 1) == SEPARATOR) {
+        // escaped comma: copy what we have so far and keep the comma in the token
+        if (buf == null) {
+          buf = new StringBuilder();
+        }
+        buf.append(pText, start, i).append(SEPARATOR);
+        start = ++i + 1;
+      } else if (c == SEPARATOR) {
+        tokens.add(endToken(buf, pText, start, i));
+        buf = null;
+        start = i + 1;
+      }
+    }
+    tokens.add(endToken(buf, pText, start, len));
+
+    // trailing empty tokens are dropped, as String.split() always did for these values
+    int last = tokens.size() - 1;
+    while (last >= 0 && tokens.get(last).length() == 0) {
+      tokens.remove(last--);
+    }
+    return tokens;
+  } // end split
+
+
+  /**
+   * Completes a token during splitting
+   * @param pBuf buffer holding the unescaped beginning of the token, or null if the token has no escapes
+   * @param pText text being split
+   * @param pStart start of the remaining part of the token
+   * @param pEnd end of the token
+   * @return token
+   */
+  private static String endToken (StringBuilder pBuf, String pText, int pStart, int pEnd) {
+    if (pBuf == null) {
+      return pText.substring(pStart, pEnd);
+    }
+    return pBuf.append(pText, pStart, pEnd).toString();
+  }
+
+
+  /**
+   * Joins tokens with commas, escaping the commas inside tokens
+   * @param pTokens tokens
+   * @return text
+   */
+  static String join (List<String> pTokens) {
+    StringBuilder buf = new StringBuilder();
+    for (int i = 0; i < pTokens.size(); i++) {
+      if (i > 0) {
+        buf.append(SEPARATOR);
+      }
+      String token = pTokens.get(i);
+      if (token.indexOf(SEPARATOR) >= 0) {
+        buf.append(token.replace(",", "\\,"));
+      } else {
+        buf.append(token);
+      }
+    }
+    return buf.toString();
+  } // end join
+
+
+  /**
+   * Returns the text of this value
+   * @return text
+   */
+  public String toString () {
+    return getText();
+  }
+
+} // end ConfigValue
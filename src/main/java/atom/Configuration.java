@@ -0,0 +1,234 @@
+package atom;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Merged configuration of a component: maps property names to structured values.
+ * A configuration can be based on a parent configuration (a template), which is shared with every other configuration
+ * based on it and never modified: the configuration only stores the properties it overrides, and reads fall through
+ * to the parent for everything else
+ */
+public class Configuration {
+
+  // shared overrides of the configurations that override nothing
+  private static final CompactMap<ConfigValue> EMPTY = new CompactMap.Builder<ConfigValue>().build();
+
+  // shared parent configuration, null if none
+  private final Configuration mParent;
+
+  // overridden property values while the configuration is being merged, in the order they were first defined;
+  // a null value hides the parent value. Created on the first write, so a configuration that overrides nothing
+  // costs a single object
+  private Map<String,ConfigValue> mBuilding;
+
+  // overridden property values once the configuration is frozen
+  private CompactMap<ConfigValue> mValues;
+
+
+  /**
+   * No-args constructor, creates an empty configuration
+   */
+  public Configuration () {
+    this(null);
+  }
+
+
+  /**
+   * Creates a configuration based on the given parent
+   * @param pParent parent configuration, or null
+   */
+  public Configuration (Configuration pParent) {
+    mParent = pParent;
+  }
+
+
+  /**
+   * Creates a configuration holding the text values of the given properties
+   * @param pProperties properties
+   * @return configuration
+   */
+  public static Configuration fromProperties (Properties pProperties) {
+    Configuration config = new Configuration();
+    if (pProperties != null) {
+      for (String name : pProperties.stringPropertyNames()) {
+        config.put(name, ConfigValue.fromText(pProperties.getProperty(name)));
+      }
+    }
+    config.freeze();
+    return config;
+  }
+
+
+  /**
+   * Returns the text value of a property
+   * @param pName property name
+   * @return text value, or null if the property is not configured
+   */
+  public String getProperty (String pName) {
+    ConfigValue value = getValue(pName);
+    return (value == null ? null : value.getText());
+  }
+
+
+  /**
+   * Returns the structured value of a property
+   * @param pName property name
+   * @return value, or null if the property is not configured
+   */
+  public ConfigValue getValue (String pName) {
+    if (mValues != null) {
+      if (mValues.containsKey(pName)) {
+        return mValues.get(pName);
+      }
+    } else if (mBuilding != null && mBuilding.containsKey(pName)) {
+      return mBuilding.get(pName);
+    }
+    return (mParent == null ? null : mParent.getValue(pName));
+  }
+
+
+  /**
+   * Returns the names of all the configured properties, the inherited ones first
+   * @return unmodifiable set of property names
+   */
+  public Set<String> getPropertyNames () {
+    Set<String> names = (mParent == null ? new LinkedHashSet<String>() : new LinkedHashSet<String>(mParent.getPropertyNames()));
+    CompactMap<ConfigValue> values = getOverrides();
+    for (int i = 0; i < values.size(); i++) {
+      if (values.valueAt(i) == null) {
+        names.remove(values.keyAt(i));
+      } else {
+        names.add(values.keyAt(i));
+      }
+    }
+    return Collections.unmodifiableSet(names);
+  } // end getPropertyNames
+
+
+  /**
+   * Returns the properties stored by this configuration, not counting the inherited ones
+   * @return overridden values, null for the hidden inherited values
+   */
+  CompactMap<ConfigValue> getOverrides () {
+    if (mValues != null) {
+      return mValues;
+    }
+    return (mBuilding == null ? EMPTY : CompactMap.copyOf(mBuilding));
+  }
+
+
+  /**
+   * Returns true if no property is configured
+   * @return true or false
+   */
+  public boolean isEmpty () {
+    CompactMap<ConfigValue> values = getOverrides();
+    if (values.isEmpty()) {
+      return (mParent == null || mParent.isEmpty());
+    }
+    for (int i = 0; i < values.size(); i++) {
+      if (values.valueAt(i) != null) {
+        return false;
+      }
+    }
+    // all the overrides hide inherited values, count what's left
+    return getPropertyNames().isEmpty();
+  }
+
+
+  /**
+   * Returns the parent configuration
+   * @return parent configuration, or null if this configuration is not based on another one
+   */
+  public Configuration getParent () {
+    return mParent;
+  }
+
+
+  /**
+   * Returns the number of properties stored by this configuration, not counting the inherited ones
+   * @return number of overridden properties
+   */
+  public int getOverrideCount () {
+    return getOverrides().size();
+  }
+
+
+  /**
+   * Sets the value of a property, used while merging layers.
+   * Never called on a configuration once it has been published as a parent
+   * @param pName property name
+   * @param pValue property value
+   */
+  void put (String pName, ConfigValue pValue) {
+    if (mValues != null) {
+      throw new IllegalStateException("Configuration is frozen");
+    }
+    if (mBuilding == null) {
+      mBuilding = new LinkedHashMap<String,ConfigValue>();
+    }
+    mBuilding.put(pName, pValue);
+  }
+
+
+  /**
+   * Removes a property, used while merging layers
+   * @param pName property name
+   */
+  void remove (String pName) {
+    if (mParent != null && mParent.getValue(pName) != null) {
+      // hide the inherited value
+      put(pName, null);
+    } else if (mBuilding != null) {
+      mBuilding.remove(pName);
+    }
+  }
+
+
+  /**
+   * Makes this configuration read-only, moving its overrides to a compact immutable map
+   */
+  void freeze () {
+    if (mValues == null) {
+      mValues = (mBuilding == null ? EMPTY : CompactMap.copyOf(mBuilding));
+      mBuilding = null;
+    }
+  }
+
+
+  /**
+   * Returns a copy of this configuration as text properties
+   * @return properties
+   */
+  public Properties toProperties () {
+    Properties props = new Properties();
+    for (String name : getPropertyNames()) {
+      props.setProperty(name, getProperty(name));
+    }
+    return props;
+  }
+
+
+  /**
+   * Returns a textual representation of this configuration
+   * @return text representation
+   */
+  public String toString () {
+    StringBuilder buf = new StringBuilder();
+    buf.append("{");
+    for (String name : getPropertyNames()) {
+      if (buf.length() > 1) {
+        buf.append(", ");
+      }
+      buf.append(name).append("=").append(getProperty(name));
+    }
+    buf.append("}");
+    return buf.toString();
+  }
+
+} // end Configuration
@@ -0,0 +1,404 @@
+package atom;
+
+import java.io.File;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import atom.exception.AtomException;
+import atom.exception.ConfigurationException;
+
+/**
+ * Validates every component of a config path without instantiating anything: merges the configuration of each
+ * component, checks its $class and $scope, and type-checks each configured value against the properties of the class.
+ * All the problems are reported at once.
+ * Can be run from the command line, passing the layers of the config path as arguments:
+ * <pre>java -cp atom.jar:app.jar atom.ConfigurationValidator config localconfig</pre>
+ */
+public class ConfigurationValidator {
+
+  /**
+   * A problem found in the configuration of a component
+   */
+  public static class Problem {
+
+    private final String mComponentName;
+    private final String mPropertyName;
+    private final String mMessage;
+
+    public Problem (String pComponentName, String pPropertyName, String pMessage) {
+      mComponentName = pComponentName;
+      mPropertyName = pPropertyName;
+      mMessage = pMessage;
+    }
+
+    public String getComponentName () {
+      return mComponentName;
+    }
+
+    public String getPropertyName () {
+      return mPropertyName;
+    }
+
+    public String getMessage () {
+      return mMessage;
+    }
+
+    public String toString () {
+      return mComponentName + (mPropertyName == null ? "" : "." + mPropertyName) + ": " + mMessage;
+    }
+  } // end Problem
+
+
+  // the container whose config path is validated
+  private final Atom mAtom;
+
+  // the configurator used to convert values
+  private final BeanConfigurator mConfigurator;
+
+  // merged configurations, or the problem that prevented merging them
+  private final Map<String,Object> mConfigurations = new ConcurrentHashMap<String,Object>();
+
+
+  /**
+   * Constructor
+   * @param pAtom the container whose config path is validated
+   */
+  public ConfigurationValidator (Atom pAtom) {
+    if (pAtom == null) {
+      throw new AtomException("Parameter pAtom is null");
+    }
+    mAtom = pAtom;
+    mConfigurator = new BeanConfigurator();
+  }
+
+
+  /**
+   * Validates all the components, using one thread per available processor
+   * @return list of problems sorted by component name, empty if the configuration is valid
+   */
+  public List<Problem> validate () {
+    return validate(Runtime.getRuntime().availableProcessors());
+  }
+
+
+  /**
+   * Validates all the components
+   * @param pThreads number of threads walking the layers and validating the components
+   * @return list of problems sorted by component name, empty if the configuration is valid
+   */
+  public List<Problem> validate (int pThreads) {
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, pThreads));
+    try {
+      Set<String> names = new ConfigTree(mAtom.getConfigPath()).getComponentNames(executor);
+
+      // first merge everything, so that templates are known before validating the components
+      List<Future<Void>> merges = new ArrayList<Future<Void>>();
+      for (final String name : names) {
+        merges.add(executor.submit(new Callable<Void>() {
+          public Void call () {
+            merge(name);
+            return null;
+          }
+        }));
+      }
+      ConfigTree.getResults(merges);
+      Set<String> templates = new HashSet<String>();
+      for (Object config : mConfigurations.values()) {
+        if (config instanceof Configuration) {
+          String basedOn = ((Configuration) config).getProperty(Atom.BASED_ON_PROPERTY);
+          if (basedOn != null) {
+            templates.add(basedOn.trim());
+          }
+        }
+      }
+
+      // then validate each component
+      List<Future<List<Problem>>> validations = new ArrayList<Future<List<Problem>>>();
+      for (final String name : names) {
+        final boolean template = templates.contains(name);
+        validations.add(executor.submit(new Callable<List<Problem>>() {
+          public List<Problem> call () {
+            return validateComponent(name, template);
+          }
+        }));
+      }
+      List<Problem> problems = new ArrayList<Problem>();
+      for (List<Problem> componentProblems : ConfigTree.getResults(validations)) {
+        problems.addAll(componentProblems);
+      }
+      return problems;
+    } finally {
+      executor.shutdownNow();
+    }
+  } // end validate
+
+
+  /**
+   * Merges the configuration of a component, remembering the problem if it cannot be merged
+   * @param pName full component name
+   * @return merged configuration, or null if it cannot be merged
+   */
+  private Configuration merge (String pName) {
+    Object config = mConfigurations.get(pName);
+    if (config == null) {
+      try {
+        config = mAtom.mergeConfiguration(pName);
+      } catch (AtomException ae) {
+        config = new Problem(pName, null, ae.getMessage());
+      }
+      mConfigurations.put(pName, config);
+    }
+    return (config instanceof Configuration ? (Configuration) config : null);
+  } // end merge
+
+
+  /**
+   * Validates a single component
+   * @param pName full component name
+   * @param pTemplate true if other components are based on this one, in which case $class and $scope are optional
+   * @return problems found, empty if none
+   */
+  private List<Problem> validateComponent (String pName, boolean pTemplate) {
+    List<Problem> problems = new ArrayList<Problem>();
+    Configuration config = merge(pName);
+    if (config == null) {
+      problems.add((Problem) mConfigurations.get(pName));
+      return problems;
+    }
+
+    String scope = config.getProperty(Atom.SCOPE_PROPERTY);
+    if (scope == null) {
+      if (!pTemplate) {
+        problems.add(new Problem(pName, null, "missing $scope property"));
+      }
+    } else if (!Atom.isValidScope(scope)) {
+      problems.add(new Problem(pName, null, "unknown scope " + scope));
+    }
+
+    String startTimeout = config.getProperty(Atom.START_TIMEOUT_PROPERTY);
+    if (startTimeout != null) {
+      try {
+        Durations.toNanos(startTimeout);
+      } catch (ConfigurationException ce) {
+        problems.add(new Problem(pName, null, ce.getMessage()));
+      }
+    }
+
+    String startup = config.getProperty(Atom.STARTUP_PROPERTY);
+    if (startup != null) {
+      if (!Atom.BACKGROUND_STARTUP.equals(startup)) {
+        problems.add(new Problem(pName, null, "unknown startup " + startup + ", expected background"));
+      } else if (scope != null && !Atom.GLOBAL_SCOPE.equals(scope)) {
+        problems.add(new Problem(pName, null, "$startup only applies to global components"));
+      }
+    }
+
+    String warmup = config.getProperty(Atom.WARMUP_PROPERTY);
+    if (warmup != null) {
+      if (!"true".equals(warmup) && !"false".equals(warmup)) {
+        problems.add(new Problem(pName, null, "invalid $warmup " + warmup + ", expected true or false"));
+      } else if (Atom.GLOBAL_SCOPE.equals(scope)) {
+        problems.add(new Problem(pName, null, "$warmup only applies to session and request components"));
+      }
+    }
+
+    String retention = config.getProperty(Atom.RETENTION_PROPERTY);
+    if (retention != null) {
+      if (scope != null && !Atom.GLOBAL_SCOPE.equals(scope)) {
+        problems.add(new Problem(pName, null, "$retention only applies to global components"));
+      }
+      try {
+        Retention.parse(retention);
+      } catch (ConfigurationException ce) {
+        problems.add(new Problem(pName, null, ce.getMessage()));
+      }
+    }
+
+    String className = config.getProperty(Atom.CLASS_PROPERTY);
+    if (className == null) {
+      if (!pTemplate) {
+        problems.add(new Problem(pName, null, "missing $class property"));
+      }
+      return problems;
+    }
+    Class<?> clazz = ConfigTree.loadClass(className, false);
+    if (clazz == null) {
+      problems.add(new Problem(pName, null, "cannot load class " + className));
+      return problems;
+    }
+    if (clazz.isInterface() || Modifier.isAbstract(clazz.getModifiers())) {
+      problems.add(new Problem(pName, null, "class " + className + " cannot be instantiated"));
+    } else {
+      try {
+        clazz.getConstructor();
+      } catch (NoSuchMethodException nsme) {
+        problems.add(new Problem(pName, null, "class " + className + " has no public no-args constructor"));
+      }
+    }
+    validateMonitor(pName, clazz, config, problems);
+
+    BeanModel model = BeanModel.forClass(clazz);
+    for (String name : config.getPropertyNames()) {
+      if (name.startsWith("$")) {
+        continue;
+      }
+      boolean linked = name.endsWith("^");
+      boolean typed = name.endsWith(BeanConfigurator.TYPED_SUFFIX);
+      String propertyName = (linked || typed ? name.substring(0, name.length() - 1) : name);
+      BeanProperty property = model.getProperty(propertyName);
+      if (property == null || property.getWriteMethod() == null) {
+        problems.add(new Problem(pName, propertyName, "no writable property in class " + className));
+      } else if (typed) {
+        try {
+          mConfigurator.getInjectedType(property, config);
+        } catch (ConfigurationException ce) {
+          problems.add(new Problem(pName, propertyName, ce.getMessage()));
+        }
+      } else if (linked) {
+        validateLink(pName, property, config.getProperty(name), problems);
+      } else {
+        validateValue(pName, property, config.getValue(name), problems);
+      }
+    }
+    return problems;
+  } // end validateComponent
+
+
+  /**
+   * Type-checks the value of a property
+   * @param pName full component name
+   * @param pProperty bean property
+   * @param pValue configured value
+   * @param pProblems list receiving the problems
+   */
+  private void validateValue (String pName, BeanProperty pProperty, ConfigValue pValue, List<Problem> pProblems) {
+    Class<?> type = pProperty.getType();
+    if (!BeanConfigurator.isComponentReference(type)) {
+      try {
+        mConfigurator.convertValue(type, pValue);
+      } catch (ConfigurationException ce) {
+        pProblems.add(new Problem(pName, pProperty.getName(), ce.getMessage()));
+      }
+      return;
+    }
+
+    // references to other components must name a valid component of a compatible class
+    String reference = pValue.getText();
+    if (!BeanConfigurator.isComponentName(reference)) {
+      // not a reference, the property is left unset
+      return;
+    }
+    Configuration config = merge(reference);
+    if (config == null) {
+      pProblems.add(new Problem(pName, pProperty.getName(), "referenced component " + reference + " cannot be configured"));
+      return;
+    }
+    String className = config.getProperty(Atom.CLASS_PROPERTY);
+    Class clazz = (className == null ? null : ConfigTree.loadClass(className, false));
+    if (clazz != null && !type.isAssignableFrom(clazz)) {
+      pProblems.add(new Problem(pName, pProperty.getName(), "referenced component " + reference + " of class " + className
+          + " is not assignable to " + type.getName()));
+    } else if (clazz != null && !type.isInterface() && "true".equals(config.getProperty(Atom.MONITOR_PROPERTY))) {
+      pProblems.add(new Problem(pName, pProperty.getName(), "referenced component " + reference
+          + " is monitored, it can only be injected as one of its interfaces"));
+    }
+  } // end validateValue
+
+
+  /**
+   * Checks the monitoring of a component
+   * @param pName full component name
+   * @param pClass component class
+   * @param pConfig merged configuration
+   * @param pProblems list receiving the problems
+   */
+  private static void validateMonitor (String pName, Class pClass, Configuration pConfig, List<Problem> pProblems) {
+    String monitor = pConfig.getProperty(Atom.MONITOR_PROPERTY);
+    if (monitor != null && !"true".equals(monitor) && !"false".equals(monitor)) {
+      pProblems.add(new Problem(pName, null, "invalid $monitor " + monitor + ", expected true or false"));
+    } else if ("true".equals(monitor) && MonitoringHandler.getInterfaces(pClass).isEmpty()) {
+      pProblems.add(new Problem(pName, null, "class " + pClass.getName() + " implements no interface to monitor"));
+    }
+    String sampling = pConfig.getProperty(Atom.MONITOR_SAMPLING_PROPERTY);
+    if (sampling != null) {
+      int value;
+      try {
+        value = Integer.parseInt(sampling.trim());
+      } catch (NumberFormatException nfe) {
+        value = 0;
+      }
+      if (value < 1) {
+        pProblems.add(new Problem(pName, null, "invalid $monitorSampling " + sampling + ", expected a positive integer"));
+      }
+    }
+  } // end validateMonitor
+
+
+  /**
+   * Checks a linked property
+   * @param pName full component name
+   * @param pProperty bean property
+   * @param pLink value of the link, i.e. /other/Component.propertyName
+   * @param pProblems list receiving the problems
+   */
+  private void validateLink (String pName, BeanProperty pProperty, String pLink, List<Problem> pProblems) {
+    int idx = (pLink == null ? -1 : pLink.lastIndexOf("."));
+    if (idx < 0 || !pLink.startsWith("/")) {
+      pProblems.add(new Problem(pName, pProperty.getName(), "invalid link " + pLink));
+      return;
+    }
+    String componentName = pLink.substring(0, idx);
+    String propertyName = pLink.substring(idx + 1);
+    Configuration config = merge(componentName);
+    if (config == null) {
+      pProblems.add(new Problem(pName, pProperty.getName(), "linked component " + componentName + " cannot be configured"));
+      return;
+    }
+    String className = config.getProperty(Atom.CLASS_PROPERTY);
+    Class clazz = (className == null ? null : ConfigTree.loadClass(className, false));
+    if (clazz != null) {
+      BeanProperty source = BeanModel.forClass(clazz).getProperty(propertyName);
+      if (source == null || source.getReadMethod() == null) {
+        pProblems.add(new Problem(pName, pProperty.getName(), "no readable property " + propertyName + " in class " + className));
+      }
+    }
+  } // end validateLink
+
+
+  /**
+   * Command-line entry point: validates the config path made of the given layers, prints the problems and exits
+   * with status 1 if any was found
+   * @param pArgs layers of the config path, in order
+   */
+  public static void main (String[] pArgs) {
+    if (pArgs.length == 0) {
+      System.err.println("Usage: java atom.ConfigurationValidator layer [layer...]");
+      System.exit(2);
+    }
+    Atom atom = new Atom();
+    for (String arg : pArgs) {
+      File layer = new File(arg);
+      if (!layer.isDirectory()) {
+        System.err.println("Not a directory: " + arg);
+        System.exit(2);
+      }
+      atom.addToConfigPath(layer);
+    }
+    long start = System.currentTimeMillis();
+    List<Problem> problems = new ConfigurationValidator(atom).validate();
+    for (Problem problem : problems) {
+      System.out.println(problem);
+    }
+    System.out.println(problems.size() + " problem(s) found in " + (System.currentTimeMillis() - start) + " ms");
+    System.exit(problems.isEmpty() ? 0 : 1);
+  } // end main
+
+} // end ConfigurationValidator
@@ -0,0 +1,410 @@
+package atom;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the converters turning configured values into property values.
+ * Only needs java.base: the java.beans property editors are consulted for the types without a converter only
+ * once the PropertyEditors adapter has been installed
+ */
+public class Converters {
+
+  /**
+   * Converts the text of a configured value. Converters are stateless and shared between threads
+   */
+  public interface Converter {
+
+    /**
+     * Converts a configured value
+     * @param pText text of the value, may be null
+     * @return converted value
+     * @throws IllegalArgumentException if the text cannot be converted
+     */
+    Object fromText (String pText);
+  }
+
+
+  /**
+   * Implemented by the converters of multi-valued types, which can be given the tokens of a configured value
+   * instead of splitting its text again
+   */
+  public interface TokenConverter extends Converter {
+
+    /**
+     * Converts the tokens of a configured value
+     * @param pTokens tokens, never null
+     * @return converted value
+     */
+    Object fromTokens (List<String> pTokens);
+  }
+
+
+  /**
+   * Finds converters for the types that have none registered
+   */
+  public interface Fallback {
+
+    /**
+     * Returns a converter for the given type
+     * @param pType property type
+     * @return converter, or null if there is none
+     */
+    Converter findConverter (Class pType);
+  }
+
+
+  // registered converters by type
+  private static final ConcurrentHashMap<Class,Converter> sConverters = new ConcurrentHashMap<Class,Converter>();
+
+  // converters of the enum types, created on first use
+  private static final ConcurrentHashMap<Class,Converter> sEnumConverters = new ConcurrentHashMap<Class,Converter>();
+
+  // lookup for the other types, null if none is installed
+  private static volatile Fallback sFallback;
+
+  static {
+    register(Short.TYPE, new ShortConverter());
+    register(Short.class, new ShortConverter());
+    register(Integer.TYPE, new IntegerConverter());
+    register(Integer.class, new IntegerConverter());
+    register(Long.TYPE, new LongConverter());
+    register(Long.class, new LongConverter());
+    register(Float.TYPE, new FloatConverter());
+    register(Float.class, new FloatConverter());
+    register(Double.TYPE, new DoubleConverter());
+    register(Double.class, new DoubleConverter());
+    register(Byte.TYPE, new ByteConverter());
+    register(Byte.class, new ByteConverter());
+    register(Boolean.TYPE, new BooleanConverter());
+    register(Boolean.class, new BooleanConverter());
+    register(String.class, new StringConverter());
+    register(List.class, new ListConverter());
+    register(ArrayList.class, new ListConverter());
+    register(Set.class, new SetConverter());
+    register(HashSet.class, new SetConverter());
+    register(Map.class, new MapConverter());
+    register(HashMap.class, new MapConverter());
+    register(Properties.class, new PropertiesConverter());
+    register(Object.class, new StringConverter());
+    register(Date.class, new DateConverter());
+    register(File.class, new FileConverter());
+  }
+
+
+  /**
+   * Registers the converter of a type, replacing any previous one
+   * @param pType property type
+   * @param pConverter converter
+   */
+  public static void register (Class pType, Converter pConverter) {
+    sConverters.put(pType, pConverter);
+  }
+
+
+  /**
+   * Installs the lookup of the converters for the types that have none registered
+   * @param pFallback lookup, or null to remove it
+   */
+  public static void setFallback (Fallback pFallback) {
+    sFallback = pFallback;
+  }
+
+
+  /**
+   * Finds the converter of a type
+   * @param pType property type
+   * @return converter, or null if values of the type cannot be converted
+   */
+  public static Converter getConverter (Class pType) {
+    if (pType == null) {
+      return null;
+    }
+    Converter converter = sConverters.get(pType);
+    if (converter != null) {
+      return converter;
+    }
+    if (pType.isEnum()) {
+      converter = sEnumConverters.get(pType);
+      if (converter == null) {
+        converter = new EnumConverter(pType);
+        sEnumConverters.put(pType, converter);
+      }
+      return converter;
+    }
+    Fallback fallback = sFallback;
+    return (fallback == null ? null : fallback.findConverter(pType));
+  } // end getConverter
+
+
+  /**
+   * Converts a configured value, handing its tokens to the converters of multi-valued types
+   * @param pConverter converter
+   * @param pValue configured value
+   * @return converted value
+   */
+  static Object convert (Converter pConverter, ConfigValue pValue) {
+    if (pConverter instanceof TokenConverter) {
+      return ((TokenConverter) pConverter).fromTokens(pValue.getTokens());
+    }
+    return pConverter.fromText(pValue.getText());
+  }
+
+
+  public static class ShortConverter implements Converter {
+    public Object fromText (String pText) {
+      return (isBlank(pText) ? null : Short.valueOf(pText.trim()));
+    }
+  }
+
+
+  public static class IntegerConverter implements Converter {
+    public Object fromText (String pText) {
+      return (isBlank(pText) ? null : Integer.valueOf(pText.trim()));
+    }
+  }
+
+
+  public static class LongConverter implements Converter {
+    public Object fromText (String pText) {
+      return (isBlank(pText) ? null : Long.valueOf(pText.trim()));
+    }
+  }
+
+
+  public static class FloatConverter implements Converter {
+    public Object fromText (String pText) {
+      return (isBlank(pText) ? null : Float.valueOf(pText.trim()));
+    }
+  }
+
+
+  public static class DoubleConverter implements Converter {
+    public Object fromText (String pText) {
+      return (isBlank(pText) ? null : Double.valueOf(pText.trim()));
+    }
+  }
+
+
+  /**
+   * Converts bytes, in decimal, hexadecimal (0x) or octal (0) notation
+   */
+  public static class ByteConverter implements Converter {
+    public Object fromText (String pText) {
+      return (isBlank(pText) ? null : Byte.decode(pText.trim()));
+    }
+  }
+
+
+  public static class BooleanConverter implements Converter {
+    public Object fromText (String pText) {
+      return (pText != null && pText.trim().equalsIgnoreCase("true") ? Boolean.TRUE : Boolean.FALSE);
+    }
+  }
+
+
+  /**
+   * Converts strings, and objects which are configured as strings
+   */
+  public static class StringConverter implements Converter {
+    public Object fromText (String pText) {
+      return pText;
+    }
+  }
+
+
+  /**
+   * Converts lists: strings separated by commas (commas contained in list values must be escaped with a backslash)
+   */
+  public static class ListConverter implements TokenConverter {
+    public Object fromText (String pText) {
+      return (pText == null ? null : fromTokens(ConfigValue.split(pText)));
+    }
+
+    public Object fromTokens (List<String> pTokens) {
+      return (pTokens.isEmpty() ? Collections.EMPTY_LIST : new ArrayList<String>(pTokens));
+    }
+  }
+
+
+  /**
+   * Converts sets: strings separated by commas (commas contained in set values must be escaped with a backslash)
+   */
+  public static class SetConverter implements TokenConverter {
+    public Object fromText (String pText) {
+      return (pText == null ? null : fromTokens(ConfigValue.split(pText)));
+    }
+
+    public Object fromTokens (List<String> pTokens) {
+      return (pTokens.isEmpty() ? Collections.EMPTY_SET : new HashSet<String>(pTokens));
+    }
+  }
+
+
+  /**
+   * Converts maps, expressed as lists of key=value pairs where the tuples are separated by commas
+   */
+  public static class MapConverter implements TokenConverter {
+    public Object fromText (String pText) {
+      if (pText == null) {
+        return null;
+      }
+      return ("".equals(pText.trim()) ? Collections.EMPTY_MAP : fromTokens(ConfigValue.split(pText)));
+    }
+
+    public Object fromTokens (List<String> pTokens) {
+      if (pTokens.isEmpty()) {
+        return Collections.EMPTY_MAP;
+      }
+      Map<String,String> map = new HashMap<String,String>();
+      putPairs(map, pTokens);
+      return map;
+    }
+  }
+
+
+  /**
+   * Converts properties, expressed as lists of key=value pairs where the tuples are separated by commas
+   */
+  public static class PropertiesConverter implements TokenConverter {
+    public Object fromText (String pText) {
+      return (pText == null ? null : fromTokens(ConfigValue.split(pText)));
+    }
+
+    public Object fromTokens (List<String> pTokens) {
+      Properties props = new Properties();
+      putPairs(props, pTokens);
+      return props;
+    }
+  }
+
+
+  /**
+   * Converts dates in RFC 3339 format (yyyy-MM-dd HH:mm:ss) or in yyyy-MM-dd format
+   */
+  public static class DateConverter implements Converter {
+    private static final String DEFAULT_DATE_FORMAT = "yyyy-MM-dd";
+    private static final String RFC3339_FORMAT = "yyyy-MM-dd HH:mm:ss";
+
+    public Object fromText (String pText) {
+      if (isBlank(pText)) {
+        return null;
+      }
+      // put the most-specific formats first, if they fail the less-specific will have a go
+      String[] formats = {RFC3339_FORMAT, DEFAULT_DATE_FORMAT};
+      for (String format : formats) {
+        try {
+          return new SimpleDateFormat(format).parse(pText);
+        } catch (ParseException pe) {
+          // exception is ignored deliberately, the next format is tried
+        }
+      }
+      return null;
+    }
+  }
+
+
+  /**
+   * Converts files. Braces in the value are substituted with the value of the system property they indicate:
+   * {atom.home} is substituted with the value of System.getProperty("atom.home")
+   */
+  public static class FileConverter implements Converter {
+    public Object fromText (String pText) {
+      if (pText == null || "".equals(pText)) {
+        return null;
+      }
+      String path = pText;
+      if (path.contains("{")) {
+        int start;
+        while ((start = path.indexOf("{")) >= 0) {
+          int end = path.indexOf("}");
+          if (end < 0) {
+            throw new IllegalArgumentException(path);
+          }
+          String propertyValue = System.getProperty(path.substring(start + 1, end));
+          if (propertyValue == null) {
+            throw new IllegalArgumentException(path.substring(start + 1, end));
+          }
+          path = path.substring(0, start) + propertyValue + path.substring(end + 1);
+        }
+        try {
+          return new File(path).getCanonicalFile();
+        } catch (IOException ioe) {
+          throw new IllegalArgumentException(ioe.toString());
+        }
+      }
+
+      // the file names may be expressed with forward slashes, which will be automatically converted
+      // if the separator is different
+      if (path.endsWith("/")) {
+        path = path.substring(0, path.length() - 1);
+      }
+      if (File.separatorChar != '/') {
+        path = path.replace('/', File.separatorChar);
+      }
+      return new File(path);
+    } // end fromText
+  }
+
+
+  /**
+   * Converts the constants of an enum type, by name
+   */
+  public static class EnumConverter implements Converter {
+    private final Class mType;
+
+    public EnumConverter (Class pType) {
+      mType = pType;
+    }
+
+    @SuppressWarnings("unchecked")
+    public Object fromText (String pText) {
+      return (isBlank(pText) ? null : Enum.valueOf(mType, pText.trim()));
+    }
+  }
+
+
+  /**
+   * Returns true if a text is null or only made of whitespace
+   * @param pText text
+   * @return true or false
+   */
+  private static boolean isBlank (String pText) {
+    return pText == null || pText.trim().length() == 0;
+  }
+
+
+  /**
+   * Puts key=value pairs in a map
+   * @param pMap the map to fill
+   * @param pPairs the string pairs; the value of a pair without = is null
+   */
+  @SuppressWarnings("unchecked")
+  static void putPairs (Map pMap, List<String> pPairs) {
+    for (String pair : pPairs) {
+      String[] splitPair = pair.split("=");
+      if (splitPair.length >= 1) {
+        // allows the value to be null or empty
+        String key = splitPair[0];
+        String value = null;
+        if (splitPair.length == 2) {
+          value = splitPair[1];
+        }
+        pMap.put(key, value);
+      }
+    }
+  } // end putPairs
+
+} // end Converters
@@ -0,0 +1,53 @@
+package atom;
+
+import java.util.concurrent.TimeUnit;
+import atom.exception.ConfigurationException;
+
+/**
+ * Parses the durations of the configuration files: a number followed by a unit among ms, s, m and h,
+ * milliseconds by default. i.e. 500ms, 30s, 10m
+ */
+final class Durations {
+
+  /**
+   * No instances
+   */
+  private Durations () {
+    //
+  }
+
+
+  /**
+   * Parses a duration
+   * @param pValue configured duration
+   * @return duration in nanoseconds, positive
+   * @throws ConfigurationException if the value is not a positive duration
+   */
+  static long toNanos (String pValue) throws ConfigurationException {
+    String value = pValue.trim();
+    TimeUnit unit = TimeUnit.MILLISECONDS;
+    if (value.endsWith("ms")) {
+      value = value.substring(0, value.length() - 2);
+    } else if (value.endsWith("s")) {
+      unit = TimeUnit.SECONDS;
+      value = value.substring(0, value.length() - 1);
+    } else if (value.endsWith("m")) {
+      unit = TimeUnit.MINUTES;
+      value = value.substring(0, value.length() - 1);
+    } else if (value.endsWith("h")) {
+      unit = TimeUnit.HOURS;
+      value = value.substring(0, value.length() - 1);
+    }
+    long duration;
+    try {
+      duration = Long.parseLong(value.trim());
+    } catch (NumberFormatException nfe) {
+      throw new ConfigurationException("Invalid duration " + pValue, nfe);
+    }
+    if (duration <= 0) {
+      throw new ConfigurationException("Duration " + pValue + " is not positive");
+    }
+    return unit.toNanos(duration);
+  } // end toNanos
+
+} // end Durations
@@ -0,0 +1,152 @@
+package atom;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of durations in nanoseconds, recorded without locking. Each power of two is split into SUB_BUCKETS
+ * buckets, so that a percentile is known within 25% whatever the range of the durations. Other positive values,
+ * such as the bytes of the .allocated histograms, are recorded the same way and read through the same methods
+ */
+public class Histogram {
+
+  // buckets per power of two
+  private static final int SUB_BUCKETS = 4;
+  private static final int SUB_BUCKET_BITS = 2;
+
+  // enough buckets for any positive long
+  private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  // number of durations per bucket
+  private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKETS);
+
+  private final LongAdder mCount = new LongAdder();
+  private final LongAdder mTotal = new LongAdder();
+  private final AtomicLong mMax = new AtomicLong();
+
+
+  /**
+   * No-args constructor
+   */
+  public Histogram () {
+    //
+  }
+
+
+  /**
+   * Records a duration
+   * @param pNanos duration in nanoseconds, negative values are recorded as 0
+   */
+  public void record (long pNanos) {
+    long nanos = Math.max(0, pNanos);
+    mBuckets.incrementAndGet(getBucket(nanos));
+    mCount.increment();
+    mTotal.add(nanos);
+    long max = mMax.get();
+    while (nanos > max && !mMax.compareAndSet(max, nanos)) {
+      max = mMax.get();
+    }
+  }
+
+
+  /**
+   * Returns the number of recorded durations
+   * @return count
+   */
+  public long getCount () {
+    return mCount.sum();
+  }
+
+
+  /**
+   * Returns the sum of the recorded durations
+   * @return nanoseconds
+   */
+  public long getTotalNanos () {
+    return mTotal.sum();
+  }
+
+
+  /**
+   * Returns the longest recorded duration
+   * @return nanoseconds, 0 if none was recorded
+   */
+  public long getMaxNanos () {
+    return mMax.get();
+  }
+
+
+  /**
+   * Returns the mean of the recorded durations
+   * @return nanoseconds, 0 if none was recorded
+   */
+  public long getMeanNanos () {
+    long count = getCount();
+    return (count == 0 ? 0 : getTotalNanos() / count);
+  }
+
+
+  /**
+   * Returns a percentile of the recorded durations, as the upper bound of the bucket it falls in
+   * @param pPercentile percentile between 0 and 100, i.e. 99.9
+   * @return nanoseconds, 0 if none was recorded
+   */
+  public long getPercentile (double pPercentile) {
+    long count = getCount();
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(pPercentile / 100 * count));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += mBuckets.get(i);
+      if (seen >= rank) {
+        return Math.min(getUpperBound(i), getMaxNanos());
+      }
+    }
+    return getMaxNanos();
+  } // end getPercentile
+
+
+  /**
+   * Returns the bucket of a duration
+   * @param pNanos duration, not negative
+   * @return bucket index
+   */
+  static int getBucket (long pNanos) {
+    if (pNanos < SUB_BUCKETS) {
+      return (int) pNanos;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(pNanos);
+    int subBucket = (int) (pNanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+
+  /**
+   * Returns the largest duration of a bucket
+   * @param pBucket bucket index
+   * @return nanoseconds
+   */
+  static long getUpperBound (int pBucket) {
+    if (pBucket < SUB_BUCKETS) {
+      return pBucket;
+    }
+    int exponent = pBucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    int subBucket = pBucket % SUB_BUCKETS;
+    long lower = (long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    return lower + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+  }
+
+
+  /**
+   * Returns a textual representation of this histogram
+   * @return count, mean, percentiles and max in nanoseconds
+   */
+  public String toString () {
+    return "count=" + getCount() + " mean=" + getMeanNanos() + "ns p50=" + getPercentile(50) + "ns p99="
+        + getPercentile(99) + "ns max=" + getMaxNanos() + "ns";
+  }
+
+} // end Histogram
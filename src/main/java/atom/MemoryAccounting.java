@@ -0,0 +1,234 @@
+package atom;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+import atom.exception.AtomException;
+
+/**
+ * Estimates the memory retained by the components a container creates, and enforces the quota of the session scopes.
+ * The first ALWAYS_MEASURED instances of a class are measured, then one instance out of the sampling on average; the
+ * others are charged the mean size of their class. Each scope adds up the sizes of its components as they are
+ * registered and unregistered, so that nothing is walked again to know its total
+ */
+class MemoryAccounting {
+
+  // instances of a class measured before sampling them
+  private static final int ALWAYS_MEASURED = 4;
+
+  // objects walked at most per component
+  private static final int MAX_OBJECTS = 100000;
+
+  // counters of the container
+  private final Metrics mMetrics;
+
+  // one creation out of mSampling is measured
+  private volatile int mSampling = 1;
+
+  // quota of each session scope in bytes, 0 for none
+  private volatile long mSessionQuota;
+
+  // true to passivate the oldest components of a session over its quota, false to reject the creation
+  private volatile boolean mPassivate;
+
+  // names of the components being created by each thread, innermost last
+  private final ThreadLocal<List<String>> mCreating = new ThreadLocal<List<String>>() {
+    protected List<String> initialValue () {
+      return new ArrayList<String>();
+    }
+  };
+
+  // estimates by component class name
+  private final ConcurrentHashMap<String,SizeEstimate> mEstimates = new ConcurrentHashMap<String,SizeEstimate>();
+
+
+  /**
+   * Constructor
+   * @param pMetrics counters of the container
+   */
+  MemoryAccounting (Metrics pMetrics) {
+    mMetrics = pMetrics;
+  }
+
+
+  /**
+   * Sets how often creations are measured
+   * @param pSampling one creation out of pSampling is measured, 1 to measure them all
+   */
+  void setSampling (int pSampling) {
+    if (pSampling < 1) {
+      throw new AtomException("Sampling " + pSampling + " should be at least 1");
+    }
+    mSampling = pSampling;
+  }
+
+
+  /**
+   * Sets the quota of the session scopes
+   * @param pBytes quota of each session scope, 0 for none
+   * @param pPolicy Atom.QUOTA_REJECT or Atom.QUOTA_PASSIVATE
+   */
+  void setSessionQuota (long pBytes, String pPolicy) {
+    if (pBytes < 0) {
+      throw new AtomException("Session quota " + pBytes + " is negative");
+    }
+    if (!Atom.QUOTA_REJECT.equals(pPolicy) && !Atom.QUOTA_PASSIVATE.equals(pPolicy)) {
+      throw new AtomException("Unknown quota policy " + pPolicy + ", expected " + Atom.QUOTA_REJECT + " or "
+          + Atom.QUOTA_PASSIVATE);
+    }
+    mPassivate = Atom.QUOTA_PASSIVATE.equals(pPolicy);
+    mSessionQuota = pBytes;
+  }
+
+
+  /**
+   * Estimates the size of a new component, measuring it or charging it the mean size of its class
+   * @param pComponent component, not registered yet
+   * @param pScope scope the component is to be registered in
+   * @return estimated size in bytes
+   */
+  long estimate (Object pComponent, Scope pScope) {
+    SizeEstimate estimate = getEstimate(pComponent.getClass().getName());
+    int sampling = mSampling;
+    if (estimate.getSamples() < ALWAYS_MEASURED || sampling <= 1 || ThreadLocalRandom.current().nextInt(sampling) == 0) {
+      return measure(pComponent, pScope);
+    }
+    return estimate.getMeanBytes();
+  }
+
+
+  /**
+   * Measures the size of a component and records it in the estimate of its class. The walk stops at the components
+   * registered in the scope hierarchy, which each scope tells by identity without copying its mappings
+   * @param pComponent component
+   * @param pScope scope of the component
+   * @return estimated size in bytes
+   */
+  long measure (final Object pComponent, final Scope pScope) {
+    long size = SizeEstimator.estimate(pComponent, new Predicate<Object>() {
+      public boolean test (Object pObject) {
+        if (pObject == pComponent) {
+          return false;
+        }
+        for (Scope scope = pScope; scope != null; scope = scope.getParentScope()) {
+          if (scope.isRegistered(pObject)) {
+            return true;
+          }
+        }
+        return false;
+      }
+    }, MAX_OBJECTS);
+    getEstimate(pComponent.getClass().getName()).record(size);
+    return size;
+  }
+
+
+  /**
+   * Rejects the creation of a component that would bring a session scope over its quota, with the reject policy
+   * @param pName full component name
+   * @param pSize estimated size of the component
+   * @param pScope scope the component is to be registered in
+   */
+  void checkQuota (String pName, long pSize, Scope pScope) {
+    long quota = mSessionQuota;
+    if (quota == 0 || mPassivate || !Atom.SESSION_SCOPE.equals(pScope.getName())) {
+      return;
+    }
+    long total = pScope.getEstimatedSize() + pSize;
+    if (total > quota) {
+      mMetrics.increment(Atom.MEMORY_REJECTIONS_COUNTER);
+      throw new AtomException("Component " + pName + " would bring its session scope to " + total
+          + " bytes, over the quota of " + quota + " bytes");
+    }
+  }
+
+
+  /**
+   * Records that the current thread starts creating a component
+   * @param pName full component name
+   */
+  void beginCreation (String pName) {
+    mCreating.get().add(pName);
+  }
+
+
+  /**
+   * Records that the current thread is done creating a component, created or not
+   */
+  void endCreation () {
+    List<String> creating = mCreating.get();
+    creating.remove(creating.size() - 1);
+  }
+
+
+  /**
+   * Passivates the oldest components of a session scope over its quota, with the passivate policy. The components
+   * referenced by another component of the scope, or by a component the current thread is creating, are kept:
+   * their holders would be left with stopped instances. The components of narrower scopes are not looked at
+   * @param pName full component name just registered, kept
+   * @param pScope scope of the component
+   * @param pAtom container, telling the references of the components
+   * @return sorted map of the names of the passivated components to the components
+   */
+  Map<String,Object> enforceQuota (String pName, Scope pScope, Atom pAtom) {
+    long quota = mSessionQuota;
+    if (quota == 0 || !mPassivate || !Atom.SESSION_SCOPE.equals(pScope.getName())
+        || pScope.getEstimatedSize() <= quota) {
+      return Collections.emptyMap();
+    }
+    Map<String,Object> passivated = new TreeMap<String,Object>();
+    Map<String,Object> round;
+    do {
+      // a component left unreferenced by the previous round can go in the next one
+      Set<String> pinned = new HashSet<String>(mCreating.get());
+      if (pName != null) {
+        pinned.add(pName);
+      }
+      Set<String> holders = new HashSet<String>(pinned);
+      holders.addAll(pScope.getComponents("/").keySet());
+      for (String holder : holders) {
+        pinned.addAll(pAtom.getComponentDependencies(holder));
+      }
+      round = pScope.passivate(pinned, quota);
+      passivated.putAll(round);
+    } while (!round.isEmpty() && pScope.getEstimatedSize() > quota);
+    mMetrics.add(Atom.MEMORY_PASSIVATIONS_COUNTER, passivated.size());
+    return passivated;
+  } // end enforceQuota
+
+
+  /**
+   * Returns the estimate of a class, creating it on first use
+   * @param pClassName component class name
+   * @return estimate
+   */
+  private SizeEstimate getEstimate (String pClassName) {
+    SizeEstimate estimate = mEstimates.get(pClassName);
+    if (estimate == null) {
+      SizeEstimate created = new SizeEstimate(pClassName);
+      estimate = mEstimates.putIfAbsent(pClassName, created);
+      if (estimate == null) {
+        estimate = created;
+      }
+    }
+    return estimate;
+  }
+
+
+  /**
+   * Returns the estimates by class
+   * @return map of component class names to estimates
+   */
+  Map<String,SizeEstimate> getEstimates () {
+    return mEstimates;
+  }
+
+} // end MemoryAccounting
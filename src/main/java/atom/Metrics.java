@@ -0,0 +1,116 @@
+package atom;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Named counters and histograms of a container, i.e. retention.evictions. Counters are striped, so that threads
+ * incrementing the same counter don't contend on it, and both are created on first use
+ */
+public class Metrics {
+
+  // counters by name
+  private final ConcurrentHashMap<String,LongAdder> mCounters = new ConcurrentHashMap<String,LongAdder>();
+
+  // histograms by name
+  private final ConcurrentHashMap<String,Histogram> mHistograms = new ConcurrentHashMap<String,Histogram>();
+
+
+  /**
+   * No-args constructor
+   */
+  public Metrics () {
+    //
+  }
+
+
+  /**
+   * Increments a counter
+   * @param pName counter name
+   */
+  public void increment (String pName) {
+    getCounter(pName).increment();
+  }
+
+
+  /**
+   * Adds to a counter
+   * @param pName counter name
+   * @param pValue value to add
+   */
+  public void add (String pName, long pValue) {
+    getCounter(pName).add(pValue);
+  }
+
+
+  /**
+   * Returns the value of a counter
+   * @param pName counter name
+   * @return value, 0 if the counter was never incremented
+   */
+  public long getCount (String pName) {
+    LongAdder counter = mCounters.get(pName);
+    return (counter == null ? 0 : counter.sum());
+  }
+
+
+  /**
+   * Returns the values of all the counters
+   * @return sorted map of counter names to values
+   */
+  public Map<String,Long> getCounters () {
+    Map<String,Long> result = new TreeMap<String,Long>();
+    for (Map.Entry<String,LongAdder> entry : mCounters.entrySet()) {
+      result.put(entry.getKey(), entry.getValue().sum());
+    }
+    return result;
+  }
+
+
+  /**
+   * Returns a histogram, creating it if necessary
+   * @param pName histogram name
+   * @return histogram
+   */
+  public Histogram getHistogram (String pName) {
+    Histogram histogram = mHistograms.get(pName);
+    if (histogram == null) {
+      Histogram created = new Histogram();
+      histogram = mHistograms.putIfAbsent(pName, created);
+      if (histogram == null) {
+        histogram = created;
+      }
+    }
+    return histogram;
+  } // end getHistogram
+
+
+  /**
+   * Returns all the histograms
+   * @return sorted map of histogram names to histograms
+   */
+  public Map<String,Histogram> getHistograms () {
+    return new TreeMap<String,Histogram>(mHistograms);
+  }
+
+
+  /**
+   * Returns a counter, creating it if necessary. Kept by the callers that increment it often, to look it up once
+   * @param pName counter name
+   * @return counter
+   */
+  LongAdder getCounter (String pName) {
+    LongAdder counter = mCounters.get(pName);
+    if (counter == null) {
+      LongAdder created = new LongAdder();
+      counter = mCounters.putIfAbsent(pName, created);
+      if (counter == null) {
+        counter = created;
+      }
+    }
+    return counter;
+  } // end getCounter
+
+} // end Metrics
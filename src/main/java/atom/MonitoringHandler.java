@@ -0,0 +1,166 @@
+package atom;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Times the calls to a component configured with $monitor=true, through a proxy implementing all its interfaces.
+ * Per method name, the calls and the errors are counted in the counters monitor./component/Name.method.calls and
+ * .errors, and the durations recorded in the histogram monitor./component/Name.method. With $monitorSampling=n only
+ * one call out of n on average is timed, the counts stay exact
+ */
+class MonitoringHandler implements InvocationHandler {
+
+  /**
+   * Counters and histogram of a method, looked up once
+   */
+  private static final class MethodStats {
+    final LongAdder mCalls;
+    final LongAdder mErrors;
+    final Histogram mLatencies;
+
+    MethodStats (Metrics pMetrics, String pName) {
+      mCalls = pMetrics.getCounter(pName + ".calls");
+      mErrors = pMetrics.getCounter(pName + ".errors");
+      mLatencies = pMetrics.getHistogram(pName);
+    }
+  } // end MethodStats
+
+
+  // component called through the proxy
+  private final Object mTarget;
+
+  // prefix of the metrics of the component, i.e. monitor./app/Service
+  private final String mPrefix;
+
+  // counters and histograms of the container
+  private final Metrics mMetrics;
+
+  // one call out of mSampling is timed
+  private final int mSampling;
+
+  // statistics by method
+  private final ConcurrentHashMap<Method,MethodStats> mStats = new ConcurrentHashMap<Method,MethodStats>();
+
+
+  /**
+   * Constructor
+   * @param pName full component name
+   * @param pTarget component
+   * @param pMetrics metrics of the container
+   * @param pSampling one call out of pSampling is timed, 1 to time them all
+   */
+  private MonitoringHandler (String pName, Object pTarget, Metrics pMetrics, int pSampling) {
+    mTarget = pTarget;
+    mPrefix = Atom.MONITOR_PREFIX + pName;
+    mMetrics = pMetrics;
+    mSampling = pSampling;
+  }
+
+
+  /**
+   * Wraps a component in a monitoring proxy
+   * @param pName full component name
+   * @param pComponent component
+   * @param pMetrics metrics of the container
+   * @param pSampling one call out of pSampling is timed, 1 to time them all
+   * @return proxy, or null if the component implements no interface
+   */
+  static Object wrap (String pName, Object pComponent, Metrics pMetrics, int pSampling) {
+    Set<Class> interfaces = getInterfaces(pComponent.getClass());
+    if (interfaces.isEmpty()) {
+      return null;
+    }
+    return Proxy.newProxyInstance(pComponent.getClass().getClassLoader(), interfaces.toArray(new Class[interfaces.size()]),
+        new MonitoringHandler(pName, pComponent, pMetrics, pSampling));
+  }
+
+
+  /**
+   * Returns the component behind a monitoring proxy
+   * @param pComponent component, maybe a monitoring proxy
+   * @return the component itself
+   */
+  static Object unwrap (Object pComponent) {
+    if (pComponent != null && Proxy.isProxyClass(pComponent.getClass())) {
+      InvocationHandler handler = Proxy.getInvocationHandler(pComponent);
+      if (handler instanceof MonitoringHandler) {
+        return ((MonitoringHandler) handler).mTarget;
+      }
+    }
+    return pComponent;
+  }
+
+
+  /**
+   * Returns the interfaces of a class and of its superclasses
+   * @param pClass class
+   * @return interfaces, in declaration order
+   */
+  static Set<Class> getInterfaces (Class pClass) {
+    Set<Class> interfaces = new LinkedHashSet<Class>();
+    for (Class clazz = pClass; clazz != null; clazz = clazz.getSuperclass()) {
+      for (Class iface : clazz.getInterfaces()) {
+        interfaces.add(iface);
+      }
+    }
+    return interfaces;
+  }
+
+
+  public Object invoke (Object pProxy, Method pMethod, Object[] pArgs) throws Throwable {
+    if (pMethod.getDeclaringClass() == Object.class) {
+      // equals, hashCode and toString are not timed, and a proxy equals the component it wraps
+      if ("equals".equals(pMethod.getName())) {
+        return (pArgs[0] == pProxy || mTarget.equals(unwrap(pArgs[0])));
+      }
+      return pMethod.invoke(mTarget, pArgs);
+    }
+
+    MethodStats stats = getStats(pMethod);
+    stats.mCalls.increment();
+    boolean timed = (mSampling <= 1 || ThreadLocalRandom.current().nextInt(mSampling) == 0);
+    long start = (timed ? System.nanoTime() : 0);
+    try {
+      return pMethod.invoke(mTarget, pArgs);
+    } catch (InvocationTargetException ite) {
+      stats.mErrors.increment();
+      throw ite.getCause();
+    } finally {
+      if (timed) {
+        stats.mLatencies.record(System.nanoTime() - start);
+      }
+    }
+  } // end invoke
+
+
+  /**
+   * Returns the statistics of a method, creating them on its first call
+   * @param pMethod interface method
+   * @return statistics, shared by the methods of the same name
+   */
+  private MethodStats getStats (Method pMethod) {
+    MethodStats stats = mStats.get(pMethod);
+    if (stats == null) {
+      if (!Modifier.isPublic(pMethod.getDeclaringClass().getModifiers())) {
+        // a method of a non-public interface
+        pMethod.setAccessible(true);
+      }
+      stats = new MethodStats(mMetrics, mPrefix + "." + pMethod.getName());
+      MethodStats previous = mStats.putIfAbsent(pMethod, stats);
+      if (previous != null) {
+        stats = previous;
+      }
+    }
+    return stats;
+  } // end getStats
+
+} // end MonitoringHandler
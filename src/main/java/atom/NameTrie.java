@@ -0,0 +1,245 @@
+package atom;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps full component names to values, stored as a tree of name segments: /app/cache/Users is the Users child
+ * of the cache child of the app child of the root. Segments are interned, so the thousands of names sharing a
+ * directory share its segment, and whole subtrees can be listed or removed without scanning the other names.
+ * Lookups need no locking and may run concurrently with modifications, but the modifications must be serialized
+ * by the caller
+ * @param <V> type of the values
+ */
+public class NameTrie<V> implements Serializable {
+
+  private static final long serialVersionUID = 3395812870421455213L;
+
+  /**
+   * A segment of a name, with its value if a name ends there
+   * @param <V> type of the values
+   */
+  private static final class Node<V> implements Serializable {
+
+    private static final long serialVersionUID = -5102749385377401563L;
+
+    // name segment, interned
+    final String mSegment;
+
+    // parent node, null for the root
+    final Node<V> mParent;
+
+    // children by segment, null while there are none
+    volatile Map<String,Node<V>> mChildren;
+
+    // value of the name ending at this node, if mHasValue; read without locking
+    volatile V mValue;
+    boolean mHasValue;
+
+    Node (String pSegment, Node<V> pParent) {
+      mSegment = pSegment;
+      mParent = pParent;
+    }
+  } // end Node
+
+
+  // root node, for the name "/"
+  private final Node<V> mRoot = new Node<V>("", null);
+
+  // number of names
+  private int mSize;
+
+
+  /**
+   * No-args constructor, creates an empty trie
+   */
+  public NameTrie () {
+    //
+  }
+
+
+  /**
+   * Finds the node of a name
+   * @param pName full name, or prefix
+   * @param pCreate true to create the missing nodes
+   * @return node, or null if absent and pCreate is false
+   */
+  private Node<V> findNode (String pName, boolean pCreate) {
+    Node<V> node = mRoot;
+    int start = 0;
+    int length = pName.length();
+    while (start < length) {
+      int end = pName.indexOf('/', start);
+      if (end < 0) {
+        end = length;
+      }
+      if (end > start) {
+        String segment = pName.substring(start, end);
+        Map<String,Node<V>> children = node.mChildren;
+        Node<V> child = (children == null ? null : children.get(segment));
+        if (child == null) {
+          if (!pCreate) {
+            return null;
+          }
+          if (node.mChildren == null) {
+            node.mChildren = new ConcurrentHashMap<String,Node<V>>(4, 0.75f, 1);
+          }
+          segment = segment.intern();
+          child = new Node<V>(segment, node);
+          node.mChildren.put(segment, child);
+        }
+        node = child;
+      }
+      start = end + 1;
+    }
+    return node;
+  } // end findNode
+
+
+  /**
+   * Returns the value of a name
+   * @param pName full name
+   * @return value, or null if absent
+   */
+  public V get (String pName) {
+    Node<V> node = findNode(pName, false);
+    return (node == null ? null : node.mValue);
+  }
+
+
+  /**
+   * Sets the value of a name
+   * @param pName full name
+   * @param pValue value
+   * @return previous value, or null
+   */
+  public V put (String pName, V pValue) {
+    Node<V> node = findNode(pName, true);
+    V previous = node.mValue;
+    if (!node.mHasValue) {
+      node.mHasValue = true;
+      mSize++;
+    }
+    node.mValue = pValue;
+    return previous;
+  }
+
+
+  /**
+   * Removes a name
+   * @param pName full name
+   * @return removed value, or null if absent
+   */
+  public V remove (String pName) {
+    Node<V> node = findNode(pName, false);
+    if (node == null || !node.mHasValue) {
+      return null;
+    }
+    V previous = node.mValue;
+    node.mValue = null;
+    node.mHasValue = false;
+    mSize--;
+    prune(node);
+    return previous;
+  } // end remove
+
+
+  /**
+   * Returns the names at and below a prefix with their values
+   * @param pPrefix name prefix, i.e. /app/cache or /app/cache/; "/" for all the names
+   * @return sorted map of full names to values
+   */
+  public Map<String,V> getSubtree (String pPrefix) {
+    Map<String,V> result = new TreeMap<String,V>();
+    Node<V> node = findNode(pPrefix, false);
+    if (node != null) {
+      collect(node, getName(node), result);
+    }
+    return result;
+  }
+
+
+  /**
+   * Removes the names at and below a prefix
+   * @param pPrefix name prefix, i.e. /app/cache or /app/cache/; "/" for all the names
+   * @return sorted map of the removed names to their values
+   */
+  public Map<String,V> removeSubtree (String pPrefix) {
+    Map<String,V> result = getSubtree(pPrefix);
+    Node<V> node = findNode(pPrefix, false);
+    if (node == null) {
+      return result;
+    }
+    mSize -= result.size();
+    if (node == mRoot) {
+      mRoot.mChildren = null;
+      mRoot.mValue = null;
+      mRoot.mHasValue = false;
+    } else {
+      node.mParent.mChildren.remove(node.mSegment);
+      prune(node.mParent);
+    }
+    return result;
+  } // end removeSubtree
+
+
+  /**
+   * Returns the number of names
+   * @return size
+   */
+  public int size () {
+    return mSize;
+  }
+
+
+  /**
+   * Removes the nodes left without values or children, from the given one up
+   * @param pNode node
+   */
+  private void prune (Node<V> pNode) {
+    Node<V> node = pNode;
+    while (node != mRoot && !node.mHasValue && (node.mChildren == null || node.mChildren.isEmpty())) {
+      node.mParent.mChildren.remove(node.mSegment);
+      node = node.mParent;
+    }
+  }
+
+
+  /**
+   * Rebuilds the full name of a node
+   * @param pNode node
+   * @return full name, "/" for the root
+   */
+  private String getName (Node<V> pNode) {
+    if (pNode == mRoot) {
+      return "/";
+    }
+    StringBuilder buf = new StringBuilder();
+    for (Node<V> node = pNode; node != mRoot; node = node.mParent) {
+      buf.insert(0, node.mSegment).insert(0, '/');
+    }
+    return buf.toString();
+  }
+
+
+  /**
+   * Recursively adds the names of a subtree
+   * @param pNode root of the subtree
+   * @param pName full name of the node
+   * @param pResult map receiving the names and values
+   */
+  private void collect (Node<V> pNode, String pName, Map<String,V> pResult) {
+    if (pNode.mHasValue) {
+      pResult.put(pName, pNode.mValue);
+    }
+    if (pNode.mChildren != null) {
+      String prefix = (pNode == mRoot ? "/" : pName + "/");
+      for (Node<V> child : pNode.mChildren.values()) {
+        collect(child, prefix + child.mSegment, pResult);
+      }
+    }
+  }
+
+} // end NameTrie
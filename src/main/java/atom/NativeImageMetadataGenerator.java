@@ -0,0 +1,325 @@
+package atom;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import atom.exception.AtomException;
+
+/**
+ * Generates the reflection metadata a GraalVM native image needs to run the components of a config path: for each
+ * $class, its no-args constructor and the accessors of the configured and linked properties, in the
+ * reflect-config.json format. The components configured with $monitor=true are called through a dynamic proxy: the
+ * interface sets of their proxies are written to proxy-config.json, next to reflect-config.json, and the methods of
+ * these interfaces are added to the reflection metadata. Nothing is instantiated.
+ * Meant to be run at build time, writing into the META-INF/native-image directory of the application:
+ * <pre>java -cp atom.jar:app.jar atom.NativeImageMetadataGenerator META-INF/native-image/app/reflect-config.json config localconfig</pre>
+ */
+public class NativeImageMetadataGenerator {
+
+  // orders the accessors of a class by name, then by parameter type
+  private static final Comparator<Method> METHOD_ORDER = new Comparator<Method>() {
+    public int compare (Method pMethod1, Method pMethod2) {
+      int result = pMethod1.getName().compareTo(pMethod2.getName());
+      if (result == 0) {
+        result = getParameterTypeNames(pMethod1).compareTo(getParameterTypeNames(pMethod2));
+      }
+      return result;
+    }
+  };
+
+  // file receiving the interface sets of the monitoring proxies, next to reflect-config.json
+  static final String PROXY_CONFIG_FILE = "proxy-config.json";
+
+  // container whose config path is read
+  private final Atom mAtom;
+
+
+  /**
+   * Constructor
+   * @param pAtom container whose config path is read
+   */
+  public NativeImageMetadataGenerator (Atom pAtom) {
+    if (pAtom == null) {
+      throw new AtomException("Parameter pAtom is null");
+    }
+    mAtom = pAtom;
+  }
+
+
+  /**
+   * Collects the accessors called reflectively on the configured components. Components whose configuration or
+   * class is invalid are skipped: ConfigurationValidator reports them
+   * @return accessors by class name, sorted
+   */
+  public Map<String,Set<Method>> collectAccessors () {
+    Map<String,Set<Method>> result = new TreeMap<String,Set<Method>>();
+    Set<String> names = new ConfigTree(mAtom.getConfigPath()).getComponentNames();
+    for (String name : names) {
+      Configuration config = getConfiguration(name);
+      Class clazz = getComponentClass(config);
+      if (clazz == null) {
+        continue;
+      }
+      Set<Method> accessors = getAccessors(result, clazz);
+      if (isMonitored(config)) {
+        // the proxy calls the methods of the interfaces reflectively
+        for (Class iface : MonitoringHandler.getInterfaces(clazz)) {
+          Set<Method> methods = getAccessors(result, iface);
+          for (Method method : iface.getMethods()) {
+            methods.add(method);
+          }
+        }
+      }
+      BeanModel model = BeanModel.forClass(clazz);
+      for (String propertyName : config.getPropertyNames()) {
+        if (propertyName.startsWith("$")) {
+          continue;
+        }
+        boolean linked = propertyName.endsWith("^");
+        BeanProperty property = model.getProperty(linked ? propertyName.substring(0, propertyName.length() - 1) : propertyName);
+        if (property == null || property.getWriteMethod() == null) {
+          continue;
+        }
+        accessors.add(property.getWriteMethod());
+        if (linked) {
+          addLinkSource(result, config.getProperty(propertyName));
+        }
+      }
+    }
+    return result;
+  } // end collectAccessors
+
+
+  /**
+   * Collects the interface sets of the proxies of the monitored components, in the order MonitoringHandler passes
+   * them to the proxy. Components whose configuration or class is invalid are skipped
+   * @return interface names of each proxy, sorted
+   */
+  public Set<List<String>> collectProxyInterfaces () {
+    Set<List<String>> result = new TreeSet<List<String>>(new Comparator<List<String>>() {
+      public int compare (List<String> pInterfaces1, List<String> pInterfaces2) {
+        return pInterfaces1.toString().compareTo(pInterfaces2.toString());
+      }
+    });
+    for (String name : new ConfigTree(mAtom.getConfigPath()).getComponentNames()) {
+      Configuration config = getConfiguration(name);
+      Class clazz = getComponentClass(config);
+      if (clazz == null || !isMonitored(config)) {
+        continue;
+      }
+      List<String> interfaces = new ArrayList<String>();
+      for (Class iface : MonitoringHandler.getInterfaces(clazz)) {
+        interfaces.add(iface.getName());
+      }
+      if (!interfaces.isEmpty()) {
+        result.add(interfaces);
+      }
+    }
+    return result;
+  } // end collectProxyInterfaces
+
+
+  /**
+   * Returns true if a component is wrapped in a monitoring proxy
+   * @param pConfig configuration of the component
+   * @return true or false
+   */
+  private static boolean isMonitored (Configuration pConfig) {
+    return "true".equals(pConfig.getProperty(Atom.MONITOR_PROPERTY));
+  }
+
+
+  /**
+   * Registers the getter of the source property of a link
+   * @param pAccessors accessors by class name
+   * @param pLink value of the link, i.e. /other/Component.propertyName
+   */
+  private void addLinkSource (Map<String,Set<Method>> pAccessors, String pLink) {
+    int idx = (pLink == null ? -1 : pLink.lastIndexOf("."));
+    if (idx < 0) {
+      return;
+    }
+    Class clazz = getComponentClass(getConfiguration(pLink.substring(0, idx)));
+    if (clazz == null) {
+      return;
+    }
+    BeanProperty source = BeanModel.forClass(clazz).getProperty(pLink.substring(idx + 1));
+    if (source != null && source.getReadMethod() != null) {
+      getAccessors(pAccessors, clazz).add(source.getReadMethod());
+    }
+  }
+
+
+  /**
+   * Returns the accessors collected for a class, creating the entry the first time
+   * @param pAccessors accessors by class name
+   * @param pClass component class
+   * @return set of accessors
+   */
+  private static Set<Method> getAccessors (Map<String,Set<Method>> pAccessors, Class pClass) {
+    Set<Method> accessors = pAccessors.get(pClass.getName());
+    if (accessors == null) {
+      accessors = new TreeSet<Method>(METHOD_ORDER);
+      pAccessors.put(pClass.getName(), accessors);
+    }
+    return accessors;
+  }
+
+
+  /**
+   * Merges the configuration of a component
+   * @param pName full component name
+   * @return configuration, or null if it cannot be merged
+   */
+  private Configuration getConfiguration (String pName) {
+    try {
+      return mAtom.mergeConfiguration(pName);
+    } catch (AtomException ae) {
+      return null;
+    }
+  }
+
+
+  /**
+   * Loads the class of a component without initializing it
+   * @param pConfig configuration of the component, may be null
+   * @return class, or null if the configuration has no loadable $class
+   */
+  private static Class getComponentClass (Configuration pConfig) {
+    String className = (pConfig == null ? null : pConfig.getProperty(Atom.CLASS_PROPERTY));
+    if (className == null) {
+      return null;
+    }
+    return ConfigTree.loadClass(className.trim(), false);
+  }
+
+
+  /**
+   * Writes the collected accessors in the reflect-config.json format
+   * @param pWriter writer receiving the JSON document
+   * @throws IOException if the document cannot be written
+   */
+  public void writeReflectConfig (Writer pWriter) throws IOException {
+    Map<String,Set<Method>> accessors = collectAccessors();
+    pWriter.write("[");
+    boolean firstClass = true;
+    for (Map.Entry<String,Set<Method>> entry : accessors.entrySet()) {
+      pWriter.write(firstClass ? "\n" : ",\n");
+      firstClass = false;
+      pWriter.write("  {\n    \"name\": \"" + entry.getKey() + "\",\n");
+      pWriter.write("    \"methods\": [");
+      boolean firstMethod = true;
+      Class clazz = ConfigTree.loadClass(entry.getKey(), false);
+      if (clazz == null || !clazz.isInterface()) {
+        pWriter.write("\n      {\"name\": \"<init>\", \"parameterTypes\": []}");
+        firstMethod = false;
+      }
+      for (Method method : entry.getValue()) {
+        pWriter.write(firstMethod ? "\n" : ",\n");
+        firstMethod = false;
+        pWriter.write("      {\"name\": \"" + method.getName() + "\", \"parameterTypes\": [" + getParameterTypeNames(method) + "]}");
+      }
+      pWriter.write("\n    ]\n  }");
+    }
+    pWriter.write("\n]\n");
+  } // end writeReflectConfig
+
+
+  /**
+   * Writes the interface sets of the monitoring proxies in the proxy-config.json format
+   * @param pWriter writer receiving the JSON document
+   * @throws IOException if the document cannot be written
+   */
+  public void writeProxyConfig (Writer pWriter) throws IOException {
+    pWriter.write("[");
+    boolean firstProxy = true;
+    for (List<String> interfaces : collectProxyInterfaces()) {
+      pWriter.write(firstProxy ? "\n" : ",\n");
+      firstProxy = false;
+      pWriter.write("  {\"interfaces\": [");
+      for (int i = 0; i < interfaces.size(); i++) {
+        pWriter.write((i == 0 ? "\"" : ", \"") + interfaces.get(i) + "\"");
+      }
+      pWriter.write("]}");
+    }
+    pWriter.write("\n]\n");
+  } // end writeProxyConfig
+
+
+  /**
+   * Returns the parameter types of a method as a list of JSON strings
+   * @param pMethod method
+   * @return quoted type names separated by commas
+   */
+  private static String getParameterTypeNames (Method pMethod) {
+    StringBuilder buf = new StringBuilder();
+    for (Class type : pMethod.getParameterTypes()) {
+      if (buf.length() > 0) {
+        buf.append(", ");
+      }
+      buf.append('"').append(type.getTypeName()).append('"');
+    }
+    return buf.toString();
+  }
+
+
+  /**
+   * Writes reflect-config.json into a file, and proxy-config.json into the same directory, creating it if needed
+   * @param pFile reflect-config.json file to write
+   * @throws IOException if a file cannot be written
+   */
+  public void generate (File pFile) throws IOException {
+    File dir = pFile.getAbsoluteFile().getParentFile();
+    if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Cannot create directory " + dir);
+    }
+    Writer writer = new OutputStreamWriter(new FileOutputStream(pFile), "UTF-8");
+    try {
+      writeReflectConfig(writer);
+    } finally {
+      writer.close();
+    }
+    writer = new OutputStreamWriter(new FileOutputStream(new File(dir, PROXY_CONFIG_FILE)), "UTF-8");
+    try {
+      writeProxyConfig(writer);
+    } finally {
+      writer.close();
+    }
+  } // end generate
+
+
+  /**
+   * Command-line entry point: writes the reflection metadata of the config path made of the given layers
+   * @param pArgs output file, then the layers of the config path, in order
+   * @throws IOException if the output cannot be written
+   */
+  public static void main (String[] pArgs) throws IOException {
+    if (pArgs.length < 2) {
+      System.err.println("Usage: java atom.NativeImageMetadataGenerator reflect-config.json layer [layer...]");
+      System.exit(2);
+    }
+    Atom atom = new Atom();
+    for (int i = 1; i < pArgs.length; i++) {
+      File layer = new File(pArgs[i]);
+      if (!layer.isDirectory()) {
+        System.err.println("Not a directory: " + pArgs[i]);
+        System.exit(2);
+      }
+      atom.addToConfigPath(layer);
+    }
+    File file = new File(pArgs[0]);
+    new NativeImageMetadataGenerator(atom).generate(file);
+    System.out.println("Wrote " + file + " and " + new File(file.getAbsoluteFile().getParentFile(), PROXY_CONFIG_FILE));
+  } // end main
+
+} // end NativeImageMetadataGenerator
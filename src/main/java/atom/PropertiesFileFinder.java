@@ -1,16 +1,39 @@
 package atom;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 import atom.exception.AtomException;
 
 /**
- * Walks directory trees to find .properties files, returning the corresponding Properties object
+ * Walks directory trees to find .properties files, returning the corresponding Properties object.
+ * Parsed files are immutable, so they are cached process-wide and shared by all the finders, hence by all the
+ * containers: a file is parsed again only when its size or modification time changes
  */
 public class PropertiesFileFinder {
 
+  /**
+   * A parsed file, with the size and modification time it was parsed at
+   */
+  private static final class ParsedFile {
+    final long mLength;
+    final long mLastModified;
+    final CompactMap<String> mProperties;
+
+    ParsedFile (long pLength, long pLastModified, CompactMap<String> pProperties) {
+      mLength = pLength;
+      mLastModified = pLastModified;
+      mProperties = pProperties;
+    }
+  } // end ParsedFile
+
+
+  // parsed files by absolute path, shared by all the finders
+  private static final ConcurrentHashMap<String,ParsedFile> sParsedFiles = new ConcurrentHashMap<String,ParsedFile>();
+
+  // parses the files found
+  private final PropertiesParser mParser = new PropertiesParser();
+
 
   /**
    * No-args constructor
@@ -27,6 +50,56 @@ public class PropertiesFileFinder {
    * @return properties loaded for component, or null if errors
    */
   public Properties findProperties (File pRoot, String pComponentName) {
+    CompactMap<String> map = findConfigMap(pRoot, pComponentName);
+    if (map == null) {
+      return null;
+    }
+    Properties props = new Properties();
+    for (int i = 0; i < map.size(); i++) {
+      props.setProperty(map.keyAt(i), map.valueAt(i));
+    }
+    return props;
+  } // end findProperties
+
+
+  /**
+   * Finds and parses the configuration file of a component starting from the given root
+   * @param pRoot root directory for starting the search
+   * @param pComponentName absolute name of component
+   * @return immutable map of the properties of the component, or null if the layer doesn't configure it
+   */
+  public CompactMap<String> findConfigMap (File pRoot, String pComponentName) {
+    File candidate = findFile(pRoot, pComponentName);
+    if (candidate == null) {
+      return null;
+    }
+    String path = candidate.getAbsolutePath();
+    long length = candidate.length();
+    long lastModified = candidate.lastModified();
+    ParsedFile parsed = sParsedFiles.get(path);
+    if (parsed == null || parsed.mLength != length || parsed.mLastModified != lastModified) {
+      parsed = new ParsedFile(length, lastModified, mParser.parse(candidate));
+      sParsedFiles.put(path, parsed);
+    }
+    return parsed.mProperties;
+  } // end findConfigMap
+
+
+  /**
+   * Forgets all the parsed files, in every container
+   */
+  public static void clearParsedFiles () {
+    sParsedFiles.clear();
+  }
+
+
+  /**
+   * Finds the configuration file of a component starting from the given root
+   * @param pRoot root directory for starting the search
+   * @param pComponentName absolute name of component
+   * @return readable file, or null if the layer doesn't configure the component
+   */
+  File findFile (File pRoot, String pComponentName) {
     if (pRoot == null || !pRoot.exists() || !pRoot.isDirectory() || !pRoot.canRead()) {
       throw new AtomException("Cannot access path " + pRoot + " for searching");
     }
@@ -34,44 +107,21 @@ public class PropertiesFileFinder {
       throw new AtomException("Parameter pComponentName is null or empty");
     }
 
-    // get a os-specific path and look for a corresponding .properties file
-    String[] comps = pComponentName.split("/");
-    if (comps.length == 0) {
+    // get a os-specific path and look for a corresponding .properties file, mapping the separators in one pass
+    String path = (pComponentName.charAt(0) == '/' ? pComponentName.substring(1) : pComponentName);
+    if (path.length() == 0) {
       return null;
     }
-    StringBuilder buf = new StringBuilder();
-    for (int i = 0; i < comps.length; i++) {
-      buf.append(comps[i]);
-      if (i != comps.length - 1) {
-        buf.append(File.separator);
-      }
+    if (File.separatorChar != '/') {
+      path = path.replace('/', File.separatorChar);
     }
-    buf.append(".properties");
-    File candidate = new File(pRoot, buf.toString());
+    File candidate = new File(pRoot, path + ".properties");
     if (!candidate.exists() || !candidate.isFile() || !candidate.canRead()) {
       // layering is optional, if no properties files exists for a component it will never be created
       return null;
     }
-
-    Properties props = new Properties();
-    FileInputStream fis = null;
-    try {
-      fis = new FileInputStream(candidate);
-      props.load(fis);
-    } catch (IOException ioe) {
-      throw new AtomException("Got IOException reading properties file = " + candidate, ioe);
-    } finally {
-      if (fis != null) {
-        // very important, close the file or we'll leak descriptors and under Windows we'll never be able to modify it while the app is running
-        try {
-          fis.close();
-        } catch (IOException ioe) {
-          throw new AtomException("Got IOException closing input stream on file = " + candidate, ioe);
-        }
-      }
-    }
-    return props;
-  } // end findProperties
+    return candidate;
+  } // end findFile
 
 } // end PropertiesFileFinder
 
@@ -0,0 +1,247 @@
+package atom;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import atom.exception.AtomException;
+
+/**
+ * Parses .properties files into immutable CompactMaps, following the format of java.util.Properties.load(InputStream):
+ * ISO-8859-1 text, comments starting with # or !, keys terminated by '=', ':' or whitespace, lines continued with
+ * a trailing backslash, and the \t \n \r \f \\uXXXX escapes.
+ * Each file is read in one shot into a heap buffer. Files are never memory-mapped: a mapping outlives the closing of
+ * the file until it is garbage collected, and keeps the file locked under Windows meanwhile
+ */
+public class PropertiesParser {
+
+  /**
+   * No-args constructor
+   */
+  public PropertiesParser () {
+    //
+  }
+
+
+  /**
+   * Parses a properties file
+   * @param pFile file to parse
+   * @return map of the properties, with interned keys
+   */
+  public CompactMap<String> parse (File pFile) {
+    RandomAccessFile raf = null;
+    try {
+      raf = new RandomAccessFile(pFile, "r");
+      FileChannel channel = raf.getChannel();
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new AtomException("Properties file too large: " + pFile);
+      }
+      ByteBuffer buffer = ByteBuffer.allocate((int) size);
+      while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+        // keep reading until the buffer is full
+      }
+      buffer.flip();
+      return parse(buffer);
+    } catch (IOException ioe) {
+      throw new AtomException("Got IOException reading properties file = " + pFile, ioe);
+    } finally {
+      if (raf != null) {
+        // very important, close the file or we'll leak descriptors and under Windows we'll never be able to modify it while the app is running
+        try {
+          raf.close();
+        } catch (IOException ioe) {
+          throw new AtomException("Got IOException closing properties file = " + pFile, ioe);
+        }
+      }
+    }
+  } // end parse
+
+
+  /**
+   * Parses properties from ISO-8859-1 bytes
+   * @param pBuffer bytes, from position to limit
+   * @return map of the properties, with interned keys
+   */
+  public CompactMap<String> parse (ByteBuffer pBuffer) {
+    CompactMap.Builder<String> builder = new CompactMap.Builder<String>();
+    StringBuilder key = new StringBuilder();
+    StringBuilder value = new StringBuilder();
+    int pos = pBuffer.position();
+    int end = pBuffer.limit();
+
+    while (pos < end) {
+      // skip the leading whitespace of the natural line
+      pos = skipWhitespace(pBuffer, pos, end);
+      if (pos >= end) {
+        break;
+      }
+      char c = (char) (pBuffer.get(pos) & 0xff);
+      if (c == '\n' || c == '\r') {
+        // blank line
+        pos++;
+        continue;
+      }
+      if (c == '#' || c == '!') {
+        // comment lines are never continued
+        pos = skipLine(pBuffer, pos, end);
+        continue;
+      }
+
+      // the key ends at the first unescaped separator or whitespace
+      key.setLength(0);
+      value.setLength(0);
+      pos = readElement(pBuffer, pos, end, key, true);
+
+      // then skip whitespace, at most one separator, and whitespace again
+      pos = skipWhitespace(pBuffer, pos, end);
+      if (pos < end) {
+        char sep = (char) (pBuffer.get(pos) & 0xff);
+        if (sep == '=' || sep == ':') {
+          pos = skipWhitespace(pBuffer, pos + 1, end);
+        }
+      }
+
+      // the value runs up to the end of the logical line
+      pos = readElement(pBuffer, pos, end, value, false);
+      builder.put(key.toString(), value.toString());
+    }
+    return builder.build();
+  } // end parse
+
+
+  /**
+   * Reads a key or a value, unescaping it and following line continuations
+   * @param pBuffer bytes
+   * @param pPos start position
+   * @param pEnd end position
+   * @param pOut buffer receiving the unescaped element
+   * @param pKey true to stop at the key terminators, false to stop at the end of the logical line only
+   * @return position after the element (the line terminator is consumed only for values)
+   */
+  private int readElement (ByteBuffer pBuffer, int pPos, int pEnd, StringBuilder pOut, boolean pKey) {
+    int pos = pPos;
+    while (pos < pEnd) {
+      char c = (char) (pBuffer.get(pos) & 0xff);
+      if (c == '\n' || c == '\r') {
+        if (!pKey) {
+          pos = skipTerminator(pBuffer, pos, pEnd);
+        }
+        return pos;
+      }
+      if (pKey && (c == '=' || c == ':' || c == ' ' || c == '\t' || c == '\f')) {
+        return pos;
+      }
+      if (c != '\\') {
+        pOut.append(c);
+        pos++;
+        continue;
+      }
+
+      // escape sequence
+      pos++;
+      if (pos >= pEnd) {
+        // a lone backslash at the end of the input is dropped
+        return pos;
+      }
+      c = (char) (pBuffer.get(pos) & 0xff);
+      if (c == '\n' || c == '\r') {
+        // line continuation: the next line's leading whitespace is not part of the element
+        pos = skipTerminator(pBuffer, pos, pEnd);
+        pos = skipWhitespace(pBuffer, pos, pEnd);
+        continue;
+      }
+      pos++;
+      switch (c) {
+        case 't':
+          pOut.append('\t');
+          break;
+        case 'n':
+          pOut.append('\n');
+          break;
+        case 'r':
+          pOut.append('\r');
+          break;
+        case 'f':
+          pOut.append('\f');
+          break;
+        case 'u':
+          if (pos + 4 > pEnd) {
+            throw new AtomException("Malformed \\uxxxx encoding");
+          }
+          int code = 0;
+          for (int i = 0; i < 4; i++) {
+            int digit = Character.digit((char) (pBuffer.get(pos++) & 0xff), 16);
+            if (digit < 0) {
+              throw new AtomException("Malformed \\uxxxx encoding");
+            }
+            code = (code << 4) | digit;
+          }
+          pOut.append((char) code);
+          break;
+        default:
+          // any other escaped character stands for itself
+          pOut.append(c);
+          break;
+      }
+    }
+    return pos;
+  } // end readElement
+
+
+  /**
+   * Skips spaces, tabs and form feeds
+   * @param pBuffer bytes
+   * @param pPos start position
+   * @param pEnd end position
+   * @return position of the first other character
+   */
+  private static int skipWhitespace (ByteBuffer pBuffer, int pPos, int pEnd) {
+    int pos = pPos;
+    while (pos < pEnd) {
+      byte b = pBuffer.get(pos);
+      if (b != ' ' && b != '\t' && b != '\f') {
+        break;
+      }
+      pos++;
+    }
+    return pos;
+  }
+
+
+  /**
+   * Skips the rest of a natural line, including its terminator
+   * @param pBuffer bytes
+   * @param pPos start position
+   * @param pEnd end position
+   * @return position of the next line
+   */
+  private static int skipLine (ByteBuffer pBuffer, int pPos, int pEnd) {
+    int pos = pPos;
+    while (pos < pEnd) {
+      byte b = pBuffer.get(pos);
+      if (b == '\n' || b == '\r') {
+        return skipTerminator(pBuffer, pos, pEnd);
+      }
+      pos++;
+    }
+    return pos;
+  }
+
+
+  /**
+   * Skips a line terminator: \n, \r or \r\n
+   * @param pBuffer bytes
+   * @param pPos position of the terminator
+   * @param pEnd end position
+   * @return position of the next line
+   */
+  private static int skipTerminator (ByteBuffer pBuffer, int pPos, int pEnd) {
+    if (pBuffer.get(pPos) == '\r' && pPos + 1 < pEnd && pBuffer.get(pPos + 1) == '\n') {
+      return pPos + 2;
+    }
+    return pPos + 1;
+  }
+
+} // end PropertiesParser
@@ -10,7 +10,9 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 
 /**
- * Contains and registers the various JavaBean property editors
+ * Contains and registers the various JavaBean property editors.
+ * The container converts values with the Converters registry, which does not depend on java.beans: install() makes
+ * the editors registered with the PropertyEditorManager available to it, for the types that have no converter
  */
 public class PropertyEditors {
 
@@ -53,6 +55,59 @@ public class PropertyEditors {
   } // end registerEditors
 
 
+  /**
+   * Registers our editors and lets the Converters registry fall back to the PropertyEditorManager for the types
+   * that have no converter
+   */
+  public static void install () {
+    registerEditors();
+    Converters.setFallback(new Converters.Fallback() {
+      public Converters.Converter findConverter (Class pType) {
+        PropertyEditor editor = getPropertyEditor(pType);
+        if (editor == null) {
+          return null;
+        }
+        return (editor instanceof TokenPropertyEditor ? new TokenEditorConverter(pType) : new EditorConverter(pType));
+      }
+    });
+  }
+
+
+  /**
+   * Converts values with the property editor of a type; editors are stateful, so a new one is found for each value
+   */
+  static class EditorConverter implements Converters.Converter {
+    final Class mType;
+
+    EditorConverter (Class pType) {
+      mType = pType;
+    }
+
+    public Object fromText (String pText) {
+      PropertyEditor editor = getPropertyEditor(mType);
+      editor.setAsText(pText);
+      return editor.getValue();
+    }
+  }
+
+
+  /**
+   * Converts values with a property editor that accepts tokens
+   */
+  static class TokenEditorConverter extends EditorConverter implements Converters.TokenConverter {
+
+    TokenEditorConverter (Class pType) {
+      super(pType);
+    }
+
+    public Object fromTokens (List<String> pTokens) {
+      TokenPropertyEditor editor = (TokenPropertyEditor) getPropertyEditor(mType);
+      editor.setAsTokens(pTokens);
+      return editor.getValue();
+    }
+  }
+
+
   /**
    * Finds the property editor registered for the given class
    *
@@ -67,6 +122,20 @@ public class PropertyEditors {
   }
 
 
+  /**
+   * Implemented by the editors of multi-valued types, which can be set directly from the tokens of a configured value
+   * instead of splitting its text
+   */
+  public interface TokenPropertyEditor extends PropertyEditor {
+
+    /**
+     * Sets the value of the edited object from a list of tokens
+     * @param pTokens tokens, never null
+     */
+    void setAsTokens (List<String> pTokens);
+  }
+
+
   public static class NumericPropertyEditor extends PropertyEditorSupport {
     public String getJavaInitializationString () {
       return String.valueOf(getValue());
@@ -203,9 +272,9 @@ public class PropertyEditors {
 
   /**
    * Implements a property editor for lists: strings separated by commas
-   * (commas cannot be contained in list values)
+   * (commas contained in list values must be escaped with a backslash)
    */
-  public static class ListPropertyEditor extends PropertyEditorSupport {
+  public static class ListPropertyEditor extends PropertyEditorSupport implements TokenPropertyEditor {
 
     public String getAsText () {
       List list = (List) getValue();
@@ -222,17 +291,15 @@ public class PropertyEditors {
         setValue(null);
         return;
       }
-      if ("".equals(pValue)) {
+      setAsTokens(ConfigValue.split(pValue));
+    }
+
+    @SuppressWarnings("unchecked")
+    public void setAsTokens (List<String> pTokens) {
+      if (pTokens.isEmpty()) {
         setValue(Collections.EMPTY_LIST);
-        return;
-      }
-      List list = new ArrayList();
-      String[] elems = pValue.split(",");
-      if (elems.length > 0) {
-        list.addAll(Arrays.asList(elems));
-        setValue(list);
       } else {
-        setValue(Collections.EMPTY_LIST);
+        setValue(new ArrayList(pTokens));
       }
     }
   }
@@ -240,9 +307,9 @@ public class PropertyEditors {
 
   /**
    * Implements a property editor for sets: strings separated by commas
-   * (commas cannot be contained in set values)
+   * (commas contained in set values must be escaped with a backslash)
    */
-  public static class SetPropertyEditor extends PropertyEditorSupport {
+  public static class SetPropertyEditor extends PropertyEditorSupport implements TokenPropertyEditor {
 
     public String getAsText () {
       Set set = (Set) getValue();
@@ -259,17 +326,15 @@ public class PropertyEditors {
         setValue(null);
         return;
       }
-      if ("".equals(pValue)) {
+      setAsTokens(ConfigValue.split(pValue));
+    }
+
+    @SuppressWarnings("unchecked")
+    public void setAsTokens (List<String> pTokens) {
+      if (pTokens.isEmpty()) {
         setValue(Collections.EMPTY_SET);
-        return;
-      }
-      Set set = new HashSet();
-      String[] elems = pValue.split(",");
-      if (elems.length > 0) {
-        set.addAll(Arrays.asList(elems));
-        setValue(set);
       } else {
-        setValue(Collections.EMPTY_SET);
+        setValue(new HashSet(pTokens));
       }
     }
   }
@@ -295,31 +360,10 @@ public class PropertyEditors {
   }
 
 
-  /** Utility method to set a map from an array of string pairs
-   * @param pMap the map to set
-   * @param pPairs the string pairs to set the map from
-   */
-  @SuppressWarnings("unchecked")
-  private static void internalSetMapAsText (Map pMap, String[] pPairs) {
-    for (String pPair : pPairs) {
-      String[] splitPair = pPair.split("=");
-      if (splitPair.length >= 1) {
-        // allows the value to be null or empty
-        String key = splitPair[0];
-        String value = null;
-        if (splitPair.length == 2) {
-          value = splitPair[1];
-        }
-        pMap.put(key, value);
-      }
-    }
-  }
-
-
   /**
    * Implements a property editor for maps, expressed as lists of key=value pairs where the tuples are separated by commas
    */
-  public static class MapPropertyEditor extends PropertyEditorSupport {
+  public static class MapPropertyEditor extends PropertyEditorSupport implements TokenPropertyEditor {
 
     public String getAsText () {
       Map map = (Map) getValue();
@@ -334,7 +378,7 @@ public class PropertyEditors {
         if (!(key instanceof String && value instanceof String)) {
           return null; // cannot be expressed as a string
         }
-        value = ((String) value).replaceAll(",", ",,");
+        value = ((String) value).replace(",", "\\,");
         buf.append(key).append("=").append(value);
         if (iter.hasNext()) {
           buf.append(",");
@@ -353,13 +397,16 @@ public class PropertyEditors {
         setValue(Collections.EMPTY_MAP);
         return;
       }
-      Map map = new HashMap();
-      String[] pairs = pValue.split(",");
-      if (pairs.length > 0) {
-        internalSetMapAsText(map, pairs);
-        setValue(map);
-      } else {
+      setAsTokens(ConfigValue.split(pValue));
+    }
+
+    public void setAsTokens (List<String> pTokens) {
+      if (pTokens.isEmpty()) {
         setValue(Collections.EMPTY_MAP);
+      } else {
+        Map map = new HashMap();
+        Converters.putPairs(map, pTokens);
+        setValue(map);
       }
     }
   }
@@ -368,7 +415,7 @@ public class PropertyEditors {
   /**
    * Implements a property editor for properties, expressed as lists of key=value pairs where the tuples are separated by commas
    */
-  public static class PropertiesPropertyEditor extends PropertyEditorSupport {
+  public static class PropertiesPropertyEditor extends PropertyEditorSupport implements TokenPropertyEditor {
 
     public String getAsText () {
       Properties props = (Properties) getValue();
@@ -381,7 +428,7 @@ public class PropertyEditors {
         String key = (String) e.nextElement();
         String value = props.getProperty(key);
         if (value != null && !"".equals(value)) {
-          value = value.replaceAll(",", ",,");
+          value = value.replace(",", "\\,");
         }
         buf.append(key).append("=").append(value);
         if (e.hasMoreElements()) {
@@ -396,18 +443,13 @@ public class PropertyEditors {
         setValue(null);
         return;
       }
-      if ("".equals(pValue)) {
-        setValue(new Properties());
-        return;
-      }
+      setAsTokens(ConfigValue.split(pValue));
+    }
+
+    public void setAsTokens (List<String> pTokens) {
       Properties props = new Properties();
-      String[] pairs = pValue.split(",");
-      if (pairs.length > 0) {
-        internalSetMapAsText(props, pairs);
-        setValue(props);
-      } else {
-        setValue(props);
-      }
+      Converters.putPairs(props, pTokens);
+      setValue(props);
     }
   }
 
@@ -0,0 +1,205 @@
+package atom;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import atom.exception.AtomException;
+
+/**
+ * Reads linked properties (propName^=/other/Component.propName) through cached accessors, and keeps track of the
+ * live links so that a change of the source property can be propagated to every target
+ */
+public class PropertyLinks {
+
+  /**
+   * A parsed link: the source component and property
+   */
+  static final class Link {
+    final String mComponentName;
+    final String mPropertyName;
+
+    Link (String pComponentName, String pPropertyName) {
+      mComponentName = pComponentName;
+      mPropertyName = pPropertyName;
+    }
+  } // end Link
+
+
+  /**
+   * A live link, as seen from its source
+   */
+  private static final class Binding {
+    final WeakReference<Object> mTarget;
+    final BeanProperty mTargetProperty;
+
+    Binding (Object pTarget, BeanProperty pTargetProperty) {
+      mTarget = new WeakReference<Object>(pTarget);
+      mTargetProperty = pTargetProperty;
+    }
+  } // end Binding
+
+
+  /**
+   * The live links of a source property. The links to collected targets are removed whenever the list has doubled
+   * since they were last removed, so that the links of short-lived targets don't pile up on a source that rarely
+   * changes
+   */
+  private static final class Bindings {
+    final List<Binding> mList = new ArrayList<Binding>(2);
+
+    // size at which the links to collected targets are removed next
+    int mSweepSize = MIN_SWEEP_SIZE;
+
+    void add (Binding pBinding) {
+      if (mList.size() >= mSweepSize) {
+        removeCollected();
+        mSweepSize = Math.max(MIN_SWEEP_SIZE, 2 * mList.size());
+      }
+      mList.add(pBinding);
+    }
+
+    void removeCollected () {
+      for (Iterator<Binding> it = mList.iterator(); it.hasNext(); ) {
+        if (it.next().mTarget.get() == null) {
+          it.remove();
+        }
+      }
+    }
+  } // end Bindings
+
+
+  // size of a list of live links at which the links to collected targets are first removed
+  private static final int MIN_SWEEP_SIZE = 16;
+
+
+  // links already parsed, by their configured value
+  private final ConcurrentHashMap<String,Link> mLinks = new ConcurrentHashMap<String,Link>();
+
+  // live links by source component and source property name; the targets are only weakly referenced
+  // so that live-linked session and request components can be collected
+  private final Map<Object,Map<String,Bindings>> mBindings = new WeakHashMap<Object,Map<String,Bindings>>();
+
+
+  /**
+   * Parses a link, caching the result
+   * @param pLink configured value, i.e. /other/Component.propName
+   * @return parsed link
+   */
+  Link parse (String pLink) {
+    Link link = mLinks.get(pLink);
+    if (link == null) {
+      int idx = pLink.lastIndexOf(".");
+      if (idx < 0) {
+        throw new AtomException("Invalid link " + pLink);
+      }
+      link = new Link(pLink.substring(0, idx), pLink.substring(idx + 1));
+      mLinks.put(pLink, link);
+    }
+    return link;
+  } // end parse
+
+
+  /**
+   * Reads the current value of the source property of a link
+   * @param pSource source component
+   * @param pLink parsed link
+   * @return value, or null if the source has no readable property with that name
+   */
+  Object read (Object pSource, Link pLink) {
+    BeanProperty property = BeanModel.forClass(pSource.getClass()).getProperty(pLink.mPropertyName);
+    if (property == null || property.getReadMethod() == null) {
+      return null;
+    }
+    return property.read(pSource);
+  }
+
+
+  /**
+   * Registers a live link, so that later changes of the source property are written to the target
+   * @param pSource source component
+   * @param pSourceProperty name of the source property
+   * @param pTarget target component
+   * @param pTargetProperty target property
+   */
+  void bind (Object pSource, String pSourceProperty, Object pTarget, BeanProperty pTargetProperty) {
+    synchronized (mBindings) {
+      Map<String,Bindings> byProperty = mBindings.get(pSource);
+      if (byProperty == null) {
+        byProperty = new HashMap<String,Bindings>();
+        mBindings.put(pSource, byProperty);
+      }
+      Bindings bindings = byProperty.get(pSourceProperty);
+      if (bindings == null) {
+        bindings = new Bindings();
+        byProperty.put(pSourceProperty, bindings);
+      }
+      bindings.add(new Binding(pTarget, pTargetProperty));
+    }
+  } // end bind
+
+
+  /**
+   * Writes the current value of a source property to all its live targets
+   * @param pSource source component
+   * @param pSourceProperty name of the source property
+   * @return number of targets updated
+   */
+  public int propagate (Object pSource, String pSourceProperty) {
+    if (pSource == null || pSourceProperty == null) {
+      return 0;
+    }
+
+    // copy the live targets under the lock, write them outside of it
+    List<Object> targets = new ArrayList<Object>();
+    List<BeanProperty> targetProperties = new ArrayList<BeanProperty>();
+    synchronized (mBindings) {
+      Map<String,Bindings> byProperty = mBindings.get(pSource);
+      Bindings bindings = (byProperty == null ? null : byProperty.get(pSourceProperty));
+      if (bindings == null) {
+        return 0;
+      }
+      Iterator<Binding> it = bindings.mList.iterator();
+      while (it.hasNext()) {
+        Binding binding = it.next();
+        Object target = binding.mTarget.get();
+        if (target == null) {
+          it.remove();
+        } else {
+          targets.add(target);
+          targetProperties.add(binding.mTargetProperty);
+        }
+      }
+    }
+    if (targets.isEmpty()) {
+      return 0;
+    }
+
+    Object value = read(pSource, new Link(null, pSourceProperty));
+    for (int i = 0; i < targets.size(); i++) {
+      targetProperties.get(i).write(targets.get(i), value);
+    }
+    return targets.size();
+  } // end propagate
+
+
+  /**
+   * Returns the number of live links of a source property, including the links to targets collected since they
+   * were last removed
+   * @param pSource source component
+   * @param pSourceProperty source property name
+   * @return number of live links
+   */
+  int getBindingCount (Object pSource, String pSourceProperty) {
+    synchronized (mBindings) {
+      Map<String,Bindings> byProperty = mBindings.get(pSource);
+      Bindings bindings = (byProperty == null ? null : byProperty.get(pSourceProperty));
+      return (bindings == null ? 0 : bindings.mList.size());
+    }
+  }
+
+} // end PropertyLinks
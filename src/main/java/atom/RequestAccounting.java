@@ -0,0 +1,163 @@
+package atom;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Attributes the CPU time and the memory allocated by the creation of the request components to their request scope,
+ * and records them by component name in the histograms request./app/Name.cpu and request./app/Name.allocated. The
+ * cost of a creation is its own: the components it causes to be created, in any scope, are measured apart and
+ * subtracted from it. CPU time and allocations are read from the ThreadMXBean of the current thread, and each is
+ * left out where the JVM doesn't report it
+ */
+class RequestAccounting {
+
+  /**
+   * A creation being measured on the current thread
+   */
+  static final class Frame {
+    final Frame mParent;
+    final long mCpuStart;
+    final long mAllocatedStart;
+
+    // cost of the creations nested in this one
+    long mNestedCpu;
+    long mNestedAllocated;
+
+    // scope the component was registered in, null until registered
+    Scope mScope;
+
+    Frame (Frame pParent, long pCpuStart, long pAllocatedStart) {
+      mParent = pParent;
+      mCpuStart = pCpuStart;
+      mAllocatedStart = pAllocatedStart;
+    }
+  } // end Frame
+
+
+  // CPU time of the current thread, null if not supported
+  private final ThreadMXBean mCpu;
+
+  // allocations of the current thread, null if not supported
+  private final com.sun.management.ThreadMXBean mAllocations;
+
+  // histograms of the container
+  private final Metrics mMetrics;
+
+  // innermost creation being measured by thread
+  private final ThreadLocal<Frame> mCurrent = new ThreadLocal<Frame>();
+
+
+  /**
+   * Constructor, turns the measurement of the CPU time and allocations of the threads on
+   * @param pMetrics metrics of the container
+   */
+  RequestAccounting (Metrics pMetrics) {
+    mMetrics = pMetrics;
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    ThreadMXBean cpu = null;
+    if (threads.isCurrentThreadCpuTimeSupported()) {
+      try {
+        threads.setThreadCpuTimeEnabled(true);
+        cpu = threads;
+      } catch (UnsupportedOperationException uoe) {
+        // left out
+      }
+    }
+    mCpu = cpu;
+    mAllocations = getAllocations(threads);
+  }
+
+
+  /**
+   * Returns the bean reporting the allocations of the threads, turning them on
+   * @param pThreads thread bean of the platform
+   * @return bean, null if the JVM doesn't report allocations
+   */
+  private static com.sun.management.ThreadMXBean getAllocations (ThreadMXBean pThreads) {
+    try {
+      if (pThreads instanceof com.sun.management.ThreadMXBean) {
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) pThreads;
+        if (allocations.isThreadAllocatedMemorySupported()) {
+          allocations.setThreadAllocatedMemoryEnabled(true);
+          return allocations;
+        }
+      }
+    } catch (LinkageError le) {
+      // not a HotSpot-derived JVM
+    } catch (UnsupportedOperationException uoe) {
+      // left out
+    }
+    return null;
+  }
+
+
+  /**
+   * Starts measuring a creation on the current thread
+   * @return frame, to finish once the creation is done
+   */
+  Frame begin () {
+    Frame frame = new Frame(mCurrent.get(), getCpuTime(), getAllocatedBytes());
+    mCurrent.set(frame);
+    return frame;
+  }
+
+
+  /**
+   * Finishes measuring a creation: records its cost if its component was registered in a request scope, and subtracts
+   * it from the enclosing creation
+   * @param pFrame frame returned by begin, the innermost one
+   * @param pName full component name
+   */
+  void finish (Frame pFrame, String pName) {
+    long cpu = (mCpu == null ? 0 : getCpuTime() - pFrame.mCpuStart);
+    long allocated = (mAllocations == null ? 0 : getAllocatedBytes() - pFrame.mAllocatedStart);
+    if (pFrame.mParent == null) {
+      mCurrent.remove();
+    } else {
+      mCurrent.set(pFrame.mParent);
+      pFrame.mParent.mNestedCpu += cpu;
+      pFrame.mParent.mNestedAllocated += allocated;
+    }
+    if (pFrame.mScope == null || !Atom.REQUEST_SCOPE.equals(pFrame.mScope.getName())) {
+      return;
+    }
+    long ownCpu = Math.max(0, cpu - pFrame.mNestedCpu);
+    long ownAllocated = Math.max(0, allocated - pFrame.mNestedAllocated);
+    if (mCpu != null) {
+      mMetrics.getHistogram(Atom.REQUEST_COST_PREFIX + pName + Atom.CPU_SUFFIX).record(ownCpu);
+    }
+    if (mAllocations != null) {
+      mMetrics.getHistogram(Atom.REQUEST_COST_PREFIX + pName + Atom.ALLOCATED_SUFFIX).record(ownAllocated);
+    }
+    pFrame.mScope.recordCreationCost(ownCpu, ownAllocated);
+  } // end finish
+
+
+  /**
+   * Returns true if the CPU time of the threads is measured
+   * @return true or false
+   */
+  boolean isCpuMeasured () {
+    return mCpu != null;
+  }
+
+
+  /**
+   * Returns true if the allocations of the threads are measured
+   * @return true or false
+   */
+  boolean isAllocationMeasured () {
+    return mAllocations != null;
+  }
+
+
+  private long getCpuTime () {
+    return (mCpu == null ? 0 : mCpu.getCurrentThreadCpuTime());
+  }
+
+  private long getAllocatedBytes () {
+    return (mAllocations == null ? 0 : mAllocations.getThreadAllocatedBytes(Thread.currentThread().getId()));
+  }
+
+} // end RequestAccounting
@@ -0,0 +1,131 @@
+package atom;
+
+import java.lang.ref.SoftReference;
+import java.util.concurrent.TimeUnit;
+import atom.exception.ConfigurationException;
+
+/**
+ * How long a scope keeps a global component configured with $retention: until the memory runs short ($retention=soft)
+ * or until it has not been resolved for a while ($retention=idle(10m), see Durations for the units).
+ * An evicted component is stopped and unregistered, and created again when next resolved
+ */
+class Retention {
+
+  private static final String SOFT = "soft";
+  private static final String IDLE_PREFIX = "idle(";
+
+  /**
+   * A retained component, as registered in its scope
+   */
+  static final class Holder {
+
+    final Object mComponent;
+    final Retention mRetention;
+
+    // cleared by the garbage collector when the memory runs short, for soft retention; the component itself is
+    // held strongly so that it can still be stopped when evicted
+    private final SoftReference<Object> mCanary;
+
+    // time of the last resolution, in nanoseconds
+    private volatile long mLastAccess;
+
+    Holder (Object pComponent, Retention pRetention) {
+      mComponent = pComponent;
+      mRetention = pRetention;
+      mCanary = (pRetention.mSoft ? new SoftReference<Object>(new Object()) : null);
+      mLastAccess = System.nanoTime();
+    }
+
+    /**
+     * Returns the component, recording the access
+     * @return component
+     */
+    Object touch () {
+      mLastAccess = System.nanoTime();
+      if (mCanary != null) {
+        // soft references are cleared least recently used first
+        mCanary.get();
+      }
+      return mComponent;
+    }
+
+    /**
+     * Returns true if the component should be evicted
+     * @param pNow current time in nanoseconds
+     * @return true or false
+     */
+    boolean isEvictable (long pNow) {
+      if (mCanary != null) {
+        return mCanary.get() == null;
+      }
+      return pNow - mLastAccess >= mRetention.mIdleNanos;
+    }
+
+    /**
+     * Evicts the component at the next check, as if the memory had run short or it had been idle long enough
+     */
+    void expire () {
+      if (mCanary != null) {
+        mCanary.clear();
+      }
+      mLastAccess = System.nanoTime() - mRetention.mIdleNanos;
+    }
+  } // end Holder
+
+
+  // true for soft retention, false for idle retention
+  private final boolean mSoft;
+
+  // idle time after which the component is evicted, in nanoseconds
+  private final long mIdleNanos;
+
+
+  /**
+   * Constructor
+   * @param pSoft true for soft retention
+   * @param pIdleNanos idle time after which the component is evicted, for idle retention
+   */
+  private Retention (boolean pSoft, long pIdleNanos) {
+    mSoft = pSoft;
+    mIdleNanos = pIdleNanos;
+  }
+
+
+  /**
+   * Parses the value of $retention
+   * @param pValue configured value, i.e. soft or idle(30s)
+   * @return retention
+   * @throws ConfigurationException if the value is not understood
+   */
+  static Retention parse (String pValue) throws ConfigurationException {
+    String value = pValue.trim();
+    if (SOFT.equals(value)) {
+      return new Retention(true, 0);
+    }
+    if (!value.startsWith(IDLE_PREFIX) || !value.endsWith(")")) {
+      throw new ConfigurationException("Unknown retention " + pValue + ", expected soft or idle(ttl)");
+    }
+    String ttl = value.substring(IDLE_PREFIX.length(), value.length() - 1);
+    return new Retention(false, Durations.toNanos(ttl));
+  } // end parse
+
+
+  /**
+   * Wraps a component to register it with this retention
+   * @param pComponent component
+   * @return holder to register
+   */
+  Holder hold (Object pComponent) {
+    return new Holder(pComponent, this);
+  }
+
+
+  /**
+   * Returns a textual representation of this retention
+   * @return soft, or idle with the time in milliseconds
+   */
+  public String toString () {
+    return (mSoft ? SOFT : IDLE_PREFIX + TimeUnit.NANOSECONDS.toMillis(mIdleNanos) + "ms)");
+  }
+
+} // end Retention
@@ -1,10 +1,23 @@
 package atom;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import atom.exception.AtomException;
 
@@ -15,8 +28,43 @@ public class Scope implements Serializable {
 
   private static final long serialVersionUID = -684556727747047444L;
 
-  // the mappings
-  private Map<String,Object> mMapping;
+  // serialized form, unchanged since the mappings were kept in a plain map: the mappings are written as a map
+  // of full component names to components
+  private static final ObjectStreamField[] serialPersistentFields = {
+    new ObjectStreamField("mMapping", Map.class),
+    new ObjectStreamField("mName", String.class),
+    new ObjectStreamField("mParentScope", Scope.class),
+    new ObjectStreamField("mCreatedComponents", LinkedHashSet.class)
+  };
+
+  // the mappings, by name segment so that subtrees can be listed and removed at once
+  private transient NameTrie<Object> mMapping;
+
+  // the same mappings by full name, for the lookups by name; read without locking
+  private transient ConcurrentHashMap<String,Object> mComponents;
+
+  // true once the scope is frozen
+  private transient volatile boolean mFrozen;
+
+  // the registered components, and the components behind their monitoring proxies, with their number of registrations;
+  // read without locking by the memory accounting
+  private transient ConcurrentHashMap<Identity,Integer> mIdentities;
+
+  // holders of the components registered with a retention, by name; null while there are none
+  private transient Map<String,Retention.Holder> mRetained;
+
+  // estimated sizes in bytes of the components registered while memory accounting is on, in registration order,
+  // and their total; null while there are none
+  private transient LinkedHashMap<String,Long> mSizes;
+  private transient long mEstimatedSize;
+
+  // cost of creating the components of this scope, measured while request accounting is on
+  private transient long mCreationCpuNanos;
+  private transient long mCreationAllocatedBytes;
+  private transient int mCreationCount;
+
+  // names of the registered components by type, built by the first lookup by type and maintained afterwards
+  private transient Map<Class,Set<String>> mTypes;
 
   // this scope name
   private String mName;
@@ -24,14 +72,20 @@ public class Scope implements Serializable {
   // the parent scope (null if the global scope)
   private Scope mParentScope;
 
+  // names of the components being created through this scope, to detect circular references
   private LinkedHashSet<String> mCreatedComponents;
 
+  // the container creating the components of this scope, null to use the one of the parent scope
+  private transient Atom mAtom;
+
 
   /**
    * No-args constructor
    */
   public Scope () {
-    mMapping = new HashMap<String,Object>();
+    mMapping = new NameTrie<Object>();
+    mComponents = new ConcurrentHashMap<String,Object>();
+    mIdentities = new ConcurrentHashMap<Identity,Integer>();
     mCreatedComponents = new LinkedHashSet<String>();
   }
 
@@ -52,6 +106,17 @@ public class Scope implements Serializable {
    * @param pComponent component to register
    */
   public void register (String pName, Object pComponent) {
+    register(pName, pComponent, null);
+  }
+
+
+  /**
+   * Registers a component in this scope, to be evicted according to a retention
+   * @param pName full component name
+   * @param pComponent component to register
+   * @param pRetention retention of the component, null to keep it until it is unregistered
+   */
+  void register (String pName, Object pComponent, Retention pRetention) {
     if (pName == null || "".equals(pName)) {
       return;
     }
@@ -61,11 +126,48 @@ public class Scope implements Serializable {
 
     // protect structural modifications with synchronization on this scope instance
     synchronized (this) {
-      mMapping.put(pName, pComponent);
+      Object registered = pComponent;
+      if (pRetention != null) {
+        Retention.Holder holder = pRetention.hold(pComponent);
+        if (mRetained == null) {
+          mRetained = new HashMap<String,Retention.Holder>();
+        }
+        mRetained.put(pName, holder);
+        registered = holder;
+      } else if (mRetained != null) {
+        mRetained.remove(pName);
+      }
+      Object previous = mMapping.put(pName, registered);
+      mComponents.put(pName, registered);
+      indexType(pName, previous, false);
+      indexType(pName, registered, true);
+      trackIdentity(previous, false);
+      trackIdentity(registered, true);
     }
   } // end register
 
 
+  /**
+   * Registers a component in this scope unless one is already registered under its name, as when
+   * two requests of the same session create the same session component at the same time
+   * @param pName full component name
+   * @param pComponent component to register
+   * @param pRetention retention of the component, null to keep it until it is unregistered
+   * @return the component already registered under this name, null if pComponent was registered
+   */
+  synchronized Object registerIfAbsent (String pName, Object pComponent, Retention pRetention) {
+    Object registered = mComponents.get(pName);
+    if (registered instanceof Retention.Holder) {
+      return ((Retention.Holder) registered).touch();
+    }
+    if (registered != null) {
+      return registered;
+    }
+    register(pName, pComponent, pRetention);
+    return null;
+  }
+
+
   /**
    * Unregisters from this scope the component with the given name
    * @param pName full component name
@@ -77,11 +179,414 @@ public class Scope implements Serializable {
 
     // protect structural modifications with synchronization on this scope instance
     synchronized (this) {
-      mMapping.remove(pName);
+      Object removed = mMapping.remove(pName);
+      mComponents.remove(pName);
+      indexType(pName, removed, false);
+      trackIdentity(removed, false);
+      if (mRetained != null) {
+        mRetained.remove(pName);
+      }
+      forgetSize(pName);
     }
   } // end unregister
 
 
+  /**
+   * Unregisters from this scope the components at and below a name prefix, so that they are created again
+   * when next resolved
+   * @param pPrefix name prefix, i.e. /app/cache/
+   * @return names of the unregistered components, sorted
+   */
+  public List<String> unregisterSubtree (String pPrefix) {
+    if (pPrefix == null || "".equals(pPrefix)) {
+      return new ArrayList<String>();
+    }
+    synchronized (this) {
+      Map<String,Object> removed = mMapping.removeSubtree(pPrefix);
+      for (Map.Entry<String,Object> entry : removed.entrySet()) {
+        mComponents.remove(entry.getKey());
+        indexType(entry.getKey(), entry.getValue(), false);
+        trackIdentity(entry.getValue(), false);
+      }
+      List<String> names = new ArrayList<String>(removed.keySet());
+      if (mRetained != null) {
+        mRetained.keySet().removeAll(names);
+      }
+      for (String name : names) {
+        forgetSize(name);
+      }
+      return names;
+    }
+  } // end unregisterSubtree
+
+
+  /**
+   * Stops the components at and below a name prefix that implement Stoppable, then unregisters them all
+   * @param pPrefix name prefix, i.e. /app/cache/
+   * @return names of the unregistered components, sorted
+   */
+  public List<String> stopSubtree (String pPrefix) {
+    // stop outside of the lock: a component may look others up while shutting down
+    stopAll(getComponents(pPrefix));
+    return unregisterSubtree(pPrefix);
+  }
+
+
+  /**
+   * Unregisters the retained components that should be evicted. The caller stops them
+   * @return sorted map of the names of the evicted components to the components
+   */
+  Map<String,Object> evictRetained () {
+    Map<String,Object> evicted = new TreeMap<String,Object>();
+    synchronized (this) {
+      if (mRetained == null || mRetained.isEmpty()) {
+        return evicted;
+      }
+      long now = System.nanoTime();
+      for (Iterator<Map.Entry<String,Retention.Holder>> it = mRetained.entrySet().iterator(); it.hasNext(); ) {
+        Map.Entry<String,Retention.Holder> entry = it.next();
+        if (entry.getValue().isEvictable(now)) {
+          it.remove();
+          Object removed = mMapping.remove(entry.getKey());
+          mComponents.remove(entry.getKey());
+          indexType(entry.getKey(), removed, false);
+          trackIdentity(removed, false);
+          forgetSize(entry.getKey());
+          evicted.put(entry.getKey(), entry.getValue().mComponent);
+        }
+      }
+    }
+    return evicted;
+  } // end evictRetained
+
+
+  /**
+   * Records the estimated size of a registered component
+   * @param pName full component name
+   * @param pBytes estimated size in bytes
+   * @return estimated size of all the components of this scope
+   */
+  synchronized long recordSize (String pName, long pBytes) {
+    if (mSizes == null) {
+      mSizes = new LinkedHashMap<String,Long>();
+    }
+    Long previous = mSizes.put(pName, pBytes);
+    mEstimatedSize += pBytes - (previous == null ? 0 : previous);
+    return mEstimatedSize;
+  }
+
+
+  /**
+   * Forgets the estimated size of an unregistered component. Called with the lock held
+   * @param pName full component name
+   */
+  private void forgetSize (String pName) {
+    Long size = (mSizes == null ? null : mSizes.remove(pName));
+    if (size != null) {
+      mEstimatedSize -= size;
+    }
+  }
+
+
+  /**
+   * Returns the estimated memory retained by the components of this scope, as measured or charged by the memory
+   * accounting of the container when they were registered or last measured
+   * @return bytes, 0 if memory accounting is off
+   */
+  public synchronized long getEstimatedSize () {
+    return mEstimatedSize;
+  }
+
+
+  /**
+   * Returns the estimated memory retained by each component of this scope
+   * @return sorted map of full component names to sizes in bytes
+   */
+  public synchronized Map<String,Long> getEstimatedSizes () {
+    return (mSizes == null ? new TreeMap<String,Long>() : new TreeMap<String,Long>(mSizes));
+  }
+
+
+  /**
+   * Unregisters the oldest components of this scope until its estimated size is within a budget, then stops those
+   * that implement Stoppable. They are created again when next resolved
+   * @param pPinned full names of the components not to passivate, i.e. the ones referenced by others
+   * @param pBudget budget in bytes
+   * @return sorted map of the names of the passivated components to the components
+   */
+  Map<String,Object> passivate (Set<String> pPinned, long pBudget) {
+    Map<String,Object> passivated = new TreeMap<String,Object>();
+    synchronized (this) {
+      if (mSizes == null) {
+        return passivated;
+      }
+      for (Iterator<Map.Entry<String,Long>> it = mSizes.entrySet().iterator(); it.hasNext() && mEstimatedSize > pBudget; ) {
+        Map.Entry<String,Long> entry = it.next();
+        if (pPinned.contains(entry.getKey())) {
+          continue;
+        }
+        it.remove();
+        mEstimatedSize -= entry.getValue();
+        Object registered = mMapping.remove(entry.getKey());
+        mComponents.remove(entry.getKey());
+        indexType(entry.getKey(), registered, false);
+        trackIdentity(registered, false);
+        if (mRetained != null) {
+          mRetained.remove(entry.getKey());
+        }
+        if (registered != null) {
+          passivated.put(entry.getKey(), unwrap(registered));
+        }
+      }
+    }
+
+    // unregistered first, so that the next resolution creates a new instance instead of getting a stopped one
+    stopAll(passivated);
+    return passivated;
+  } // end passivate
+
+
+  /**
+   * Stops the components that implement Stoppable, in the iteration order of the map, going on with the others when
+   * one of them fails. Monitored components are stopped behind their proxy
+   * @param pComponents components by full name
+   * @return number of components that failed to stop
+   */
+  static int stopAll (Map<String,Object> pComponents) {
+    int failures = 0;
+    for (Map.Entry<String,Object> entry : pComponents.entrySet()) {
+      Object component = MonitoringHandler.unwrap(entry.getValue());
+      if (component instanceof Stoppable) {
+        try {
+          ((Stoppable) component).stop();
+        } catch (RuntimeException re) {
+          failures++;
+          Logger.getLogger(Scope.class.getName()).log(Level.WARNING, "Could not stop component " + entry.getKey(), re);
+        }
+      }
+    }
+    return failures;
+  } // end stopAll
+
+
+  /**
+   * Returns true if an object is registered in this scope as a component, or is the component behind a registered
+   * monitoring proxy. Does not lock
+   * @param pObject object
+   * @return true or false
+   */
+  boolean isRegistered (Object pObject) {
+    return mIdentities.containsKey(new Identity(pObject));
+  }
+
+
+  /**
+   * Counts a registration or an unregistration of a component by identity. Called with the lock held
+   * @param pRegistered object registered in the mappings, null to do nothing
+   * @param pAdd true for a registration, false for an unregistration
+   */
+  private void trackIdentity (Object pRegistered, boolean pAdd) {
+    if (pRegistered == null) {
+      return;
+    }
+    Object component = unwrap(pRegistered);
+    countIdentity(component, pAdd);
+    Object target = MonitoringHandler.unwrap(component);
+    if (target != component) {
+      countIdentity(target, pAdd);
+    }
+  }
+
+
+  private void countIdentity (Object pObject, boolean pAdd) {
+    Identity identity = new Identity(pObject);
+    Integer count = mIdentities.get(identity);
+    if (pAdd) {
+      mIdentities.put(identity, (count == null ? 1 : count + 1));
+    } else if (count != null && count > 1) {
+      mIdentities.put(identity, count - 1);
+    } else {
+      mIdentities.remove(identity);
+    }
+  }
+
+
+  /**
+   * Key comparing an object by identity
+   */
+  private static final class Identity {
+    private final Object mObject;
+
+    Identity (Object pObject) {
+      mObject = pObject;
+    }
+
+    public int hashCode () {
+      return System.identityHashCode(mObject);
+    }
+
+    public boolean equals (Object pOther) {
+      return pOther instanceof Identity && ((Identity) pOther).mObject == mObject;
+    }
+  } // end Identity
+
+
+  /**
+   * Adds the cost of creating a component to this scope
+   * @param pCpuNanos CPU time of the creation
+   * @param pAllocatedBytes memory allocated by the creation
+   */
+  synchronized void recordCreationCost (long pCpuNanos, long pAllocatedBytes) {
+    mCreationCpuNanos += pCpuNanos;
+    mCreationAllocatedBytes += pAllocatedBytes;
+    mCreationCount++;
+  }
+
+
+  /**
+   * Returns the CPU time spent creating the components of this scope, measured while request accounting is on
+   * @return nanoseconds
+   */
+  public synchronized long getCreationCpuNanos () {
+    return mCreationCpuNanos;
+  }
+
+
+  /**
+   * Returns the memory allocated creating the components of this scope, measured while request accounting is on
+   * @return bytes
+   */
+  public synchronized long getCreationAllocatedBytes () {
+    return mCreationAllocatedBytes;
+  }
+
+
+  /**
+   * Returns the number of components created in this scope while request accounting is on
+   * @return count
+   */
+  public synchronized int getCreationCount () {
+    return mCreationCount;
+  }
+
+
+  /**
+   * Returns the holder of a component registered with a retention
+   * @param pName full component name
+   * @return holder, or null if the component is not registered with a retention
+   */
+  synchronized Retention.Holder getRetained (String pName) {
+    return (mRetained == null ? null : mRetained.get(pName));
+  }
+
+
+  /**
+   * Returns the components registered in this scope at and below a name prefix
+   * @param pPrefix name prefix, i.e. /app/cache/; "/" for all the components of this scope
+   * @return sorted map of full component names to components
+   */
+  public Map<String,Object> getComponents (String pPrefix) {
+    if (pPrefix == null || "".equals(pPrefix)) {
+      throw new AtomException("Parameter pPrefix is null or empty");
+    }
+    Map<String,Object> components;
+    synchronized (this) {
+      components = mMapping.getSubtree(pPrefix);
+    }
+    for (Map.Entry<String,Object> entry : components.entrySet()) {
+      entry.setValue(unwrap(entry.getValue()));
+    }
+    return components;
+  }
+
+
+  /**
+   * Returns the components registered in this scope that are instances of a type. A monitored component is returned
+   * as its monitoring proxy when the proxy is of the type, i.e. when the type is one of its interfaces, and as the
+   * component itself otherwise
+   * @param pType class or interface
+   * @param <T> type of the components
+   * @return sorted map of full component names to components
+   */
+  @SuppressWarnings("unchecked")
+  public <T> Map<String,T> getComponentsByType (Class<T> pType) {
+    if (pType == null) {
+      throw new AtomException("Parameter pType is null");
+    }
+    Map<String,T> result = new TreeMap<String,T>();
+    synchronized (this) {
+      if (mTypes == null) {
+        mTypes = new HashMap<Class,Set<String>>();
+        for (Map.Entry<String,Object> entry : mMapping.getSubtree("/").entrySet()) {
+          indexType(entry.getKey(), entry.getValue(), true);
+        }
+      }
+      Set<String> names = mTypes.get(pType);
+      if (names != null) {
+        for (String name : names) {
+          Object component = unwrap(mComponents.get(name));
+          result.put(name, (T) (pType.isInstance(component) ? component : MonitoringHandler.unwrap(component)));
+        }
+      }
+    }
+    return result;
+  } // end getComponentsByType
+
+
+  /**
+   * Adds or removes a component in the index by type, if the index has been built. A monitored component is indexed
+   * by the class behind its proxy. Called with the lock held
+   * @param pName full component name
+   * @param pComponent component, null to do nothing
+   * @param pAdd true to add, false to remove
+   */
+  private void indexType (String pName, Object pComponent, boolean pAdd) {
+    if (mTypes == null || pComponent == null) {
+      return;
+    }
+    for (Class type : TypeIndex.getSupertypes(MonitoringHandler.unwrap(unwrap(pComponent)).getClass())) {
+      Set<String> names = mTypes.get(type);
+      if (pAdd) {
+        if (names == null) {
+          names = new TreeSet<String>();
+          mTypes.put(type, names);
+        }
+        names.add(pName);
+      } else if (names != null) {
+        names.remove(pName);
+      }
+    }
+  } // end indexType
+
+
+  /**
+   * Returns a registered component, without its retention holder if it has one
+   * @param pRegistered object registered in the mappings
+   * @return component
+   */
+  private static Object unwrap (Object pRegistered) {
+    return (pRegistered instanceof Retention.Holder ? ((Retention.Holder) pRegistered).mComponent : pRegistered);
+  }
+
+
+  /**
+   * Freezes this scope, once its components are all created. Lookups read a flat table by full name without locking,
+   * frozen or not, and registrations remain possible: freezing copies nothing and only marks the scope
+   */
+  public void freeze () {
+    mFrozen = true;
+  }
+
+
+  /**
+   * Returns true if this scope has been frozen
+   * @return true or false
+   */
+  public boolean isFrozen () {
+    return mFrozen;
+  }
+
+
   /**
    * Retrieves in this or in any parent scope the object with the given name.
    * Equivalent to resolveName(pName, true)
@@ -103,7 +608,10 @@ public class Scope implements Serializable {
     if (pName == null || "".equals(pName)) {
       return null;
     }
-    Object result = mMapping.get(pName);
+    Object result = mComponents.get(pName);
+    if (result instanceof Retention.Holder) {
+      result = ((Retention.Holder) result).touch();
+    }
 
     // if the component is not in this scope, traverse the scope hierarchy looking for the name in a parent scope somewhere
     if (result == null) {
@@ -119,11 +627,26 @@ public class Scope implements Serializable {
 
     // if the component is not found in the scope hierarchy, it may have to be created
     if (result == null && pCreate) {
-      if (mCreatedComponents.contains(pName)) {
-        throw new AtomException("Possible circular reference starting from component " + pName);
+      Atom atom = getAtom();
+
+      // join the creation of the component if another thread is creating it in the background
+      result = atom.joinCreation(pName);
+      if (result == null) {
+        synchronized (this) {
+          if (mCreatedComponents.contains(pName)) {
+            throw new AtomException("Possible circular reference starting from component " + pName);
+          }
+          mCreatedComponents.add(pName);
+        }
+        try {
+          result = atom.createComponent(pName, this);
+        } finally {
+          // only the creations in flight are tracked: an unregistered or failed component can be created again
+          synchronized (this) {
+            mCreatedComponents.remove(pName);
+          }
+        }
       }
-      mCreatedComponents.add(pName);
-      result = Atom.getAtom().createComponent(pName, this);
     }
     return result;
   } // end resolveName
@@ -147,6 +670,74 @@ public class Scope implements Serializable {
   }
   
 
+  /**
+   * Sets the container creating the components of this scope
+   * @param pAtom container
+   */
+  public void setAtom (Atom pAtom) {
+    mAtom = pAtom;
+  }
+
+
+  /**
+   * Returns the container creating the components of this scope: the one set on this scope or on its closest
+   * ancestor, or the default container
+   * @return container
+   */
+  public Atom getAtom () {
+    for (Scope scope = this; scope != null; scope = scope.mParentScope) {
+      if (scope.mAtom != null) {
+        return scope.mAtom;
+      }
+    }
+    return Atom.getAtom();
+  }
+
+
+  /**
+   * Writes this scope in its serialized form, the components without their retention
+   * @param pOut stream
+   * @throws IOException if the scope can't be written
+   */
+  private void writeObject (ObjectOutputStream pOut) throws IOException {
+    ObjectOutputStream.PutField fields = pOut.putFields();
+    synchronized (this) {
+      fields.put("mMapping", new HashMap<String,Object>(getComponents("/")));
+      fields.put("mName", mName);
+      fields.put("mParentScope", mParentScope);
+      fields.put("mCreatedComponents", new LinkedHashSet<String>(mCreatedComponents));
+    }
+    pOut.writeFields();
+  }
+
+
+  /**
+   * Reads a scope from its serialized form
+   * @param pIn stream
+   * @throws IOException if the scope can't be read
+   * @throws ClassNotFoundException if the class of a component can't be found
+   */
+  @SuppressWarnings("unchecked")
+  private void readObject (ObjectInputStream pIn) throws IOException, ClassNotFoundException {
+    ObjectInputStream.GetField fields = pIn.readFields();
+    mMapping = new NameTrie<Object>();
+    mComponents = new ConcurrentHashMap<String,Object>();
+    mIdentities = new ConcurrentHashMap<Identity,Integer>();
+    Map<String,Object> mapping = (Map<String,Object>) fields.get("mMapping", null);
+    if (mapping != null) {
+      for (Map.Entry<String,Object> entry : mapping.entrySet()) {
+        mMapping.put(entry.getKey(), entry.getValue());
+        mComponents.put(entry.getKey(), entry.getValue());
+        trackIdentity(entry.getValue(), true);
+      }
+    }
+    mName = (String) fields.get("mName", null);
+    mParentScope = (Scope) fields.get("mParentScope", null);
+    // the creations in flight when the scope was written are not in flight in this one
+    mCreatedComponents = new LinkedHashSet<String>();
+  } // end readObject
+
+
   /**
    * Returns this scope name
    * @return scope name
@@ -161,7 +752,9 @@ public class Scope implements Serializable {
    * @return iterator of component names
    */
   public Iterator getComponentsInScope () {
-    return mCreatedComponents.iterator();
+    synchronized (this) {
+      return new ArrayList<String>(mMapping.getSubtree("/").keySet()).iterator();
+    }
   }
 
 
@@ -172,7 +765,7 @@ public class Scope implements Serializable {
   public String toString () {
     StringBuilder buf = new StringBuilder();
     buf.append("scope[").append(getName()).append("]={");
-    Iterator it = mMapping.keySet().iterator();
+    Iterator it = getComponents("/").keySet().iterator();
     while (it.hasNext()) {
       buf.append(it.next());
       if (it.hasNext()) {
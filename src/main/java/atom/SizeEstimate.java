@@ -0,0 +1,74 @@
+package atom;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Estimated memory retained by the components of a class, from the instances measured so far
+ */
+public class SizeEstimate {
+
+  // component class name
+  private final String mClassName;
+
+  // measured instances and their total estimated size in bytes
+  private final LongAdder mSamples = new LongAdder();
+  private final LongAdder mTotalBytes = new LongAdder();
+
+  private final AtomicLong mMaxBytes = new AtomicLong();
+
+
+  /**
+   * Constructor
+   * @param pClassName component class name
+   */
+  SizeEstimate (String pClassName) {
+    mClassName = pClassName;
+  }
+
+
+  /**
+   * Records the size of a measured instance
+   * @param pBytes estimated size
+   */
+  void record (long pBytes) {
+    mSamples.increment();
+    mTotalBytes.add(pBytes);
+    long max = mMaxBytes.get();
+    while (pBytes > max && !mMaxBytes.compareAndSet(max, pBytes)) {
+      max = mMaxBytes.get();
+    }
+  }
+
+
+  public String getClassName () {
+    return mClassName;
+  }
+
+  public long getSamples () {
+    return mSamples.sum();
+  }
+
+  public long getMaxBytes () {
+    return mMaxBytes.get();
+  }
+
+  /**
+   * Returns the mean size of the measured instances
+   * @return bytes, 0 if none was measured
+   */
+  public long getMeanBytes () {
+    long samples = getSamples();
+    return (samples == 0 ? 0 : mTotalBytes.sum() / samples);
+  }
+
+
+  /**
+   * Returns a textual representation of this estimate
+   * @return class name, samples, mean and max in bytes
+   */
+  public String toString () {
+    return mClassName + " samples=" + getSamples() + " mean=" + getMeanBytes() + "B max=" + getMaxBytes() + "B";
+  }
+
+} // end SizeEstimate
@@ -0,0 +1,348 @@
+package atom;
+
+import java.lang.ref.Reference;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Estimates the memory retained by a component by walking the objects it references, without walking the heap.
+ * The walk stops at the other components of the scope hierarchy, so that an object is counted for the component
+ * holding it, and at classes, threads, containers and scopes. It is bounded: past SAMPLED_ELEMENTS elements, only a
+ * sample of the elements of an array, collection or map is walked and their size is extrapolated, and the walk
+ * gives up after a maximum number of objects. The fields of the classes the module system keeps closed are not
+ * walked, collections and maps of the JDK are walked through their public methods instead
+ */
+class SizeEstimator {
+
+  // 64-bit layout, with compressed references below a 32GB heap
+  private static final boolean COMPRESSED_REFERENCES = Runtime.getRuntime().maxMemory() < (32L << 30);
+  static final int REFERENCE_SIZE = (COMPRESSED_REFERENCES ? 4 : 8);
+  static final int HEADER_SIZE = (COMPRESSED_REFERENCES ? 12 : 16);
+  private static final int ARRAY_HEADER_SIZE = HEADER_SIZE + 4;
+
+  // size of an entry of a hash table or of a linked structure: header, hash and three references
+  private static final int NODE_SIZE = (int) align(HEADER_SIZE + 4 + 3 * REFERENCE_SIZE);
+
+  // strings of Latin-1 characters take one byte per character since Java 9
+  private static final int CHAR_SIZE = (System.getProperty("java.specification.version", "").startsWith("1.") ? 2 : 1);
+
+  // elements of an array, collection or map walked before sampling them
+  static final int SAMPLED_ELEMENTS = 64;
+
+  /**
+   * Shallow size and reference fields of a class, computed once
+   */
+  private static final class Layout {
+    final long mShallowSize;
+    final Field[] mReferences;
+
+    Layout (long pShallowSize, Field[] pReferences) {
+      mShallowSize = pShallowSize;
+      mReferences = pReferences;
+    }
+  } // end Layout
+
+  // layouts by class, computed once per class and shared by all the containers
+  private static final ConcurrentHashMap<Class,Layout> sLayouts = new ConcurrentHashMap<Class,Layout>();
+
+  // objects not to walk: the other components
+  private final Predicate<Object> mStops;
+
+  // objects already counted
+  private final IdentityHashMap<Object,Boolean> mVisited = new IdentityHashMap<Object,Boolean>();
+
+  // objects to walk, with the weight of each one: more than 1 for an element standing for unwalked ones
+  private final ArrayDeque<Object> mPending = new ArrayDeque<Object>();
+  private final ArrayDeque<Double> mWeights = new ArrayDeque<Double>();
+
+  // maximum number of objects walked
+  private final int mMaxObjects;
+
+  private double mSize;
+
+
+  /**
+   * Constructor
+   * @param pStops true for the objects not to walk
+   * @param pMaxObjects maximum number of objects walked
+   */
+  private SizeEstimator (Predicate<Object> pStops, int pMaxObjects) {
+    mStops = pStops;
+    mMaxObjects = pMaxObjects;
+  }
+
+
+  /**
+   * Estimates the memory retained by an object
+   * @param pRoot object, i.e. a component
+   * @param pStops true for the objects not to walk, i.e. the other components of the scope hierarchy
+   * @param pMaxObjects maximum number of objects walked, the estimate being a lower bound past it
+   * @return estimated size in bytes
+   */
+  static long estimate (Object pRoot, Predicate<Object> pStops, int pMaxObjects) {
+    SizeEstimator estimator = new SizeEstimator(pStops, pMaxObjects);
+    estimator.push(pRoot, 1);
+    estimator.walk();
+    return (long) estimator.mSize;
+  }
+
+
+  /**
+   * Walks the pending objects
+   */
+  private void walk () {
+    while (!mPending.isEmpty()) {
+      Object object = mPending.poll();
+      double weight = mWeights.poll();
+      Class clazz = object.getClass();
+      if (clazz.isArray()) {
+        walkArray(object, weight);
+      } else if (object instanceof String) {
+        mSize += weight * (getLayout(clazz).mShallowSize + align(ARRAY_HEADER_SIZE + ((String) object).length() * CHAR_SIZE));
+      } else if (isClosed(clazz) && object instanceof Collection) {
+        walkCollection((Collection) object, weight);
+      } else if (isClosed(clazz) && object instanceof Map) {
+        walkMap((Map) object, weight);
+      } else {
+        walkFields(object, weight);
+      }
+    }
+  } // end walk
+
+
+  /**
+   * Counts an array and walks a sample of its elements
+   * @param pArray array
+   * @param pWeight weight of the array
+   */
+  private void walkArray (Object pArray, double pWeight) {
+    Class component = pArray.getClass().getComponentType();
+    int length = Array.getLength(pArray);
+    if (component.isPrimitive()) {
+      mSize += pWeight * align(ARRAY_HEADER_SIZE + (long) length * getPrimitiveSize(component));
+      return;
+    }
+    mSize += pWeight * align(ARRAY_HEADER_SIZE + (long) length * REFERENCE_SIZE);
+    Object[] array = (Object[]) pArray;
+    int step = Math.max(1, length / SAMPLED_ELEMENTS);
+    for (int i = 0; i < length; i += step) {
+      push(array[i], pWeight * step);
+    }
+  }
+
+
+  /**
+   * Counts a JDK collection and walks a sample of its elements
+   * @param pCollection collection
+   * @param pWeight weight of the collection
+   */
+  private void walkCollection (Collection pCollection, double pWeight) {
+    List<Object> elements = new ArrayList<Object>();
+    int size = sample(pCollection.iterator(), pCollection.size(), elements);
+    // an array of references for lists, a node per element for the others
+    long entries = (pCollection instanceof RandomAccess ? align(ARRAY_HEADER_SIZE + (long) size * REFERENCE_SIZE) : (long) size * NODE_SIZE);
+    mSize += pWeight * (getLayout(pCollection.getClass()).mShallowSize + entries);
+    pushSample(elements, size, pWeight);
+  }
+
+
+  /**
+   * Counts a JDK map and walks a sample of its keys and values
+   * @param pMap map
+   * @param pWeight weight of the map
+   */
+  @SuppressWarnings("unchecked")
+  private void walkMap (Map pMap, double pWeight) {
+    List<Object> entries = new ArrayList<Object>();
+    int size = sample(pMap.entrySet().iterator(), pMap.size(), entries);
+    mSize += pWeight * (getLayout(pMap.getClass()).mShallowSize + align(ARRAY_HEADER_SIZE + (long) size * REFERENCE_SIZE)
+        + (long) size * NODE_SIZE);
+    List<Object> keysAndValues = new ArrayList<Object>();
+    for (Object entry : entries) {
+      keysAndValues.add(((Map.Entry) entry).getKey());
+      keysAndValues.add(((Map.Entry) entry).getValue());
+    }
+    pushSample(keysAndValues, 2 * size, pWeight);
+  }
+
+
+  /**
+   * Takes a sample of SAMPLED_ELEMENTS elements spread over an iteration
+   * @param pIterator iterator
+   * @param pSize expected number of elements
+   * @param pSample receives the sampled elements
+   * @return number of elements iterated, which a concurrent modification may make differ from pSize
+   */
+  private static int sample (Iterator pIterator, int pSize, List<Object> pSample) {
+    int step = Math.max(1, pSize / SAMPLED_ELEMENTS);
+    int count = 0;
+    try {
+      while (pIterator.hasNext()) {
+        Object element = pIterator.next();
+        if (count % step == 0) {
+          pSample.add(element);
+        }
+        count++;
+      }
+    } catch (RuntimeException re) {
+      // modified by another thread, keep what was seen
+    }
+    return count;
+  }
+
+
+  /**
+   * Queues a sample standing for a number of elements
+   * @param pSample sampled elements
+   * @param pCount number of elements sampled
+   * @param pWeight weight of the container
+   */
+  private void pushSample (List<Object> pSample, int pCount, double pWeight) {
+    double weight = (pSample.isEmpty() ? pWeight : pWeight * pCount / pSample.size());
+    for (Object element : pSample) {
+      push(element, weight);
+    }
+  }
+
+
+  /**
+   * Counts an object and queues the objects its fields reference
+   * @param pObject object
+   * @param pWeight weight of the object
+   */
+  private void walkFields (Object pObject, double pWeight) {
+    Layout layout = getLayout(pObject.getClass());
+    mSize += pWeight * layout.mShallowSize;
+    if (pObject instanceof Reference) {
+      // a referent is only reachable as long as something else holds it
+      return;
+    }
+    for (Field field : layout.mReferences) {
+      try {
+        push(field.get(pObject), pWeight);
+      } catch (IllegalAccessException iae) {
+        // not walked
+      }
+    }
+  }
+
+
+  /**
+   * Queues an object to walk, unless it is counted already or is not part of the component
+   * @param pObject object, maybe null
+   * @param pWeight weight of the object
+   */
+  private void push (Object pObject, double pWeight) {
+    if (pObject == null || mVisited.containsKey(pObject) || isShared(pObject) || mStops.test(pObject)
+        || mVisited.size() >= mMaxObjects) {
+      return;
+    }
+    mVisited.put(pObject, Boolean.TRUE);
+    mPending.add(pObject);
+    mWeights.add(pWeight);
+  }
+
+
+  /**
+   * Returns true if an object belongs to the runtime or to the container rather than to a component
+   * @param pObject object
+   * @return true or false
+   */
+  private static boolean isShared (Object pObject) {
+    return (pObject instanceof Class || pObject instanceof ClassLoader || pObject instanceof Thread
+        || pObject instanceof Enum || pObject instanceof Atom || pObject instanceof Scope
+        || pObject instanceof java.lang.reflect.Member);
+  }
+
+
+  /**
+   * Returns true if the fields of a class can't be walked because its module is closed to reflection
+   * @param pClass class
+   * @return true for the classes of the JDK
+   */
+  private static boolean isClosed (Class pClass) {
+    String name = pClass.getName();
+    return name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("sun.") || name.startsWith("jdk.");
+  }
+
+
+  /**
+   * Returns the layout of a class, computing it on first use
+   * @param pClass class
+   * @return layout
+   */
+  private static Layout getLayout (Class pClass) {
+    Layout layout = sLayouts.get(pClass);
+    if (layout == null) {
+      long size = HEADER_SIZE;
+      List<Field> references = new ArrayList<Field>();
+      for (Class clazz = pClass; clazz != null; clazz = clazz.getSuperclass()) {
+        for (Field field : clazz.getDeclaredFields()) {
+          if (Modifier.isStatic(field.getModifiers())) {
+            continue;
+          }
+          if (field.getType().isPrimitive()) {
+            size += getPrimitiveSize(field.getType());
+          } else {
+            size += REFERENCE_SIZE;
+            if (!isClosed(clazz)) {
+              try {
+                field.setAccessible(true);
+                references.add(field);
+              } catch (RuntimeException re) {
+                // closed to reflection, the field is counted but not walked
+              }
+            }
+          }
+        }
+      }
+      layout = new Layout(align(size), references.toArray(new Field[references.size()]));
+      Layout previous = sLayouts.putIfAbsent(pClass, layout);
+      if (previous != null) {
+        layout = previous;
+      }
+    }
+    return layout;
+  } // end getLayout
+
+
+  /**
+   * Returns the size of a primitive type
+   * @param pType primitive type
+   * @return bytes
+   */
+  private static int getPrimitiveSize (Class pType) {
+    if (pType == long.class || pType == double.class) {
+      return 8;
+    }
+    if (pType == int.class || pType == float.class) {
+      return 4;
+    }
+    if (pType == short.class || pType == char.class) {
+      return 2;
+    }
+    return 1;
+  }
+
+
+  /**
+   * Rounds a size up to the 8 bytes alignment of objects
+   * @param pSize size
+   * @return aligned size
+   */
+  private static long align (long pSize) {
+    return (pSize + 7) & ~7L;
+  }
+
+} // end SizeEstimator
@@ -0,0 +1,229 @@
+package atom;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import atom.exception.AtomException;
+
+/**
+ * Starts the components of a container once the components they reference have started: a Startable waits in the
+ * creating thread for the asynchronous starts it depends on, an AsyncStartable is chained after them without blocking
+ * anybody. The pending and failed starts of the global components make up the readiness of the container. Only the
+ * starts in flight are waited for: a dependency whose start failed earlier holds nobody back, its failure being
+ * reported by the readiness
+ */
+class StartCoordinator {
+
+  // container, giving the scheduler of the timeouts and the counters
+  private final Atom mAtom;
+
+  // starts of the global components not completed yet, by component name
+  private final ConcurrentHashMap<String,CompletableFuture<Void>> mStarts = new ConcurrentHashMap<String,CompletableFuture<Void>>();
+
+  // failed starts of the global components, by component name
+  private final ConcurrentHashMap<String,CompletableFuture<Void>> mFailures = new ConcurrentHashMap<String,CompletableFuture<Void>>();
+
+
+  /**
+   * Constructor
+   * @param pAtom container
+   */
+  StartCoordinator (Atom pAtom) {
+    mAtom = pAtom;
+  }
+
+
+  /**
+   * Returns true if some asynchronous starts are in flight, in which case the dependencies of the components must be
+   * looked for
+   * @return true or false
+   */
+  boolean hasPendingStarts () {
+    return !mStarts.isEmpty();
+  }
+
+
+  /**
+   * Starts a component
+   * @param pName full component name
+   * @param pComponent component, Startable or AsyncStartable
+   * @param pDependencies names of the components referenced by this one, or null if none can be pending
+   * @param pTimeoutNanos maximum time to wait for the dependencies and the asynchronous start, 0 for no limit
+   * @param pTracked true if the start is part of the readiness of the container
+   */
+  void start (final String pName, Object pComponent, Collection<String> pDependencies, long pTimeoutNanos, boolean pTracked) {
+    CompletableFuture<Void> dependencies = getPendingStarts(pName, pDependencies);
+    if (pComponent instanceof AsyncStartable) {
+      startAsync(pName, (AsyncStartable) pComponent, dependencies, pTimeoutNanos, pTracked);
+      return;
+    }
+    if (dependencies != null) {
+      try {
+        if (pTimeoutNanos > 0) {
+          dependencies.get(pTimeoutNanos, TimeUnit.NANOSECONDS);
+        } else {
+          dependencies.get();
+        }
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        throw new AtomException("Interrupted while component " + pName + " waited for its dependencies to start", ie);
+      } catch (ExecutionException ee) {
+        mAtom.getMetrics().increment(Atom.START_FAILURES_COUNTER);
+        throw new AtomException("A dependency of component " + pName + " failed to start", ee.getCause());
+      } catch (TimeoutException te) {
+        mAtom.getMetrics().increment(Atom.START_FAILURES_COUNTER);
+        throw new AtomException("Dependencies of component " + pName + " did not start in time", te);
+      }
+    }
+    ((Startable) pComponent).start();
+  } // end start
+
+
+  /**
+   * Starts an AsyncStartable once its dependencies have started
+   * @param pName full component name
+   * @param pComponent component
+   * @param pDependencies pending starts of the dependencies, null if none
+   * @param pTimeoutNanos maximum time to start, 0 for no limit
+   * @param pTracked true if the start is part of the readiness of the container
+   */
+  private void startAsync (final String pName, final AsyncStartable pComponent, CompletableFuture<Void> pDependencies,
+      long pTimeoutNanos, boolean pTracked) {
+    final CompletableFuture<Void> started = new CompletableFuture<Void>();
+    if (pTracked) {
+      mStarts.put(pName, started);
+      // a component created again is judged by its new start
+      mFailures.remove(pName);
+    }
+    final BiConsumer<Object,Throwable> completion = new BiConsumer<Object,Throwable>() {
+      public void accept (Object pResult, Throwable pFailure) {
+        complete(pName, started, pFailure);
+      }
+    };
+    if (pTimeoutNanos > 0) {
+      final ScheduledFuture<?> timeout = mAtom.getScheduler().schedule(new Runnable() {
+        public void run () {
+          complete(pName, started, new TimeoutException("Component " + pName + " did not start in time"));
+        }
+      }, pTimeoutNanos, TimeUnit.NANOSECONDS);
+      started.whenComplete(new BiConsumer<Void,Throwable>() {
+        public void accept (Void pResult, Throwable pFailure) {
+          timeout.cancel(false);
+        }
+      });
+    }
+
+    CompletableFuture<Void> dependencies = (pDependencies != null ? pDependencies : CompletableFuture.<Void>completedFuture(null));
+    dependencies.whenComplete(new BiConsumer<Void,Throwable>() {
+      public void accept (Void pResult, Throwable pFailure) {
+        if (pFailure != null) {
+          complete(pName, started, pFailure);
+          return;
+        }
+        try {
+          CompletionStage<?> stage = pComponent.startAsync();
+          if (stage == null) {
+            complete(pName, started, null);
+          } else {
+            stage.whenComplete(completion);
+          }
+        } catch (RuntimeException re) {
+          complete(pName, started, re);
+        }
+      }
+    });
+  } // end startAsync
+
+
+  /**
+   * Completes a start, unless it timed out already. The bookkeeping is done first, so that it is up to date for the
+   * threads waiting for the start
+   * @param pName full component name
+   * @param pStarted start of the component
+   * @param pFailure failure, or null if the component started
+   */
+  private void complete (String pName, CompletableFuture<Void> pStarted, Throwable pFailure) {
+    synchronized (pStarted) {
+      if (pStarted.isDone()) {
+        return;
+      }
+      if (pFailure == null) {
+        // only the pending and failed starts are kept
+        mStarts.remove(pName, pStarted);
+        pStarted.complete(null);
+      } else {
+        // recorded as failed before leaving the starts in flight, so that the container never looks ready meanwhile
+        if (mStarts.get(pName) == pStarted) {
+          mFailures.put(pName, pStarted);
+          mStarts.remove(pName, pStarted);
+        }
+        mAtom.getMetrics().increment(Atom.START_FAILURES_COUNTER);
+        pStarted.completeExceptionally(pFailure);
+      }
+    }
+  } // end complete
+
+
+  /**
+   * Combines the starts in flight of the dependencies of a component
+   * @param pName full component name, left out of its own dependencies
+   * @param pDependencies names of the dependencies, or null
+   * @return future completed when all have started, or null if none is pending
+   */
+  private CompletableFuture<Void> getPendingStarts (String pName, Collection<String> pDependencies) {
+    if (pDependencies == null || mStarts.isEmpty()) {
+      return null;
+    }
+    List<CompletableFuture<Void>> pending = new ArrayList<CompletableFuture<Void>>();
+    for (String dependency : pDependencies) {
+      CompletableFuture<Void> start = (dependency.equals(pName) ? null : mStarts.get(dependency));
+      if (start != null) {
+        pending.add(start);
+      }
+    }
+    if (pending.isEmpty()) {
+      return null;
+    }
+    return CompletableFuture.allOf(pending.toArray(new CompletableFuture[pending.size()]));
+  } // end getPendingStarts
+
+
+  /**
+   * Returns the start of a global component
+   * @param pName full component name
+   * @return start in flight or failed, or null if the component started already or never was asynchronous
+   */
+  CompletableFuture<Void> getStart (String pName) {
+    CompletableFuture<Void> start = mStarts.get(pName);
+    return (start != null ? start : mFailures.get(pName));
+  }
+
+
+  /**
+   * Returns a future completed when all the asynchronous starts pending now have completed
+   * @return readiness, completed exceptionally if one of the starts failed
+   */
+  CompletableFuture<Void> getReadiness () {
+    List<CompletableFuture<Void>> starts = new ArrayList<CompletableFuture<Void>>(mFailures.values());
+    starts.addAll(mStarts.values());
+    return CompletableFuture.allOf(starts.toArray(new CompletableFuture[starts.size()]));
+  }
+
+
+  /**
+   * Returns true if no asynchronous start is pending or failed
+   * @return true or false
+   */
+  boolean isReady () {
+    return mStarts.isEmpty() && mFailures.isEmpty();
+  }
+
+} // end StartCoordinator
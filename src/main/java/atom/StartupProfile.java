@@ -0,0 +1,161 @@
+package atom;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import atom.exception.AtomException;
+
+/**
+ * The order in which components were resolved during a startup, with the time each creation took.
+ * Recorded by Atom on one boot and saved to a file, it is replayed on the next boots to prefetch the configurations
+ * and classes in the same order, as long as the fingerprint of the config path has not changed.
+ * The file has one line per component, the name and the creation time in microseconds, after a fingerprint line
+ */
+public class StartupProfile {
+
+  private static final String FINGERPRINT_PREFIX = "# fingerprint ";
+
+  // fingerprint of the config path the profile was recorded with
+  private final String mFingerprint;
+
+  // creation times in nanoseconds by component name, in resolution order; -1 while the creation is running
+  private final Map<String,Long> mTimes = new LinkedHashMap<String,Long>();
+
+
+  /**
+   * Constructor
+   * @param pFingerprint fingerprint of the config path
+   */
+  public StartupProfile (String pFingerprint) {
+    mFingerprint = pFingerprint;
+  }
+
+
+  /**
+   * Records that the creation of a component started, unless it was recorded already
+   * @param pName full component name
+   */
+  synchronized void recordStart (String pName) {
+    if (!mTimes.containsKey(pName)) {
+      mTimes.put(pName, -1L);
+    }
+  }
+
+
+  /**
+   * Records the time a creation took, including the creation of the components it references
+   * @param pName full component name
+   * @param pNanos creation time in nanoseconds
+   */
+  synchronized void recordTime (String pName, long pNanos) {
+    Long previous = mTimes.get(pName);
+    if (previous == null || previous < 0) {
+      mTimes.put(pName, pNanos);
+    }
+  }
+
+
+  /**
+   * Returns the fingerprint of the config path the profile was recorded with
+   * @return fingerprint
+   */
+  public String getFingerprint () {
+    return mFingerprint;
+  }
+
+
+  /**
+   * Returns the names of the components, in resolution order
+   * @return list of full component names
+   */
+  public synchronized List<String> getComponentNames () {
+    return new ArrayList<String>(mTimes.keySet());
+  }
+
+
+  /**
+   * Returns the time the creation of a component took
+   * @param pName full component name
+   * @return time in nanoseconds, or -1 if unknown
+   */
+  public synchronized long getCreationTime (String pName) {
+    Long time = mTimes.get(pName);
+    return (time == null ? -1 : time);
+  }
+
+
+  /**
+   * Saves the profile
+   * @param pFile file to write
+   */
+  public synchronized void save (File pFile) {
+    try {
+      Writer writer = new OutputStreamWriter(new FileOutputStream(pFile), "UTF-8");
+      try {
+        writer.write(FINGERPRINT_PREFIX + mFingerprint + "\n");
+        for (Map.Entry<String,Long> entry : mTimes.entrySet()) {
+          writer.write(entry.getKey() + " " + (entry.getValue() < 0 ? -1 : entry.getValue() / 1000) + "\n");
+        }
+      } finally {
+        writer.close();
+      }
+    } catch (IOException ioe) {
+      throw new AtomException("Got IOException writing startup profile = " + pFile, ioe);
+    }
+  } // end save
+
+
+  /**
+   * Loads a saved profile
+   * @param pFile file to read
+   * @return profile, or null if the file does not exist or is not a profile
+   */
+  public static StartupProfile load (File pFile) {
+    if (pFile == null || !pFile.isFile()) {
+      return null;
+    }
+    try {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(pFile), "UTF-8"));
+      try {
+        String line = reader.readLine();
+        if (line == null || !line.startsWith(FINGERPRINT_PREFIX)) {
+          return null;
+        }
+        StartupProfile profile = new StartupProfile(line.substring(FINGERPRINT_PREFIX.length()).trim());
+        while ((line = reader.readLine()) != null) {
+          int idx = line.lastIndexOf(' ');
+          if (idx <= 0) {
+            continue;
+          }
+          String name = line.substring(0, idx);
+          long micros;
+          try {
+            micros = Long.parseLong(line.substring(idx + 1));
+          } catch (NumberFormatException nfe) {
+            return null;
+          }
+          profile.recordStart(name);
+          if (micros >= 0) {
+            profile.recordTime(name, micros * 1000);
+          }
+        }
+        return profile;
+      } finally {
+        reader.close();
+      }
+    } catch (IOException ioe) {
+      // an unreadable profile is simply not replayed
+      return null;
+    }
+  } // end load
+
+} // end StartupProfile
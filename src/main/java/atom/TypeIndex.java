@@ -0,0 +1,114 @@
+package atom;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import atom.exception.AtomException;
+
+/**
+ * Index of the components configured in a config path by type: each component is listed under its $class and
+ * under all the superclasses and interfaces of it, so that all the components of a type are found without merging
+ * and loading every configuration again. Built once by walking the config tree, and thrown away by the container
+ * when its configurations change
+ */
+class TypeIndex {
+
+  // supertypes by class, computed once per class and shared by all the containers. Attached to the classes
+  // themselves, so that the class loaders of undeployed applications can be collected
+  private static final ClassValue<Class[]> sSupertypes = new ClassValue<Class[]>() {
+    protected Class[] computeValue (Class<?> pClass) {
+      Set<Class> types = new LinkedHashSet<Class>();
+      addSupertypes(pClass, types);
+      return types.toArray(new Class[types.size()]);
+    }
+  };
+
+  // sorted names of the configured components by type
+  private final Map<Class,Set<String>> mNames = new HashMap<Class,Set<String>>();
+
+  // scope names of the indexed components
+  private final Map<String,String> mScopes = new HashMap<String,String>();
+
+
+  /**
+   * Constructor, walks the config tree and merges the configuration of each component
+   * @param pAtom container merging the configurations
+   */
+  TypeIndex (Atom pAtom) {
+    for (String name : new ConfigTree(pAtom.getConfigPath()).getComponentNames()) {
+      Configuration config;
+      try {
+        config = pAtom.mergeConfiguration(name);
+      } catch (AtomException ae) {
+        // reported by the validator
+        continue;
+      }
+      String className = config.getProperty(Atom.CLASS_PROPERTY);
+      Class clazz = (className == null ? null : ConfigTree.loadClass(className.trim(), false));
+      if (clazz == null) {
+        continue;
+      }
+      for (Class type : getSupertypes(clazz)) {
+        Set<String> names = mNames.get(type);
+        if (names == null) {
+          names = new TreeSet<String>();
+          mNames.put(type, names);
+        }
+        names.add(name);
+      }
+      String scopeName = config.getProperty(Atom.SCOPE_PROPERTY);
+      mScopes.put(name, (scopeName == null ? "" : scopeName.trim()));
+    }
+  } // end TypeIndex
+
+
+  /**
+   * Returns the names of the configured components of a type
+   * @param pType class or interface
+   * @return sorted names, unmodifiable
+   */
+  Set<String> getNames (Class pType) {
+    Set<String> names = mNames.get(pType);
+    return (names == null ? Collections.<String>emptySet() : Collections.unmodifiableSet(names));
+  }
+
+
+  /**
+   * Returns the configured scope of an indexed component
+   * @param pName full component name
+   * @return scope name, or null if the component is not indexed
+   */
+  String getScopeName (String pName) {
+    return mScopes.get(pName);
+  }
+
+
+  /**
+   * Returns a class with all its superclasses and all the interfaces it implements, directly or not
+   * @param pClass class
+   * @return class, superclasses and interfaces
+   */
+  static Class[] getSupertypes (Class pClass) {
+    return sSupertypes.get(pClass);
+  }
+
+
+  /**
+   * Recursively adds a type and its supertypes
+   * @param pType class or interface
+   * @param pTypes set receiving the types
+   */
+  private static void addSupertypes (Class pType, Set<Class> pTypes) {
+    if (pType == null || !pTypes.add(pType)) {
+      return;
+    }
+    addSupertypes(pType.getSuperclass(), pTypes);
+    for (Class iface : pType.getInterfaces()) {
+      addSupertypes(iface, pTypes);
+    }
+  }
+
+} // end TypeIndex
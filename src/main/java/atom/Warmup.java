@@ -0,0 +1,194 @@
+package atom;
+
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import atom.exception.AtomException;
+
+/**
+ * Warms up the creation of the session and request components: creates them over and over in throwaway scopes, so
+ * that the JIT compiles the reflective creation path before the first requests come in. Each component is created
+ * enough times to cross the compilation thresholds of the JIT, then the rounds go on until the JIT compilation time
+ * has not grown for a while, since the JIT compiles in the background; or until the time budget is spent.
+ * Components with side effects opt out with $warmup=false, and so do the components referencing them
+ */
+class Warmup {
+
+  // rounds before the compilation may be considered settled: the creation path then has crossed the compilation
+  // thresholds of the JIT
+  static final int MIN_ROUNDS = 10000;
+
+  // rounds after which the warm-up ends, settled or not
+  private static final int MAX_ROUNDS = 100000;
+
+  // time without JIT compilation after which the compilation is considered settled, in nanoseconds
+  private static final long SETTLED_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+  // container creating the components
+  private final Atom mAtom;
+
+  // names of the components warmed up
+  private final List<String> mNames = new ArrayList<String>();
+
+  // true for the session and request components that opt out or reference one that does, false for the others
+  private final Map<String,Boolean> mOptedOut = new HashMap<String,Boolean>();
+
+  // compilation time of the JIT, null if the JVM doesn't report it
+  private final CompilationMXBean mCompilation;
+
+
+  /**
+   * Constructor
+   * @param pAtom container creating the components
+   */
+  Warmup (Atom pAtom) {
+    mAtom = pAtom;
+    CompilationMXBean compilation = ManagementFactory.getCompilationMXBean();
+    mCompilation = (compilation != null && compilation.isCompilationTimeMonitoringSupported() ? compilation : null);
+  }
+
+
+  /**
+   * Collects the session and request components at and below a name prefix that don't opt out
+   * @param pPrefix name prefix, "/" for all the components
+   * @return number of components to warm up
+   */
+  int collect (String pPrefix) {
+    for (String name : new ConfigTree(mAtom.getConfigPath()).getComponentNames()) {
+      if (!name.startsWith(pPrefix)) {
+        continue;
+      }
+      Configuration config;
+      try {
+        config = mAtom.mergeConfiguration(name);
+      } catch (AtomException ae) {
+        // reported by the validator
+        continue;
+      }
+      if (isWarmedScope(config) && !isOptedOut(name)) {
+        mNames.add(name);
+      }
+    }
+    return mNames.size();
+  } // end collect
+
+
+  /**
+   * Returns true if a configuration creates its component in a session or request scope
+   * @param pConfig merged configuration
+   * @return true or false
+   */
+  private static boolean isWarmedScope (Configuration pConfig) {
+    String scope = pConfig.getProperty(Atom.SCOPE_PROPERTY);
+    return Atom.SESSION_SCOPE.equals(scope) || Atom.REQUEST_SCOPE.equals(scope);
+  }
+
+
+  /**
+   * Returns true if a session or request component opts out of the warm-up, or would create one that does:
+   * the throwaway scopes would create the components it references along with it
+   * @param pName full component name
+   * @return true or false, false for the global components, which are created for good
+   */
+  private boolean isOptedOut (String pName) {
+    Boolean optedOut = mOptedOut.get(pName);
+    if (optedOut != null) {
+      return optedOut;
+    }
+    // a circular reference ends here, it is reported by the creation
+    mOptedOut.put(pName, Boolean.FALSE);
+    Configuration config;
+    try {
+      config = mAtom.mergeConfiguration(pName);
+    } catch (AtomException ae) {
+      // not a component, i.e. an absolute file name
+      return false;
+    }
+    boolean result = false;
+    if (isWarmedScope(config)) {
+      result = "false".equals(config.getProperty(Atom.WARMUP_PROPERTY));
+      for (Iterator<String> it = mAtom.getDependencies(config).iterator(); it.hasNext() && !result; ) {
+        result = isOptedOut(it.next());
+      }
+    }
+    mOptedOut.put(pName, result);
+    return result;
+  } // end isOptedOut
+
+
+  /**
+   * Runs rounds of creations until the compilation settles or the budget is spent
+   * @param pBudgetNanos time budget in nanoseconds
+   * @return number of components created
+   */
+  int run (long pBudgetNanos) {
+    long deadline = System.nanoTime() + pBudgetNanos;
+    long compilationTime = getCompilationTime();
+    long compiledAt = System.nanoTime();
+    int created = 0;
+    for (int round = 0; round < MAX_ROUNDS && !mNames.isEmpty() && System.nanoTime() - deadline < 0; round++) {
+      created += runRound();
+      if (mCompilation != null) {
+        long time = getCompilationTime();
+        long now = System.nanoTime();
+        if (time != compilationTime) {
+          compilationTime = time;
+          compiledAt = now;
+        } else if (round + 1 >= MIN_ROUNDS && now - compiledAt >= SETTLED_NANOS) {
+          break;
+        }
+      } else if (round + 1 >= MIN_ROUNDS) {
+        break;
+      }
+    }
+    return created;
+  } // end run
+
+
+  /**
+   * Creates every component once in new scopes, then stops and discards them. A component failing to be created is
+   * left out of the next rounds
+   * @return number of components created
+   */
+  private int runRound () {
+    Scope session = new Scope(Atom.SESSION_SCOPE);
+    session.setParentScope(mAtom.getGlobalScope());
+    Scope request = new Scope(Atom.REQUEST_SCOPE);
+    request.setParentScope(session);
+    int created = 0;
+    try {
+      for (Iterator<String> it = mNames.iterator(); it.hasNext(); ) {
+        String name = it.next();
+        try {
+          if (request.resolveName(name, true) != null) {
+            created++;
+          }
+        } catch (RuntimeException re) {
+          // created again, and reported, on first use
+          it.remove();
+          mAtom.getMetrics().increment(Atom.WARMUP_FAILURES_COUNTER);
+        }
+      }
+    } finally {
+      request.stopSubtree("/");
+      session.stopSubtree("/");
+    }
+    mAtom.getMetrics().add(Atom.WARMUP_CREATIONS_COUNTER, created);
+    return created;
+  } // end runRound
+
+
+  /**
+   * Returns the accumulated compilation time of the JIT
+   * @return time in milliseconds, 0 if not reported
+   */
+  private long getCompilationTime () {
+    return (mCompilation == null ? 0 : mCompilation.getTotalCompilationTime());
+  }
+
+} // end Warmup
@@ -0,0 +1,580 @@
+package atom.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import atom.Atom;
+import atom.AtomAware;
+import atom.ComponentTiming;
+import atom.ConfigTree;
+import atom.Configuration;
+import atom.Histogram;
+import atom.Scope;
+import atom.SizeEstimate;
+import atom.Startable;
+import atom.Stoppable;
+import atom.exception.AtomException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Administration console of a container, served over HTTP on the loopback interface only. Browses the configured and
+ * created global components, shows the merged configuration of a component with the layers that set each property,
+ * lists the creation and start times and the counters, and reloads a component with the global components referencing
+ * it. Nothing is loaded unless the console is configured, and it costs nothing but an idle thread while nobody
+ * browses it:
+ * <pre>$class=atom.service.AdminConsole
+ * $scope=global
+ * port=8081</pre>
+ */
+public class AdminConsole implements Startable, Stoppable, AtomAware {
+
+  private static final String UTF_8 = "UTF-8";
+
+  // the container that created this console
+  private Atom mAtom = Atom.getAtom();
+
+  // port to listen to, 0 for any free port
+  private int mPort;
+
+  // server, null while stopped
+  private HttpServer mServer;
+
+
+  /**
+   * No-args constructor
+   */
+  public AdminConsole () {
+    //
+  }
+
+
+  /**
+   * Starts serving the console on the loopback interface
+   */
+  public synchronized void start () {
+    if (mServer != null) {
+      return;
+    }
+    try {
+      mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), mPort), 0);
+    } catch (IOException ioe) {
+      throw new AtomException("Could not start the admin console on port " + mPort, ioe);
+    }
+    mServer.createContext("/", new ConsoleHandler());
+    mServer.start();
+  }
+
+
+  /**
+   * Stops serving the console
+   */
+  public synchronized void stop () {
+    if (mServer != null) {
+      mServer.stop(0);
+      mServer = null;
+    }
+  }
+
+
+  /**
+   * Returns the port the console listens to
+   * @return port, or 0 if stopped
+   */
+  public synchronized int getLocalPort () {
+    return (mServer == null ? 0 : mServer.getAddress().getPort());
+  }
+
+
+  /**
+   * Serves the pages of the console
+   */
+  private class ConsoleHandler implements HttpHandler {
+
+    public void handle (HttpExchange pExchange) throws IOException {
+      try {
+        String path = pExchange.getRequestURI().getPath();
+        Map<String,String> params = parseQuery(pExchange.getRequestURI().getRawQuery());
+        if (!isLocal(pExchange)) {
+          send(pExchange, 403, page("Forbidden", "<p>Only local pages can use the console</p>"));
+        } else if ("/reload".equals(path)) {
+          String name = params.get("name");
+          if (!"POST".equals(pExchange.getRequestMethod())) {
+            send(pExchange, 405, page("Reload", "<p>Reloading takes a POST request</p>"));
+          } else if (name != null && isReloadedWith(name)) {
+            // the reload stops this console: it runs once the response is sent
+            send(pExchange, 202, page("Reload of " + name, "<p>Reloading, the console restarts</p>"));
+            pExchange.close();
+            reloadLater(name);
+          } else {
+            send(pExchange, 200, reload(name));
+          }
+        } else if (!"GET".equals(pExchange.getRequestMethod())) {
+          send(pExchange, 405, page("Error", "<p>Only GET is supported here</p>"));
+        } else if ("/".equals(path)) {
+          send(pExchange, 200, overview());
+        } else if ("/components".equals(path)) {
+          String prefix = params.get("prefix");
+          send(pExchange, 200, components(prefix == null || "".equals(prefix) ? "/" : prefix));
+        } else if ("/component".equals(path)) {
+          send(pExchange, 200, component(params.get("name")));
+        } else if ("/metrics".equals(path)) {
+          send(pExchange, 200, metrics());
+        } else if ("/timings".equals(path)) {
+          send(pExchange, 200, timings());
+        } else if ("/memory".equals(path)) {
+          send(pExchange, 200, memory());
+        } else {
+          send(pExchange, 404, page("Not found", "<p>No page " + escape(path) + "</p>"));
+        }
+      } catch (RuntimeException re) {
+        send(pExchange, 500, page("Error", "<pre>" + escape(String.valueOf(re)) + "</pre>"));
+      } finally {
+        pExchange.close();
+      }
+    } // end handle
+  } // end ConsoleHandler
+
+
+  /**
+   * Returns true if a request comes from a page of the console itself: a page of another site, or of a host name
+   * pointing to the loopback interface, must not drive it through a local browser
+   * @param pExchange exchange
+   * @return true if the Host header, and the Origin header if any, name the loopback interface
+   */
+  private static boolean isLocal (HttpExchange pExchange) {
+    String host = pExchange.getRequestHeaders().getFirst("Host");
+    if (host == null || !isLoopbackHost(host)) {
+      return false;
+    }
+    String origin = pExchange.getRequestHeaders().getFirst("Origin");
+    return (origin == null || (origin.startsWith("http://") && isLoopbackHost(origin.substring("http://".length()))));
+  }
+
+
+  /**
+   * Returns true if a host, with an optional port, names the loopback interface: localhost, [::1], or an IPv4 address
+   * in 127.0.0.0/8 written as four decimal numbers. A DNS name such as 127.example.com may point anywhere
+   * @param pHost i.e. localhost:8081
+   * @return true or false
+   */
+  private static boolean isLoopbackHost (String pHost) {
+    String host = pHost;
+    if (host.startsWith("[")) {
+      host = host.substring(0, host.indexOf(']') + 1);
+    } else if (host.indexOf(':') >= 0) {
+      host = host.substring(0, host.indexOf(':'));
+    }
+    return "localhost".equalsIgnoreCase(host) || "[::1]".equals(host) || isLoopbackAddress(host);
+  }
+
+
+  /**
+   * Returns true if a host is a literal IPv4 address in 127.0.0.0/8
+   * @param pHost host without port
+   * @return true or false
+   */
+  private static boolean isLoopbackAddress (String pHost) {
+    String[] octets = pHost.split("\\.", -1);
+    if (octets.length != 4 || !"127".equals(octets[0])) {
+      return false;
+    }
+    for (String octet : octets) {
+      if (octet.length() == 0 || octet.length() > 3) {
+        return false;
+      }
+      for (int i = 0; i < octet.length(); i++) {
+        if (octet.charAt(i) < '0' || octet.charAt(i) > '9') {
+          return false;
+        }
+      }
+      if (Integer.parseInt(octet) > 255) {
+        return false;
+      }
+    }
+    return true;
+  } // end isLoopbackAddress
+
+
+  /**
+   * Renders the overview of the container
+   * @return HTML page
+   */
+  String overview () {
+    StringBuilder sb = new StringBuilder();
+    sb.append("<p>Ready: ").append(mAtom.isReady()).append("</p>");
+    sb.append("<p>Global components created: ").append(mAtom.getGlobalScope().getComponents("/").size()).append("</p>");
+    sb.append("<h2>Config path</h2><ol>");
+    for (Object layer : mAtom.getConfigPath()) {
+      sb.append("<li>").append(escape(String.valueOf(layer))).append("</li>");
+    }
+    sb.append("</ol><ul><li><a href=\"/components?prefix=/\">Components</a></li>")
+        .append("<li><a href=\"/timings\">Creation and start times</a></li>")
+        .append("<li><a href=\"/memory\">Estimated memory</a></li>")
+        .append("<li><a href=\"/metrics\">Counters and histograms</a></li></ul>");
+    return page("Atom", sb.toString());
+  }
+
+
+  /**
+   * Renders the configured components and directories directly under a prefix
+   * @param pPrefix name prefix ending with /
+   * @return HTML page
+   */
+  String components (String pPrefix) {
+    String prefix = (pPrefix.endsWith("/") ? pPrefix : pPrefix + "/");
+    TreeSet<String> directories = new TreeSet<String>();
+    TreeSet<String> names = new TreeSet<String>();
+    for (String name : new ConfigTree(mAtom.getConfigPath()).getComponentNames()) {
+      if (!name.startsWith(prefix)) {
+        continue;
+      }
+      int idx = name.indexOf('/', prefix.length());
+      if (idx < 0) {
+        names.add(name);
+      } else {
+        directories.add(name.substring(0, idx + 1));
+      }
+    }
+    Map<String,Object> created = mAtom.getGlobalScope().getComponents(prefix);
+    StringBuilder sb = new StringBuilder("<ul>");
+    for (String directory : directories) {
+      sb.append("<li>").append(link("/components", "prefix", directory, directory)).append("</li>");
+    }
+    for (String name : names) {
+      sb.append("<li>").append(link("/component", "name", name, name))
+          .append(created.containsKey(name) ? " (created)" : "").append("</li>");
+    }
+    return page("Components under " + prefix, sb.append("</ul>").toString());
+  } // end components
+
+
+  /**
+   * Renders a component: its merged configuration, the layers setting each property, and its times
+   * @param pName full component name
+   * @return HTML page
+   */
+  String component (String pName) {
+    if (pName == null || !pName.startsWith("/")) {
+      return page("Error", "<p>Missing component name</p>");
+    }
+    Map<File,Map<String,String>> layers = mAtom.getConfigurationLayers(pName);
+    if (layers.isEmpty()) {
+      return page(pName, "<p>Not configured</p>");
+    }
+    StringBuilder sb = new StringBuilder();
+    Object registered = mAtom.getGlobalScope().getComponents(pName).get(pName);
+    sb.append("<p>").append(registered == null ? "Not created in the global scope" : "Created in the global scope")
+        .append("</p>");
+    ComponentTiming timing = mAtom.getComponentTimings().get(pName);
+    if (timing != null) {
+      sb.append("<p>").append(timing.getCreations()).append(" instance(s), last created ")
+          .append(formatDate(timing.getLastCreated())).append(" in ").append(formatNanos(timing.getCreateNanos()))
+          .append(timing.getStartNanos() < 0 ? "" : ", started in " + formatNanos(timing.getStartNanos())).append("</p>");
+    }
+
+    // merged configuration, with the layers that set, extended or reduced each property
+    Configuration config = mAtom.peekConfiguration(pName);
+    sb.append("<h2>Merged configuration</h2><table><tr><th>Property</th><th>Value</th><th>Layers</th></tr>");
+    for (String property : new TreeSet<String>(config.getPropertyNames())) {
+      StringBuilder origins = new StringBuilder();
+      int index = 0;
+      for (Map<String,String> properties : layers.values()) {
+        for (String key : new String[] { property, property + "+", property + "-" }) {
+          if (properties.containsKey(key)) {
+            origins.append(origins.length() == 0 ? "" : ", ").append(index).append(key.substring(property.length()));
+          }
+        }
+        index++;
+      }
+      String value = config.getProperty(property);
+      sb.append("<tr><td>").append(escape(property)).append("</td><td>")
+          .append("$basedOn".equals(property) ? link("/component", "name", value.trim(), value) : escape(value))
+          .append("</td><td>").append(origins.length() == 0 ? "template" : origins.toString()).append("</td></tr>");
+    }
+    sb.append("</table><h2>Layers</h2>");
+    int index = 0;
+    for (Map.Entry<File,Map<String,String>> layer : layers.entrySet()) {
+      sb.append("<h3>").append(index++).append(": ").append(escape(layer.getKey().getPath())).append("</h3><pre>");
+      for (Map.Entry<String,String> property : layer.getValue().entrySet()) {
+        sb.append(escape(property.getKey())).append('=').append(escape(property.getValue())).append('\n');
+      }
+      sb.append("</pre>");
+    }
+    sb.append("<form method=\"post\" action=\"/reload?name=").append(encode(pName))
+        .append("\"><button>Reload</button></form>");
+    return page(pName, sb.toString());
+  } // end component
+
+
+  /**
+   * Reloads a global component, the components below its name, and the global components referencing them
+   * @param pName full component name
+   * @return HTML page listing the reloaded components
+   */
+  String reload (String pName) {
+    if (pName == null || !pName.startsWith("/")) {
+      return page("Error", "<p>Missing component name</p>");
+    }
+    List<String> names = mAtom.reloadSubtree(pName);
+    StringBuilder sb = new StringBuilder("<p>Reloaded ").append(names.size()).append(" component(s)</p><ul>");
+    for (String name : names) {
+      sb.append("<li>").append(link("/component", "name", name, name)).append("</li>");
+    }
+    return page("Reload of " + pName, sb.append("</ul>").toString());
+  }
+
+
+  /**
+   * Returns true if this console is one of the components reloaded with a name, i.e. it is below the name
+   * @param pName full component name, or prefix
+   * @return true or false
+   */
+  boolean isReloadedWith (String pName) {
+    String prefix = (pName.endsWith("/") ? pName : pName + "/");
+    for (Map.Entry<String,Object> entry : mAtom.getGlobalScope().getComponents("/").entrySet()) {
+      if (entry.getValue() == this) {
+        return entry.getKey().equals(pName) || entry.getKey().startsWith(prefix);
+      }
+    }
+    return false;
+  }
+
+
+  /**
+   * Reloads components in a thread of its own, so that the request that asked for it completes before this console
+   * is stopped
+   * @param pName full component name, or prefix
+   */
+  private void reloadLater (final String pName) {
+    Thread thread = new Thread("AdminConsole reload") {
+      public void run () {
+        try {
+          mAtom.reloadSubtree(pName);
+        } catch (RuntimeException re) {
+          Logger.getLogger(AdminConsole.class.getName()).log(Level.WARNING, "Could not reload " + pName, re);
+        }
+      }
+    };
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+
+  /**
+   * Renders the counters and histograms of the container
+   * @return HTML page
+   */
+  String metrics () {
+    StringBuilder sb = new StringBuilder("<h2>Counters</h2><table>");
+    for (Map.Entry<String,Long> counter : mAtom.getMetrics().getCounters().entrySet()) {
+      sb.append("<tr><td>").append(escape(counter.getKey())).append("</td><td>").append(counter.getValue())
+          .append("</td></tr>");
+    }
+    sb.append("</table><h2>Histograms</h2><table><tr><th>Name</th><th>Count</th><th>Mean</th><th>p50</th><th>p99</th>")
+        .append("<th>Max</th></tr>");
+    for (Map.Entry<String,Histogram> entry : mAtom.getMetrics().getHistograms().entrySet()) {
+      Histogram histogram = entry.getValue();
+      boolean bytes = entry.getKey().endsWith(Atom.ALLOCATED_SUFFIX);
+      sb.append("<tr><td>").append(escape(entry.getKey())).append("</td><td>").append(histogram.getCount())
+          .append("</td><td>").append(formatValue(histogram.getMeanNanos(), bytes))
+          .append("</td><td>").append(formatValue(histogram.getPercentile(50), bytes))
+          .append("</td><td>").append(formatValue(histogram.getPercentile(99), bytes))
+          .append("</td><td>").append(formatValue(histogram.getMaxNanos(), bytes)).append("</td></tr>");
+    }
+    return page("Metrics", sb.append("</table>").toString());
+  } // end metrics
+
+
+  /**
+   * Renders the creation and start times of the components
+   * @return HTML page
+   */
+  String timings () {
+    StringBuilder sb = new StringBuilder("<table><tr><th>Component</th><th>Instances</th><th>Last created</th>")
+        .append("<th>Creation</th><th>Start</th></tr>");
+    for (ComponentTiming timing : mAtom.getComponentTimings().values()) {
+      sb.append("<tr><td>").append(link("/component", "name", timing.getName(), timing.getName()))
+          .append("</td><td>").append(timing.getCreations())
+          .append("</td><td>").append(formatDate(timing.getLastCreated()))
+          .append("</td><td>").append(formatNanos(timing.getCreateNanos()))
+          .append("</td><td>").append(timing.getStartNanos() < 0 ? "" : formatNanos(timing.getStartNanos()))
+          .append("</td></tr>");
+    }
+    return page("Creation and start times", sb.append("</table>").toString());
+  }
+
+
+  /**
+   * Renders the estimated memory retained by the global components and by the components of each class
+   * @return HTML page
+   */
+  String memory () {
+    Scope global = mAtom.getGlobalScope();
+    StringBuilder sb = new StringBuilder("<p>Global scope: ").append(global.getEstimatedSize())
+        .append(" bytes</p><h2>By class</h2><table><tr><th>Class</th><th>Measured</th><th>Mean</th><th>Max</th></tr>");
+    for (SizeEstimate estimate : mAtom.getSizeEstimates().values()) {
+      sb.append("<tr><td>").append(escape(estimate.getClassName())).append("</td><td>").append(estimate.getSamples())
+          .append("</td><td>").append(estimate.getMeanBytes()).append("</td><td>").append(estimate.getMaxBytes())
+          .append("</td></tr>");
+    }
+    sb.append("</table><h2>Global components</h2><table><tr><th>Component</th><th>Bytes</th></tr>");
+    for (Map.Entry<String,Long> entry : global.getEstimatedSizes().entrySet()) {
+      sb.append("<tr><td>").append(link("/component", "name", entry.getKey(), entry.getKey())).append("</td><td>")
+          .append(entry.getValue()).append("</td></tr>");
+    }
+    return page("Estimated memory", sb.append("</table>").toString());
+  }
+
+
+  /**
+   * Wraps the body of a page
+   * @param pTitle title, not escaped yet
+   * @param pBody HTML body
+   * @return HTML page
+   */
+  private static String page (String pTitle, String pBody) {
+    return "<!DOCTYPE html><html><head><meta charset=\"utf-8\"><title>" + escape(pTitle) + "</title></head><body>"
+        + "<p><a href=\"/\">Atom</a></p><h1>" + escape(pTitle) + "</h1>" + pBody + "</body></html>";
+  }
+
+
+  private static String link (String pPath, String pParam, String pValue, String pText) {
+    return "<a href=\"" + pPath + "?" + pParam + "=" + encode(pValue) + "\">" + escape(pText) + "</a>";
+  }
+
+
+  private static String formatValue (long pValue, boolean pBytes) {
+    return (pBytes ? pValue + " B" : formatNanos(pValue));
+  }
+
+
+  private static String formatNanos (long pNanos) {
+    return (pNanos < 10000 ? pNanos + "ns" : (pNanos < 10000000 ? pNanos / 1000 + "us" : pNanos / 1000000 + "ms"));
+  }
+
+
+  private static String formatDate (long pMillis) {
+    return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date(pMillis));
+  }
+
+
+  /**
+   * Escapes text for HTML
+   * @param pText text, maybe null
+   * @return escaped text
+   */
+  static String escape (String pText) {
+    if (pText == null) {
+      return "";
+    }
+    StringBuilder sb = new StringBuilder(pText.length());
+    for (int i = 0; i < pText.length(); i++) {
+      char c = pText.charAt(i);
+      switch (c) {
+        case '<':
+          sb.append("&lt;");
+          break;
+        case '>':
+          sb.append("&gt;");
+          break;
+        case '&':
+          sb.append("&amp;");
+          break;
+        case '"':
+          sb.append("&quot;");
+          break;
+        default:
+          sb.append(c);
+          break;
+      }
+    }
+    return sb.toString();
+  } // end escape
+
+
+  private static String encode (String pValue) {
+    try {
+      return URLEncoder.encode(pValue, UTF_8);
+    } catch (UnsupportedEncodingException uee) {
+      throw new AtomException("UTF-8 not supported", uee);
+    }
+  }
+
+
+  /**
+   * Parses a query string
+   * @param pRawQuery raw query, maybe null
+   * @return decoded parameters, the first value of each
+   */
+  private static Map<String,String> parseQuery (String pRawQuery) {
+    Map<String,String> params = new HashMap<String,String>();
+    if (pRawQuery == null) {
+      return params;
+    }
+    try {
+      for (String pair : pRawQuery.split("&")) {
+        int idx = pair.indexOf('=');
+        String name = URLDecoder.decode(idx < 0 ? pair : pair.substring(0, idx), UTF_8);
+        if (!params.containsKey(name)) {
+          params.put(name, (idx < 0 ? "" : URLDecoder.decode(pair.substring(idx + 1), UTF_8)));
+        }
+      }
+    } catch (UnsupportedEncodingException uee) {
+      throw new AtomException("UTF-8 not supported", uee);
+    }
+    return params;
+  } // end parseQuery
+
+
+  /**
+   * Sends a page
+   * @param pExchange exchange
+   * @param pStatus HTTP status
+   * @param pPage HTML page
+   * @throws IOException if the page can't be sent
+   */
+  private static void send (HttpExchange pExchange, int pStatus, String pPage) throws IOException {
+    byte[] body = pPage.getBytes(UTF_8);
+    pExchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+    pExchange.sendResponseHeaders(pStatus, body.length);
+    OutputStream out = pExchange.getResponseBody();
+    try {
+      out.write(body);
+    } finally {
+      out.close();
+    }
+  }
+
+
+  public Atom getAtom () {
+    return mAtom;
+  }
+
+  public void setAtom (Atom pAtom) {
+    mAtom = pAtom;
+  }
+
+  public int getPort () {
+    return mPort;
+  }
+
+  public void setPort (int pPort) {
+    mPort = pPort;
+  }
+
+} // end AdminConsole
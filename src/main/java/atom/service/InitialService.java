@@ -1,18 +1,58 @@
 package atom.service;
 
+import java.io.File;
 import java.util.Iterator;
 import java.util.List;
 import atom.Atom;
+import atom.AtomAware;
+import atom.ClassPreloader;
 import atom.Startable;
 
 /**
  * Service used to initialize other services at Atom startup
  */
-public class InitialService implements Startable {
+public class InitialService implements Startable, AtomAware {
+
+  // the container that created this service
+  private Atom mAtom = Atom.getAtom();
 
   // the list of services to initialize
   private List<String> mInitialServices;
 
+  // true to load the classes of all the configured components in the background
+  private boolean mPreloadClasses;
+
+  // number of threads preloading the classes
+  private int mPreloadThreads = Runtime.getRuntime().availableProcessors();
+
+  // preloader started by this service, null if preloading is disabled
+  private ClassPreloader mPreloader;
+
+  // file where the startup profile is recorded and replayed from, null to disable the profile
+  private File mStartupProfile;
+
+  // true to prefetch the components referenced by each configuration
+  private boolean mPrefetchReferences;
+
+  // number of threads prefetching the components of the startup profile and the referenced components
+  private int mPrefetchThreads = Runtime.getRuntime().availableProcessors();
+
+  // time budget of the warm-up of the session and request components in milliseconds, 0 to disable the warm-up
+  private long mWarmupMillis;
+
+  // number of threads creating the components configured with $startup=background, 0 to create them on first use
+  private int mBackgroundThreads;
+
+  // one creation out of mMemoryAccountingSampling is measured by the memory accounting, 0 to leave it off
+  private int mMemoryAccountingSampling;
+
+  // true to measure the cost of creating the request components, once the warm-up is over
+  private boolean mRequestAccounting;
+
+  // quota of each session scope in bytes, 0 for none, and what to do over it: reject or passivate
+  private long mSessionQuotaBytes;
+  private String mSessionQuotaPolicy = Atom.QUOTA_REJECT;
+
 
   /**
    * No-args constructor
@@ -23,17 +63,56 @@ public class InitialService implements Startable {
 
 
   /**
-   * Initializes each configured service
+   * Enables the prefetching of the referenced components, replays the startup profile and starts preloading the
+   * component classes if enabled, then initializes each configured service, saves the new startup profile, warms up
+   * the session and request components and starts creating the background components
    */
   public void start () {
+    if (mMemoryAccountingSampling > 0) {
+      mAtom.enableMemoryAccounting(mMemoryAccountingSampling);
+    }
+    if (mSessionQuotaBytes > 0) {
+      mAtom.setSessionQuota(mSessionQuotaBytes, mSessionQuotaPolicy);
+    }
+    if (mPrefetchReferences) {
+      mAtom.enableReferencePrefetch(mPrefetchThreads);
+    }
+    if (mStartupProfile != null) {
+      mAtom.startStartupProfile(mStartupProfile, mPrefetchThreads);
+    }
+    if (mPreloadClasses) {
+      mPreloader = new ClassPreloader(mAtom, mPreloadThreads);
+      mPreloader.start();
+    }
     if (mInitialServices != null && !mInitialServices.isEmpty()) {
       for (Object initialService : mInitialServices) {
         String serviceName = (String) initialService;
         if (serviceName != null && !"".equals(serviceName)) {
-          Atom.getAtom().resolveName(serviceName);
+          mAtom.resolveName(serviceName);
         }
       }
     }
+    if (mStartupProfile != null) {
+      mAtom.finishStartupProfile();
+    }
+    if (mWarmupMillis > 0) {
+      mAtom.warmUp("/", mWarmupMillis);
+    }
+    if (mRequestAccounting) {
+      mAtom.enableRequestAccounting();
+    }
+    if (mBackgroundThreads > 0) {
+      mAtom.startBackgroundComponents(mBackgroundThreads);
+    }
+  }
+
+
+  public Atom getAtom () {
+    return mAtom;
+  }
+
+  public void setAtom (Atom pAtom) {
+    mAtom = pAtom;
   }
 
 
@@ -45,5 +124,97 @@ public class InitialService implements Startable {
     mInitialServices = pInitialServices;
   }
 
+  public boolean isPreloadClasses () {
+    return mPreloadClasses;
+  }
+
+  public void setPreloadClasses (boolean pPreloadClasses) {
+    mPreloadClasses = pPreloadClasses;
+  }
+
+  public int getPreloadThreads () {
+    return mPreloadThreads;
+  }
+
+  public void setPreloadThreads (int pPreloadThreads) {
+    mPreloadThreads = pPreloadThreads;
+  }
+
+  public ClassPreloader getPreloader () {
+    return mPreloader;
+  }
+
+  public File getStartupProfile () {
+    return mStartupProfile;
+  }
+
+  public void setStartupProfile (File pStartupProfile) {
+    mStartupProfile = pStartupProfile;
+  }
+
+  public boolean isPrefetchReferences () {
+    return mPrefetchReferences;
+  }
+
+  public void setPrefetchReferences (boolean pPrefetchReferences) {
+    mPrefetchReferences = pPrefetchReferences;
+  }
+
+  public int getPrefetchThreads () {
+    return mPrefetchThreads;
+  }
+
+  public void setPrefetchThreads (int pPrefetchThreads) {
+    mPrefetchThreads = pPrefetchThreads;
+  }
+
+  public long getWarmupMillis () {
+    return mWarmupMillis;
+  }
+
+  public void setWarmupMillis (long pWarmupMillis) {
+    mWarmupMillis = pWarmupMillis;
+  }
+
+  public int getBackgroundThreads () {
+    return mBackgroundThreads;
+  }
+
+  public void setBackgroundThreads (int pBackgroundThreads) {
+    mBackgroundThreads = pBackgroundThreads;
+  }
+
+  public int getMemoryAccountingSampling () {
+    return mMemoryAccountingSampling;
+  }
+
+  public void setMemoryAccountingSampling (int pMemoryAccountingSampling) {
+    mMemoryAccountingSampling = pMemoryAccountingSampling;
+  }
+
+  public boolean isRequestAccounting () {
+    return mRequestAccounting;
+  }
+
+  public void setRequestAccounting (boolean pRequestAccounting) {
+    mRequestAccounting = pRequestAccounting;
+  }
+
+  public long getSessionQuotaBytes () {
+    return mSessionQuotaBytes;
+  }
+
+  public void setSessionQuotaBytes (long pSessionQuotaBytes) {
+    mSessionQuotaBytes = pSessionQuotaBytes;
+  }
+
+  public String getSessionQuotaPolicy () {
+    return mSessionQuotaPolicy;
+  }
+
+  public void setSessionQuotaPolicy (String pSessionQuotaPolicy) {
+    mSessionQuotaPolicy = pSessionQuotaPolicy;
+  }
+
 } // end InitialService
 
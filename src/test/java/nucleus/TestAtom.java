@@ -1,10 +1,18 @@
 package atom;
 
 import java.io.File;
+import java.lang.ref.WeakReference;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import java.text.SimpleDateFormat;
+import atom.bench.*;
 import atom.examples.*;
 import atom.exception.AtomException;
 
@@ -17,6 +25,9 @@ public class TestAtom {
   
   Atom atom = Atom.getAtom();
 
+  // containers created by the test
+  List<Atom> containers = new ArrayList<Atom>();
+
   @Before
   public void setUp () throws Exception {
     // this needs a list of directories to be passed as VM parameter
@@ -32,6 +43,23 @@ public class TestAtom {
     }
   }
 
+  @After
+  public void tearDown () {
+    for (Atom container : containers) {
+      container.shutdown();
+    }
+  }
+
+  /**
+   * Creates a container shut down after the test
+   * @return container
+   */
+  private Atom newContainer () {
+    Atom container = new Atom();
+    containers.add(container);
+    return container;
+  }
+
   @Test
   public void testHasConfigPath () {
     assertNotNull(atom.getConfigPath());
@@ -384,5 +412,1171 @@ public class TestAtom {
     assertFalse(setProperty.contains("four"));
   }
 
+  @Test
+  public void testListOperationsAcrossLayers () {
+    Object o = atom.resolveName("/test/collections/TestMultiLayer");
+    assertNotNull(o);
+    CollectionExample c = (CollectionExample)o;
+    List listProperty = c.getListProperty();
+    assertNotNull(listProperty);
+    assertEquals(Arrays.asList("two", "three", "four"), listProperty);
+    Set setProperty = c.getSetProperty();
+    assertNotNull(setProperty);
+    assertEquals(2, setProperty.size());
+    assertTrue(setProperty.contains("one"));
+    assertTrue(setProperty.contains("two"));
+  }
+
+  @Test
+  public void testEscapedCommas () {
+    Object o = atom.resolveName("/test/collections/TestEscapedCommas");
+    assertNotNull(o);
+    CollectionExample c = (CollectionExample)o;
+    assertEquals(Arrays.asList("a,b", "c", "d,e"), c.getListProperty());
+    Map mapProperty = c.getMapProperty();
+    assertNotNull(mapProperty);
+    assertEquals("hello, world", mapProperty.get("greeting"));
+    assertEquals("x", mapProperty.get("other"));
+  }
+
+  @Test
+  public void testBasedOn () {
+    Object o = atom.resolveName("/test/templates/TestBasedOn1");
+    assertNotNull(o);
+    ExampleComponent c = (ExampleComponent)o;
+    assertEquals(8, c.getIntProp());
+    assertEquals("from the template", c.getStringProp());
+    assertEquals(Arrays.asList("1", "2", "3"), c.getListProp());
+    Object p = atom.resolveName("/test/templates/TestBasedOn2");
+    assertNotNull(p);
+    ExampleComponent d = (ExampleComponent)p;
+    assertEquals(7, d.getIntProp());
+    assertEquals(Arrays.asList("1", "2"), d.getListProp());
+  }
+
+  @Test
+  public void testBasedOnSharesTemplate () {
+    Configuration c1 = atom.getConfiguration("/test/templates/TestBasedOn1");
+    Configuration c2 = atom.getConfiguration("/test/templates/TestBasedOn2");
+    assertNotNull(c1.getParent());
+    assertSame(c1.getParent(), c2.getParent());
+    // $basedOn, intProp and listProp
+    assertEquals(3, c1.getOverrideCount());
+    assertEquals("7", c1.getParent().getProperty("intProp"));
+  }
+
+  @Test(expected = AtomException.class)
+  public void testCircularBasedOn () {
+    atom.resolveName("/test/templates/TestCircularBasedOn");
+  }
+
+  @Test
+  public void testValidateConfiguration () {
+    List<ConfigurationValidator.Problem> problems = new ConfigurationValidator(atom).validate();
+    Set<String> invalid = new HashSet<String>();
+    Set<String> invalidProperties = new HashSet<String>();
+    for (ConfigurationValidator.Problem problem : problems) {
+      invalid.add(problem.getComponentName());
+      if (problem.getPropertyName() != null) {
+        invalidProperties.add(problem.getComponentName() + "." + problem.getPropertyName());
+      }
+    }
+    assertTrue(invalid.contains("/test/TestInvalidScope"));
+    assertTrue(invalid.contains("/test/TestNoClass"));
+    assertTrue(invalid.contains("/test/TestNoScope"));
+    assertTrue(invalid.contains("/test/TestNonExistingClass"));
+    assertTrue(invalid.contains("/test/templates/TestCircularBasedOn"));
+    assertTrue(invalidProperties.contains("/test/validation/TestInvalidValues.intProp"));
+    assertTrue(invalidProperties.contains("/test/validation/TestInvalidValues.noSuchProp"));
+    assertTrue(invalidProperties.contains("/test/validation/TestInvalidValues.dependency"));
+    assertTrue(invalidProperties.contains("/test/validation/TestInvalidLink.todaysWeather"));
+    assertTrue(invalid.contains("/test/validation/TestInvalidRetention"));
+    assertTrue(invalid.contains("/test/validation/TestInvalidWarmup"));
+    assertTrue(invalid.contains("/test/validation/TestInvalidMonitor"));
+    assertFalse(invalid.contains("/test/monitor/TestMonitored"));
+    assertFalse(invalid.contains("/test/monitor/TestMonitoredLink"));
+    assertFalse(invalid.contains("/test/warmup/TestNoWarmup"));
+    assertFalse(invalid.contains("/test/retention/TestIdleRetained"));
+    assertFalse(invalid.contains("/test/TestInt"));
+    assertFalse(invalid.contains("/test/links/TestLinking"));
+    assertFalse(invalid.contains("/test/templates/TestBasedOn1"));
+    assertFalse(invalid.contains("/templates/ExampleTemplate"));
+  }
+
+  /**
+   * Creates a new request scope, optionally in a new session scope
+   * @param pSession session scope, or null to create a new one
+   * @return request scope
+   */
+  private Scope newRequestScope (Scope pSession) {
+    Scope session = pSession;
+    if (session == null) {
+      session = new Scope(Atom.SESSION_SCOPE);
+      session.setParentScope(atom.getGlobalScope());
+    }
+    Scope request = new Scope(Atom.REQUEST_SCOPE);
+    request.setParentScope(session);
+    return request;
+  }
+
+  @Test
+  public void testRequestPrototype () {
+    ExampleComponent c1 = (ExampleComponent) newRequestScope(null).resolveName("/test/prototype/TestRequestPrototype");
+    ExampleComponent c2 = (ExampleComponent) newRequestScope(null).resolveName("/test/prototype/TestRequestPrototype");
+    assertNotNull(c1);
+    assertNotNull(c2);
+    assertNotSame(c1, c2);
+    assertEquals(5, c2.getIntProp());
+    assertEquals(Arrays.asList("a", "b"), c2.getListProp());
+    assertTrue(Arrays.equals(new int[] {1, 2}, c2.getIntArrayProp()));
+    // mutable values are not shared between instances
+    assertNotSame(c1.getListProp(), c2.getListProp());
+    assertNotSame(c1.getIntArrayProp(), c2.getIntArrayProp());
+    // global dependencies are
+    assertNotNull(c1.getDependency());
+    assertSame(c1.getDependency(), c2.getDependency());
+    assertSame(atom.resolveName("/test/TestObject"), c2.getDependency());
+  }
+
+  @Test
+  public void testRequestPrototypeWithSessionDependency () {
+    Scope request1 = newRequestScope(null);
+    Scope request2 = newRequestScope(request1.getParentScope());
+    Scope request3 = newRequestScope(null);
+    ExampleComponent c1 = (ExampleComponent) request1.resolveName("/test/prototype/TestRequestWithSessionDependency");
+    ExampleComponent c2 = (ExampleComponent) request2.resolveName("/test/prototype/TestRequestWithSessionDependency");
+    ExampleComponent c3 = (ExampleComponent) request3.resolveName("/test/prototype/TestRequestWithSessionDependency");
+    assertNotNull(c1.getDependency());
+    assertSame(c1.getDependency(), c2.getDependency());
+    assertNotSame(c1.getDependency(), c3.getDependency());
+  }
+
+  @Test
+  public void testLiveLinkedProperty () {
+    LinkingProperty live = (LinkingProperty) atom.resolveName("/test/links/TestLinkingLive");
+    LinkingProperty fixed = (LinkingProperty) atom.resolveName("/test/links/TestLinkingStatic");
+    assertEquals("sunny", live.getTodaysWeather());
+    assertEquals("sunny", fixed.getTodaysWeather());
+    atom.setPropertyValue("/test/links/TestLinkedLive", "currentWeather", "rainy");
+    assertEquals("rainy", live.getTodaysWeather());
+    assertEquals("sunny", fixed.getTodaysWeather());
+    LinkedProperty source = (LinkedProperty) atom.resolveName("/test/links/TestLinkedLive");
+    source.setCurrentWeather("foggy");
+    assertEquals(1, atom.firePropertyChanged(source, "currentWeather"));
+    assertEquals("foggy", live.getTodaysWeather());
+  }
+
+
+  @Test
+  public void testLiveLinksToCollectedTargets () throws InterruptedException {
+    PropertyLinks links = new PropertyLinks();
+    LinkedProperty source = new LinkedProperty();
+    source.setCurrentWeather("sunny");
+    BeanProperty todaysWeather = BeanModel.forClass(LinkingProperty.class).getProperty("todaysWeather");
+    LinkingProperty kept = new LinkingProperty();
+    links.bind(source, "currentWeather", kept, todaysWeather);
+
+    // short-lived targets, such as request components, are bound and then dropped
+    List<WeakReference<LinkingProperty>> dropped = new ArrayList<WeakReference<LinkingProperty>>();
+    for (int i = 0; i < 15; i++) {
+      LinkingProperty target = new LinkingProperty();
+      links.bind(source, "currentWeather", target, todaysWeather);
+      dropped.add(new WeakReference<LinkingProperty>(target));
+    }
+    assertEquals(16, links.getBindingCount(source, "currentWeather"));
+    awaitCollected(dropped);
+
+    // the next binding removes the links to the collected targets
+    LinkingProperty added = new LinkingProperty();
+    links.bind(source, "currentWeather", added, todaysWeather);
+    assertEquals(2, links.getBindingCount(source, "currentWeather"));
+
+    // updating the source only writes the live targets, and drops the links to the targets collected since
+    dropped.clear();
+    for (int i = 0; i < 3; i++) {
+      LinkingProperty target = new LinkingProperty();
+      links.bind(source, "currentWeather", target, todaysWeather);
+      dropped.add(new WeakReference<LinkingProperty>(target));
+    }
+    awaitCollected(dropped);
+    source.setCurrentWeather("rainy");
+    assertEquals(2, links.propagate(source, "currentWeather"));
+    assertEquals(2, links.getBindingCount(source, "currentWeather"));
+    assertEquals("rainy", kept.getTodaysWeather());
+    assertEquals("rainy", added.getTodaysWeather());
+  }
+
+
+  /**
+   * Runs the garbage collector until the referenced objects are collected, or 10 seconds have passed
+   * @param pReferences weak references to the objects
+   */
+  private static void awaitCollected (List<? extends WeakReference<?>> pReferences) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000;
+    for (WeakReference<?> reference : pReferences) {
+      while (reference.get() != null && System.currentTimeMillis() < deadline) {
+        System.gc();
+        Thread.sleep(10);
+      }
+      assertNull(reference.get());
+    }
+  }
+
+  /**
+   * Asserts that the parser reads the given text like java.util.Properties does
+   * @param pText properties text
+   */
+  private void assertParsedLikeProperties (String pText) throws Exception {
+    byte[] bytes = pText.getBytes("ISO-8859-1");
+    Properties expected = new Properties();
+    expected.load(new java.io.ByteArrayInputStream(bytes));
+    CompactMap<String> actual = new PropertiesParser().parse(java.nio.ByteBuffer.wrap(bytes));
+    assertEquals(expected.size(), actual.size());
+    for (String name : expected.stringPropertyNames()) {
+      assertTrue(name, actual.containsKey(name));
+      assertEquals(name, expected.getProperty(name), actual.get(name));
+    }
+  }
+
+  @Test
+  public void testPropertiesParser () throws Exception {
+    assertParsedLikeProperties("# comment\n! other comment\n\n  a=1\nb : 2\nc 3\nd\te\n");
+    assertParsedLikeProperties("list=one,\\\n   two,\\\r\n\tthree\nempty=\nkeyonly\n");
+    assertParsedLikeProperties("esc\\=aped\\ key=tab\\tnew\\nline\\u0041\\\\x\\,y\n#not\\\nkey2=v2\r\nlast=no newline");
+    assertParsedLikeProperties("dup=1\ndup=2\n  continued\\\n# not a comment\n");
+  }
+
+  @Test
+  public void testPropertiesParserLargeFile () throws Exception {
+    File file = File.createTempFile("atom", ".properties");
+    try {
+      StringBuilder text = new StringBuilder();
+      for (int i = 0; text.length() <= 64 * 1024; i++) {
+        text.append("property").append(i).append("=value ").append(i).append("\n");
+      }
+      java.io.FileOutputStream out = new java.io.FileOutputStream(file);
+      out.write(text.toString().getBytes("ISO-8859-1"));
+      out.close();
+      CompactMap<String> map = new PropertiesParser().parse(file);
+      assertEquals("value 0", map.get("property0"));
+      assertEquals("value 1000", map.get("property1000"));
+      assertSame("property1000".intern(), map.keyAt(1000));
+      // the file is not held open nor mapped once parsed
+      assertTrue(file.delete());
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testBeanModel () {
+    BeanModel model = BeanModel.forClass(BeanModelExample.class);
+    assertNotNull(model.getProperty("URL"));
+    assertNull(model.getProperty("uRL"));
+    assertNull(model.getProperty("class"));
+    assertEquals(Boolean.TYPE, model.getProperty("active").getType());
+    assertNotNull(model.getProperty("active").getReadMethod());
+    // the overloaded setter matching the getter is chosen
+    assertEquals(Integer.TYPE, model.getProperty("count").getWriteMethod().getParameterTypes()[0]);
+    // write-only properties
+    assertNull(model.getProperty("unit").getReadMethod());
+    assertEquals(TimeUnit.class, model.getProperty("unit").getType());
+
+    BeanModelExample component = (BeanModelExample) atom.resolveName("/test/beans/TestBeanModel");
+    assertEquals("http://localhost/", component.getURL());
+    assertTrue(component.isActive());
+    assertEquals(42, component.getCount());
+    assertEquals(TimeUnit.SECONDS, component.unit());
+    assertEquals(31, component.flags());
+  }
+
+  @Test
+  public void testPropertyEditorsAdapter () throws Exception {
+    // StringBuffer has neither a converter nor a property editor
+    assertNull(Converters.getConverter(StringBuffer.class));
+    java.beans.PropertyEditorManager.registerEditor(StringBuffer.class, StringBufferEditor.class);
+    try {
+      assertNull(Converters.getConverter(StringBuffer.class));
+      PropertyEditors.install();
+      Converters.Converter converter = Converters.getConverter(StringBuffer.class);
+      assertNotNull(converter);
+      assertEquals("text", converter.fromText("text").toString());
+      assertFalse(BeanConfigurator.isComponentReference(StringBuffer.class));
+    } finally {
+      Converters.setFallback(null);
+      java.beans.PropertyEditorManager.registerEditor(StringBuffer.class, null);
+    }
+    assertTrue(BeanConfigurator.isComponentReference(StringBuffer.class));
+  }
+
+  public static class StringBufferEditor extends java.beans.PropertyEditorSupport {
+    public void setAsText (String pText) {
+      setValue(new StringBuffer(pText));
+    }
+  }
+
+  @Test
+  public void testNativeImageMetadata () throws Exception {
+    java.io.StringWriter out = new java.io.StringWriter();
+    new NativeImageMetadataGenerator(atom).writeReflectConfig(out);
+    String json = out.toString();
+    assertTrue(json.contains("\"name\": \"atom.examples.BeanModelExample\""));
+    assertTrue(json.contains("{\"name\": \"setCount\", \"parameterTypes\": [\"int\"]}"));
+    // getters are only needed for the sources of linked properties
+    assertFalse(json.contains("\"getCount\""));
+    assertTrue(json.contains("{\"name\": \"getCurrentWeather\", \"parameterTypes\": []}"));
+    assertTrue(json.contains("{\"name\": \"setTodaysWeather\", \"parameterTypes\": [\"java.lang.String\"]}"));
+    // invalid components are left to the validator
+    assertFalse(json.contains("\"invalid\""));
+    // monitored components are called through a proxy of their interfaces
+    assertTrue(json.contains("\"name\": \"atom.examples.Greeter\",\n    \"methods\": [\n      {\"name\": \"greet\""));
+    out = new java.io.StringWriter();
+    new NativeImageMetadataGenerator(atom).writeProxyConfig(out);
+    assertTrue(out.toString().contains("\n  {\"interfaces\": [\"atom.examples.Greeter\"]}"));
+    assertTrue(out.toString().contains("\n  {\"interfaces\": [\"atom.Startable\", \"atom.Stoppable\"]}"));
+  }
+
+  @Test
+  public void testClassList () throws Exception {
+    Set<String> classNames = new ClassListGenerator(atom).collectClassNames();
+    assertTrue(classNames.contains("atom/Atom"));
+    assertTrue(classNames.contains("atom/Converters$ListConverter"));
+    // the property editors would pull java.desktop into the archive
+    assertFalse(classNames.contains("atom/PropertyEditors"));
+    assertFalse(classNames.contains("atom/PropertyEditors$IntegerPropertyEditor"));
+    assertTrue(classNames.contains("atom/examples/ExampleComponent"));
+    // superclasses and interfaces are listed with the configured classes
+    assertTrue(classNames.contains("atom/Startable"));
+    assertFalse(classNames.contains("invalid"));
+  }
+
+  @Test
+  public void testClassPreloader () throws Exception {
+    ClassPreloader preloader = new ClassPreloader(atom, 4);
+    int loaded = preloader.start().get();
+    assertTrue(loaded > 5);
+    assertEquals(loaded, preloader.getLoadedCount());
+    // the $class=invalid component
+    assertEquals(1, preloader.getFailedCount());
+
+    atom.service.InitialService initial = (atom.service.InitialService) atom.resolveName("/test/preload/TestPreloadingInitial");
+    assertNotNull(initial.getPreloader());
+  }
+
+  @Test
+  public void testStartupProfile () throws Exception {
+    File file = File.createTempFile("atom", ".profile");
+    file.delete();
+    try {
+      // nothing to replay the first time
+      assertFalse(atom.startStartupProfile(file, 2));
+      atom.resolveName("/test/profile/TestProfiledRoot");
+      StartupProfile profile = atom.finishStartupProfile();
+      assertEquals(Arrays.asList("/test/profile/TestProfiledRoot", "/test/profile/TestProfiledDependency"), profile.getComponentNames());
+      assertTrue(profile.getCreationTime("/test/profile/TestProfiledRoot") >= profile.getCreationTime("/test/profile/TestProfiledDependency"));
+      assertTrue(file.isFile());
+
+      StartupProfile saved = StartupProfile.load(file);
+      assertEquals(profile.getFingerprint(), saved.getFingerprint());
+      assertEquals(profile.getComponentNames(), saved.getComponentNames());
+
+      // the next startup prefetches the recorded components
+      assertTrue(atom.startStartupProfile(file, 2));
+      int hits = atom.getPrefetcher().getHitCount();
+      Configuration config = atom.getConfiguration("/test/profile/TestProfiledRoot");
+      assertEquals("/test/profile/TestProfiledDependency", config.getProperty("dependency"));
+      assertEquals(hits + 1, atom.getPrefetcher().getHitCount());
+      atom.finishStartupProfile();
+
+      // a profile recorded with another config path is not replayed
+      java.io.FileWriter writer = new java.io.FileWriter(file);
+      writer.write("# fingerprint 0123\n/test/profile/TestProfiledRoot 10\n");
+      writer.close();
+      assertFalse(atom.startStartupProfile(file, 2));
+      atom.finishStartupProfile();
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testReferencePrefetch () {
+    atom.enableReferencePrefetch(2);
+    atom.getConfiguration("/test/prefetch/TestPrefetchRoot");
+    // the references, the list members and the linked components were prefetched by the merge
+    ConfigPrefetcher prefetcher = atom.getPrefetcher();
+    int hits = prefetcher.getHitCount();
+    assertEquals("Listed", atom.getConfiguration("/test/prefetch/TestPrefetchListed").getProperty("stringProp"));
+    assertEquals("Linked", atom.getConfiguration("/test/prefetch/TestPrefetchLinked").getProperty("stringProp"));
+    assertEquals(hits + 2, prefetcher.getHitCount());
+
+    ExampleComponent root = (ExampleComponent) atom.resolveName("/test/prefetch/TestPrefetchRoot");
+    assertNotNull(root.getDependency());
+    assertEquals("Linked", root.getStringProp());
+    assertEquals(hits + 3, prefetcher.getHitCount());
+  }
+
+  @Test
+  public void testMultipleContainers () {
+    // a second container, configured with the first layer only
+    Atom other = newContainer();
+    other.addToConfigPath((File) atom.getConfigPath().get(0));
+    assertEquals(1, other.getConfigPath().size());
+    ExampleComponent layered = (ExampleComponent) atom.resolveName("/test/TestLayered");
+    ExampleComponent otherLayered = (ExampleComponent) other.resolveName("/test/TestLayered");
+    assertNotSame(layered, otherLayered);
+    assertEquals(80, layered.getIntProp());
+    assertEquals(42, otherLayered.getIntProp());
+
+    // references are resolved in the container of the scope
+    ExampleComponent dependent = (ExampleComponent) other.resolveName("/test/TestObjectDependent");
+    assertSame(other.getGlobalScope().resolveName("/test/TestObject", false), dependent.getDependency());
+    assertSame(other, other.getGlobalScope().getAtom());
+    Scope session = new Scope(Atom.SESSION_SCOPE);
+    session.setParentScope(other.getGlobalScope());
+    assertSame(other, session.getAtom());
+
+    // components can ask for their container
+    atom.service.InitialService initial = (atom.service.InitialService) other.resolveName("/Initial");
+    assertNotSame(atom.resolveName("/Initial"), initial);
+    assertSame(other, initial.getAtom());
+
+    // the parsed files are shared
+    File layer = (File) atom.getConfigPath().get(0);
+    assertSame(new PropertiesFileFinder().findConfigMap(layer, "/test/TestLayered"),
+        new PropertiesFileFinder().findConfigMap(layer, "/test/TestLayered"));
+
+    // a container shut down stops its threads, and can still create components
+    other.enableReferencePrefetch(1);
+    other.resolveName("/test/prefetch/TestPrefetchRoot");
+    java.util.concurrent.ScheduledExecutorService scheduler = other.getScheduler();
+    other.shutdown();
+    assertTrue(scheduler.isShutdown());
+    assertNull(other.getPrefetcher());
+    assertNotNull(other.resolveName("/test/TestInt"));
+  }
+
+  @Test
+  public void testFrozenGlobalScope () {
+    Atom other = newContainer();
+    other.addToConfigPath((File) atom.getConfigPath().get(0));
+    Object before = other.resolveName("/test/TestObject");
+    other.freezeGlobalScope();
+    Scope global = other.getGlobalScope();
+    assertTrue(global.isFrozen());
+    assertSame(before, global.resolveName("/test/TestObject", false));
+
+    // late creations republish the table
+    Object late = other.resolveName("/test/TestInt");
+    assertSame(late, global.resolveName("/test/TestInt", false));
+    global.unregister("/test/TestInt");
+    assertNull(global.resolveName("/test/TestInt", false));
+    assertSame(before, global.resolveName("/test/TestObject", false));
+  }
+
+  @Test
+  public void testSubtrees () {
+    Atom other = newContainer();
+    other.addToConfigPath((File) atom.getConfigPath().get(0));
+    Scope global = other.getGlobalScope();
+    StartStop startStop = (StartStop) other.resolveName("/test/startstop/TestStartStop");
+    Object object = other.resolveName("/test/TestObject");
+    other.resolveName("/test/TestInt");
+    assertEquals("initialized", startStop.getState());
+    assertEquals(Arrays.asList("/test/TestInt", "/test/TestObject", "/test/startstop/TestStartStop"),
+        new ArrayList<String>(global.getComponents("/test/").keySet()));
+    assertEquals(1, global.getComponents("/test/startstop").size());
+    assertTrue(global.getComponents("/test/Test").isEmpty());
+
+    // a stopped subtree is unregistered, and created again on demand
+    assertEquals(Arrays.asList("/test/startstop/TestStartStop"), global.stopSubtree("/test/startstop/"));
+    assertNull(startStop.getState());
+    assertNull(global.resolveName("/test/startstop/TestStartStop", false));
+    assertSame(object, global.resolveName("/test/TestObject", false));
+    assertNotSame(startStop, other.resolveName("/test/startstop/TestStartStop"));
+
+    // a reload creates the whole subtree again
+    assertEquals(3, other.reloadSubtree("/test").size());
+    assertNotSame(object, global.resolveName("/test/TestObject", false));
+    assertNotNull(global.resolveName("/test/TestInt", false));
+
+    // a dependent whose stop() throws does not interrupt the reload, a monitored one is stopped behind its proxy
+    Object base = other.resolveName("/test/reload/base/TestReloadedBase");
+    FailingStop failing = (FailingStop) other.resolveName("/test/reload/TestFailingDependent");
+    assertSame(base, failing.getDependency());
+    other.resolveName("/test/reload/TestMonitoredDependent");
+    StartStop monitored = global.getComponentsByType(StartStop.class).get("/test/reload/TestMonitoredDependent");
+    assertEquals("initialized", monitored.getState());
+    assertEquals(Arrays.asList("/test/reload/TestFailingDependent", "/test/reload/TestMonitoredDependent",
+        "/test/reload/base/TestReloadedBase"), other.reloadSubtree("/test/reload/base/"));
+    assertNull(monitored.getState());
+    Object reloadedBase = global.resolveName("/test/reload/base/TestReloadedBase", false);
+    assertNotSame(base, reloadedBase);
+    assertSame(reloadedBase, ((FailingStop) global.resolveName("/test/reload/TestFailingDependent", false)).getDependency());
+    assertNotNull(global.resolveName("/test/reload/TestMonitoredDependent", false));
+
+    NameTrie<String> trie = new NameTrie<String>();
+    trie.put("/a/b", "ab");
+    trie.put("/a/b/c", "abc");
+    trie.put("/a/d", "ad");
+    assertEquals("ab", trie.remove("/a/b"));
+    assertEquals("abc", trie.get("/a/b/c"));
+    assertEquals(2, trie.size());
+    assertEquals(Collections.singletonMap("/a/b/c", "abc"), trie.removeSubtree("/a/b"));
+    assertEquals(1, trie.getSubtree("/").size());
+  }
+
+  @Test
+  public void testScopeSerialization () throws Exception {
+    // the serialized form keeps the mappings in a map, as written by the versions before the name trie
+    assertEquals(Map.class, java.io.ObjectStreamClass.lookup(Scope.class).getField("mMapping").getType());
+
+    Scope session = new Scope(Atom.SESSION_SCOPE);
+    session.register("/test/a/Name", "value");
+    session.register("/test/b/Other", 42);
+    java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+    java.io.ObjectOutputStream out = new java.io.ObjectOutputStream(bytes);
+    out.writeObject(session);
+    out.close();
+    Scope read = (Scope) new java.io.ObjectInputStream(new java.io.ByteArrayInputStream(bytes.toByteArray())).readObject();
+    assertEquals(Atom.SESSION_SCOPE, read.getName());
+    assertEquals("value", read.resolveName("/test/a/Name", false));
+    assertEquals(Arrays.asList("/test/b/Other"), new ArrayList<String>(read.getComponents("/test/b/").keySet()));
+  }
+
+  @Test
+  public void testLookupByType () {
+    assertEquals(new TreeSet<String>(Arrays.asList("/test/plugins/TestPluginA", "/test/plugins/TestPluginB",
+        "/test/plugins/TestPluginRegistry", "/test/plugins/TestRequestRegistry", "/test/plugins/TestSessionPlugin")),
+        atom.findComponentNamesByType(Plugin.class));
+    assertTrue(atom.findComponentNamesByType(Object.class).contains("/test/TestObject"));
+    assertTrue(atom.findComponentNamesByType(Startable.class).contains("/test/startstop/TestStartStop"));
+
+    // the registry gets the other global plugins
+    PluginRegistry registry = (PluginRegistry) atom.resolveName("/test/plugins/TestPluginRegistry");
+    assertEquals(Arrays.asList(atom.resolveName("/test/plugins/TestPluginA"), atom.resolveName("/test/plugins/TestPluginB")),
+        registry.getPlugins());
+    assertEquals(3, atom.resolveAllByType(Plugin.class).size());
+
+    // a request component also gets the plugins of its session
+    Scope request = newRequestScope(null);
+    PluginRegistry requestRegistry = (PluginRegistry) request.resolveName("/test/plugins/TestRequestRegistry");
+    assertEquals(4, requestRegistry.getPlugins().size());
+    assertTrue(requestRegistry.getPlugins().contains(registry));
+    Plugin sessionPlugin = (Plugin) request.getParentScope().resolveName("/test/plugins/TestSessionPlugin", false);
+    assertEquals("session", sessionPlugin.getPluginName());
+    PluginRegistry otherRegistry = (PluginRegistry) newRequestScope(null).resolveName("/test/plugins/TestRequestRegistry");
+    assertFalse(otherRegistry.getPlugins().contains(sessionPlugin));
+
+    // scopes without a name are passed through
+    Scope unnamed = new Scope();
+    unnamed.setParentScope(request.getParentScope());
+    assertEquals(4, atom.resolveAllByType(Plugin.class, unnamed).size());
+
+    // live instances by scope
+    assertEquals(Collections.singletonMap("/test/plugins/TestSessionPlugin", sessionPlugin),
+        request.getParentScope().getComponentsByType(Plugin.class));
+    assertTrue(atom.getGlobalScope().getComponentsByType(Plugin.class).containsKey("/test/plugins/TestPluginRegistry"));
+    request.unregister("/test/plugins/TestRequestRegistry");
+    assertTrue(request.getComponentsByType(Plugin.class).isEmpty());
+  }
+
+  @Test
+  public void testRetention () throws InterruptedException {
+    Atom other = newContainer();
+    other.addToConfigPath((File) atom.getConfigPath().get(0));
+    Scope global = other.getGlobalScope();
+    StartStop soft = (StartStop) other.resolveName("/test/retention/TestSoftRetained");
+    assertSame(soft, other.resolveName("/test/retention/TestSoftRetained"));
+    assertTrue(other.evictRetainedComponents().isEmpty());
+
+    // the memory runs short: the component is stopped, and created again on demand
+    global.getRetained("/test/retention/TestSoftRetained").expire();
+    assertEquals(Arrays.asList("/test/retention/TestSoftRetained"), other.evictRetainedComponents());
+    assertNull(soft.getState());
+    assertTrue(global.getComponents("/test/retention/").isEmpty());
+    StartStop recreated = (StartStop) other.resolveName("/test/retention/TestSoftRetained");
+    assertNotSame(soft, recreated);
+    assertEquals("initialized", recreated.getState());
+    assertEquals(1, other.getMetrics().getCount(Atom.EVICTIONS_COUNTER));
+    assertEquals(1, other.getMetrics().getCount(Atom.RECREATIONS_COUNTER));
+
+    // a stop() that throws keeps neither the eviction nor the other stops from completing
+    other.resolveName("/test/retention/TestFailingRetained");
+    global.getRetained("/test/retention/TestFailingRetained").expire();
+    global.getRetained("/test/retention/TestSoftRetained").expire();
+    assertEquals(Arrays.asList("/test/retention/TestFailingRetained", "/test/retention/TestSoftRetained"),
+        other.evictRetainedComponents());
+    assertNull(recreated.getState());
+    assertTrue(global.getComponents("/test/retention/").isEmpty());
+    assertEquals(3, other.getMetrics().getCount(Atom.EVICTIONS_COUNTER));
+    assertEquals(1, other.getMetrics().getCount(Atom.EVICTION_FAILURES_COUNTER));
+
+    // idle components are evicted by the background checks, and not bound into prototypes
+    Scope session = new Scope(Atom.SESSION_SCOPE);
+    session.setParentScope(global);
+    Scope request = new Scope(Atom.REQUEST_SCOPE);
+    request.setParentScope(session);
+    ExampleComponent dependent = (ExampleComponent) request.resolveName("/test/retention/TestRetainedDependent");
+    Object idle = dependent.getDependency();
+    assertSame(idle, global.resolveName("/test/retention/TestIdleRetained", false));
+    long deadline = System.currentTimeMillis() + 10000;
+    // the eviction is counted once the component is unregistered, wait for both
+    while ((!global.getComponents("/test/retention/TestIdleRetained").isEmpty()
+        || other.getMetrics().getCount(Atom.EVICTIONS_COUNTER) < 4) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+    }
+    assertTrue(global.getComponents("/test/retention/TestIdleRetained").isEmpty());
+    assertEquals(4, other.getMetrics().getCount(Atom.EVICTIONS_COUNTER));
+    request = new Scope(Atom.REQUEST_SCOPE);
+    request.setParentScope(session);
+    dependent = (ExampleComponent) request.resolveName("/test/retention/TestRetainedDependent");
+    assertNotSame(idle, dependent.getDependency());
+    assertEquals(2, other.getMetrics().getCount(Atom.RECREATIONS_COUNTER));
+
+    // a session that resolved an evicted global creates it again
+    Object viaSession = session.resolveName("/test/retention/TestSoftRetained");
+    assertSame(viaSession, global.resolveName("/test/retention/TestSoftRetained", false));
+    global.getRetained("/test/retention/TestSoftRetained").expire();
+    assertTrue(other.evictRetainedComponents().contains("/test/retention/TestSoftRetained"));
+    Object recreatedViaSession = session.resolveName("/test/retention/TestSoftRetained");
+    assertNotSame(viaSession, recreatedViaSession);
+    assertSame(recreatedViaSession, global.resolveName("/test/retention/TestSoftRetained", false));
+    assertFalse(session.getComponentsInScope().hasNext());
+  }
+
+  @Test
+  public void testAsyncStart () throws Exception {
+    final Atom other = newContainer();
+    other.addToConfigPath((File) atom.getConfigPath().get(0));
+    assertTrue(other.isReady());
+    AsyncStart dependency = (AsyncStart) other.resolveName("/test/async/TestAsyncDependency");
+    assertTrue(dependency.isStarted());
+    assertFalse(other.isReady());
+
+    // an asynchronous dependent starts once its dependency is ready, without blocking its creation
+    AsyncStart dependent = (AsyncStart) other.resolveName("/test/async/TestAsyncDependent");
+    assertSame(dependency, dependent.getDependency());
+    assertFalse(dependent.isStarted());
+    CompletableFuture<Void> readiness = other.getReadiness();
+
+    // a synchronous dependent waits for it in the creating thread
+    final Object[] created = new Object[1];
+    Thread creator = new Thread() {
+      public void run () {
+        created[0] = other.resolveName("/test/async/TestSyncDependent");
+      }
+    };
+    creator.start();
+    creator.join(100);
+    assertTrue(creator.isAlive());
+    dependency.getReady().complete(null);
+    creator.join(5000);
+    assertTrue(((SyncStart) created[0]).isDependencyReady());
+    assertTrue(dependent.isStarted());
+    assertFalse(readiness.isDone());
+    dependent.getReady().complete(null);
+    assertTrue(readiness.isDone());
+    assertTrue(other.isReady());
+
+    // a start that times out makes the container not ready
+    other.resolveName("/test/async/TestAsyncTimeout");
+    try {
+      other.getReadiness().get(5, TimeUnit.SECONDS);
+      fail("the start should have timed out");
+    } catch (ExecutionException ee) {
+      assertTrue(ee.getCause() instanceof TimeoutException);
+    }
+    assertFalse(other.isReady());
+    assertEquals(1, other.getMetrics().getCount(Atom.START_FAILURES_COUNTER));
+  }
+
+  @Test
+  public void testFailedAsyncStart () throws Exception {
+    Atom other = newContainer();
+    other.addToConfigPath((File) atom.getConfigPath().get(0));
+    AsyncStart failing = (AsyncStart) other.resolveName("/test/async/TestAsyncFailing");
+    CompletableFuture<Void> readiness = other.getReadiness();
+    failing.getReady().completeExceptionally(new IllegalStateException("no connection"));
+    try {
+      readiness.get(5, TimeUnit.SECONDS);
+      fail("the start should have failed");
+    } catch (ExecutionException ee) {
+      assertTrue(ee.getCause() instanceof IllegalStateException);
+    }
+    assertFalse(other.isReady());
+    assertEquals(1, other.getMetrics().getCount(Atom.START_FAILURES_COUNTER));
+
+    // a component referencing the failed one is not held back, the container stays not ready
+    AsyncStart dependent = (AsyncStart) other.resolveName("/test/async/TestFailingDependent");
+    assertSame(failing, dependent.getDependency());
+    assertTrue(dependent.isStarted());
+    dependent.getReady().complete(null);
+    assertFalse(other.isReady());
+    assertTrue(other.getReadiness().isCompletedExceptionally());
+
+    // created again, the component is judged by its new start
+    other.getGlobalScope().unregister("/test/async/TestAsyncFailing");
+    AsyncStart recreated = (AsyncStart) other.resolveName("/test/async/TestAsyncFailing");
+    assertNotSame(failing, recreated);
+    assertTrue(recreated.isStarted());
+    readiness = other.getReadiness();
+    assertFalse(readiness.isDone());
+    recreated.getReady().complete(null);
+    assertTrue(readiness.isDone());
+    assertFalse(readiness.isCompletedExceptionally());
+    assertTrue(other.isReady());
+  }
+
+  @Test
+  public void testBackgroundStartup () throws Exception {
+    final Atom other = newContainer();
+    other.addToConfigPath(new File(((File) atom.getConfigPath().get(0)).getParentFile(), "backgroundconfig"));
+    Future<Integer> done = other.startBackgroundComponents(2);
+    long deadline = System.currentTimeMillis() + 5000;
+    while (BlockingStart.getInstances() == 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(1, BlockingStart.getInstances());
+
+    // a thread resolving the component joins its creation
+    final Object[] resolved = new Object[1];
+    Thread resolver = new Thread() {
+      public void run () {
+        resolved[0] = other.resolveName("/app/Slow");
+      }
+    };
+    resolver.start();
+    resolver.join(100);
+    assertTrue(resolver.isAlive());
+    BlockingStart.release();
+    resolver.join(5000);
+    assertEquals(3, done.get(5, TimeUnit.SECONDS).intValue());
+    assertSame(resolved[0], other.getGlobalScope().resolveName("/app/Slow", false));
+    assertEquals(1, BlockingStart.getInstances());
+
+    // so does the background thread creating a component that references it
+    assertSame(resolved[0], ((BlockingStartUser) other.getGlobalScope().resolveName("/app/SlowUser", false)).getBlockingStart());
+    assertEquals(2, other.getMetrics().getCount(Atom.BACKGROUND_JOINS_COUNTER));
+    assertEquals(0, other.getMetrics().getCount(Atom.BACKGROUND_FAILURES_COUNTER));
+    assertNotNull(other.getGlobalScope().resolveName("/app/Fast", false));
+    assertNull(other.getGlobalScope().resolveName("/app/Lazy", false));
+  }
+
+  @Test
+  public void testWarmUp () {
+    Atom other = newContainer();
+    other.addToConfigPath((File) atom.getConfigPath().get(0));
+    int created = other.warmUp("/test/warmup/", 60000);
+
+    // enough rounds of the request and session components to cross the compilation thresholds, none of the
+    // opted-out one nor of the one referencing it
+    assertTrue(created >= 2 * Warmup.MIN_ROUNDS);
+    assertEquals(0, created % 2);
+    assertEquals(0, SideEffect.getInstances());
+    assertEquals(created, other.getMetrics().getCount(Atom.WARMUP_CREATIONS_COUNTER));
+    assertEquals(1, other.getMetrics().getCount(Atom.WARMUP_FAILURES_COUNTER));
+
+    // the throwaway scopes leave nothing behind, and the components are still created normally
+    assertNull(other.getGlobalScope().resolveName("/test/warmup/TestWarmRequest", false));
+    Scope session = new Scope(Atom.SESSION_SCOPE);
+    session.setParentScope(other.getGlobalScope());
+    Scope request = new Scope(Atom.REQUEST_SCOPE);
+    request.setParentScope(session);
+    assertNotNull(request.resolveName("/test/warmup/TestNoWarmup"));
+    assertEquals(1, SideEffect.getInstances());
+  }
+
+  @Test
+  public void testScaleBenchmark () throws Exception {
+    File directory = File.createTempFile("atom", ".bench");
+    directory.delete();
+    try {
+      Atom other = newContainer();
+      for (File layer : new ConfigTreeGenerator(250, 3, 5).generate(directory)) {
+        other.addToConfigPath(layer);
+      }
+      // overridden by layer 1, references the previous component
+      BenchComponent c7 = (BenchComponent) other.resolveName(ConfigTreeGenerator.getComponentName(7));
+      assertEquals(1, c7.getCount());
+      assertEquals(Arrays.asList("a", "b", "c", "l1"), c7.getItems());
+      assertSame(other.resolveName(ConfigTreeGenerator.getComponentName(6)), c7.getNext());
+      assertEquals("C6", c7.getLinkedName());
+      // overridden by layer 2 with a removal
+      BenchComponent c2 = (BenchComponent) other.resolveName(ConfigTreeGenerator.getComponentName(2));
+      assertTrue(c2 instanceof BenchComponent.Beta);
+      assertEquals(2, c2.getCount());
+      assertEquals(Arrays.asList("b", "c", "l2"), c2.getItems());
+      // starts a chain
+      assertNull(((BenchComponent) other.resolveName(ConfigTreeGenerator.getComponentName(5))).getNext());
+
+      // smoke run: small tree, few lookups, no garbage collections
+      ScaleBenchmark.Result result = ScaleBenchmark.run(20, 2, 5, directory, 100, false);
+      // one creation per chain
+      assertEquals(4, result.mCreations.size());
+      assertEquals(100, result.mLookups.size());
+      assertTrue(result.mBootNanos > 0);
+      File csv = new File(directory, "scale.csv");
+      ScaleBenchmark.append(csv, Collections.singletonList(result));
+      ScaleBenchmark.append(csv, Collections.singletonList(result));
+      List<String> lines = java.nio.file.Files.readAllLines(csv.toPath(), java.nio.charset.Charset.forName("UTF-8"));
+      assertEquals(3, lines.size());
+      assertEquals(ScaleBenchmark.CSV_HEADER, lines.get(0));
+      assertEquals(ScaleBenchmark.CSV_HEADER.split(",").length, lines.get(2).split(",").length);
+    } finally {
+      ScaleBenchmark.delete(directory);
+    }
+  }
+
+  @Test
+  public void testScopeStress () throws Exception {
+    Atom other = newContainer();
+    other.addToConfigPath((File) atom.getConfigPath().get(0));
+    ScopeStress stress = new ScopeStress(other, "/test/stress/");
+    stress.setThreads(4);
+    stress.setDurationMillis(200);
+    stress.setRequestsPerSession(20);
+    ScopeStress.Report report = stress.run();
+    assertTrue(report.mRequests > 0);
+    assertTrue(report.mLatencies.size() > 0);
+    assertTrue(report.mSessions > 16);
+    assertEquals(0, report.mErrors);
+    // no component is created twice in the same global or session scope
+    assertEquals(0, report.mGlobalDuplicates);
+    assertEquals(0, report.mSessionDuplicates);
+    assertNotNull(other.getGlobalScope().resolveName("/test/stress/Global2", false));
+
+    if (ScopeStress.isVirtualThreadSupported()) {
+      stress.setVirtual(true);
+      report = stress.run();
+      assertTrue(report.mRequests > 0);
+      assertEquals(-1, report.mBlockedCount);
+      assertEquals(0, report.mGlobalDuplicates + report.mSessionDuplicates);
+    }
+  }
+
+  @Test
+  public void testMonitor () {
+    Atom other = newContainer();
+    other.addToConfigPath((File) atom.getConfigPath().get(0));
+    Greeter greeter = (Greeter) other.resolveName("/test/monitor/TestMonitored");
+    assertFalse(greeter instanceof ExampleGreeter);
+    assertEquals("Hello world", greeter.greet("world"));
+    assertEquals("Hello again", greeter.greet("again"));
+    try {
+      greeter.greet(null);
+      fail("the exception of the component should go through the proxy");
+    } catch (IllegalArgumentException iae) {
+      // expected
+    }
+    Metrics metrics = other.getMetrics();
+    assertEquals(3, metrics.getCount("monitor./test/monitor/TestMonitored.greet.calls"));
+    assertEquals(1, metrics.getCount("monitor./test/monitor/TestMonitored.greet.errors"));
+    Histogram latencies = metrics.getHistograms().get("monitor./test/monitor/TestMonitored.greet");
+    assertEquals(3, latencies.getCount());
+    assertTrue(latencies.getPercentile(50) <= latencies.getMaxNanos());
+    assertTrue(greeter.equals(greeter));
+
+    // properties are read and written behind the proxy
+    assertEquals("Hello", ((LinkingProperty) other.resolveName("/test/monitor/TestMonitoredLink")).getTodaysWeather());
+    other.setPropertyValue("/test/monitor/TestMonitored", "greeting", "Bye");
+    assertEquals("Bye world", greeter.greet("world"));
+
+    // indexed by the class behind the proxy, only injected by its interfaces
+    assertEquals(1, other.getGlobalScope().getComponentsByType(Greeter.class).size());
+    assertSame(greeter, other.getGlobalScope().getComponentsByType(Greeter.class).get("/test/monitor/TestMonitored"));
+    assertTrue(other.getGlobalScope().getComponentsByType(ExampleGreeter.class).get("/test/monitor/TestMonitored") instanceof ExampleGreeter);
+    assertEquals(Collections.singletonList(greeter), other.resolveAllByType(Greeter.class));
+    assertTrue(other.resolveAllByType(ExampleGreeter.class).isEmpty());
+
+    // sampled: every call counted, almost none timed
+    Scope session = new Scope(Atom.SESSION_SCOPE);
+    session.setParentScope(other.getGlobalScope());
+    Scope request = new Scope(Atom.REQUEST_SCOPE);
+    request.setParentScope(session);
+    Greeter sampled = (Greeter) request.resolveName("/test/monitor/TestSampled");
+    for (int i = 0; i < 100; i++) {
+      sampled.greet("you");
+    }
+    assertEquals(100, metrics.getCount("monitor./test/monitor/TestSampled.greet.calls"));
+    assertTrue(metrics.getHistogram("monitor./test/monitor/TestSampled.greet").getCount() < 100);
+  }
+
+  @Test
+  public void testHistogram () {
+    Histogram histogram = new Histogram();
+    assertEquals(0, histogram.getPercentile(50));
+    for (long i = 1; i <= 1000; i++) {
+      histogram.record(i * 1000);
+    }
+    assertEquals(1000, histogram.getCount());
+    assertEquals(1000000, histogram.getMaxNanos());
+    assertEquals(500500, histogram.getMeanNanos());
+    long median = histogram.getPercentile(50);
+    assertTrue(median >= 500000 && median <= 500000 * 5 / 4);
+    assertEquals(1000000, histogram.getPercentile(100));
+    for (int bucket = 0; bucket < 200; bucket++) {
+      assertEquals(bucket, Histogram.getBucket(Histogram.getUpperBound(bucket)));
+      assertEquals(bucket + 1, Histogram.getBucket(Histogram.getUpperBound(bucket) + 1));
+    }
+    assertEquals(Long.MAX_VALUE, Histogram.getUpperBound(Histogram.getBucket(Long.MAX_VALUE)));
+  }
+
+  /**
+   * Sends a request to the admin console
+   * @param pPort port of the console
+   * @param pMethod GET or POST
+   * @param pPathAndQuery i.e. /component?name=%2Ftest%2FTestInt
+   * @param pOrigin Origin header, or null
+   * @return status and body, separated by a new line
+   */
+  private static String requestConsole (int pPort, String pMethod, String pPathAndQuery, String pOrigin) throws Exception {
+    return requestConsole(pPort, pMethod, pPathAndQuery, pOrigin, "localhost:" + pPort);
+  }
+
+  /**
+   * Sends a request to the admin console with a Host header
+   * @param pHost Host header
+   */
+  private static String requestConsole (int pPort, String pMethod, String pPathAndQuery, String pOrigin, String pHost)
+      throws Exception {
+    // a plain socket, since HttpURLConnection drops the Origin header
+    java.net.Socket socket = new java.net.Socket(java.net.InetAddress.getLoopbackAddress(), pPort);
+    try {
+      String request = pMethod + " " + pPathAndQuery + " HTTP/1.0\r\nHost: " + pHost + "\r\n"
+          + (pOrigin != null ? "Origin: " + pOrigin + "\r\n" : "") + "Content-Length: 0\r\n\r\n";
+      socket.getOutputStream().write(request.getBytes("US-ASCII"));
+      socket.getOutputStream().flush();
+      java.io.ByteArrayOutputStream response = new java.io.ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      java.io.InputStream in = socket.getInputStream();
+      for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+        response.write(buffer, 0, n);
+      }
+      String text = response.toString("UTF-8");
+      // status line is "HTTP/1.1 200 OK"
+      return text.substring(text.indexOf(' ') + 1, text.indexOf(' ') + 4) + "\n" + text.substring(text.indexOf("\r\n\r\n") + 4);
+    } finally {
+      socket.close();
+    }
+  }
+
+  @Test
+  public void testAdminConsole () throws Exception {
+    Atom other = newContainer();
+    other.addToConfigPath((File) atom.getConfigPath().get(0));
+    ExampleComponent before = (ExampleComponent) other.resolveName("/test/templates/TestBasedOn1");
+    atom.service.AdminConsole console = new atom.service.AdminConsole();
+    console.setAtom(other);
+    console.start();
+    try {
+      int port = console.getLocalPort();
+      assertTrue(port > 0);
+      assertTrue(requestConsole(port, "GET", "/", null).startsWith("200\n"));
+
+      String components = requestConsole(port, "GET", "/components?prefix=/test/templates/", null);
+      assertTrue(components.contains("/component?name=%2Ftest%2Ftemplates%2FTestBasedOn1\">/test/templates/TestBasedOn1</a> (created)"));
+
+      // merged configuration with the layer setting each property, and the template
+      String component = requestConsole(port, "GET", "/component?name=%2Ftest%2Ftemplates%2FTestBasedOn1", null);
+      assertTrue(component.startsWith("200\n"));
+      assertTrue(component.contains("<td>intProp</td>"));
+      assertTrue(component.contains("<td>template</td>"));
+      assertTrue(component.contains("1 instance(s)"));
+
+      assertTrue(requestConsole(port, "GET", "/timings", null).contains("/test/templates/TestBasedOn1</a>"));
+      other.getMetrics().increment("admin.test");
+      assertTrue(requestConsole(port, "GET", "/metrics", null).contains("<td>admin.test</td><td>1</td>"));
+
+      // reloading takes a local POST
+      assertTrue(requestConsole(port, "GET", "/reload?name=%2Ftest%2Ftemplates%2FTestBasedOn1", null).startsWith("405\n"));
+      assertTrue(requestConsole(port, "POST", "/reload?name=%2Ftest%2Ftemplates%2FTestBasedOn1", "http://evil.example.com").startsWith("403\n"));
+      assertSame(before, other.getGlobalScope().resolveName("/test/templates/TestBasedOn1", false));
+      String reload = requestConsole(port, "POST", "/reload?name=%2Ftest%2Ftemplates%2FTestBasedOn1", "http://localhost:" + port);
+      assertTrue(reload.startsWith("200\n"));
+      assertTrue(reload.contains("Reloaded 1 component(s)"));
+      assertNotSame(before, other.getGlobalScope().resolveName("/test/templates/TestBasedOn1", false));
+
+      // a global component referencing the reloaded one is reloaded with it
+      ExampleComponent dependent = (ExampleComponent) other.resolveName("/test/TestObjectDependent");
+      reload = requestConsole(port, "POST", "/reload?name=%2Ftest%2FTestObject", null);
+      assertTrue(reload.contains("Reloaded 2 component(s)"));
+      ExampleComponent reloaded = (ExampleComponent) other.getGlobalScope().resolveName("/test/TestObjectDependent", false);
+      assertNotSame(dependent, reloaded);
+      assertSame(other.getGlobalScope().resolveName("/test/TestObject", false), reloaded.getDependency());
+
+      // host names that merely start like a loopback address may be rebound to it by their DNS
+      assertTrue(requestConsole(port, "GET", "/", null, "127.attacker.example:" + port).startsWith("403\n"));
+      assertTrue(requestConsole(port, "POST", "/reload?name=%2Ftest%2FTestObject", "http://127.0.0.1.attacker.example",
+          "127.0.0.1:" + port).startsWith("403\n"));
+      assertTrue(requestConsole(port, "GET", "/", null, "127.0.0.256:" + port).startsWith("403\n"));
+      assertTrue(requestConsole(port, "GET", "/", null, "127.0.0.1:" + port).startsWith("200\n"));
+      assertTrue(requestConsole(port, "GET", "/", null, "[::1]:" + port).startsWith("200\n"));
+    } finally {
+      console.stop();
+    }
+    assertEquals(0, console.getLocalPort());
+
+    // a reload of the whole tree stops the console: it answers first, then restarts
+    Atom withConsole = newContainer();
+    withConsole.addToConfigPath(new File(((File) atom.getConfigPath().get(0)).getParentFile(), "adminconfig"));
+    console = (atom.service.AdminConsole) withConsole.resolveName("/admin/Console");
+    atom.service.AdminConsole restarted = console;
+    try {
+      String reload = requestConsole(console.getLocalPort(), "POST", "/reload?name=%2F", null);
+      assertTrue(reload.startsWith("202\n"));
+      assertTrue(reload.contains("the console restarts"));
+      long deadline = System.currentTimeMillis() + 5000;
+      while ((restarted == console || restarted.getLocalPort() == 0) && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+        Object registered = withConsole.getGlobalScope().resolveName("/admin/Console", false);
+        if (registered != null) {
+          restarted = (atom.service.AdminConsole) registered;
+        }
+      }
+      assertNotSame(console, restarted);
+      assertEquals(0, console.getLocalPort());
+      assertTrue(requestConsole(restarted.getLocalPort(), "GET", "/", null).startsWith("200\n"));
+    } finally {
+      console.stop();
+      restarted.stop();
+    }
+  }
+
+  @Test
+  public void testSizeEstimator () {
+    // the walk stops at the other components
+    int[] shared = new int[10000];
+    List<Object> holder = new ArrayList<Object>(Arrays.asList(shared, "x"));
+    final Set<Object> stops = Collections.newSetFromMap(new IdentityHashMap<Object,Boolean>());
+    java.util.function.Predicate<Object> isStop = new java.util.function.Predicate<Object>() {
+      public boolean test (Object pObject) {
+        return stops.contains(pObject);
+      }
+    };
+    assertTrue(SizeEstimator.estimate(holder, isStop, 1000) > 40000);
+    stops.add(shared);
+    assertTrue(SizeEstimator.estimate(holder, isStop, 1000) < 200);
+
+    // a sample of a large collection stands for its elements
+    List<int[]> rows = new ArrayList<int[]>();
+    for (int i = 0; i < 100 * SizeEstimator.SAMPLED_ELEMENTS; i++) {
+      rows.add(new int[10]);
+    }
+    long rowSize = (SizeEstimator.HEADER_SIZE + 4 + 40 + 7) & ~7L;
+    long size = SizeEstimator.estimate(rows, isStop, 1000);
+    assertTrue(size >= rows.size() * (rowSize + SizeEstimator.REFERENCE_SIZE));
+    assertTrue(size <= rows.size() * (rowSize + SizeEstimator.REFERENCE_SIZE) + 100);
+  }
+
+  @Test
+  public void testMemoryAccounting () {
+    Atom other = newContainer();
+    other.addToConfigPath((File) atom.getConfigPath().get(0));
+    other.enableMemoryAccounting(1);
+    Scope session = new Scope(Atom.SESSION_SCOPE);
+    session.setParentScope(other.getGlobalScope());
+    ExampleComponent cart = (ExampleComponent) session.resolveName("/test/memory/TestCart");
+    long cartSize = session.getEstimatedSizes().get("/test/memory/TestCart");
+    assertTrue(cartSize > 2000);
+    assertEquals(cartSize, session.getEstimatedSize());
+    assertEquals(1, other.getSizeEstimates().get(ExampleComponent.class.getName()).getSamples());
+
+    // the state grown since the creation is seen when measuring again
+    cart.setIntArrayProp(new int[5000]);
+    assertTrue(other.measureScope(session) > 20000);
+    session.unregister("/test/memory/TestCart");
+    assertEquals(0, session.getEstimatedSize());
+
+    // a creation over the quota of its session is rejected, other sessions have their own quota
+    other.setSessionQuota(cartSize + cartSize / 2, Atom.QUOTA_REJECT);
+    session = new Scope(Atom.SESSION_SCOPE);
+    session.setParentScope(other.getGlobalScope());
+    session.resolveName("/test/memory/TestCart");
+    try {
+      session.resolveName("/test/memory/TestCart2");
+      fail("Expected the session quota to reject the creation");
+    } catch (AtomException ae) {
+      assertTrue(ae.getMessage().contains("/test/memory/TestCart2"));
+    }
+    assertNull(session.resolveName("/test/memory/TestCart2", false));
+    assertEquals(1, other.getMetrics().getCount(Atom.MEMORY_REJECTIONS_COUNTER));
+    Scope otherSession = new Scope(Atom.SESSION_SCOPE);
+    otherSession.setParentScope(other.getGlobalScope());
+    assertNotNull(otherSession.resolveName("/test/memory/TestCart2"));
+
+    // or the oldest components of the session are passivated, and created again when next resolved
+    other.setSessionQuota(cartSize + cartSize / 2, Atom.QUOTA_PASSIVATE);
+    session = new Scope(Atom.SESSION_SCOPE);
+    session.setParentScope(other.getGlobalScope());
+    Object first = session.resolveName("/test/memory/TestCart");
+    session.resolveName("/test/memory/TestCart2");
+    assertNull(session.resolveName("/test/memory/TestCart", false));
+    assertNotNull(session.resolveName("/test/memory/TestCart2", false));
+    assertEquals(1, other.getMetrics().getCount(Atom.MEMORY_PASSIVATIONS_COUNTER));
+    assertNotSame(first, session.resolveName("/test/memory/TestCart"));
+    assertNull(session.resolveName("/test/memory/TestCart2", false));
+    assertTrue(session.getEstimatedSize() <= cartSize + cartSize / 2);
+
+    // a component referenced by the one being created is kept, however old
+    session = new Scope(Atom.SESSION_SCOPE);
+    session.setParentScope(other.getGlobalScope());
+    Object item = session.resolveName("/test/memory/TestCartItem");
+    Object passivatedCart = session.resolveName("/test/memory/TestCart");
+    ExampleComponent holder = (ExampleComponent) session.resolveName("/test/memory/TestCartHolder");
+    assertSame(item, holder.getDependency());
+    assertSame(item, session.resolveName("/test/memory/TestCartItem", false));
+    assertNull(session.resolveName("/test/memory/TestCart", false));
+    assertTrue(session.getEstimatedSize() <= cartSize + cartSize / 2);
+    assertNotSame(passivatedCart, session.resolveName("/test/memory/TestCart"));
+
+    try {
+      other.setSessionQuota(1000, "drop");
+      fail("Expected an unknown policy to be refused");
+    } catch (AtomException ae) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testRequestAccounting () {
+    Atom other = newContainer();
+    other.addToConfigPath((File) atom.getConfigPath().get(0));
+    assertTrue(other.enableRequestAccounting());
+    Scope session = new Scope(Atom.SESSION_SCOPE);
+    session.setParentScope(other.getGlobalScope());
+    Scope request = new Scope(Atom.REQUEST_SCOPE);
+    request.setParentScope(session);
+    ExampleComponent outer = (ExampleComponent) request.resolveName("/test/requestcost/TestOuter");
+    assertSame(request.resolveName("/test/requestcost/TestInner", false), outer.getDependency());
+    assertEquals(2, request.getCreationCount());
+
+    // each creation is charged its own cost, and the request scope the sum of them
+    Metrics metrics = other.getMetrics();
+    Histogram outerBytes = metrics.getHistogram(Atom.REQUEST_COST_PREFIX + "/test/requestcost/TestOuter" + Atom.ALLOCATED_SUFFIX);
+    Histogram innerBytes = metrics.getHistogram(Atom.REQUEST_COST_PREFIX + "/test/requestcost/TestInner" + Atom.ALLOCATED_SUFFIX);
+    assertEquals(1, outerBytes.getCount());
+    assertEquals(1, innerBytes.getCount());
+    assertTrue(outerBytes.getTotalNanos() >= 2000);
+    assertEquals(outerBytes.getTotalNanos() + innerBytes.getTotalNanos(), request.getCreationAllocatedBytes());
+    Histogram outerCpu = metrics.getHistogram(Atom.REQUEST_COST_PREFIX + "/test/requestcost/TestOuter" + Atom.CPU_SUFFIX);
+    Histogram innerCpu = metrics.getHistogram(Atom.REQUEST_COST_PREFIX + "/test/requestcost/TestInner" + Atom.CPU_SUFFIX);
+    assertEquals(1, outerCpu.getCount());
+    assertEquals(outerCpu.getTotalNanos() + innerCpu.getTotalNanos(), request.getCreationCpuNanos());
+
+    // the components of other scopes are not charged to the request
+    assertNotNull(request.resolveName("/test/TestSession"));
+    assertEquals(2, request.getCreationCount());
+    assertFalse(metrics.getHistograms().containsKey(Atom.REQUEST_COST_PREFIX + "/test/TestSession" + Atom.CPU_SUFFIX));
+    assertEquals(0, session.getCreationCount());
+
+    // a new request is measured apart, from the prototypes built by the first one
+    request = new Scope(Atom.REQUEST_SCOPE);
+    request.setParentScope(session);
+    request.resolveName("/test/requestcost/TestOuter");
+    assertEquals(2, request.getCreationCount());
+    assertEquals(2, outerBytes.getCount());
+  }
+
 } // end TestAtom
 
@@ -0,0 +1,65 @@
+package atom.bench;
+
+import java.util.List;
+
+/**
+ * Component of the synthetic config trees, with the kinds of properties found in real ones: a value, a number
+ * overridden by the layers, a list accumulated across the layers, a reference and a linked property. The nested
+ * subclasses give the trees a few distinct classes
+ */
+public class BenchComponent {
+
+  private String mName;
+  private int mCount;
+  private List<String> mItems;
+  private BenchComponent mNext;
+  private String mLinkedName;
+
+  public String getName () {
+    return mName;
+  }
+
+  public void setName (String pName) {
+    mName = pName;
+  }
+
+  public int getCount () {
+    return mCount;
+  }
+
+  public void setCount (int pCount) {
+    mCount = pCount;
+  }
+
+  public List<String> getItems () {
+    return mItems;
+  }
+
+  public void setItems (List<String> pItems) {
+    mItems = pItems;
+  }
+
+  public BenchComponent getNext () {
+    return mNext;
+  }
+
+  public void setNext (BenchComponent pNext) {
+    mNext = pNext;
+  }
+
+  public String getLinkedName () {
+    return mLinkedName;
+  }
+
+  public void setLinkedName (String pLinkedName) {
+    mLinkedName = pLinkedName;
+  }
+
+
+  public static class Alpha extends BenchComponent {
+  }
+
+  public static class Beta extends BenchComponent {
+  }
+
+} // end BenchComponent
@@ -0,0 +1,182 @@
+package atom.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates synthetic config trees for the scale benchmark. The base layer configures every global component, in
+ * directories of COMPONENTS_PER_DIRECTORY; the components form reference chains of a given depth, each one referencing
+ * the previous one and linking its linkedName to the name of the previous one. Each upper layer overrides a quarter of
+ * the components: it sets their count, adds to their items with += and, for half of them, removes from them with -=
+ */
+public class ConfigTreeGenerator {
+
+  // components per directory, so that no directory gets too large
+  public static final int COMPONENTS_PER_DIRECTORY = 100;
+
+  // one component out of OVERRIDE_STRIDE is overridden by each upper layer
+  private static final int OVERRIDE_STRIDE = 4;
+
+  private static final String[] CLASS_NAMES = {
+    BenchComponent.class.getName(), BenchComponent.Alpha.class.getName(), BenchComponent.Beta.class.getName()
+  };
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  // number of components
+  private final int mComponents;
+
+  // number of layers, the base one included
+  private final int mLayers;
+
+  // number of components in a reference chain
+  private final int mDepth;
+
+
+  /**
+   * Constructor
+   * @param pComponents number of components
+   * @param pLayers number of layers, at least 1
+   * @param pDepth number of components in a reference chain, 1 for no references
+   */
+  public ConfigTreeGenerator (int pComponents, int pLayers, int pDepth) {
+    if (pComponents < 1 || pLayers < 1 || pDepth < 1) {
+      throw new IllegalArgumentException("Components, layers and depth must be at least 1");
+    }
+    mComponents = pComponents;
+    mLayers = pLayers;
+    mDepth = pDepth;
+  }
+
+
+  /**
+   * Returns the name of a generated component
+   * @param pIndex index of the component, from 0
+   * @return full component name
+   */
+  public static String getComponentName (int pIndex) {
+    return "/bench/g" + (pIndex / COMPONENTS_PER_DIRECTORY) + "/C" + pIndex;
+  }
+
+
+  /**
+   * Returns true if a component references the previous one
+   * @param pIndex index of the component
+   * @return true or false
+   */
+  public boolean hasReference (int pIndex) {
+    return pIndex % mDepth != 0;
+  }
+
+
+  /**
+   * Returns true if a component ends a reference chain, i.e. no component references it: resolving it creates the
+   * whole chain
+   * @param pIndex index of the component
+   * @return true or false
+   */
+  public boolean isChainHead (int pIndex) {
+    return pIndex == mComponents - 1 || !hasReference(pIndex + 1);
+  }
+
+
+  /**
+   * Returns true if a layer overrides a component
+   * @param pIndex index of the component
+   * @param pLayer index of the layer, from 1
+   * @return true or false
+   */
+  public boolean isOverridden (int pIndex, int pLayer) {
+    return (pIndex + pLayer) % OVERRIDE_STRIDE == 0;
+  }
+
+
+  /**
+   * Writes the layers of the tree
+   * @param pDirectory directory receiving one subdirectory per layer
+   * @return layer directories, base layer first
+   * @throws IOException if a file can't be written
+   */
+  public List<File> generate (File pDirectory) throws IOException {
+    List<File> layers = new ArrayList<File>();
+    for (int layer = 0; layer < mLayers; layer++) {
+      File layerDirectory = new File(pDirectory, "layer" + layer);
+      layers.add(layerDirectory);
+      for (int i = 0; i < mComponents; i++) {
+        if (layer == 0) {
+          write(layerDirectory, i, getBaseConfiguration(i));
+        } else if (isOverridden(i, layer)) {
+          write(layerDirectory, i, getOverride(i, layer));
+        }
+      }
+    }
+    return layers;
+  } // end generate
+
+
+  /**
+   * Returns the base configuration of a component
+   * @param pIndex index of the component
+   * @return content of the properties file
+   */
+  private String getBaseConfiguration (int pIndex) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("$class=").append(CLASS_NAMES[pIndex % CLASS_NAMES.length]).append('\n');
+    sb.append("$scope=global\n");
+    sb.append("name=C").append(pIndex).append('\n');
+    sb.append("count=0\n");
+    sb.append("items=a,b,c\n");
+    if (hasReference(pIndex)) {
+      String previous = getComponentName(pIndex - 1);
+      sb.append("next=").append(previous).append('\n');
+      sb.append("linkedName^=").append(previous).append(".name\n");
+    }
+    return sb.toString();
+  }
+
+
+  /**
+   * Returns the override of a component by an upper layer
+   * @param pIndex index of the component
+   * @param pLayer index of the layer
+   * @return content of the properties file
+   */
+  private String getOverride (int pIndex, int pLayer) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("count=").append(pLayer).append('\n');
+    sb.append("items+=l").append(pLayer).append('\n');
+    if (pIndex % (OVERRIDE_STRIDE * 2) < OVERRIDE_STRIDE) {
+      sb.append("items-=a\n");
+    }
+    return sb.toString();
+  }
+
+
+  /**
+   * Writes the properties file of a component in a layer
+   * @param pLayer layer directory
+   * @param pIndex index of the component
+   * @param pContent content of the file
+   * @throws IOException if the file can't be written
+   */
+  private static void write (File pLayer, int pIndex, String pContent) throws IOException {
+    File file = new File(pLayer, getComponentName(pIndex).substring(1) + ".properties");
+    File parent = file.getParentFile();
+    if (!parent.isDirectory() && !parent.mkdirs()) {
+      throw new IOException("Could not create directory " + parent);
+    }
+    Writer writer = new OutputStreamWriter(new FileOutputStream(file), UTF_8);
+    try {
+      writer.write(pContent);
+    } finally {
+      writer.close();
+    }
+  } // end write
+
+} // end ConfigTreeGenerator
@@ -0,0 +1,74 @@
+package atom.bench;
+
+import java.util.Arrays;
+
+/**
+ * Latencies recorded by a benchmark, in nanoseconds, with their percentiles
+ */
+public class LatencySamples {
+
+  private long[] mSamples;
+  private int mCount;
+  private boolean mSorted;
+
+
+  /**
+   * Constructor
+   * @param pCapacity expected number of samples, the array grows past it
+   */
+  public LatencySamples (int pCapacity) {
+    mSamples = new long[Math.max(16, pCapacity)];
+  }
+
+
+  /**
+   * Records a latency
+   * @param pNanos latency in nanoseconds
+   */
+  public void add (long pNanos) {
+    if (mCount == mSamples.length) {
+      mSamples = Arrays.copyOf(mSamples, mCount * 2);
+    }
+    mSamples[mCount++] = pNanos;
+    mSorted = false;
+  }
+
+
+  /**
+   * Adds the samples of another instance, i.e. recorded by another thread
+   * @param pOther samples to add
+   */
+  public void addAll (LatencySamples pOther) {
+    for (int i = 0; i < pOther.mCount; i++) {
+      add(pOther.mSamples[i]);
+    }
+  }
+
+
+  /**
+   * Returns the number of samples
+   * @return count
+   */
+  public int size () {
+    return mCount;
+  }
+
+
+  /**
+   * Returns a percentile of the samples, by the nearest-rank method
+   * @param pPercentile percentile between 0 and 100, i.e. 99.9
+   * @return latency in nanoseconds, 0 if there are no samples
+   */
+  public long getPercentile (double pPercentile) {
+    if (mCount == 0) {
+      return 0;
+    }
+    if (!mSorted) {
+      Arrays.sort(mSamples, 0, mCount);
+      mSorted = true;
+    }
+    int rank = (int) Math.ceil(pPercentile / 100 * mCount);
+    return mSamples[Math.min(mCount, Math.max(1, rank)) - 1];
+  }
+
+} // end LatencySamples
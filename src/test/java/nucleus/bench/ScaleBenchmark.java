@@ -0,0 +1,227 @@
+package atom.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import atom.Atom;
+
+/**
+ * Measures how a container behaves as its config tree grows: boot time, heap after boot, and latencies of the
+ * creation and of the lookup of a component, for synthetic trees of various sizes, numbers of layers and depths of
+ * reference chains. Each measure is appended as a line to a CSV file, to track them over releases:
+ * <pre>java -cp target/classes:target/test-classes atom.bench.ScaleBenchmark scale.csv 100,1000,10000,100000 1,5,20 10</pre>
+ * Boot is the creation of the container and of all the components. The heads of the reference chains are resolved,
+ * so that each measured creation creates a whole chain, and its latency grows with the depth
+ */
+public class ScaleBenchmark {
+
+  public static final String CSV_HEADER = "date,javaVersion,components,layers,depth,bootMillis,heapAfterBootBytes,"
+      + "createChainP50Nanos,createChainP99Nanos,lookupP50Nanos,lookupP99Nanos,lookupP999Nanos";
+
+  // lookups measured after the boot, after as many unmeasured ones
+  private static final int LOOKUPS = 100000;
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  /**
+   * Measures of one config tree
+   */
+  public static class Result {
+    public int mComponents;
+    public int mLayers;
+    public int mDepth;
+    public long mBootNanos;
+    public long mHeapAfterBoot;
+    public LatencySamples mCreations;
+    public LatencySamples mLookups;
+
+    /**
+     * Returns the measures as a line of the CSV file
+     * @param pDate date of the run
+     * @return line, without the line separator
+     */
+    public String toCsv (String pDate) {
+      return pDate + "," + System.getProperty("java.version") + "," + mComponents + "," + mLayers + "," + mDepth
+          + "," + (mBootNanos / 1000000) + "," + mHeapAfterBoot
+          + "," + mCreations.getPercentile(50) + "," + mCreations.getPercentile(99)
+          + "," + mLookups.getPercentile(50) + "," + mLookups.getPercentile(99) + "," + mLookups.getPercentile(99.9);
+    }
+  } // end Result
+
+
+  /**
+   * Generates a config tree in a work directory, measures it, then deletes it
+   * @param pComponents number of components
+   * @param pLayers number of layers
+   * @param pDepth number of components in a reference chain
+   * @param pWorkDirectory directory receiving the tree
+   * @return measures
+   * @throws IOException if the tree can't be written
+   */
+  public static Result run (int pComponents, int pLayers, int pDepth, File pWorkDirectory) throws IOException {
+    return run(pComponents, pLayers, pDepth, pWorkDirectory, LOOKUPS, true);
+  }
+
+
+  /**
+   * Generates a config tree in a work directory, measures it, then deletes it
+   * @param pComponents number of components
+   * @param pLayers number of layers
+   * @param pDepth number of components in a reference chain
+   * @param pWorkDirectory directory receiving the tree
+   * @param pLookups number of measured lookups
+   * @param pMeasureHeap true to measure the heap after boot, collecting the garbage before and after the boot
+   * @return measures, the heap after boot being 0 if it is not measured
+   * @throws IOException if the tree can't be written
+   */
+  public static Result run (int pComponents, int pLayers, int pDepth, File pWorkDirectory, int pLookups,
+                            boolean pMeasureHeap) throws IOException {
+    File directory = new File(pWorkDirectory, "tree-" + pComponents + "-" + pLayers + "-" + pDepth);
+    ConfigTreeGenerator generator = new ConfigTreeGenerator(pComponents, pLayers, pDepth);
+    List<File> layers = generator.generate(directory);
+    try {
+      Result result = new Result();
+      result.mComponents = pComponents;
+      result.mLayers = pLayers;
+      result.mDepth = pDepth;
+      result.mCreations = new LatencySamples((pComponents + pDepth - 1) / pDepth);
+      result.mLookups = new LatencySamples(pLookups);
+
+      long heapBefore = (pMeasureHeap ? getUsedHeap() : 0);
+      long start = System.nanoTime();
+      Atom atom = new Atom();
+      for (File layer : layers) {
+        atom.addToConfigPath(layer);
+      }
+      for (int i = 0; i < pComponents; i++) {
+        if (generator.isChainHead(i)) {
+          long creationStart = System.nanoTime();
+          atom.resolveName(ConfigTreeGenerator.getComponentName(i));
+          result.mCreations.add(System.nanoTime() - creationStart);
+        }
+      }
+      result.mBootNanos = System.nanoTime() - start;
+      result.mHeapAfterBoot = (pMeasureHeap ? getUsedHeap() - heapBefore : 0);
+
+      Random random = new Random(42);
+      for (int pass = 0; pass < 2; pass++) {
+        for (int i = 0; i < pLookups; i++) {
+          String name = ConfigTreeGenerator.getComponentName(random.nextInt(pComponents));
+          long lookupStart = System.nanoTime();
+          Object component = atom.resolveName(name);
+          long lookupNanos = System.nanoTime() - lookupStart;
+          if (component == null) {
+            throw new IllegalStateException("Component " + name + " not found");
+          }
+          if (pass == 1) {
+            result.mLookups.add(lookupNanos);
+          }
+        }
+      }
+      atom.shutdown();
+      return result;
+    } finally {
+      delete(directory);
+    }
+  } // end run
+
+
+  /**
+   * Appends results to a CSV file, writing the header first if the file is new
+   * @param pFile CSV file
+   * @param pResults results
+   * @throws IOException if the file can't be written
+   */
+  public static void append (File pFile, List<Result> pResults) throws IOException {
+    boolean newFile = !pFile.isFile() || pFile.length() == 0;
+    String date = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss").format(new Date());
+    Writer writer = new OutputStreamWriter(new FileOutputStream(pFile, true), UTF_8);
+    try {
+      if (newFile) {
+        writer.write(CSV_HEADER + "\n");
+      }
+      for (Result result : pResults) {
+        writer.write(result.toCsv(date) + "\n");
+      }
+    } finally {
+      writer.close();
+    }
+  } // end append
+
+
+  /**
+   * Returns the heap in use after collecting the garbage
+   * @return bytes
+   */
+  private static long getUsedHeap () {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+
+  /**
+   * Deletes a directory and its content
+   * @param pFile file or directory
+   */
+  public static void delete (File pFile) {
+    File[] children = pFile.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    pFile.delete();
+  }
+
+
+  /**
+   * Parses a comma-separated list of numbers
+   * @param pValue i.e. 100,1000
+   * @return numbers
+   */
+  private static List<Integer> parseList (String pValue) {
+    List<Integer> result = new ArrayList<Integer>();
+    for (String token : pValue.split(",")) {
+      result.add(Integer.valueOf(token.trim()));
+    }
+    return result;
+  }
+
+
+  public static void main (String[] pArgs) throws IOException {
+    if (pArgs.length < 1) {
+      System.err.println("Usage: java atom.bench.ScaleBenchmark results.csv [components,...] [layers,...] [depth]");
+      System.exit(2);
+    }
+    List<Integer> sizes = parseList(pArgs.length > 1 ? pArgs[1] : "100,1000,10000,100000");
+    List<Integer> layerCounts = parseList(pArgs.length > 2 ? pArgs[2] : "1,5,20");
+    int depth = (pArgs.length > 3 ? Integer.parseInt(pArgs[3]) : 10);
+    File workDirectory = new File(System.getProperty("java.io.tmpdir"), "atom-bench-" + System.nanoTime());
+    List<Result> results = new ArrayList<Result>();
+    try {
+      for (int size : sizes) {
+        for (int layerCount : layerCounts) {
+          Result result = run(size, layerCount, depth, workDirectory);
+          results.add(result);
+          System.out.println(result.toCsv("-"));
+        }
+      }
+    } finally {
+      delete(workDirectory);
+    }
+    append(new File(pArgs[0]), results);
+    System.out.println("Wrote " + pArgs[0]);
+  } // end main
+
+} // end ScaleBenchmark
@@ -0,0 +1,458 @@
+package atom.bench;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import atom.Atom;
+import atom.ConfigTree;
+import atom.Configuration;
+import atom.Scope;
+
+/**
+ * Stresses the scopes of a container: worker threads, platform or virtual, run requests in new request scopes under a
+ * pool of shared session scopes, each session being replaced after a number of requests, and resolve in each request a
+ * random mix of the global, session and request components configured under a name prefix. Reports the throughput,
+ * the latency percentiles of the resolutions, the monitor contention of the workers, and the components created twice
+ * in the same global or session scope, which a correct container never does:
+ * <pre>java -cp target/classes:target/test-classes atom.bench.ScopeStress target/test-classes/atom/config /test/stress/ 16 5000 virtual</pre>
+ * Virtual threads are created by reflection, so that the harness still compiles and runs on Java 8
+ */
+public class ScopeStress {
+
+  /**
+   * Results of a run
+   */
+  public static class Report {
+    public int mThreads;
+    public boolean mVirtual;
+    public long mDurationNanos;
+    public long mRequests;
+    public long mSessions;
+    public LatencySamples mLatencies;
+
+    // times the workers blocked on a monitor, and for how long; -1 if not measured, i.e. for virtual threads
+    public long mBlockedCount = -1;
+    public long mBlockedMillis = -1;
+
+    // components created more than once in the same scope
+    public int mGlobalDuplicates;
+    public int mSessionDuplicates;
+
+    // failed resolutions, with the first failure
+    public long mErrors;
+    public Throwable mFirstError;
+
+    /**
+     * Returns the resolutions per second
+     * @return throughput
+     */
+    public long getThroughput () {
+      return (mDurationNanos == 0 ? 0 : mLatencies.size() * 1000000000L / mDurationNanos);
+    }
+
+    public String toString () {
+      return mThreads + (mVirtual ? " virtual" : " platform") + " threads, " + mRequests + " requests, "
+          + mSessions + " sessions, " + mLatencies.size() + " resolutions, " + getThroughput() + " resolutions/s\n"
+          + "latency p50=" + mLatencies.getPercentile(50) + "ns p99=" + mLatencies.getPercentile(99)
+          + "ns p99.9=" + mLatencies.getPercentile(99.9) + "ns max=" + mLatencies.getPercentile(100) + "ns\n"
+          + "blocked " + (mBlockedCount < 0 ? "n/a" : mBlockedCount + " times for " + mBlockedMillis + "ms") + "\n"
+          + "duplicates global=" + mGlobalDuplicates + " session=" + mSessionDuplicates + ", errors=" + mErrors
+          + (mFirstError == null ? "" : " (first: " + mFirstError + ")");
+    }
+  } // end Report
+
+
+  /**
+   * What a worker saw: its latencies, and the distinct instances of each component per scope
+   */
+  private static final class WorkerResult {
+    final LatencySamples mLatencies = new LatencySamples(1 << 16);
+    final Map<String,Set<Object>> mGlobals = new HashMap<String,Set<Object>>();
+    final Map<Scope,Map<String,Set<Object>>> mSessions = new IdentityHashMap<Scope,Map<String,Set<Object>>>();
+    long mRequests;
+    long mBlockedCount = -1;
+    long mBlockedMillis = -1;
+  } // end WorkerResult
+
+
+  // container stressed
+  private final Atom mAtom;
+
+  // components stressed, by scope
+  private final List<String> mGlobalNames = new ArrayList<String>();
+  private final List<String> mSessionNames = new ArrayList<String>();
+  private final List<String> mRequestNames = new ArrayList<String>();
+
+  private int mThreads = 8;
+  private boolean mVirtual;
+  private long mDurationMillis = 1000;
+  private int mSessionCount = 16;
+  private int mRequestsPerSession = 50;
+  private int mResolutionsPerRequest = 8;
+
+  // relative weights of the global, session and request components in the mix
+  private int mGlobalWeight = 5;
+  private int mSessionWeight = 3;
+  private int mRequestWeight = 2;
+
+  // session scopes shared by the workers, with the number of requests run in each
+  private AtomicReferenceArray<Scope> mSessionPool;
+  private AtomicIntegerArray mSessionRequests;
+  private final AtomicLong mSessionsCreated = new AtomicLong();
+
+  private final AtomicLong mErrors = new AtomicLong();
+  private final AtomicReference<Throwable> mFirstError = new AtomicReference<Throwable>();
+
+
+  /**
+   * Constructor
+   * @param pAtom container stressed
+   * @param pPrefix name prefix of the components resolved, i.e. /test/stress/
+   */
+  public ScopeStress (Atom pAtom, String pPrefix) {
+    mAtom = pAtom;
+    for (String name : new ConfigTree(pAtom.getConfigPath()).getComponentNames()) {
+      if (!name.startsWith(pPrefix)) {
+        continue;
+      }
+      Configuration config = pAtom.getConfiguration(name);
+      String scope = config.getProperty("$scope");
+      if (Atom.GLOBAL_SCOPE.equals(scope)) {
+        mGlobalNames.add(name);
+      } else if (Atom.SESSION_SCOPE.equals(scope)) {
+        mSessionNames.add(name);
+      } else if (Atom.REQUEST_SCOPE.equals(scope)) {
+        mRequestNames.add(name);
+      }
+    }
+    if (mGlobalNames.isEmpty() && mSessionNames.isEmpty() && mRequestNames.isEmpty()) {
+      throw new IllegalArgumentException("No component configured under " + pPrefix);
+    }
+  }
+
+
+  public void setThreads (int pThreads) {
+    mThreads = pThreads;
+  }
+
+  public void setVirtual (boolean pVirtual) {
+    mVirtual = pVirtual;
+  }
+
+  public void setDurationMillis (long pDurationMillis) {
+    mDurationMillis = pDurationMillis;
+  }
+
+  public void setSessionCount (int pSessionCount) {
+    mSessionCount = pSessionCount;
+  }
+
+  public void setRequestsPerSession (int pRequestsPerSession) {
+    mRequestsPerSession = pRequestsPerSession;
+  }
+
+  public void setResolutionsPerRequest (int pResolutionsPerRequest) {
+    mResolutionsPerRequest = pResolutionsPerRequest;
+  }
+
+  /**
+   * Sets the relative weights of the components of each scope in the mix, 0 to leave a scope out
+   * @param pGlobal weight of the global components
+   * @param pSession weight of the session components
+   * @param pRequest weight of the request components
+   */
+  public void setMix (int pGlobal, int pSession, int pRequest) {
+    mGlobalWeight = pGlobal;
+    mSessionWeight = pSession;
+    mRequestWeight = pRequest;
+  }
+
+
+  /**
+   * Returns true if the JVM can run virtual threads
+   * @return true on Java 21 and later
+   */
+  public static boolean isVirtualThreadSupported () {
+    ExecutorService executor = newVirtualThreadExecutor();
+    if (executor == null) {
+      return false;
+    }
+    executor.shutdown();
+    return true;
+  }
+
+
+  /**
+   * Runs the workers for the configured duration
+   * @return report
+   * @throws Exception if a worker could not be run
+   */
+  public Report run () throws Exception {
+    mSessionsCreated.set(0);
+    mErrors.set(0);
+    mFirstError.set(null);
+    mSessionPool = new AtomicReferenceArray<Scope>(mSessionCount);
+    mSessionRequests = new AtomicIntegerArray(mSessionCount);
+    for (int i = 0; i < mSessionCount; i++) {
+      mSessionPool.set(i, newSession());
+    }
+
+    ExecutorService executor = (mVirtual ? newVirtualThreadExecutor() : Executors.newFixedThreadPool(mThreads));
+    if (executor == null) {
+      throw new IllegalStateException("Virtual threads need Java 21 or later");
+    }
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    boolean contentionMonitoring = threads.isThreadContentionMonitoringSupported()
+        && threads.isThreadContentionMonitoringEnabled();
+    if (threads.isThreadContentionMonitoringSupported() && !contentionMonitoring) {
+      threads.setThreadContentionMonitoringEnabled(true);
+    }
+
+    final CountDownLatch startGate = new CountDownLatch(1);
+    List<Future<WorkerResult>> futures = new ArrayList<Future<WorkerResult>>();
+    try {
+      for (int i = 0; i < mThreads; i++) {
+        final long seed = i;
+        futures.add(executor.submit(new Callable<WorkerResult>() {
+          public WorkerResult call () throws InterruptedException {
+            startGate.await();
+            return runWorker(new Random(seed), System.nanoTime() + mDurationMillis * 1000000);
+          }
+        }));
+      }
+      long start = System.nanoTime();
+      startGate.countDown();
+      List<WorkerResult> results = new ArrayList<WorkerResult>();
+      for (Future<WorkerResult> future : futures) {
+        results.add(future.get());
+      }
+      return merge(results, System.nanoTime() - start);
+    } finally {
+      executor.shutdown();
+      if (threads.isThreadContentionMonitoringSupported() && !contentionMonitoring) {
+        threads.setThreadContentionMonitoringEnabled(false);
+      }
+    }
+  } // end run
+
+
+  /**
+   * Runs requests until a deadline
+   * @param pRandom random numbers of this worker
+   * @param pDeadline end of the run, in nanoseconds
+   * @return what the worker saw
+   */
+  private WorkerResult runWorker (Random pRandom, long pDeadline) {
+    WorkerResult result = new WorkerResult();
+    int totalWeight = (mGlobalNames.isEmpty() ? 0 : mGlobalWeight) + (mSessionNames.isEmpty() ? 0 : mSessionWeight)
+        + (mRequestNames.isEmpty() ? 0 : mRequestWeight);
+    while (System.nanoTime() - pDeadline < 0) {
+      Scope session = nextSession(pRandom);
+      Scope request = new Scope(Atom.REQUEST_SCOPE);
+      request.setParentScope(session);
+      for (int i = 0; i < mResolutionsPerRequest; i++) {
+        int pick = pRandom.nextInt(totalWeight);
+        List<String> names;
+        Map<String,Set<Object>> seen;
+        if (!mGlobalNames.isEmpty() && (pick -= mGlobalWeight) < 0) {
+          names = mGlobalNames;
+          seen = result.mGlobals;
+        } else if (!mSessionNames.isEmpty() && (pick -= mSessionWeight) < 0) {
+          names = mSessionNames;
+          seen = result.mSessions.get(session);
+          if (seen == null) {
+            seen = new HashMap<String,Set<Object>>();
+            result.mSessions.put(session, seen);
+          }
+        } else {
+          names = mRequestNames;
+          seen = null;
+        }
+        String name = names.get(pRandom.nextInt(names.size()));
+
+        long resolutionStart = System.nanoTime();
+        Object component;
+        try {
+          component = request.resolveName(name);
+        } catch (RuntimeException re) {
+          mErrors.incrementAndGet();
+          mFirstError.compareAndSet(null, re);
+          continue;
+        }
+        result.mLatencies.add(System.nanoTime() - resolutionStart);
+        if (seen != null && component != null) {
+          record(seen, name, component);
+        }
+      }
+      result.mRequests++;
+    }
+
+    ThreadInfo info = ManagementFactory.getThreadMXBean().getThreadInfo(Thread.currentThread().getId());
+    if (info != null) {
+      // null for a virtual thread
+      result.mBlockedCount = info.getBlockedCount();
+      result.mBlockedMillis = info.getBlockedTime();
+    }
+    return result;
+  } // end runWorker
+
+
+  /**
+   * Returns a session of the pool, replacing it once it has run its requests
+   * @param pRandom random numbers of the worker
+   * @return session scope
+   */
+  private Scope nextSession (Random pRandom) {
+    int index = pRandom.nextInt(mSessionCount);
+    Scope session = mSessionPool.get(index);
+    if (mSessionRequests.incrementAndGet(index) >= mRequestsPerSession) {
+      Scope replacement = newSession();
+      if (mSessionPool.compareAndSet(index, session, replacement)) {
+        mSessionRequests.set(index, 0);
+      }
+    }
+    return session;
+  }
+
+
+  /**
+   * Creates a session scope
+   * @return session scope
+   */
+  private Scope newSession () {
+    Scope session = new Scope(Atom.SESSION_SCOPE);
+    session.setParentScope(mAtom.getGlobalScope());
+    mSessionsCreated.incrementAndGet();
+    return session;
+  }
+
+
+  /**
+   * Records an instance of a component
+   * @param pSeen distinct instances by component name
+   * @param pName component name
+   * @param pComponent instance
+   */
+  private static void record (Map<String,Set<Object>> pSeen, String pName, Object pComponent) {
+    Set<Object> instances = pSeen.get(pName);
+    if (instances == null) {
+      instances = Collections.newSetFromMap(new IdentityHashMap<Object,Boolean>());
+      pSeen.put(pName, instances);
+    }
+    instances.add(pComponent);
+  }
+
+
+  /**
+   * Merges what the workers saw
+   * @param pResults results of the workers
+   * @param pDurationNanos duration of the run
+   * @return report
+   */
+  private Report merge (List<WorkerResult> pResults, long pDurationNanos) {
+    Report report = new Report();
+    report.mThreads = mThreads;
+    report.mVirtual = mVirtual;
+    report.mDurationNanos = pDurationNanos;
+    report.mSessions = mSessionsCreated.get();
+    report.mLatencies = new LatencySamples(1 << 16);
+    Map<String,Set<Object>> globals = new HashMap<String,Set<Object>>();
+    Map<Scope,Map<String,Set<Object>>> sessions = new IdentityHashMap<Scope,Map<String,Set<Object>>>();
+    for (WorkerResult result : pResults) {
+      report.mRequests += result.mRequests;
+      report.mLatencies.addAll(result.mLatencies);
+      if (result.mBlockedCount >= 0) {
+        report.mBlockedCount = Math.max(0, report.mBlockedCount) + result.mBlockedCount;
+        report.mBlockedMillis = Math.max(0, report.mBlockedMillis) + Math.max(0, result.mBlockedMillis);
+      }
+      mergeSeen(globals, result.mGlobals);
+      for (Map.Entry<Scope,Map<String,Set<Object>>> entry : result.mSessions.entrySet()) {
+        Map<String,Set<Object>> seen = sessions.get(entry.getKey());
+        if (seen == null) {
+          seen = new HashMap<String,Set<Object>>();
+          sessions.put(entry.getKey(), seen);
+        }
+        mergeSeen(seen, entry.getValue());
+      }
+    }
+    report.mGlobalDuplicates = countDuplicates(globals);
+    for (Map<String,Set<Object>> seen : sessions.values()) {
+      report.mSessionDuplicates += countDuplicates(seen);
+    }
+    report.mErrors = mErrors.get();
+    report.mFirstError = mFirstError.get();
+    return report;
+  } // end merge
+
+
+  private static void mergeSeen (Map<String,Set<Object>> pTarget, Map<String,Set<Object>> pSource) {
+    for (Map.Entry<String,Set<Object>> entry : pSource.entrySet()) {
+      for (Object component : entry.getValue()) {
+        record(pTarget, entry.getKey(), component);
+      }
+    }
+  }
+
+
+  private static int countDuplicates (Map<String,Set<Object>> pSeen) {
+    int duplicates = 0;
+    for (Set<Object> instances : pSeen.values()) {
+      duplicates += instances.size() - 1;
+    }
+    return duplicates;
+  }
+
+
+  /**
+   * Creates an executor running each task in a new virtual thread
+   * @return executor, or null before Java 21
+   */
+  private static ExecutorService newVirtualThreadExecutor () {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException roe) {
+      return null;
+    }
+  }
+
+
+  public static void main (String[] pArgs) throws Exception {
+    if (pArgs.length < 1) {
+      System.err.println("Usage: java atom.bench.ScopeStress layer[,layer...] [prefix] [threads] [millis] [platform|virtual]");
+      System.exit(2);
+    }
+    Atom atom = new Atom();
+    for (String layer : pArgs[0].split(",")) {
+      atom.addToConfigPath(new File(layer));
+    }
+    ScopeStress stress = new ScopeStress(atom, (pArgs.length > 1 ? pArgs[1] : "/"));
+    if (pArgs.length > 2) {
+      stress.setThreads(Integer.parseInt(pArgs[2]));
+    }
+    if (pArgs.length > 3) {
+      stress.setDurationMillis(Long.parseLong(pArgs[3]));
+    }
+    stress.setVirtual(pArgs.length > 4 && "virtual".equals(pArgs[4]));
+    System.out.println(stress.run());
+    atom.shutdown();
+  } // end main
+
+} // end ScopeStress
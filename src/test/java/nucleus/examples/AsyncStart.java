@@ -0,0 +1,36 @@
+package atom.examples;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import atom.AsyncStartable;
+
+/**
+ * Example component starting in the background, ready once the test completes its future
+ */
+public class AsyncStart implements AsyncStartable {
+
+  private final CompletableFuture<Object> mReady = new CompletableFuture<Object>();
+  private volatile boolean mStarted;
+  private AsyncStart mDependency;
+
+  public CompletionStage<?> startAsync () {
+    mStarted = true;
+    return mReady;
+  }
+
+  public boolean isStarted () {
+    return mStarted;
+  }
+
+  public CompletableFuture<Object> getReady () {
+    return mReady;
+  }
+
+  public AsyncStart getDependency () {
+    return mDependency;
+  }
+
+  public void setDependency (AsyncStart pDependency) {
+    mDependency = pDependency;
+  }
+} // end AsyncStart
@@ -0,0 +1,60 @@
+package atom.examples;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Example component for testing the discovery of bean properties and the conversion of enums and bytes
+ */
+public class BeanModelExample {
+
+  private String mURL;
+  private boolean mActive;
+  private int mCount;
+  private TimeUnit mUnit;
+  private byte mFlags;
+
+  public String getURL() {
+    return mURL;
+  }
+
+  public void setURL(String pURL) {
+    mURL = pURL;
+  }
+
+  public boolean isActive() {
+    return mActive;
+  }
+
+  public void setActive(boolean pActive) {
+    mActive = pActive;
+  }
+
+  public int getCount() {
+    return mCount;
+  }
+
+  public void setCount(int pCount) {
+    mCount = pCount;
+  }
+
+  public void setCount(String pCount) {
+    mCount = -1;
+  }
+
+  public TimeUnit unit() {
+    return mUnit;
+  }
+
+  public void setUnit(TimeUnit pUnit) {
+    mUnit = pUnit;
+  }
+
+  public byte flags() {
+    return mFlags;
+  }
+
+  public void setFlags(byte pFlags) {
+    mFlags = pFlags;
+  }
+
+} // end BeanModelExample
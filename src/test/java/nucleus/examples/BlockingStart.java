@@ -0,0 +1,31 @@
+package atom.examples;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Example component whose creation blocks until the test releases it
+ */
+public class BlockingStart {
+
+  private static final AtomicInteger sInstances = new AtomicInteger();
+  private static final CountDownLatch sRelease = new CountDownLatch(1);
+
+  public BlockingStart () {
+    sInstances.incrementAndGet();
+    try {
+      sRelease.await(10, TimeUnit.SECONDS);
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  public static int getInstances () {
+    return sInstances.get();
+  }
+
+  public static void release () {
+    sRelease.countDown();
+  }
+} // end BlockingStart
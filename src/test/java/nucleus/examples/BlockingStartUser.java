@@ -0,0 +1,15 @@
+package atom.examples;
+
+/**
+ * Example component referencing a component whose creation blocks
+ */
+public class BlockingStartUser {
+
+  private BlockingStart mBlockingStart;
+  public BlockingStart getBlockingStart () {
+    return mBlockingStart;
+  }
+  public void setBlockingStart (BlockingStart pBlockingStart) {
+    mBlockingStart = pBlockingStart;
+  }
+} // end BlockingStartUser
@@ -0,0 +1,24 @@
+package atom.examples;
+
+/**
+ * Example implementation of a greeter, failing for a missing name
+ */
+public class ExampleGreeter implements Greeter {
+
+  private String mGreeting;
+
+  public String greet (String pName) {
+    if (pName == null) {
+      throw new IllegalArgumentException("No name to greet");
+    }
+    return mGreeting + " " + pName;
+  }
+
+  public String getGreeting () {
+    return mGreeting;
+  }
+
+  public void setGreeting (String pGreeting) {
+    mGreeting = pGreeting;
+  }
+} // end ExampleGreeter
@@ -0,0 +1,17 @@
+package atom.examples;
+
+/**
+ * Example implementation of a plugin
+ */
+public class ExamplePlugin implements Plugin {
+
+  private String mPluginName;
+
+  public String getPluginName () {
+    return mPluginName;
+  }
+
+  public void setPluginName (String pPluginName) {
+    mPluginName = pPluginName;
+  }
+} // end ExamplePlugin
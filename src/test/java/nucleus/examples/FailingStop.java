@@ -0,0 +1,23 @@
+package atom.examples;
+
+import atom.Stoppable;
+
+/**
+ * Example component whose stop() throws
+ */
+public class FailingStop implements Stoppable {
+
+  private StartStop mDependency;
+
+  public StartStop getDependency () {
+    return mDependency;
+  }
+
+  public void setDependency (StartStop pDependency) {
+    mDependency = pDependency;
+  }
+
+  public void stop () {
+    throw new IllegalStateException("stop failed");
+  }
+} // end FailingStop
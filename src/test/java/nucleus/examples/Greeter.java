@@ -0,0 +1,10 @@
+package atom.examples;
+
+/**
+ * Example interface of a monitored component
+ */
+public interface Greeter {
+
+  String greet (String pName);
+
+} // end Greeter
@@ -0,0 +1,10 @@
+package atom.examples;
+
+/**
+ * Example interface for looking components up by type
+ */
+public interface Plugin {
+
+  String getPluginName ();
+
+} // end Plugin
@@ -0,0 +1,23 @@
+package atom.examples;
+
+import java.util.List;
+
+/**
+ * Example component injected with all the plugins, being a plugin itself
+ */
+public class PluginRegistry implements Plugin {
+
+  private List mPlugins;
+
+  public String getPluginName () {
+    return "registry";
+  }
+
+  public List getPlugins () {
+    return mPlugins;
+  }
+
+  public void setPlugins (List pPlugins) {
+    mPlugins = pPlugins;
+  }
+} // end PluginRegistry
@@ -0,0 +1,19 @@
+package atom.examples;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Example component with a side effect on creation, counting its instances
+ */
+public class SideEffect {
+
+  private static final AtomicInteger sInstances = new AtomicInteger();
+
+  public SideEffect () {
+    sInstances.incrementAndGet();
+  }
+
+  public static int getInstances () {
+    return sInstances.get();
+  }
+} // end SideEffect
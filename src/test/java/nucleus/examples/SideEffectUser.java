@@ -0,0 +1,15 @@
+package atom.examples;
+
+/**
+ * Example component referencing a component with a side effect on creation
+ */
+public class SideEffectUser {
+
+  private SideEffect mSideEffect;
+  public SideEffect getSideEffect () {
+    return mSideEffect;
+  }
+  public void setSideEffect (SideEffect pSideEffect) {
+    mSideEffect = pSideEffect;
+  }
+} // end SideEffectUser
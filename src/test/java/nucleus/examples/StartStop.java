@@ -10,6 +10,8 @@ public class StartStop implements Startable, Stoppable {
 
   private String mState;
 
+  private StartStop mDependency;
+
 
   /**
    * Called after component initialization and registration to initialize the component
@@ -28,5 +30,13 @@ public class StartStop implements Startable, Stoppable {
   public String getState () {
     return mState;
   }
+
+  public StartStop getDependency () {
+    return mDependency;
+  }
+
+  public void setDependency (StartStop pDependency) {
+    mDependency = pDependency;
+  }
 } // end StartStop
 
@@ -0,0 +1,28 @@
+package atom.examples;
+
+import atom.Startable;
+
+/**
+ * Example component starting synchronously after a component starting in the background
+ */
+public class SyncStart implements Startable {
+
+  private AsyncStart mDependency;
+  private boolean mDependencyReady;
+
+  public void start () {
+    mDependencyReady = mDependency.getReady().isDone();
+  }
+
+  public boolean isDependencyReady () {
+    return mDependencyReady;
+  }
+
+  public AsyncStart getDependency () {
+    return mDependency;
+  }
+
+  public void setDependency (AsyncStart pDependency) {
+    mDependency = pDependency;
+  }
+} // end SyncStart